@@ -22,14 +22,12 @@ import android.content.res.Resources;
 import android.telephony.SubscriptionManager;
 import android.text.TextUtils;
 
-import com.android.internal.telephony.GsmAlphabet;
 import com.android.internal.telephony.GsmAlphabet.TextEncodingDetails;
 import com.android.internal.telephony.SmsConstants;
+import com.android.internal.telephony.SmsEncodingPlanner;
 import com.android.internal.telephony.SmsMessageBase;
 import com.android.internal.telephony.SmsMessageBase.SubmitPduBase;
-import com.android.internal.telephony.Sms7BitEncodingTranslator;
 
-import java.lang.Math;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -106,6 +104,9 @@ public class SmsMessage {
      */
     private int mSubId = 0;
 
+    private static final Object sEncodingPlannerLock = new Object();
+    private static SmsEncodingPlanner sEncodingPlanner;
+
     /** set Subscription information
      *
      * @hide
@@ -341,10 +342,12 @@ public class SmsMessage {
      */
     public static int[] calculateLength(CharSequence msgBody, boolean use7bitOnly) {
         // this function is for MO SMS
-        TextEncodingDetails ted = (useCdmaFormatForMoSms()) ?
-            com.android.internal.telephony.cdma.SmsMessage.calculateLength(msgBody, use7bitOnly,
-                    true) :
-            com.android.internal.telephony.gsm.SmsMessage.calculateLength(msgBody, use7bitOnly);
+        boolean cdmaFormat = useCdmaFormatForMoSms();
+        TextEncodingDetails ted;
+        synchronized (sEncodingPlannerLock) {
+            ted = getEncodingPlanner(msgBody, use7bitOnly, cdmaFormat)
+                    .getEncodingDetails(msgBody);
+        }
         int ret[] = new int[4];
         ret[0] = ted.msgCount;
         ret[1] = ted.codeUnitCount;
@@ -365,85 +368,26 @@ public class SmsMessage {
      */
     public static ArrayList<String> fragmentText(String text) {
         // This function is for MO SMS
-        TextEncodingDetails ted = (useCdmaFormatForMoSms()) ?
-            com.android.internal.telephony.cdma.SmsMessage.calculateLength(text, false, true) :
-            com.android.internal.telephony.gsm.SmsMessage.calculateLength(text, false);
-
-        // TODO(cleanup): The code here could be rolled into the logic
-        // below cleanly if these MAX_* constants were defined more
-        // flexibly...
-
-        int limit;
-        if (ted.codeUnitSize == SmsConstants.ENCODING_7BIT) {
-            int udhLength;
-            if (ted.languageTable != 0 && ted.languageShiftTable != 0) {
-                udhLength = GsmAlphabet.UDH_SEPTET_COST_TWO_SHIFT_TABLES;
-            } else if (ted.languageTable != 0 || ted.languageShiftTable != 0) {
-                udhLength = GsmAlphabet.UDH_SEPTET_COST_ONE_SHIFT_TABLE;
-            } else {
-                udhLength = 0;
-            }
-
-            if (ted.msgCount > 1) {
-                udhLength += GsmAlphabet.UDH_SEPTET_COST_CONCATENATED_MESSAGE;
-            }
-
-            if (udhLength != 0) {
-                udhLength += GsmAlphabet.UDH_SEPTET_COST_LENGTH;
-            }
-
-            limit = SmsConstants.MAX_USER_DATA_SEPTETS - udhLength;
-        } else {
-            if (ted.msgCount > 1) {
-                limit = SmsConstants.MAX_USER_DATA_BYTES_WITH_HEADER;
-                // If EMS is not supported, break down EMS into single segment SMS
-                // and add page info " x/y".
-                // In the case of UCS2 encoding, we need 8 bytes for this,
-                // but we only have 6 bytes from UDH, so truncate the limit for
-                // each segment by 2 bytes (1 char).
-                // Make sure total number of segments is less than 10.
-                if (!hasEmsSupport() && ted.msgCount < 10) {
-                    limit -= 2;
-                }
-            } else {
-                limit = SmsConstants.MAX_USER_DATA_BYTES;
-            }
-        }
+        boolean cdmaFormat = useCdmaFormatForMoSms();
+        // Planned from scratch: the text of a message being sent is not kept
+        SmsEncodingPlanner planner = new SmsEncodingPlanner(cdmaFormat, false);
+        planner.append(text);
+        return planner.getFragments(text);
+    }
 
-        String newMsgBody = null;
-        Resources r = Resources.getSystem();
-        if (r.getBoolean(com.android.internal.R.bool.config_sms_force_7bit_encoding)) {
-            newMsgBody  = Sms7BitEncodingTranslator.translate(text);
-        }
-        if (TextUtils.isEmpty(newMsgBody)) {
-            newMsgBody = text;
-        }
-        int pos = 0;  // Index in code units.
-        int textLen = newMsgBody.length();
-        ArrayList<String> result = new ArrayList<String>(ted.msgCount);
-        while (pos < textLen) {
-            int nextPos = 0;  // Counts code units.
-            if (ted.codeUnitSize == SmsConstants.ENCODING_7BIT) {
-                if (useCdmaFormatForMoSms() && ted.msgCount == 1) {
-                    // For a singleton CDMA message, the encoding must be ASCII...
-                    nextPos = pos + Math.min(limit, textLen - pos);
-                } else {
-                    // For multi-segment messages, CDMA 7bit equals GSM 7bit encoding (EMS mode).
-                    nextPos = GsmAlphabet.findGsmSeptetLimitIndex(newMsgBody, pos, limit,
-                            ted.languageTable, ted.languageShiftTable);
-                }
-            } else {  // Assume unicode.
-                nextPos = SmsMessageBase.findNextUnicodePosition(pos, limit, newMsgBody);
-            }
-            if ((nextPos <= pos) || (nextPos > textLen)) {
-                Rlog.e(LOG_TAG, "fragmentText failed (" + pos + " >= " + nextPos + " or " +
-                          nextPos + " >= " + textLen + ")");
-                break;
-            }
-            result.add(newMsgBody.substring(pos, nextPos));
-            pos = nextPos;
+    /**
+     * Returns the planner for the text. Apps call {@link #calculateLength} as the user types, so
+     * the planner of the last call is kept and only the text typed since is appended to it.
+     */
+    private static SmsEncodingPlanner getEncodingPlanner(CharSequence text,
+            boolean use7bitOnly, boolean cdmaFormat) {
+        SmsEncodingPlanner planner = sEncodingPlanner;
+        if (planner == null || !planner.canAppendTo(text, cdmaFormat, use7bitOnly)) {
+            planner = new SmsEncodingPlanner(cdmaFormat, use7bitOnly);
+            sEncodingPlanner = planner;
         }
-        return result;
+        planner.append(text.subSequence(planner.length(), text.length()));
+        return planner;
     }
 
     /**
@@ -40,6 +40,8 @@ public class AsyncEmergencyContactNotifier extends AsyncTask<Void, Void, Void> {
     protected Void doInBackground(Void... params) {
         try {
             BlockedNumberContract.SystemContract.notifyEmergencyContact(mContext);
+            // Blocking is suspended from now on, drop verdicts read before
+            BlockChecker.invalidateCache();
         } catch (Exception e) {
             Rlog.e(TAG, "Exception notifying emergency contact: " + e);
         }
@@ -1,8 +1,21 @@
 package com.android.internal.telephony;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.os.SystemClock;
 import android.provider.BlockedNumberContract;
+import android.telephony.PhoneNumberUtils;
 import android.telephony.Rlog;
+import android.text.TextUtils;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * {@hide} Checks for blocked phone numbers against {@link BlockedNumberContract}
@@ -11,6 +24,76 @@ public class BlockChecker {
     private static final String TAG = "BlockChecker";
     private static final boolean VDBG = false; // STOPSHIP if true.
 
+    /** Maximum number of numbers whose verdict is remembered. */
+    @VisibleForTesting
+    static final int MAX_CACHED_VERDICTS = 64;
+
+    /**
+     * How long a verdict is remembered. Bounds how long a change that is neither notified on
+     * {@link BlockedNumberContract.BlockedNumbers#CONTENT_URI} nor broadcast can go unnoticed.
+     */
+    @VisibleForTesting
+    static final long VERDICT_TTL_MS = 30 * 1000;
+
+    private static final Object sLock = new Object();
+
+    /**
+     * The context sObserver and sSuppressionReceiver are registered with, or null until the
+     * first lookup.
+     */
+    private static Context sContext;
+
+    /** Cached verdicts keyed by normalized number, least recently used first. */
+    private static final LinkedHashMap<String, Verdict> sVerdicts =
+            new LinkedHashMap<String, Verdict>(16, 0.75f, true /* accessOrder */) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Verdict> eldest) {
+                    return size() > MAX_CACHED_VERDICTS;
+                }
+            };
+
+    private static final ContentObserver sObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            if (VDBG) Rlog.d(TAG, "Blocked numbers changed");
+            invalidateCache();
+        }
+    };
+
+    /**
+     * Block suppression after an emergency contact starts and ends without a change to the
+     * blocked numbers, so it is listened for separately.
+     */
+    private static final BroadcastReceiver sSuppressionReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (VDBG) Rlog.d(TAG, "Block suppression state changed");
+            invalidateCache();
+        }
+    };
+
+    /**
+     * Incremented by {@link #invalidateCache}, so that a lookup racing a change does not cache
+     * the verdict it read before the change. Guarded by sLock.
+     */
+    private static long sGeneration;
+
+    // Statistics, guarded by sLock
+    private static int sCacheHits;
+    private static int sCacheMisses;
+    private static long sLookupMillisTotal;
+    private static long sLookupMillisMax;
+
+    private static final class Verdict {
+        final boolean mIsBlocked;
+        final long mTimestamp;
+
+        Verdict(boolean isBlocked, long timestamp) {
+            mIsBlocked = isBlocked;
+            mTimestamp = timestamp;
+        }
+    }
+
     /**
      * Returns {@code true} if {@code phoneNumber} is blocked.
      * <p>
@@ -18,7 +101,22 @@ public class BlockChecker {
      * exception.
      */
     public static boolean isBlocked(Context context, String phoneNumber) {
+        String key = TextUtils.isEmpty(phoneNumber)
+                ? null : PhoneNumberUtils.normalizeNumber(phoneNumber);
+        if (!TextUtils.isEmpty(key)) {
+            Boolean cached = getCachedVerdict(context, key);
+            if (cached != null) {
+                if (VDBG) Rlog.d(TAG, "Cached verdict for " + phoneNumber + ": " + cached);
+                return cached;
+            }
+        }
+
+        long generation;
+        synchronized (sLock) {
+            generation = sGeneration;
+        }
         boolean isBlocked = false;
+        boolean lookupSucceeded = false;
         long startTimeNano = System.nanoTime();
 
         try {
@@ -27,6 +125,7 @@ public class BlockChecker {
                 Rlog.d(TAG, phoneNumber + " is blocked.");
                 isBlocked = true;
             }
+            lookupSucceeded = true;
         } catch (Exception e) {
             Rlog.e(TAG, "Exception checking for blocked number: " + e);
         }
@@ -35,6 +134,97 @@ public class BlockChecker {
         if (durationMillis > 500 || VDBG) {
             Rlog.d(TAG, "Blocked number lookup took: " + durationMillis + " ms.");
         }
+
+        synchronized (sLock) {
+            sCacheMisses++;
+            sLookupMillisTotal += durationMillis;
+            if (durationMillis > sLookupMillisMax) sLookupMillisMax = durationMillis;
+            // Do not remember failures, the next message should try again, nor verdicts that may
+            // predate a change made during the lookup
+            if (lookupSucceeded && !TextUtils.isEmpty(key) && generation == sGeneration) {
+                sVerdicts.put(key, new Verdict(isBlocked, SystemClock.elapsedRealtime()));
+            }
+        }
         return isBlocked;
     }
+
+    /**
+     * @return the cached verdict for the normalized number, or null if there is none or it
+     * expired
+     */
+    private static Boolean getCachedVerdict(Context context, String key) {
+        synchronized (sLock) {
+            if (sContext == null) {
+                // First lookup: listen for the changes that invalidate the verdicts
+                sContext = context;
+                try {
+                    sContext.getContentResolver().registerContentObserver(
+                            BlockedNumberContract.BlockedNumbers.CONTENT_URI, true, sObserver);
+                    sContext.registerReceiver(sSuppressionReceiver, new IntentFilter(
+                            BlockedNumberContract.SystemContract
+                                    .ACTION_BLOCK_SUPPRESSION_STATE_CHANGED));
+                } catch (Exception e) {
+                    // Without change notifications only the TTL bounds staleness
+                    Rlog.e(TAG, "Exception registering for blocked number changes: " + e);
+                }
+                return null;
+            }
+
+            Verdict verdict = sVerdicts.get(key);
+            if (verdict == null) {
+                return null;
+            }
+            if (SystemClock.elapsedRealtime() - verdict.mTimestamp > VERDICT_TTL_MS) {
+                sVerdicts.remove(key);
+                return null;
+            }
+            sCacheHits++;
+            return verdict.mIsBlocked;
+        }
+    }
+
+    /**
+     * Forget all cached verdicts. Called when the blocked numbers or the block suppression state
+     * change, and when emergency services are contacted since that suspends blocking.
+     */
+    public static void invalidateCache() {
+        synchronized (sLock) {
+            sVerdicts.clear();
+            sGeneration++;
+        }
+    }
+
+    /**
+     * Forget the cached verdicts, statistics and the context registered with, so that the next
+     * lookup starts over with a new context.
+     */
+    @VisibleForTesting
+    public static void resetForTest() {
+        synchronized (sLock) {
+            if (sContext != null) {
+                sContext.getContentResolver().unregisterContentObserver(sObserver);
+                try {
+                    sContext.unregisterReceiver(sSuppressionReceiver);
+                } catch (IllegalArgumentException e) {
+                    // The receiver failed to register
+                }
+                sContext = null;
+            }
+            sVerdicts.clear();
+            sCacheHits = 0;
+            sCacheMisses = 0;
+            sLookupMillisTotal = 0;
+            sLookupMillisMax = 0;
+        }
+    }
+
+    public static void dump(PrintWriter pw) {
+        synchronized (sLock) {
+            pw.println("cachedVerdicts=" + sVerdicts.size());
+            pw.println("cacheHits=" + sCacheHits + " cacheMisses=" + sCacheMisses);
+            pw.println("lookupMillisAvg="
+                    + (sCacheMisses == 0 ? 0 : sLookupMillisTotal / sCacheMisses)
+                    + " lookupMillisMax=" + sLookupMillisMax);
+        }
+    }
 }
@@ -24,6 +24,7 @@ import android.os.Handler;
 import android.os.Message;
 import android.os.RegistrantList;
 import android.os.Registrant;
+import android.os.SystemClock;
 import android.telecom.VideoProfile;
 import android.telephony.PhoneNumberUtils;
 import android.telephony.TelephonyManager;
@@ -31,10 +32,15 @@ import android.telephony.PhoneStateListener;
 import android.telephony.ServiceState;
 import android.telephony.Rlog;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 
@@ -86,6 +92,7 @@ public class CallManager {
     //private static final int EVENT_RADIO_OFF_OR_NOT_AVAILABLE = 121;
     private static final int EVENT_TTY_MODE_RECEIVED = 122;
     private static final int EVENT_SUPP_SERVICE_NOTIFY = 123;
+    private static final int EVENT_DISPATCH_PRECISE_CALL_STATE = 124;
 
     // Singleton instance
     private static final CallManager INSTANCE = new CallManager();
@@ -117,6 +124,37 @@ public class CallManager {
 
     private Object mRegistrantidentifier = new Object();
 
+    // Post latency of the events relayed to our registrants, keyed by the class name of their
+    // handler, then indexed by event - EVENT_DISCONNECT
+    private final ConcurrentHashMap<String, PostLatencyStats[]> mPostLatencyStats =
+            new ConcurrentHashMap<String, PostLatencyStats[]>();
+
+    // Number of precise call state changes folded into a later notification
+    private final AtomicInteger mPreciseCallStateCoalesced = new AtomicInteger();
+
+    /**
+     * Time between a phone posting an event to us and us posting it to our registrants. This
+     * is the time the event waited in our queue, not the time until the registrants handled it.
+     * Guarded by itself, as phones may run their handlers on different threads.
+     */
+    private static final class PostLatencyStats {
+        int mCount;
+        long mTotalMs;
+        long mMaxMs;
+
+        synchronized void record(long latencyMs) {
+            mCount++;
+            mTotalMs += latencyMs;
+            if (latencyMs > mMaxMs) mMaxMs = latencyMs;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "count=" + mCount + " avgMs=" + (mCount == 0 ? 0 : mTotalMs / mCount)
+                    + " maxMs=" + mMaxMs;
+        }
+    }
+
     // state registrants
     protected final RegistrantList mPreciseCallStateRegistrants
     = new RegistrantList();
@@ -2275,20 +2313,49 @@ public class CallManager {
     }
     */
 
+    /**
+     * Relays the events of one phone to our registrants.
+     *
+     * Ringing and disconnect events, and all other events, are relayed as soon as they are
+     * received. Precise call state changes only tell listeners to re-read the call state, so
+     * the changes received within one turn of the looper are folded into a single
+     * notification, sent once the events already queued have been relayed.
+     */
     private class CallManagerHandler extends Handler {
+        // Latest precise call state change not relayed yet, or null
+        private AsyncResult mPendingPreciseCallState;
+
+        // Time the oldest change folded into mPendingPreciseCallState was sent by the phone
+        private long mPendingPreciseCallStateWhen;
+
         @Override
         public void handleMessage(Message msg) {
 
             switch (msg.what) {
                 case EVENT_DISCONNECT:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_DISCONNECT)");
-                    mDisconnectRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mDisconnectRegistrants, msg);
                     // FIXME Taken from klp-sprout-dev but setAudioMode was removed in L.
                     //mIsEccDialing = false;
                     break;
                 case EVENT_PRECISE_CALL_STATE_CHANGED:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_PRECISE_CALL_STATE_CHANGED)");
-                    mPreciseCallStateRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    if (mPendingPreciseCallState == null) {
+                        mPendingPreciseCallStateWhen = msg.getWhen();
+                        sendEmptyMessage(EVENT_DISPATCH_PRECISE_CALL_STATE);
+                    } else {
+                        mPreciseCallStateCoalesced.incrementAndGet();
+                    }
+                    mPendingPreciseCallState = (AsyncResult) msg.obj;
+                    break;
+                case EVENT_DISPATCH_PRECISE_CALL_STATE:
+                    if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_DISPATCH_PRECISE_CALL_STATE)");
+                    AsyncResult ar = mPendingPreciseCallState;
+                    mPendingPreciseCallState = null;
+                    if (ar != null) {
+                        notifyRegistrants(mPreciseCallStateRegistrants, ar,
+                                EVENT_PRECISE_CALL_STATE_CHANGED, mPendingPreciseCallStateWhen);
+                    }
                     break;
                 case EVENT_NEW_RINGING_CONNECTION:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_NEW_RINGING_CONNECTION)");
@@ -2303,79 +2370,79 @@ public class CallManager {
                             Rlog.w(LOG_TAG, "new ringing connection", e);
                         }
                     } else {
-                        mNewRingingConnectionRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                        notifyRegistrants(mNewRingingConnectionRegistrants, msg);
                     }
                     break;
                 case EVENT_UNKNOWN_CONNECTION:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_UNKNOWN_CONNECTION)");
-                    mUnknownConnectionRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mUnknownConnectionRegistrants, msg);
                     break;
                 case EVENT_INCOMING_RING:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_INCOMING_RING)");
                     // The event may come from RIL who's not aware of an ongoing fg call
                     if (!hasActiveFgCall()) {
-                        mIncomingRingRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                        notifyRegistrants(mIncomingRingRegistrants, msg);
                     }
                     break;
                 case EVENT_RINGBACK_TONE:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_RINGBACK_TONE)");
-                    mRingbackToneRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mRingbackToneRegistrants, msg);
                     break;
                 case EVENT_IN_CALL_VOICE_PRIVACY_ON:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_IN_CALL_VOICE_PRIVACY_ON)");
-                    mInCallVoicePrivacyOnRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mInCallVoicePrivacyOnRegistrants, msg);
                     break;
                 case EVENT_IN_CALL_VOICE_PRIVACY_OFF:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_IN_CALL_VOICE_PRIVACY_OFF)");
-                    mInCallVoicePrivacyOffRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mInCallVoicePrivacyOffRegistrants, msg);
                     break;
                 case EVENT_CALL_WAITING:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_CALL_WAITING)");
-                    mCallWaitingRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mCallWaitingRegistrants, msg);
                     break;
                 case EVENT_DISPLAY_INFO:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_DISPLAY_INFO)");
-                    mDisplayInfoRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mDisplayInfoRegistrants, msg);
                     break;
                 case EVENT_SIGNAL_INFO:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_SIGNAL_INFO)");
-                    mSignalInfoRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mSignalInfoRegistrants, msg);
                     break;
                 case EVENT_CDMA_OTA_STATUS_CHANGE:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_CDMA_OTA_STATUS_CHANGE)");
-                    mCdmaOtaStatusChangeRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mCdmaOtaStatusChangeRegistrants, msg);
                     break;
                 case EVENT_RESEND_INCALL_MUTE:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_RESEND_INCALL_MUTE)");
-                    mResendIncallMuteRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mResendIncallMuteRegistrants, msg);
                     break;
                 case EVENT_MMI_INITIATE:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_MMI_INITIATE)");
-                    mMmiInitiateRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mMmiInitiateRegistrants, msg);
                     break;
                 case EVENT_MMI_COMPLETE:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_MMI_COMPLETE)");
-                    mMmiCompleteRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mMmiCompleteRegistrants, msg);
                     break;
                 case EVENT_ECM_TIMER_RESET:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_ECM_TIMER_RESET)");
-                    mEcmTimerResetRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mEcmTimerResetRegistrants, msg);
                     break;
                 case EVENT_SUBSCRIPTION_INFO_READY:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_SUBSCRIPTION_INFO_READY)");
-                    mSubscriptionInfoReadyRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mSubscriptionInfoReadyRegistrants, msg);
                     break;
                 case EVENT_SUPP_SERVICE_NOTIFY:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_SUPP_SERVICE_NOTIFY)");
-                    mSuppServiceNotifyRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mSuppServiceNotifyRegistrants, msg);
                     break;
                 case EVENT_SUPP_SERVICE_FAILED:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_SUPP_SERVICE_FAILED)");
-                    mSuppServiceFailedRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mSuppServiceFailedRegistrants, msg);
                     break;
                 case EVENT_SERVICE_STATE_CHANGED:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_SERVICE_STATE_CHANGED)");
-                    mServiceStateChangedRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mServiceStateChangedRegistrants, msg);
                     // FIXME Taken from klp-sprout-dev but setAudioMode was removed in L.
                     //setAudioMode();
                     break;
@@ -2393,11 +2460,11 @@ public class CallManager {
                     break;
                 case EVENT_ONHOLD_TONE:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_ONHOLD_TONE)");
-                    mOnHoldToneRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mOnHoldToneRegistrants, msg);
                     break;
                 case EVENT_TTY_MODE_RECEIVED:
                     if (VDBG) Rlog.d(LOG_TAG, " handleMessage (EVENT_TTY_MODE_RECEIVED)");
-                    mTtyModeReceivedRegistrants.notifyRegistrants((AsyncResult) msg.obj);
+                    notifyRegistrants(mTtyModeReceivedRegistrants, msg);
                     break;
                 /* FIXME Taken from klp-sprout-dev but setAudioMode was removed in L.
                 case EVENT_RADIO_OFF_OR_NOT_AVAILABLE:
@@ -2409,6 +2476,98 @@ public class CallManager {
         }
     };
 
+    /**
+     * Relay the event in msg to the registrants in list.
+     */
+    private void notifyRegistrants(RegistrantList list, Message msg) {
+        notifyRegistrants(list, (AsyncResult) msg.obj, msg.what, msg.getWhen());
+    }
+
+    /**
+     * Relay ar to the registrants in list, recording for each of them the time since the phone
+     * posted event at uptime when.
+     */
+    private void notifyRegistrants(RegistrantList list, AsyncResult ar, int event, long when) {
+        // RegistrantList methods synchronize on the list, so it cannot change while we post
+        synchronized (list) {
+            for (int i = 0, size = list.size(); i < size; i++) {
+                Registrant r = (Registrant) list.get(i);
+                Handler h = r.getHandler();
+                r.notifyRegistrant(ar);
+                if (h != null) {
+                    getPostLatencyStats(h.getClass().getName())[event - EVENT_DISCONNECT]
+                            .record(SystemClock.uptimeMillis() - when);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the post latency of each event relayed to registrants with this handler class
+     */
+    private PostLatencyStats[] getPostLatencyStats(String handlerClassName) {
+        PostLatencyStats[] stats = mPostLatencyStats.get(handlerClassName);
+        if (stats == null) {
+            stats = new PostLatencyStats[EVENT_SUPP_SERVICE_NOTIFY - EVENT_DISCONNECT + 1];
+            for (int i = 0; i < stats.length; i++) {
+                stats[i] = new PostLatencyStats();
+            }
+            PostLatencyStats[] existing = mPostLatencyStats.putIfAbsent(handlerClassName, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    private static String eventToString(int event) {
+        switch (event) {
+            case EVENT_DISCONNECT: return "DISCONNECT";
+            case EVENT_PRECISE_CALL_STATE_CHANGED: return "PRECISE_CALL_STATE_CHANGED";
+            case EVENT_NEW_RINGING_CONNECTION: return "NEW_RINGING_CONNECTION";
+            case EVENT_UNKNOWN_CONNECTION: return "UNKNOWN_CONNECTION";
+            case EVENT_INCOMING_RING: return "INCOMING_RING";
+            case EVENT_RINGBACK_TONE: return "RINGBACK_TONE";
+            case EVENT_IN_CALL_VOICE_PRIVACY_ON: return "IN_CALL_VOICE_PRIVACY_ON";
+            case EVENT_IN_CALL_VOICE_PRIVACY_OFF: return "IN_CALL_VOICE_PRIVACY_OFF";
+            case EVENT_CALL_WAITING: return "CALL_WAITING";
+            case EVENT_DISPLAY_INFO: return "DISPLAY_INFO";
+            case EVENT_SIGNAL_INFO: return "SIGNAL_INFO";
+            case EVENT_CDMA_OTA_STATUS_CHANGE: return "CDMA_OTA_STATUS_CHANGE";
+            case EVENT_RESEND_INCALL_MUTE: return "RESEND_INCALL_MUTE";
+            case EVENT_MMI_INITIATE: return "MMI_INITIATE";
+            case EVENT_MMI_COMPLETE: return "MMI_COMPLETE";
+            case EVENT_ECM_TIMER_RESET: return "ECM_TIMER_RESET";
+            case EVENT_SUBSCRIPTION_INFO_READY: return "SUBSCRIPTION_INFO_READY";
+            case EVENT_SUPP_SERVICE_FAILED: return "SUPP_SERVICE_FAILED";
+            case EVENT_SERVICE_STATE_CHANGED: return "SERVICE_STATE_CHANGED";
+            case EVENT_POST_DIAL_CHARACTER: return "POST_DIAL_CHARACTER";
+            case EVENT_ONHOLD_TONE: return "ONHOLD_TONE";
+            case EVENT_TTY_MODE_RECEIVED: return "TTY_MODE_RECEIVED";
+            case EVENT_SUPP_SERVICE_NOTIFY: return "SUPP_SERVICE_NOTIFY";
+            default: return "<unknown event " + event + ">";
+        }
+    }
+
+    public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println(" mPhones.size()=" + mPhones.size());
+        pw.println(" getState()=" + getState());
+        pw.println(" mPreciseCallStateCoalesced=" + mPreciseCallStateCoalesced.get());
+        pw.println(" post latency per registrant:");
+        for (Map.Entry<String, PostLatencyStats[]> entry : mPostLatencyStats.entrySet()) {
+            pw.println("  " + entry.getKey() + ":");
+            PostLatencyStats[] stats = entry.getValue();
+            for (int i = 0; i < stats.length; i++) {
+                synchronized (stats[i]) {
+                    if (stats[i].mCount > 0) {
+                        pw.println("   " + eventToString(EVENT_DISCONNECT + i) + ": " + stats[i]);
+                    }
+                }
+            }
+        }
+        pw.flush();
+    }
+
     @Override
     public String toString() {
         Call call;
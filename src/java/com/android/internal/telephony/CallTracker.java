@@ -19,9 +19,12 @@ package com.android.internal.telephony;
 import android.os.AsyncResult;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.text.TextUtils;
 
+import com.android.internal.telephony.metrics.TelephonyMetrics;
+
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
@@ -38,9 +41,41 @@ public abstract class CallTracker extends Handler {
 
     static final int POLL_DELAY_MSEC = 250;
 
+    /**
+     * Window in which a burst of unsolicited call state changes is coalesced into a single
+     * getCurrentCalls(). It is added to the latency of ring and disconnect detection, so keep
+     * it short. See pollCallsOnCallStateChange() for the worst case.
+     */
+    static final int POLL_COALESCE_WINDOW_MSEC = 20;
+
+    /**
+     * A getCurrentCalls() in flight for longer than this is no longer waited for before
+     * issuing the next poll, in case its response was lost.
+     */
+    static final int POLL_IN_FLIGHT_TIMEOUT_MSEC = 5000;
+
+    /**
+     * How often the poll counters are reported to metrics while a call is in progress, so that
+     * they are not lost if the phone process dies before the call ends.
+     */
+    static final int POLL_STATS_REPORT_INTERVAL_MSEC = 60 * 1000;
+
     protected int mPendingOperations;
     protected boolean mNeedsPoll;
     protected Message mLastRelevantPoll;
+
+    // true if another poll was requested while mLastRelevantPoll was in flight
+    private boolean mRepollWhenPollCompletes;
+    // when mLastRelevantPoll was issued
+    private long mLastPollIssuedTimeMs;
+
+    // getCurrentCalls() issued and poll requests absorbed by coalescing, since boot
+    private int mPollsIssued;
+    private int mPollsSuppressed;
+    // counters already reported to metrics, see reportPollStats()
+    private int mPollsIssuedReported;
+    private int mPollsSuppressedReported;
+    private long mPollStatsReportedTimeMs;
     protected ArrayList<Connection> mHandoverConnections = new ArrayList<Connection>();
 
     public CommandsInterface mCi;
@@ -66,13 +101,80 @@ public abstract class CallTracker extends Handler {
     protected static final int EVENT_CALL_WAITING_INFO_CDMA        = 15;
     protected static final int EVENT_THREE_WAY_DIAL_L2_RESULT_CDMA = 16;
     protected static final int EVENT_THREE_WAY_DIAL_BLANK_FLASH    = 20;
+    protected static final int EVENT_COALESCED_CALL_STATE_CHANGE   = 30;
 
     protected void pollCallsWhenSafe() {
         mNeedsPoll = true;
 
         if (checkNoOperationsPending()) {
-            mLastRelevantPoll = obtainMessage(EVENT_POLL_CALLS_RESULT);
-            mCi.getCurrentCalls(mLastRelevantPoll);
+            if (isPollInFlight()) {
+                // Keep at most one getCurrentCalls() in flight; poll again once it completes.
+                if (DBG_POLL) log("pollCallsWhenSafe: poll in flight, deferring");
+                mRepollWhenPollCompletes = true;
+                mPollsSuppressed++;
+            } else {
+                issuePoll();
+            }
+        }
+    }
+
+    /**
+     * Poll in response to an unsolicited call state change. The first unsolicited in a burst
+     * schedules a poll POLL_COALESCE_WINDOW_MSEC later and the rest of the burst is absorbed
+     * by it. The poll is not pushed back by later unsolicited events. If a getCurrentCalls() is
+     * already in flight, it absorbs the burst instead: the next poll is issued as soon as its
+     * result arrives, without waiting for the window. So a ring or disconnect is detected at
+     * most the window, or the rest of the round trip in flight, plus one getCurrentCalls()
+     * round trip after the unsolicited. A poll in flight for longer than
+     * POLL_IN_FLIGHT_TIMEOUT_MSEC is not waited for.
+     */
+    protected void pollCallsOnCallStateChange() {
+        mNeedsPoll = true;
+
+        if (checkNoOperationsPending() && isPollInFlight()) {
+            if (DBG_POLL) log("pollCallsOnCallStateChange: poll in flight, deferring");
+            mRepollWhenPollCompletes = true;
+            mPollsSuppressed++;
+        } else if (hasMessages(EVENT_COALESCED_CALL_STATE_CHANGE)) {
+            if (DBG_POLL) log("pollCallsOnCallStateChange: coalesced");
+            mPollsSuppressed++;
+        } else {
+            sendEmptyMessageDelayed(EVENT_COALESCED_CALL_STATE_CHANGE,
+                    POLL_COALESCE_WINDOW_MSEC);
+        }
+    }
+
+    /**
+     * Issue getCurrentCalls(), making it the only relevant poll. Any earlier poll still in
+     * flight will be ignored when its result arrives.
+     */
+    protected void issuePoll() {
+        // This poll sees every change notified so far
+        removeMessages(EVENT_COALESCED_CALL_STATE_CHANGE);
+        mRepollWhenPollCompletes = false;
+        mPollsIssued++;
+        mLastPollIssuedTimeMs = SystemClock.elapsedRealtime();
+        mLastRelevantPoll = obtainMessage(EVENT_POLL_CALLS_RESULT);
+        mCi.getCurrentCalls(mLastRelevantPoll);
+    }
+
+    /**
+     * @return true if mLastRelevantPoll was issued and its result has not arrived yet, unless it
+     * timed out
+     */
+    private boolean isPollInFlight() {
+        return mLastRelevantPoll != null && SystemClock.elapsedRealtime()
+                - mLastPollIssuedTimeMs < POLL_IN_FLIGHT_TIMEOUT_MSEC;
+    }
+
+    /**
+     * Called after the result of mLastRelevantPoll has been handled. Issues the poll that was
+     * deferred while it was in flight, if any.
+     */
+    protected void onPollCompleted() {
+        if (mRepollWhenPollCompletes) {
+            mRepollWhenPollCompletes = false;
+            pollCallsWhenSafe();
         }
     }
 
@@ -139,9 +241,41 @@ public abstract class CallTracker extends Handler {
     obtainNoPollCompleteMessage(int what) {
         mPendingOperations++;
         mLastRelevantPoll = null;
+        mRepollWhenPollCompletes = false;
         return obtainMessage(what);
     }
 
+    /**
+     * Report the polls issued and suppressed since the last report to metrics.
+     *
+     * @param phoneId Phone id
+     */
+    protected void reportPollStats(int phoneId) {
+        int issued = mPollsIssued - mPollsIssuedReported;
+        int suppressed = mPollsSuppressed - mPollsSuppressedReported;
+        mPollStatsReportedTimeMs = SystemClock.elapsedRealtime();
+        if (issued == 0 && suppressed == 0) {
+            return;
+        }
+        mPollsIssuedReported = mPollsIssued;
+        mPollsSuppressedReported = mPollsSuppressed;
+        TelephonyMetrics.getInstance().writeCallPollStats(phoneId, issued, suppressed);
+    }
+
+    /**
+     * Report the poll counters to metrics if they were last reported more than
+     * POLL_STATS_REPORT_INTERVAL_MSEC ago. Called after each poll, so that the counters of a long
+     * call are reported before it ends.
+     *
+     * @param phoneId Phone id
+     */
+    protected void reportPollStatsIfDue(int phoneId) {
+        if (SystemClock.elapsedRealtime() - mPollStatsReportedTimeMs
+                >= POLL_STATS_REPORT_INTERVAL_MSEC) {
+            reportPollStats(phoneId);
+        }
+    }
+
     /**
      * @return true if we're idle or there's a call to getCurrentCalls() pending
      * but nothing else
@@ -295,5 +429,8 @@ public abstract class CallTracker extends Handler {
         pw.println(" mPendingOperations=" + mPendingOperations);
         pw.println(" mNeedsPoll=" + mNeedsPoll);
         pw.println(" mLastRelevantPoll=" + mLastRelevantPoll);
+        pw.println(" mRepollWhenPollCompletes=" + mRepollWhenPollCompletes);
+        pw.println(" mPollsIssued=" + mPollsIssued);
+        pw.println(" mPollsSuppressed=" + mPollsSuppressed);
     }
 }
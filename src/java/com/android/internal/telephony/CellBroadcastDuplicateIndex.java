@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import android.telephony.SmsCbEtwsInfo;
+import android.telephony.SmsCbLocation;
+import android.telephony.SmsCbMessage;
+import android.text.TextUtils;
+
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Remembers recently dispatched cell broadcasts, so that the periodic repetitions the network
+ * sends of the same message are not broadcast to receivers again.
+ *
+ * <p>Per 3GPP TS 23.041 section 8.2, a message is a repetition if it has the same message
+ * identifier and serial number (which includes the geographical scope and update number) as an
+ * earlier message, and was received in the same cell, location area or PLMN as that message,
+ * depending on its geographical scope. The location of an {@link SmsCbMessage} only holds the
+ * parts of the location its scope covers, so messages match on the whole location. An ETWS
+ * primary notification and the message that follows it share their identifiers, so they are
+ * told apart.
+ */
+final class CellBroadcastDuplicateIndex {
+    /** Maximum number of messages remembered at once. */
+    static final int MAX_MESSAGES = 128;
+
+    /** Time after which a repeated message is dispatched again. */
+    static final long EXPIRY_MS = 24 * 60 * 60 * 1000L;
+
+    private final int mMaxMessages;
+    private final long mExpiryMs;
+
+    /** Dispatched messages, oldest first. */
+    private final LinkedHashMap<MessageKey, Dispatched> mMessages =
+            new LinkedHashMap<MessageKey, Dispatched>();
+
+    private int mSuppressedCount;
+
+    private static final class Dispatched {
+        final long mTime;
+        int mRepeats;
+
+        Dispatched(long time) {
+            mTime = time;
+        }
+    }
+
+    CellBroadcastDuplicateIndex() {
+        this(MAX_MESSAGES, EXPIRY_MS);
+    }
+
+    CellBroadcastDuplicateIndex(int maxMessages, long expiryMs) {
+        mMaxMessages = maxMessages;
+        mExpiryMs = expiryMs;
+    }
+
+    /**
+     * Record a received message.
+     *
+     * @param message the message
+     * @param now the current time in milliseconds since boot
+     * @return the number of times the message had already been received, 0 if it is new
+     */
+    int addMessage(SmsCbMessage message, long now) {
+        Iterator<Dispatched> iter = mMessages.values().iterator();
+        while (iter.hasNext() && now - iter.next().mTime >= mExpiryMs) {
+            iter.remove();
+        }
+
+        MessageKey key = new MessageKey(message);
+        Dispatched dispatched = mMessages.get(key);
+        if (dispatched != null) {
+            mSuppressedCount++;
+            return ++dispatched.mRepeats;
+        }
+
+        if (mMessages.size() >= mMaxMessages) {
+            iter = mMessages.values().iterator();
+            iter.next();
+            iter.remove();
+        }
+        mMessages.put(key, new Dispatched(now));
+        return 0;
+    }
+
+    /**
+     * @return the number of repeated messages received so far
+     */
+    int getSuppressedCount() {
+        return mSuppressedCount;
+    }
+
+    void dump(PrintWriter pw) {
+        pw.println(" mDuplicateIndex: messages=" + mMessages.size()
+                + " suppressed=" + mSuppressedCount);
+    }
+
+    /**
+     * Fields that identify a cell broadcast message.
+     */
+    private static final class MessageKey {
+        private final int mMessageFormat;
+        private final int mServiceCategory;
+        private final int mSerialNumber;
+        private final String mPlmn;
+        private final int mLac;
+        private final int mCid;
+        private final boolean mEtwsPrimary;
+
+        MessageKey(SmsCbMessage message) {
+            mMessageFormat = message.getMessageFormat();
+            mServiceCategory = message.getServiceCategory();
+            mSerialNumber = message.getSerialNumber();
+            SmsCbLocation location = message.getLocation();
+            mPlmn = location.getPlmn();
+            mLac = location.getLac();
+            mCid = location.getCid();
+            SmsCbEtwsInfo etwsInfo = message.getEtwsWarningInfo();
+            mEtwsPrimary = etwsInfo != null && etwsInfo.isPrimary();
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = (mMessageFormat * 31 + mServiceCategory) * 31 + mSerialNumber;
+            hash = (hash * 31 + mLac) * 31 + mCid;
+            return hash * 2 + (mEtwsPrimary ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof MessageKey) {
+                MessageKey other = (MessageKey) obj;
+                return mMessageFormat == other.mMessageFormat
+                        && mServiceCategory == other.mServiceCategory
+                        && mSerialNumber == other.mSerialNumber
+                        && mEtwsPrimary == other.mEtwsPrimary
+                        && mLac == other.mLac
+                        && mCid == other.mCid
+                        && TextUtils.equals(mPlmn, other.mPlmn);
+            }
+            return false;
+        }
+    }
+}
@@ -22,17 +22,26 @@ import android.app.AppOpsManager;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Message;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.provider.Telephony;
 import android.telephony.SubscriptionManager;
 import android.telephony.SmsCbMessage;
 
+import com.android.internal.telephony.metrics.TelephonyMetrics;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 /**
  * Dispatch new Cell Broadcasts to receivers. Acquires a private wakelock until the broadcast
  * completes and our result receiver is called.
  */
 public class CellBroadcastHandler extends WakeLockStateMachine {
 
+    /** Messages already dispatched, to drop repetitions from the network. */
+    private final CellBroadcastDuplicateIndex mDuplicateIndex = new CellBroadcastDuplicateIndex();
+
     private CellBroadcastHandler(Context context, Phone phone) {
         this("CellBroadcastHandler", context, phone);
     }
@@ -62,8 +71,7 @@ public class CellBroadcastHandler extends WakeLockStateMachine {
     @Override
     protected boolean handleSmsMessage(Message message) {
         if (message.obj instanceof SmsCbMessage) {
-            handleBroadcastSms((SmsCbMessage) message.obj);
-            return true;
+            return handleBroadcastSms((SmsCbMessage) message.obj);
         } else {
             loge("handleMessage got object of type: " + message.obj.getClass().getName());
             return false;
@@ -71,10 +79,23 @@ public class CellBroadcastHandler extends WakeLockStateMachine {
     }
 
     /**
-     * Dispatch a Cell Broadcast message to listeners.
+     * Dispatch a Cell Broadcast message to listeners, unless it repeats a message that was
+     * already dispatched.
      * @param message the Cell Broadcast to broadcast
+     * @return true if an ordered broadcast was sent; false if the message was a repetition
      */
-    protected void handleBroadcastSms(SmsCbMessage message) {
+    protected boolean handleBroadcastSms(SmsCbMessage message) {
+        int repeats = mDuplicateIndex.addMessage(message, SystemClock.elapsedRealtime());
+        if (repeats > 0) {
+            log("Dropping repeated SMS CB, category " + message.getServiceCategory()
+                    + " serial " + message.getSerialNumber() + " repeats " + repeats);
+            if (repeats == 1) {
+                TelephonyMetrics.getInstance().writeCellBroadcastDuplicate(mPhone.getPhoneId(),
+                        message.getServiceCategory(), message.getSerialNumber());
+            }
+            return false;
+        }
+
         String receiverPermission;
         int appOp;
 
@@ -94,5 +115,12 @@ public class CellBroadcastHandler extends WakeLockStateMachine {
         SubscriptionManager.putPhoneIdAndSubIdExtra(intent, mPhone.getPhoneId());
         mContext.sendOrderedBroadcastAsUser(intent, UserHandle.ALL, receiverPermission, appOp,
                 mReceiver, getHandler(), Activity.RESULT_OK, null, null);
+        return true;
+    }
+
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        super.dump(fd, pw, args);
+        mDuplicateIndex.dump(pw);
     }
 }
@@ -93,6 +93,8 @@ public abstract class Connection {
                 android.telecom.Connection.VideoProvider videoProvider);
         public void onAudioQualityChanged(int audioQuality);
         public void onConferenceParticipantsChanged(List<ConferenceParticipant> participants);
+        public void onConferenceParticipantsDelta(List<ConferenceParticipant> added,
+                List<ConferenceParticipant> updated, List<ConferenceParticipant> removed);
         public void onCallSubstateChanged(int callSubstate);
         public void onMultipartyStateChanged(boolean isMultiParty);
         public void onConferenceMergedFailed();
@@ -121,6 +123,9 @@ public abstract class Connection {
         @Override
         public void onConferenceParticipantsChanged(List<ConferenceParticipant> participants) {}
         @Override
+        public void onConferenceParticipantsDelta(List<ConferenceParticipant> added,
+                List<ConferenceParticipant> updated, List<ConferenceParticipant> removed) {}
+        @Override
         public void onCallSubstateChanged(int callSubstate) {}
         @Override
         public void onMultipartyStateChanged(boolean isMultiParty) {}
@@ -908,6 +913,21 @@ public abstract class Connection {
         }
     }
 
+    /**
+     * Notifies listeners of the conference participants which joined, changed or left since the
+     * last update.
+     *
+     * @param added The participants which joined.
+     * @param updated The participants whose details or state changed.
+     * @param removed The participants which are no longer reported.
+     */
+    public void updateConferenceParticipantsDelta(List<ConferenceParticipant> added,
+            List<ConferenceParticipant> updated, List<ConferenceParticipant> removed) {
+        for (Listener l : mListeners) {
+            l.onConferenceParticipantsDelta(added, updated, removed);
+        }
+    }
+
     /**
      * Notifies listeners of a change to the multiparty state of the connection.
      *
@@ -17,6 +17,7 @@
 package com.android.internal.telephony;
 
 import android.telephony.Rlog;
+import android.text.TextUtils;
 import java.lang.Comparable;
 import android.telephony.PhoneNumberUtils;
 
@@ -101,6 +102,50 @@ public class DriverCall implements Comparable<DriverCall> {
     DriverCall() {
     }
 
+    /**
+     * Copy every field of another DriverCall into this one. Used to keep a reusable
+     * snapshot of the last polled state of a call without allocating a new DriverCall.
+     */
+    public void
+    copyFrom(DriverCall dc) {
+        index = dc.index;
+        isMT = dc.isMT;
+        state = dc.state;
+        isMpty = dc.isMpty;
+        number = dc.number;
+        TOA = dc.TOA;
+        isVoice = dc.isVoice;
+        isVoicePrivacy = dc.isVoicePrivacy;
+        als = dc.als;
+        numberPresentation = dc.numberPresentation;
+        name = dc.name;
+        namePresentation = dc.namePresentation;
+        uusInfo = dc.uusInfo;
+    }
+
+    /**
+     * Field-level comparison with another DriverCall.
+     *
+     * @return true if every field reported by the RIL is identical, meaning the call
+     * state has not changed between the two polls
+     */
+    public boolean
+    isSameAs(DriverCall dc) {
+        return index == dc.index
+                && isMT == dc.isMT
+                && state == dc.state
+                && isMpty == dc.isMpty
+                && TOA == dc.TOA
+                && isVoice == dc.isVoice
+                && isVoicePrivacy == dc.isVoicePrivacy
+                && als == dc.als
+                && numberPresentation == dc.numberPresentation
+                && namePresentation == dc.namePresentation
+                && uusInfo == dc.uusInfo
+                && TextUtils.equals(number, dc.number)
+                && TextUtils.equals(name, dc.name);
+    }
+
     @Override
     public String
     toString() {
@@ -39,6 +39,7 @@ import java.util.Iterator;
 import android.telephony.Rlog;
 import android.util.EventLog;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telephony.cdma.CdmaCallWaitingNotification;
 import com.android.internal.telephony.metrics.TelephonyMetrics;
 
@@ -57,6 +58,39 @@ public class GsmCdmaCallTracker extends CallTracker {
     private static final boolean DBG_POLL = false;
     private static final boolean VDBG = false;
 
+    /**
+     * Snapshot of the DriverCall last applied to one mConnections slot, along with the state
+     * the connection was left in. If the next poll reports an identical DriverCall for the same
+     * connection, and the connection has not been changed locally in the meantime, updating it
+     * again would be a no-op and can be skipped. The DriverCall is reused across polls.
+     */
+    private static class PolledSlot {
+        final DriverCall mDriverCall = new DriverCall();
+        GsmCdmaConnection mConnection;
+        GsmCdmaCall mCall;
+        GsmCdmaCall.State mState;
+
+        boolean isUnchanged(GsmCdmaConnection conn, DriverCall dc) {
+            return mConnection == conn
+                    && mCall == conn.getCall()
+                    && mState == conn.getState()
+                    && mDriverCall.isSameAs(dc);
+        }
+
+        void record(GsmCdmaConnection conn, DriverCall dc) {
+            mConnection = conn;
+            mCall = conn.getCall();
+            mState = conn.getState();
+            mDriverCall.copyFrom(dc);
+        }
+
+        void clear() {
+            mConnection = null;
+            mCall = null;
+            mState = null;
+        }
+    }
+
     //***** Constants
 
     public static final int MAX_CONNECTIONS_GSM = 19;   //7 allowed in GSM + 12 from IMS for SRVCC
@@ -74,6 +108,16 @@ public class GsmCdmaCallTracker extends CallTracker {
     private ArrayList<GsmCdmaConnection> mDroppedDuringPoll =
             new ArrayList<GsmCdmaConnection>(MAX_CONNECTIONS_GSM);
 
+    // what was applied to each mConnections slot by the last poll, see PolledSlot
+    private PolledSlot mPolledSlots[];
+
+    // number of connection slots whose update was skipped because nothing changed
+    @VisibleForTesting
+    int mPollSlotsUnchanged;
+    // number of connection slots updated from a poll
+    @VisibleForTesting
+    int mPollSlotsUpdated;
+
     public GsmCdmaCall mRingingCall = new GsmCdmaCall(this);
     // A call that is ringing or (call) waiting
     public GsmCdmaCall mForegroundCall = new GsmCdmaCall(this);
@@ -163,9 +207,11 @@ public class GsmCdmaCallTracker extends CallTracker {
         }
         if (mPhone.isPhoneTypeGsm()) {
             mConnections = new GsmCdmaConnection[MAX_CONNECTIONS_GSM];
+            mPolledSlots = newPolledSlots(MAX_CONNECTIONS_GSM);
             mCi.unregisterForCallWaitingInfo(this);
         } else {
             mConnections = new GsmCdmaConnection[MAX_CONNECTIONS_CDMA];
+            mPolledSlots = newPolledSlots(MAX_CONNECTIONS_CDMA);
             mPendingCallInEcm = false;
             mIsInEmergencyCall = false;
             mPendingCallClirMode = CommandsInterface.CLIR_DEFAULT;
@@ -175,6 +221,14 @@ public class GsmCdmaCallTracker extends CallTracker {
         }
     }
 
+    private static PolledSlot[] newPolledSlots(int size) {
+        PolledSlot[] slots = new PolledSlot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new PolledSlot();
+        }
+        return slots;
+    }
+
     private void reset() {
         Rlog.d(LOG_TAG, "reset");
 
@@ -191,6 +245,7 @@ public class GsmCdmaCallTracker extends CallTracker {
         }
 
         mConnections = null;
+        mPolledSlots = null;
         mPendingMO = null;
         mState = PhoneConstants.State.IDLE;
     }
@@ -679,8 +734,7 @@ public class GsmCdmaCallTracker extends CallTracker {
                 mPendingOperations + ", needsPoll=" + mNeedsPoll);
 
         if (mPendingOperations == 0 && mNeedsPoll) {
-            mLastRelevantPoll = obtainMessage(EVENT_POLL_CALLS_RESULT);
-            mCi.getCurrentCalls(mLastRelevantPoll);
+            issuePoll();
         } else if (mPendingOperations < 0) {
             // this should never happen
             Rlog.e(LOG_TAG,"GsmCdmaCallTracker.pendingOperations < 0");
@@ -704,6 +758,7 @@ public class GsmCdmaCallTracker extends CallTracker {
         }
 
         if (mState == PhoneConstants.State.IDLE && oldState != mState) {
+            reportPollStats(mPhone.getPhoneId());
             mVoiceCallEndedRegistrants.notifyRegistrants(
                 new AsyncResult(null, null, null));
         } else if (oldState == PhoneConstants.State.IDLE && oldState != mState) {
@@ -740,7 +795,7 @@ public class GsmCdmaCallTracker extends CallTracker {
         }
 
         Connection newRinging = null; //or waiting
-        ArrayList<Connection> newUnknownConnectionsGsm = new ArrayList<Connection>();
+        ArrayList<Connection> newUnknownConnectionsGsm = null;
         Connection newUnknownConnectionCdma = null;
         boolean hasNonHangupStateChanged = false;   // Any change besides
                                                     // a dropped connection
@@ -850,6 +905,9 @@ public class GsmCdmaCallTracker extends CallTracker {
                         if (newRinging == null) {
                             unknownConnectionAppeared = true;
                             if (isPhoneTypeGsm()) {
+                                if (newUnknownConnectionsGsm == null) {
+                                    newUnknownConnectionsGsm = new ArrayList<Connection>();
+                                }
                                 newUnknownConnectionsGsm.add(mConnections[i]);
                             } else {
                                 newUnknownConnectionCdma = mConnections[i];
@@ -929,13 +987,23 @@ public class GsmCdmaCallTracker extends CallTracker {
                         // continue to use the call info from conn, and only take a log.
                         Rlog.e(LOG_TAG,"Error in RIL, Phantom call appeared " + dc);
                     }
+                } else if (mPolledSlots[i].isUnchanged(conn, dc)) {
+                    // Same call state as the last poll, nothing to update
+                    mPollSlotsUnchanged++;
                 } else {
                     boolean changed;
                     changed = conn.update(dc);
                     hasNonHangupStateChanged = hasNonHangupStateChanged || changed;
+                    mPollSlotsUpdated++;
                 }
             }
 
+            if (mConnections[i] != null && dc != null) {
+                mPolledSlots[i].record(mConnections[i], dc);
+            } else {
+                mPolledSlots[i].clear();
+            }
+
             if (REPEAT_POLLING) {
                 if (dc != null) {
                     // FIXME with RIL, we should not need this anymore
@@ -1060,9 +1128,11 @@ public class GsmCdmaCallTracker extends CallTracker {
 
         if (unknownConnectionAppeared) {
             if (isPhoneTypeGsm()) {
-                for (Connection c : newUnknownConnectionsGsm) {
-                    log("Notify unknown for " + c);
-                    mPhone.notifyUnknownConnection(c);
+                if (newUnknownConnectionsGsm != null) {
+                    for (Connection c : newUnknownConnectionsGsm) {
+                        log("Notify unknown for " + c);
+                        mPhone.notifyUnknownConnection(c);
+                    }
                 }
             } else {
                 mPhone.notifyUnknownConnection(newUnknownConnectionCdma);
@@ -1333,6 +1403,8 @@ public class GsmCdmaCallTracker extends CallTracker {
                     mNeedsPoll = false;
                     mLastRelevantPoll = null;
                     handlePollCalls((AsyncResult)msg.obj);
+                    reportPollStatsIfDue(mPhone.getPhoneId());
+                    onPollCompleted();
                 }
             break;
 
@@ -1426,10 +1498,14 @@ public class GsmCdmaCallTracker extends CallTracker {
             break;
 
             case EVENT_REPOLL_AFTER_DELAY:
-            case EVENT_CALL_STATE_CHANGE:
+            case EVENT_COALESCED_CALL_STATE_CHANGE:
                 pollCallsWhenSafe();
             break;
 
+            case EVENT_CALL_STATE_CHANGE:
+                pollCallsOnCallStateChange();
+            break;
+
             case EVENT_RADIO_AVAILABLE:
                 handleRadioAvailable();
             break;
@@ -1599,6 +1675,8 @@ public class GsmCdmaCallTracker extends CallTracker {
         if (!isPhoneTypeGsm()) {
             pw.println(" mCallWaitingRegistrants=" + mCallWaitingRegistrants);
         }
+        pw.println(" mPollSlotsUpdated=" + mPollSlotsUpdated);
+        pw.println(" mPollSlotsUnchanged=" + mPollSlotsUnchanged);
         pw.println(" mDroppedDuringPoll: size=" + mDroppedDuringPoll.size());
         for(int i = 0; i < mDroppedDuringPoll.size(); i++) {
             pw.printf( "  mDroppedDuringPoll[%d]=%s\n", i, mDroppedDuringPoll.get(i));
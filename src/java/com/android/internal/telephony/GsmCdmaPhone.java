@@ -3262,6 +3262,16 @@ public class GsmCdmaPhone extends Phone {
         }
         pw.flush();
         pw.println("++++++++++++++++++++++++++++++++");
+
+        if (mIccSmsInterfaceManager != null) {
+            try {
+                mIccSmsInterfaceManager.dump(fd, pw, args);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            pw.flush();
+            pw.println("++++++++++++++++++++++++++++++++");
+        }
     }
 
     @Override
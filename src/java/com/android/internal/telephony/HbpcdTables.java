@@ -0,0 +1,537 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.net.Uri;
+import android.telephony.Rlog;
+import android.util.SparseArray;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.telephony.HbpcdLookup.ArbitraryMccSidMatch;
+import com.android.internal.telephony.HbpcdLookup.MccIdd;
+import com.android.internal.telephony.HbpcdLookup.MccLookup;
+import com.android.internal.telephony.HbpcdLookup.MccSidConflicts;
+import com.android.internal.telephony.HbpcdLookup.MccSidRange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * In-memory copies of the tables of the {@link HbpcdLookup} provider, used by
+ * {@link HbpcdUtils} and {@link SmsNumberUtils} instead of querying the provider for every SID
+ * and every outgoing SMS.
+ *
+ * <p>Each table is read once, when first needed, into sorted arrays searched with binary search.
+ * They are read through the content resolver of the first context asked with, and all of them
+ * are dropped when the provider reports a change. A table that cannot be read is not
+ * remembered, so the next lookup tries again.
+ */
+final class HbpcdTables {
+    private static final String TAG = "HbpcdTables";
+    private static final boolean VDBG = false;
+
+    /** Returned by the lookups when nothing matches. */
+    static final int NOT_FOUND = -1;
+
+    private static final Object sLock = new Object();
+
+    /**
+     * The resolver the tables are read from and sObserver is registered with, or null until the
+     * first lookup.
+     */
+    private static ContentResolver sResolver;
+
+    private static SidMatchTable sArbitraryMatches;
+    private static SidConflictTable sSidConflicts;
+    private static SidRangeTable sSidRanges;
+    private static IddTable sIdds;
+    private static CountryCodeTable sCountryCodes;
+
+    private static final ContentObserver sObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            if (VDBG) Rlog.d(TAG, "HBPCD tables changed");
+            invalidate();
+        }
+    };
+
+    private HbpcdTables() {
+    }
+
+    /**
+     * SIDs of {@link ArbitraryMccSidMatch}, kept only if they appear in exactly one row.
+     */
+    static final class SidMatchTable {
+        private final int[] mSids;
+        private final int[] mMccs;
+
+        private SidMatchTable(int[] sids, int[] mccs) {
+            mSids = sids;
+            mMccs = mccs;
+        }
+
+        /**
+         * @return the MCC the SID is known to be used with, or {@link #NOT_FOUND}
+         */
+        int findMcc(int sid) {
+            int index = Arrays.binarySearch(mSids, sid);
+            return index >= 0 ? mMccs[index] : NOT_FOUND;
+        }
+    }
+
+    /**
+     * Rows of {@link MccSidConflicts} joined with the time zones of their MCC in
+     * {@link MccLookup}, sorted by SID and otherwise in provider order.
+     */
+    static final class SidConflictTable {
+        private final int[] mSids;
+        private final int[] mMccs;
+        private final int[] mGmtOffsetLows;
+        private final int[] mGmtOffsetHighs;
+        private final int[] mGmtDstLows;
+        private final int[] mGmtDstHighs;
+
+        private SidConflictTable(int size) {
+            mSids = new int[size];
+            mMccs = new int[size];
+            mGmtOffsetLows = new int[size];
+            mGmtOffsetHighs = new int[size];
+            mGmtDstLows = new int[size];
+            mGmtDstHighs = new int[size];
+        }
+
+        /**
+         * @return the MCC of the first row for the conflicting SID whose time zone range
+         * contains tz, or {@link #NOT_FOUND}
+         */
+        int findMcc(int sid, int tz, int dstFlag) {
+            for (int i = lowerBound(mSids, sid); i < mSids.length && mSids[i] == sid; i++) {
+                if (dstFlag == 0 && mGmtOffsetLows[i] <= tz && tz <= mGmtOffsetHighs[i]) {
+                    return mMccs[i];
+                }
+                if (dstFlag == 1 && mGmtDstLows[i] <= tz && tz <= mGmtDstHighs[i]) {
+                    return mMccs[i];
+                }
+            }
+            return NOT_FOUND;
+        }
+    }
+
+    /**
+     * Rows of {@link MccSidRange} sorted by the low end of the range. The ranges may overlap,
+     * so the highest high end up to each row is kept to know when to stop looking.
+     */
+    static final class SidRangeTable {
+        private final int[] mLows;
+        private final int[] mHighs;
+        private final int[] mMaxHighs;
+        private final int[] mMccs;
+        private final int[] mRows;
+
+        private SidRangeTable(int size) {
+            mLows = new int[size];
+            mHighs = new int[size];
+            mMaxHighs = new int[size];
+            mMccs = new int[size];
+            mRows = new int[size];
+        }
+
+        /**
+         * @return the MCC of the range containing the SID that comes first in the provider, or
+         * {@link #NOT_FOUND}
+         */
+        int findMcc(int sid) {
+            int firstRow = Integer.MAX_VALUE;
+            int mcc = NOT_FOUND;
+            for (int i = lowerBound(mLows, sid + 1) - 1; i >= 0 && mMaxHighs[i] >= sid; i--) {
+                if (mHighs[i] >= sid && mRows[i] < firstRow) {
+                    firstRow = mRows[i];
+                    mcc = mMccs[i];
+                }
+            }
+            return mcc;
+        }
+    }
+
+    /**
+     * The distinct IDDs of each MCC of {@link MccIdd}, in provider order.
+     */
+    static final class IddTable {
+        private final SparseArray<ArrayList<String>> mIdds;
+
+        private IddTable(SparseArray<ArrayList<String>> idds) {
+            mIdds = idds;
+        }
+
+        /**
+         * @return the IDDs used in the country of the MCC, possibly none. Must not be modified.
+         */
+        ArrayList<String> getIdds(int mcc) {
+            ArrayList<String> idds = mIdds.get(mcc);
+            return idds != null ? idds : new ArrayList<String>();
+        }
+    }
+
+    /**
+     * The country codes of {@link MccLookup}, sorted, with the row each one comes from.
+     */
+    static final class CountryCodeTable {
+        private final int[] mCountryCodes;
+        private final int[] mRows;
+
+        /** Number of digits of the longest country code. */
+        final int maxLength;
+
+        private CountryCodeTable(int[] countryCodes, int[] rows, int maxLength) {
+            mCountryCodes = countryCodes;
+            mRows = rows;
+            this.maxLength = maxLength;
+        }
+
+        /**
+         * @return the first row of the country code in the provider, or {@link #NOT_FOUND}
+         */
+        int indexOf(int countryCode) {
+            int index = lowerBound(mCountryCodes, countryCode);
+            if (index < mCountryCodes.length && mCountryCodes[index] == countryCode) {
+                return mRows[index];
+            }
+            return NOT_FOUND;
+        }
+    }
+
+    static SidMatchTable getArbitraryMatches(Context context) {
+        synchronized (sLock) {
+            initResolver(context);
+            if (sArbitraryMatches == null) {
+                sArbitraryMatches = loadArbitraryMatches(sResolver);
+            }
+            return sArbitraryMatches;
+        }
+    }
+
+    static SidConflictTable getSidConflicts(Context context) {
+        synchronized (sLock) {
+            initResolver(context);
+            if (sSidConflicts == null) {
+                sSidConflicts = loadSidConflicts(sResolver);
+            }
+            return sSidConflicts;
+        }
+    }
+
+    static SidRangeTable getSidRanges(Context context) {
+        synchronized (sLock) {
+            initResolver(context);
+            if (sSidRanges == null) {
+                sSidRanges = loadSidRanges(sResolver);
+            }
+            return sSidRanges;
+        }
+    }
+
+    static IddTable getIddTable(Context context) {
+        synchronized (sLock) {
+            initResolver(context);
+            if (sIdds == null) {
+                sIdds = loadIdds(sResolver);
+            }
+            return sIdds;
+        }
+    }
+
+    static CountryCodeTable getCountryCodes(Context context) {
+        synchronized (sLock) {
+            initResolver(context);
+            if (sCountryCodes == null) {
+                sCountryCodes = loadCountryCodes(sResolver);
+            }
+            return sCountryCodes;
+        }
+    }
+
+    /**
+     * Forget all tables, they are read again when next needed.
+     */
+    private static void invalidate() {
+        synchronized (sLock) {
+            sArbitraryMatches = null;
+            sSidConflicts = null;
+            sSidRanges = null;
+            sIdds = null;
+            sCountryCodes = null;
+        }
+    }
+
+    /**
+     * Forget all tables and the resolver they were read from, so that the next lookup starts
+     * over with a new context.
+     */
+    @VisibleForTesting
+    static void resetForTest() {
+        synchronized (sLock) {
+            if (sResolver != null) {
+                sResolver.unregisterContentObserver(sObserver);
+                sResolver = null;
+            }
+            invalidate();
+        }
+    }
+
+    private static void initResolver(Context context) {
+        if (sResolver != null) {
+            return;
+        }
+        // First lookup: listen for the changes that invalidate the tables
+        sResolver = context.getContentResolver();
+        try {
+            sResolver.registerContentObserver(HbpcdLookup.CONTENT_URI, true, sObserver);
+        } catch (Exception e) {
+            Rlog.e(TAG, "Exception registering for HBPCD changes: " + e);
+        }
+    }
+
+    private static Cursor query(ContentResolver resolver, Uri uri, String[] projection) {
+        try {
+            return resolver.query(uri, projection, null, null, null);
+        } catch (SQLException e) {
+            Rlog.e(TAG, "Can't access HbpcdLookup database", e);
+            return null;
+        }
+    }
+
+    private static SidMatchTable loadArbitraryMatches(ContentResolver resolver) {
+        Cursor cursor = query(resolver, ArbitraryMccSidMatch.CONTENT_URI,
+                new String[] {ArbitraryMccSidMatch.SID, ArbitraryMccSidMatch.MCC});
+        if (cursor == null) return null;
+        long[] rows;
+        try {
+            rows = new long[cursor.getCount()];
+            int size = 0;
+            while (cursor.moveToNext() && size < rows.length) {
+                rows[size++] = ((long) cursor.getInt(0) << 32) | (cursor.getInt(1) & 0xffffffffL);
+            }
+            rows = Arrays.copyOf(rows, size);
+        } finally {
+            cursor.close();
+        }
+
+        // Sorted by SID, then drop the SIDs assigned to more than one MCC
+        Arrays.sort(rows);
+        int[] sids = new int[rows.length];
+        int[] mccs = new int[rows.length];
+        int size = 0;
+        for (int i = 0; i < rows.length; ) {
+            int sid = (int) (rows[i] >> 32);
+            int end = i + 1;
+            while (end < rows.length && (int) (rows[end] >> 32) == sid) end++;
+            if (end == i + 1) {
+                sids[size] = sid;
+                mccs[size] = (int) rows[i];
+                size++;
+            }
+            i = end;
+        }
+        return new SidMatchTable(Arrays.copyOf(sids, size), Arrays.copyOf(mccs, size));
+    }
+
+    private static SidConflictTable loadSidConflicts(ContentResolver resolver) {
+        // The provider answers conflict queries joined with the lookup table on the MCC
+        Cursor lookup = query(resolver, MccLookup.CONTENT_URI, new String[] {MccLookup.MCC,
+                MccLookup.GMT_OFFSET_LOW, MccLookup.GMT_OFFSET_HIGH,
+                MccLookup.GMT_DST_LOW, MccLookup.GMT_DST_HIGH});
+        if (lookup == null) return null;
+        SparseArray<List<int[]>> timeZones = new SparseArray<List<int[]>>();
+        try {
+            while (lookup.moveToNext()) {
+                int mcc = lookup.getInt(0);
+                List<int[]> mccTimeZones = timeZones.get(mcc);
+                if (mccTimeZones == null) {
+                    mccTimeZones = new ArrayList<int[]>(1);
+                    timeZones.put(mcc, mccTimeZones);
+                }
+                mccTimeZones.add(new int[] {
+                        getLow(lookup, 1), getHigh(lookup, 2), getLow(lookup, 3), getHigh(lookup, 4)
+                });
+            }
+        } finally {
+            lookup.close();
+        }
+
+        Cursor conflicts = query(resolver, MccSidConflicts.CONTENT_URI,
+                new String[] {MccSidConflicts.SID_CONFLICT, MccSidConflicts.MCC});
+        if (conflicts == null) return null;
+        final List<int[]> rows = new ArrayList<int[]>();
+        try {
+            while (conflicts.moveToNext()) {
+                int sid = conflicts.getInt(0);
+                int mcc = conflicts.getInt(1);
+                List<int[]> mccTimeZones = timeZones.get(mcc);
+                if (mccTimeZones == null) continue;
+                for (int[] tz : mccTimeZones) {
+                    rows.add(new int[] {sid, mcc, tz[0], tz[1], tz[2], tz[3]});
+                }
+            }
+        } finally {
+            conflicts.close();
+        }
+
+        // Stable, so the rows of a SID stay in provider order
+        Collections.sort(rows, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return Integer.compare(a[0], b[0]);
+            }
+        });
+        SidConflictTable table = new SidConflictTable(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            int[] row = rows.get(i);
+            table.mSids[i] = row[0];
+            table.mMccs[i] = row[1];
+            table.mGmtOffsetLows[i] = row[2];
+            table.mGmtOffsetHighs[i] = row[3];
+            table.mGmtDstLows[i] = row[4];
+            table.mGmtDstHighs[i] = row[5];
+        }
+        return table;
+    }
+
+    private static SidRangeTable loadSidRanges(ContentResolver resolver) {
+        Cursor cursor = query(resolver, MccSidRange.CONTENT_URI, new String[] {
+                MccSidRange.RANGE_LOW, MccSidRange.RANGE_HIGH, MccSidRange.MCC});
+        if (cursor == null) return null;
+        final List<int[]> rows = new ArrayList<int[]>();
+        try {
+            while (cursor.moveToNext()) {
+                if (cursor.isNull(0) || cursor.isNull(1)) continue;
+                rows.add(new int[] {cursor.getInt(0), cursor.getInt(1), cursor.getInt(2),
+                        rows.size()});
+            }
+        } finally {
+            cursor.close();
+        }
+
+        Collections.sort(rows, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return Integer.compare(a[0], b[0]);
+            }
+        });
+        SidRangeTable table = new SidRangeTable(rows.size());
+        int maxHigh = Integer.MIN_VALUE;
+        for (int i = 0; i < rows.size(); i++) {
+            int[] row = rows.get(i);
+            table.mLows[i] = row[0];
+            table.mHighs[i] = row[1];
+            maxHigh = Math.max(maxHigh, row[1]);
+            table.mMaxHighs[i] = maxHigh;
+            table.mMccs[i] = row[2];
+            table.mRows[i] = row[3];
+        }
+        return table;
+    }
+
+    private static IddTable loadIdds(ContentResolver resolver) {
+        Cursor cursor = query(resolver, MccIdd.CONTENT_URI,
+                new String[] {MccIdd.IDD, MccIdd.MCC});
+        if (cursor == null) return null;
+        SparseArray<ArrayList<String>> idds = new SparseArray<ArrayList<String>>();
+        try {
+            while (cursor.moveToNext()) {
+                String idd = cursor.getString(0);
+                int mcc = cursor.getInt(1);
+                ArrayList<String> mccIdds = idds.get(mcc);
+                if (mccIdds == null) {
+                    mccIdds = new ArrayList<String>(1);
+                    idds.put(mcc, mccIdds);
+                }
+                if (!mccIdds.contains(idd)) {
+                    mccIdds.add(idd);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return new IddTable(idds);
+    }
+
+    private static CountryCodeTable loadCountryCodes(ContentResolver resolver) {
+        Cursor cursor = query(resolver, MccLookup.CONTENT_URI,
+                new String[] {MccLookup.COUNTRY_CODE});
+        if (cursor == null) return null;
+        long[] rows;
+        int maxLength = 0;
+        try {
+            rows = new long[cursor.getCount()];
+            int size = 0;
+            while (cursor.moveToNext() && size < rows.length) {
+                int countryCode = cursor.getInt(0);
+                rows[size] = ((long) countryCode << 32) | size;
+                size++;
+                maxLength = Math.max(maxLength, String.valueOf(countryCode).length());
+            }
+            rows = Arrays.copyOf(rows, size);
+        } finally {
+            cursor.close();
+        }
+
+        // Sorted by country code, then row, so a duplicate code maps to its first row
+        Arrays.sort(rows);
+        int[] countryCodes = new int[rows.length];
+        int[] indexes = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            countryCodes[i] = (int) (rows[i] >> 32);
+            indexes[i] = (int) rows[i];
+        }
+        return new CountryCodeTable(countryCodes, indexes, maxLength);
+    }
+
+    /** A NULL low end matches no time zone. */
+    private static int getLow(Cursor cursor, int column) {
+        return cursor.isNull(column) ? Integer.MAX_VALUE : cursor.getInt(column);
+    }
+
+    /** A NULL high end matches no time zone. */
+    private static int getHigh(Cursor cursor, int column) {
+        return cursor.isNull(column) ? Integer.MIN_VALUE : cursor.getInt(column);
+    }
+
+    /**
+     * @return the index of the first element of the sorted array not less than the key
+     */
+    private static int lowerBound(int[] sorted, int key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -50,6 +50,8 @@ import com.android.internal.telephony.uicc.UiccController;
 import com.android.internal.telephony.uicc.IccRecords;
 import com.android.internal.util.HexDump;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -888,7 +890,7 @@ public class IccSmsInterfaceManager {
         return true;
     }
 
-    class CellBroadcastRangeManager extends IntRangeManager {
+    class CellBroadcastRangeManager extends IntervalRangeManager {
         private ArrayList<SmsBroadcastConfigInfo> mConfigList =
                 new ArrayList<SmsBroadcastConfigInfo>();
 
@@ -903,9 +905,10 @@ public class IccSmsInterfaceManager {
 
         /**
          * Called after {@link #startUpdate} to indicate a range of enabled
-         * values.
+         * or disabled values.
          * @param startId the first id included in the range
          * @param endId the last id included in the range
+         * @param selected true to enable range, false to disable range
          */
         protected void addRange(int startId, int endId, boolean selected) {
             mConfigList.add(new SmsBroadcastConfigInfo(startId, endId,
@@ -928,7 +931,7 @@ public class IccSmsInterfaceManager {
         }
     }
 
-    class CdmaBroadcastRangeManager extends IntRangeManager {
+    class CdmaBroadcastRangeManager extends IntervalRangeManager {
         private ArrayList<CdmaSmsBroadcastConfigInfo> mConfigList =
                 new ArrayList<CdmaSmsBroadcastConfigInfo>();
 
@@ -943,9 +946,10 @@ public class IccSmsInterfaceManager {
 
         /**
          * Called after {@link #startUpdate} to indicate a range of enabled
-         * values.
+         * or disabled values.
          * @param startId the first id included in the range
          * @param endId the last id included in the range
+         * @param selected true to enable range, false to disable range
          */
         protected void addRange(int startId, int endId, boolean selected) {
             mConfigList.add(new CdmaSmsBroadcastConfigInfo(startId, endId,
@@ -1276,4 +1280,9 @@ public class IccSmsInterfaceManager {
         log("getSmsCapacityOnIcc().numberOnIcc = " + numberOnIcc);
         return numberOnIcc;
     }
+
+    public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println("IccSmsInterfaceManager:");
+        mDispatcher.dump(fd, pw, args);
+    }
 }
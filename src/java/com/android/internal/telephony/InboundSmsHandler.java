@@ -77,6 +77,8 @@ import com.android.internal.util.State;
 import com.android.internal.util.StateMachine;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -284,6 +286,14 @@ public abstract class InboundSmsHandler extends StateMachine {
         }
     }
 
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        super.dump(fd, pw, args);
+        if (mCellBroadcastHandler != null) {
+            mCellBroadcastHandler.dump(fd, pw, args);
+        }
+    }
+
     // CAF_MSIM Is this used anywhere ? if not remove it
     public Phone getPhone() {
         return mPhone;
@@ -851,7 +861,8 @@ public abstract class InboundSmsHandler extends StateMachine {
 
         if (destPort == SmsHeader.PORT_WAP_PUSH) {
             // Build up the data stream
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ByteArrayOutputStream output = null;
+            byte[] wapPdu = null;
             for (byte[] pdu : pdus) {
                 // 3GPP needs to extract the User Data from the PDU; 3GPP2 has already done this
                 if (!tracker.is3gpp2()) {
@@ -863,9 +874,20 @@ public abstract class InboundSmsHandler extends StateMachine {
                         return false;
                     }
                 }
+                if (pdus.length == 1) {
+                    // Nothing to concatenate, use the pdu as is
+                    wapPdu = pdu;
+                    break;
+                }
+                if (output == null) {
+                    output = new ByteArrayOutputStream();
+                }
                 output.write(pdu, 0, pdu.length);
             }
-            int result = mWapPush.dispatchWapPdu(output.toByteArray(), resultReceiver, this);
+            if (wapPdu == null) {
+                wapPdu = output.toByteArray();
+            }
+            int result = mWapPush.dispatchWapPdu(wapPdu, resultReceiver, this);
             if (DBG) log("dispatchWapPdu() returned " + result);
             // result is Activity.RESULT_OK if an ordered broadcast was sent
             if (result == Activity.RESULT_OK) {
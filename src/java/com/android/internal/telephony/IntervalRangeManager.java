@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps track of the SMS-CB message identifiers (channels) enabled by clients, like
+ * {@link IntRangeManager}, and only updates the radio when a channel changed state.
+ *
+ * <p>Enabled channels are kept as a sorted map from the first id of each run of channels to the
+ * number of client ranges covering that run, so finding whether enabling or disabling a range
+ * changes any channel only visits the runs it overlaps. An update is a call to
+ * {@link #startUpdate} followed by one call to {@link #addRange} for each run of enabled
+ * channels, followed by a call to {@link #finishUpdate}. The radio replaces its configuration
+ * with each update, so every update holds the full list of enabled channels. No update is made
+ * if no channel changed state, for instance when a client enables a range another client
+ * already enabled. The same full update (i.e. after a radio reset) can be performed by a call
+ * to {@link #updateRanges}.
+ *
+ * <p>Clients are identified by String (the name associated with the User ID of the caller) so
+ * that a call to remove a range can be mapped to the client that enabled that range (or else
+ * rejected). A client enabling the same range twice holds it once.
+ */
+public abstract class IntervalRangeManager {
+
+    /**
+     * The message id range for a single client.
+     */
+    private static final class ClientRange {
+        final int mStartId;
+        final int mEndId;
+        final String mClient;
+
+        ClientRange(int startId, int endId, String client) {
+            mStartId = startId;
+            mEndId = endId;
+            mClient = client;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof ClientRange) {
+                ClientRange other = (ClientRange) o;
+                return mStartId == other.mStartId &&
+                        mEndId == other.mEndId &&
+                        mClient.equals(other.mClient);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return (mStartId * 31 + mEndId) * 31 + mClient.hashCode();
+        }
+    }
+
+    /**
+     * Number of client ranges covering each id from the key up to the next key. Ids before the
+     * first key are not covered. Adjacent entries always have different counts, and the last
+     * entry has a count of zero.
+     */
+    private final TreeMap<Long, Integer> mCoverage = new TreeMap<Long, Integer>();
+
+    private final HashSet<ClientRange> mClientRanges = new HashSet<ClientRange>();
+
+    protected IntervalRangeManager() {}
+
+    /**
+     * Enable a range for the specified client and update the radio if any of its channels was
+     * not enabled yet. If {@link #finishUpdate} returns failure, false is returned and the range
+     * is not added.
+     *
+     * @param startId the first id included in the range
+     * @param endId the last id included in the range
+     * @param client the client requesting the enabled range
+     * @return true if successful, false otherwise
+     */
+    public synchronized boolean enableRange(int startId, int endId, String client) {
+        if (startId > endId) {
+            return false;
+        }
+        ClientRange clientRange = new ClientRange(startId, endId, client);
+        if (mClientRanges.contains(clientRange)) {
+            return true;
+        }
+        boolean changed = hasRun(startId, endId, 0);
+        addCoverage(startId, endId, 1);
+        if (changed && !updateRanges()) {
+            // failed to update radio.  revert the coverage
+            addCoverage(startId, endId, -1);
+            return false;
+        }
+        mClientRanges.add(clientRange);
+        return true;
+    }
+
+    /**
+     * Disable a range for the specified client and update the radio if any of its channels is
+     * not covered by another client range. If {@link #finishUpdate} returns failure, false is
+     * returned and the range is not removed.
+     *
+     * @param startId the first id included in the range
+     * @param endId the last id included in the range
+     * @param client the client requesting to disable the range
+     * @return true if successful, false otherwise
+     */
+    public synchronized boolean disableRange(int startId, int endId, String client) {
+        ClientRange clientRange = new ClientRange(startId, endId, client);
+        if (!mClientRanges.contains(clientRange)) {
+            return false;   // not found
+        }
+        boolean changed = hasRun(startId, endId, 1);
+        addCoverage(startId, endId, -1);
+        if (changed && !updateRanges()) {
+            // failed to update radio.  revert the coverage
+            addCoverage(startId, endId, 1);
+            return false;
+        }
+        mClientRanges.remove(clientRange);
+        return true;
+    }
+
+    /**
+     * Perform a complete update operation (enable all ranges). Useful after a radio reset.
+     * Calls {@link #startUpdate}, followed by zero or more calls to {@link #addRange}, followed
+     * by {@link #finishUpdate}.
+     * @return true if successful, false otherwise
+     */
+    public synchronized boolean updateRanges() {
+        startUpdate();
+        long runStart = -1;
+        for (Map.Entry<Long, Integer> entry : mCoverage.entrySet()) {
+            if (entry.getValue() > 0) {
+                if (runStart < 0) {
+                    runStart = entry.getKey();
+                }
+            } else if (runStart >= 0) {
+                addRange((int) runStart, (int) (entry.getKey() - 1), true);
+                runStart = -1;
+            }
+        }
+        return finishUpdate();
+    }
+
+    /**
+     * Returns whether the list of ranges is completely empty.
+     * @return true if there are no enabled ranges
+     */
+    public synchronized boolean isEmpty() {
+        return mCoverage.isEmpty();
+    }
+
+    /**
+     * Find whether any id in a range is covered by exactly the given number of client ranges.
+     * @return true if such an id exists, false otherwise
+     */
+    private boolean hasRun(int startId, int endId, int count) {
+        Map.Entry<Long, Integer> floor = mCoverage.floorEntry((long) startId);
+        if (((floor == null) ? 0 : floor.getValue()) == count) {
+            return true;
+        }
+        for (int runCount
+                : mCoverage.subMap((long) startId, false, (long) endId, true).values()) {
+            if (runCount == count) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add delta to the number of client ranges covering each id in a range.
+     */
+    private void addCoverage(long startId, long endId, int delta) {
+        splitAt(startId);
+        splitAt(endId + 1);
+        for (Map.Entry<Long, Integer> entry
+                : mCoverage.subMap(startId, endId + 1).entrySet()) {
+            entry.setValue(entry.getValue() + delta);
+        }
+        // Runs inside the range still differ from their neighbours, only the ends may join
+        joinAt(startId);
+        joinAt(endId + 1);
+    }
+
+    private void splitAt(long id) {
+        Map.Entry<Long, Integer> floor = mCoverage.floorEntry(id);
+        if (floor == null) {
+            mCoverage.put(id, 0);
+        } else if (floor.getKey() != id) {
+            mCoverage.put(id, floor.getValue());
+        }
+    }
+
+    private void joinAt(long id) {
+        Integer count = mCoverage.get(id);
+        Map.Entry<Long, Integer> lower = mCoverage.lowerEntry(id);
+        int lowerCount = (lower == null) ? 0 : lower.getValue();
+        if (count != null && count == lowerCount) {
+            mCoverage.remove(id);
+        }
+    }
+
+    /**
+     * Called when the list of enabled ranges has changed. This will be
+     * followed by zero or more calls to {@link #addRange} followed by
+     * a call to {@link #finishUpdate}.
+     */
+    protected abstract void startUpdate();
+
+    /**
+     * Called after {@link #startUpdate} to indicate a range of enabled
+     * or disabled values.
+     *
+     * @param startId the first id included in the range
+     * @param endId the last id included in the range
+     * @param selected true to enable range, false to disable range
+     */
+    protected abstract void addRange(int startId, int endId, boolean selected);
+
+    /**
+     * Called to indicate the end of a range update started by the
+     * previous call to {@link #startUpdate}.
+     * @return true if successful, false otherwise
+     */
+    protected abstract boolean finishUpdate();
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import android.content.Context;
+import android.telephony.Rlog;
+
+/**
+ * Splits a dial string into the parts of a supplementary service MMI code, see TS 22.030 6.5.2
+ * "Structure of the MMI". Shared by the GSM, CDMA and IMS MMI codes.
+ *
+ * <p>The accepted strings and the parts are the same as for the regular expression
+ * <pre>
+ * ((\*|#|\*#|\*\*|##)(\d{2,3})(\*([^*#]*)(\*([^*#]*)(\*([^*#]*)(\*([^*#]*))?)?)?)?#)(.*)
+ *  1  2                3          5           7           9           11           12
+ * </pre>
+ * with 1 = full string up to and including #, 2 = action, 3 = service code, 5 = SIA, 7 = SIB,
+ * 9 = SIC, 11 = password confirmation and 12 = dialing number. The dial string is scanned once
+ * and nothing is allocated unless it is an MMI code, since this runs as the user dials.
+ *
+ * {@hide}
+ */
+public final class MmiCodeTokenizer {
+    private static final String LOG_TAG = "MmiCodeTokenizer";
+
+    private static final int MAX_SUPPLEMENTARY_INFO = 4;
+
+    private static volatile String[] sTwoDigitNumberPattern;
+
+    /**
+     * The parts of an MMI code. As with the groups of a regular expression, a part that is absent
+     * is null and a part that is present but empty is the empty string.
+     */
+    public static final class Tokens {
+        public final String poundString;
+        public final String action;
+        public final String serviceCode;
+        public final String sia;
+        public final String sib;
+        public final String sic;
+        public final String pwd;
+        public final String dialingNumber;
+
+        private Tokens(String poundString, String action, String serviceCode, String sia,
+                String sib, String sic, String pwd, String dialingNumber) {
+            this.poundString = poundString;
+            this.action = action;
+            this.serviceCode = serviceCode;
+            this.sia = sia;
+            this.sib = sib;
+            this.sic = sic;
+            this.pwd = pwd;
+            this.dialingNumber = dialingNumber;
+        }
+
+        @Override
+        public String toString() {
+            return "Tokens{poundString=" + poundString + " action=" + action
+                    + " serviceCode=" + serviceCode + " sia=" + sia + " sib=" + sib
+                    + " sic=" + sic + " pwd=" + pwd + " dialingNumber=" + dialingNumber + "}";
+        }
+    }
+
+    private MmiCodeTokenizer() {
+    }
+
+    /**
+     * @return the parts of the MMI code, or null if the dial string is not formatted like a
+     * supplementary service code
+     */
+    public static Tokens tokenize(String dialString) {
+        int length = dialString.length();
+
+        // Action: the leading '*' and '#' characters
+        int index = 0;
+        while (index < length && isStarOrPound(dialString.charAt(index))) {
+            index++;
+        }
+        int actionEnd = index;
+        if (!isAction(dialString, actionEnd)) {
+            return null;
+        }
+
+        // Service code: 2 or 3 digits, followed by '*' or '#'
+        while (index < length && isDigit(dialString.charAt(index))) {
+            index++;
+        }
+        int scEnd = index;
+        int scLength = scEnd - actionEnd;
+        if (scLength < 2 || scLength > 3 || scEnd == length
+                || !isStarOrPound(dialString.charAt(scEnd))) {
+            return null;
+        }
+
+        // Up to 4 supplementary information fields, each introduced by '*', then '#'
+        int poundIndex = -1;
+        int fields = 0;
+        for (int i = scEnd; i < length; i++) {
+            char c = dialString.charAt(i);
+            if (c == '#') {
+                poundIndex = i;
+                break;
+            }
+            if (c == '*' && ++fields > MAX_SUPPLEMENTARY_INFO) {
+                return null;
+            }
+        }
+        if (poundIndex == -1) {
+            return null;
+        }
+
+        // Dialing number: anything up to the end but a line terminator
+        for (int i = poundIndex + 1; i < length; i++) {
+            if (isLineTerminator(dialString.charAt(i))) {
+                return null;
+            }
+        }
+
+        String[] info = new String[MAX_SUPPLEMENTARY_INFO];
+        int fieldStart = scEnd + 1;
+        for (int i = 0; i < fields; i++) {
+            int fieldEnd = dialString.indexOf('*', fieldStart);
+            if (fieldEnd == -1 || fieldEnd > poundIndex) {
+                fieldEnd = poundIndex;
+            }
+            info[i] = dialString.substring(fieldStart, fieldEnd);
+            fieldStart = fieldEnd + 1;
+        }
+
+        return new Tokens(dialString.substring(0, poundIndex + 1),
+                dialString.substring(0, actionEnd),
+                dialString.substring(actionEnd, scEnd),
+                info[0], info[1], info[2], info[3],
+                dialString.substring(poundIndex + 1));
+    }
+
+    /**
+     * @return true if the dial string is one of the country-specific two digit numbers in
+     * {@link com.android.internal.R.array#config_twoDigitNumberPattern}, the exceptions to short
+     * codes of TS 22.030, 6.5.3.2
+     */
+    public static boolean isTwoDigitShortCode(Context context, String dialString) {
+        if (dialString == null || dialString.length() > 2) return false;
+
+        String[] patterns = sTwoDigitNumberPattern;
+        if (patterns == null) {
+            patterns = context.getResources().getStringArray(
+                    com.android.internal.R.array.config_twoDigitNumberPattern);
+            sTwoDigitNumberPattern = patterns;
+        }
+
+        for (String dialnumber : patterns) {
+            if (dialString.equals(dialnumber)) {
+                Rlog.d(LOG_TAG, "Two Digit Number Pattern -true");
+                return true;
+            }
+        }
+        Rlog.d(LOG_TAG, "Two Digit Number Pattern -false");
+        return false;
+    }
+
+    private static boolean isAction(String dialString, int length) {
+        switch (length) {
+            case 1:
+                return true;
+            case 2:
+                // "*#", "**" or "##", but not "#*"
+                return dialString.charAt(0) == '*' || dialString.charAt(1) == '#';
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isStarOrPound(char c) {
+        return c == '*' || c == '#';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SqliteWrapper;
+import android.provider.Telephony;
+import android.telephony.Rlog;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.google.android.mms.pdu.PduHeaders;
+
+/**
+ * Bloom filter over the content locations of the MMS notification indications stored in the MMS
+ * provider. It tells most new notifications apart from re-sent ones without looking the content
+ * location up in the provider; only a possible hit needs the exact lookup.
+ *
+ * <p>The filter is built lazily from the provider, which is then observed for changes. The first
+ * check after a change catches up with the rows added since, found by a scan of the primary key
+ * above the highest id seen, so notifications stored by other apps are not missed. This relies
+ * on the MMS provider never reusing an id, which holds as its pdu table uses AUTOINCREMENT.
+ * Deleted rows stay in the filter and only cost an exact lookup. Once it holds more locations
+ * than it was sized for, it is rebuilt larger. If the provider cannot be observed, every check
+ * catches up.
+ */
+class MmsContentLocationIndex {
+    private static final String TAG = "MmsContentLocationIndex";
+
+    @VisibleForTesting
+    static final int MIN_CAPACITY = 1024;
+
+    // With 16 bits per location and 7 hashes, about 1 in 1400 new locations is a false positive
+    private static final int BITS_PER_LOCATION = 16;
+    private static final int NUM_HASHES = 7;
+
+    private static final String[] PROJECTION = {
+            Telephony.Mms._ID, Telephony.Mms.CONTENT_LOCATION
+    };
+
+    private static final String SELECTION =
+            Telephony.Mms.MESSAGE_TYPE + "=? AND " + Telephony.Mms._ID + ">?";
+
+    private long[] mBits;
+    private int mCapacity;
+    private int mCount;
+    private long mMaxId;
+    private boolean mBuilt;
+    private boolean mObserving;
+    // Set when the provider changed since the last catch up
+    private boolean mDirty;
+
+    // Statistics
+    private int mRebuilds;
+    private int mCatchUps;
+    private int mChecks;
+    private int mPossibleHits;
+
+    @VisibleForTesting
+    final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            synchronized (MmsContentLocationIndex.this) {
+                mDirty = true;
+            }
+        }
+    };
+
+    /**
+     * @return false if the content location is certainly not in the provider, true if it may be
+     */
+    synchronized boolean mightContain(Context context, String location) {
+        mChecks++;
+        boolean upToDate;
+        if (!mBuilt) {
+            if (!mObserving) {
+                observe(context);
+            }
+            upToDate = rebuild(context);
+        } else if (mDirty || !mObserving) {
+            upToDate = catchUp(context);
+        } else {
+            upToDate = true;
+        }
+        if (!upToDate) {
+            // Without an up to date filter only the provider can tell
+            mPossibleHits++;
+            return true;
+        }
+        if (contains(location)) {
+            mPossibleHits++;
+            return true;
+        }
+        return false;
+    }
+
+    private void observe(Context context) {
+        try {
+            context.getContentResolver().registerContentObserver(Telephony.Mms.CONTENT_URI,
+                    true /* notifyForDescendents */, mObserver);
+            mObserving = true;
+        } catch (Exception e) {
+            Rlog.e(TAG, "Exception registering for MMS provider changes: " + e);
+        }
+    }
+
+    private boolean rebuild(Context context) {
+        // Changes made while the rows are read are caught up with at the next check
+        mDirty = false;
+        Cursor cursor = query(context, -1);
+        if (cursor == null) {
+            mDirty = true;
+            return false;
+        }
+        try {
+            mRebuilds++;
+            mCapacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(cursor.getCount()) * 4);
+            mBits = new long[mCapacity * BITS_PER_LOCATION / 64];
+            mCount = 0;
+            mMaxId = -1;
+            mBuilt = true;
+            readLocations(cursor);
+        } finally {
+            cursor.close();
+        }
+        return true;
+    }
+
+    private boolean catchUp(Context context) {
+        mDirty = false;
+        Cursor cursor = query(context, mMaxId);
+        if (cursor == null) {
+            mDirty = true;
+            return false;
+        }
+        try {
+            mCatchUps++;
+            readLocations(cursor);
+        } finally {
+            cursor.close();
+        }
+        if (mCount > mCapacity) {
+            // Too many false positives from now on, start over with a larger filter
+            return rebuild(context);
+        }
+        return true;
+    }
+
+    private Cursor query(Context context, long afterId) {
+        try {
+            return SqliteWrapper.query(context, context.getContentResolver(),
+                    Telephony.Mms.CONTENT_URI, PROJECTION, SELECTION,
+                    new String[] {
+                            Integer.toString(PduHeaders.MESSAGE_TYPE_NOTIFICATION_IND),
+                            Long.toString(afterId)
+                    },
+                    null /* sortOrder */);
+        } catch (SQLiteException e) {
+            Rlog.e(TAG, "Failed to query notification ind content locations", e);
+            return null;
+        }
+    }
+
+    private void readLocations(Cursor cursor) {
+        while (cursor.moveToNext()) {
+            mMaxId = Math.max(mMaxId, cursor.getLong(0));
+            String location = cursor.getString(1);
+            if (location != null) {
+                put(location);
+            }
+        }
+    }
+
+    private void put(String location) {
+        int mask = mBits.length * 64 - 1;
+        int hash1 = location.hashCode();
+        int hash2 = secondHash(location);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = (hash1 + i * hash2) & mask;
+            mBits[bit >>> 6] |= 1L << bit;
+        }
+        mCount++;
+    }
+
+    private boolean contains(String location) {
+        int mask = mBits.length * 64 - 1;
+        int hash1 = location.hashCode();
+        int hash2 = secondHash(location);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = (hash1 + i * hash2) & mask;
+            if ((mBits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a hash of the location, forced odd so that it cycles through all the bits.
+     */
+    private static int secondHash(String location) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < location.length(); i++) {
+            hash ^= location.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash | 1;
+    }
+
+    @VisibleForTesting
+    synchronized int getRebuildCount() {
+        return mRebuilds;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MmsContentLocationIndex{built=" + mBuilt + " count=" + mCount
+                + " capacity=" + mCapacity + " rebuilds=" + mRebuilds + " catchUps=" + mCatchUps
+                + " checks=" + mChecks + " possibleHits=" + mPossibleHits + "}";
+    }
+}
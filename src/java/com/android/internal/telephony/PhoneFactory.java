@@ -454,6 +454,24 @@ public class PhoneFactory {
             pw.println("++++++++++++++++++++++++++++++++");
         }
 
+        pw.println("CallManager:");
+        pw.increaseIndent();
+        try {
+            CallManager.getInstance().dump(fd, pw, args);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        pw.flush();
+        pw.decreaseIndent();
+        pw.println("++++++++++++++++++++++++++++++++");
+
+        pw.println("BlockChecker:");
+        pw.increaseIndent();
+        BlockChecker.dump(pw);
+        pw.decreaseIndent();
+        pw.flush();
+        pw.println("++++++++++++++++++++++++++++++++");
+
         pw.println("SubscriptionMonitor:");
         pw.increaseIndent();
         try {
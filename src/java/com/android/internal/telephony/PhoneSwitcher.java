@@ -49,7 +49,6 @@ import java.lang.IllegalArgumentException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -75,12 +74,18 @@ public class PhoneSwitcher extends Handler {
     protected final Phone[] mPhones;
     private final LocalLog mLocalLog;
 
+    // Number of requests for each phone and the one of them coming first in
+    // mPrioritizedDcRequests, under the current phone subscriptions and default
+    private final int[] mPhoneDemand;
+    private final DcRequest[] mLeadDcRequests;
+    private int mSkippedEvaluations;
+
     protected int mDefaultDataSubscription;
 
     protected final static int EVENT_DEFAULT_SUBSCRIPTION_CHANGED = 101;
     protected final static int EVENT_SUBSCRIPTION_CHANGED         = 102;
     protected final static int EVENT_REQUEST_NETWORK              = 103;
-    private final static int EVENT_RELEASE_NETWORK              = 104;
+    protected final static int EVENT_RELEASE_NETWORK              = 104;
     private final static int EVENT_EMERGENCY_TOGGLE             = 105;
     private final static int EVENT_RESEND_DATA_ALLOWED          = 106;
     protected final static int EVENT_ALLOW_DATA_RESPONSE        = 107;
@@ -104,6 +109,8 @@ public class PhoneSwitcher extends Handler {
         mLocalLog = null;
         mActivePhoneRegistrants = null;
         mNumPhones = 0;
+        mPhoneDemand = null;
+        mLeadDcRequests = null;
     }
 
     public PhoneSwitcher(int maxActivePhones, int numPhones, Context context,
@@ -116,6 +123,8 @@ public class PhoneSwitcher extends Handler {
         mPhoneSubscriptions = new int[numPhones];
         mMaxActivePhones = maxActivePhones;
         mLocalLog = new LocalLog(MAX_LOCAL_LOG_LINES);
+        mPhoneDemand = new int[numPhones];
+        mLeadDcRequests = new DcRequest[numPhones];
 
         mSubscriptionController = subscriptionController;
 
@@ -244,20 +253,81 @@ public class PhoneSwitcher extends Handler {
         }
     }
 
+    /**
+     * Only the highest priority request of each phone takes part in the decision, so a request
+     * that does not become the lead request of its phone changes nothing and is not evaluated.
+     */
     private void onRequestNetwork(NetworkRequest networkRequest) {
         final DcRequest dcRequest = new DcRequest(networkRequest, mContext);
-        if (mPrioritizedDcRequests.contains(dcRequest) == false) {
-            mPrioritizedDcRequests.add(dcRequest);
-            Collections.sort(mPrioritizedDcRequests);
-            onEvaluate(REQUESTS_CHANGED, "netRequest");
+        if (mPrioritizedDcRequests.contains(dcRequest)) return;
+
+        // same position as a stable sort would give: after the requests of equal priority
+        int low = 0;
+        int high = mPrioritizedDcRequests.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mPrioritizedDcRequests.get(mid).priority >= dcRequest.priority) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
         }
+        mPrioritizedDcRequests.add(low, dcRequest);
+
+        final int phoneId = phoneIdForRequest(networkRequest);
+        if (phoneId == INVALID_PHONE_INDEX) {
+            mSkippedEvaluations++;
+            return;
+        }
+        mPhoneDemand[phoneId]++;
+        DcRequest lead = mLeadDcRequests[phoneId];
+        if (lead != null && lead.priority >= dcRequest.priority) {
+            mSkippedEvaluations++;
+            return;
+        }
+        mLeadDcRequests[phoneId] = dcRequest;
+        onEvaluate(REQUESTS_CHANGED, "netRequest");
     }
 
     private void onReleaseNetwork(NetworkRequest networkRequest) {
         final DcRequest dcRequest = new DcRequest(networkRequest, mContext);
+        if (mPrioritizedDcRequests.remove(dcRequest) == false) return;
 
-        if (mPrioritizedDcRequests.remove(dcRequest)) {
-            onEvaluate(REQUESTS_CHANGED, "netReleased");
+        final int phoneId = phoneIdForRequest(networkRequest);
+        if (phoneId == INVALID_PHONE_INDEX) {
+            mSkippedEvaluations++;
+            return;
+        }
+        mPhoneDemand[phoneId]--;
+        if (dcRequest.equals(mLeadDcRequests[phoneId]) == false) {
+            mSkippedEvaluations++;
+            return;
+        }
+        mLeadDcRequests[phoneId] = null;
+        if (mPhoneDemand[phoneId] > 0) {
+            for (DcRequest r : mPrioritizedDcRequests) {
+                if (phoneIdForRequest(r.networkRequest) == phoneId) {
+                    mLeadDcRequests[phoneId] = r;
+                    break;
+                }
+            }
+        }
+        onEvaluate(REQUESTS_CHANGED, "netReleased");
+    }
+
+    /**
+     * Recount the requests of each phone after the subscription of a phone or the default
+     * data subscription changed.
+     */
+    private void updatePhoneDemand() {
+        for (int i = 0; i < mNumPhones; i++) {
+            mPhoneDemand[i] = 0;
+            mLeadDcRequests[i] = null;
+        }
+        for (DcRequest dcRequest : mPrioritizedDcRequests) {
+            int phoneId = phoneIdForRequest(dcRequest.networkRequest);
+            if (phoneId == INVALID_PHONE_INDEX) continue;
+            if (mPhoneDemand[phoneId]++ == 0) mLeadDcRequests[phoneId] = dcRequest;
         }
     }
 
@@ -268,9 +338,10 @@ public class PhoneSwitcher extends Handler {
      * Do nothing if nothing's changed.
      *
      * Otherwise, go through the requests in priority order adding their phone
-     * until we've added up to the max allowed.  Then go through shutting down
-     * phones that aren't in the active phone list.  Finally, activate all
-     * phones in the active phone list.
+     * until we've added up to the max allowed or every phone with requests.
+     * Then go through shutting down phones that aren't in the active phone
+     * list.  Finally, activate all phones in the active phone list.  Phones
+     * keeping their state get no RIL call.
      */
     protected void onEvaluate(boolean requestsChanged, String reason) {
         StringBuilder sb = new StringBuilder(reason);
@@ -280,12 +351,12 @@ public class PhoneSwitcher extends Handler {
         }
 
         boolean diffDetected = requestsChanged;
+        boolean mappingChanged = false;
         final int dataSub = mSubscriptionController.getDefaultDataSubId();
         if (dataSub != mDefaultDataSubscription) {
             sb.append(" default ").append(mDefaultDataSubscription).append("->").append(dataSub);
             mDefaultDataSubscription = dataSub;
-            diffDetected = true;
-
+            mappingChanged = true;
         }
 
         for (int i = 0; i < mNumPhones; i++) {
@@ -294,21 +365,32 @@ public class PhoneSwitcher extends Handler {
                 sb.append(" phone[").append(i).append("] ").append(mPhoneSubscriptions[i]);
                 sb.append("->").append(sub);
                 mPhoneSubscriptions[i] = sub;
-                diffDetected = true;
+                mappingChanged = true;
             }
         }
 
+        if (mappingChanged) {
+            updatePhoneDemand();
+            diffDetected = true;
+        }
+
         if (diffDetected) {
             log("evaluating due to " + sb.toString());
 
             List<Integer> newActivePhones = new ArrayList<Integer>();
 
+            int phonesWithDemand = 0;
+            for (int i = 0; i < mNumPhones; i++) {
+                if (mPhoneDemand[i] > 0) phonesWithDemand++;
+            }
+            final int maxNewActivePhones = Math.min(mMaxActivePhones, phonesWithDemand);
+
             for (DcRequest dcRequest : mPrioritizedDcRequests) {
+                if (newActivePhones.size() >= maxNewActivePhones) break;
                 int phoneIdForRequest = phoneIdForRequest(dcRequest.networkRequest);
                 if (phoneIdForRequest == INVALID_PHONE_INDEX) continue;
-                if (newActivePhones.contains(phoneIdForRequest)) continue;
+                if (mLeadDcRequests[phoneIdForRequest] != dcRequest) continue;
                 newActivePhones.add(phoneIdForRequest);
-                if (newActivePhones.size() >= mMaxActivePhones) break;
             }
 
             if (VDBG) {
@@ -432,6 +514,8 @@ public class PhoneSwitcher extends Handler {
                     (ps.lastRequested == 0 ? "never" :
                      String.format("%tm-%td %tH:%tM:%tS.%tL", c, c, c, c, c, c)));
         }
+        pw.println("requests=" + mPrioritizedDcRequests.size() + ", skippedEvaluations="
+                + mSkippedEvaluations);
         pw.increaseIndent();
         mLocalLog.dump(fd, pw, args);
         pw.decreaseIndent();
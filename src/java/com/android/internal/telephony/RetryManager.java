@@ -30,6 +30,8 @@ import com.android.internal.telephony.dataconnection.ApnSetting;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Random;
 
 /**
@@ -151,34 +153,69 @@ public class RetryManager {
     private int mSameApnRetryCount = 0;
 
     /**
-     * Retry record with times in milli-seconds
+     * Immutable, parsed form of a retry configuration string. Policies are shared between all
+     * retry managers using the same configuration, so the delay tables are kept as primitive
+     * arrays and must never be modified after construction.
      */
-    private static class RetryRec {
-        RetryRec(int delayTime, int randomizationTime) {
-            mDelayTime = delayTime;
-            mRandomizationTime = randomizationTime;
-        }
+    private static final class RetryPolicy {
+        /** The configuration string this policy was parsed from */
+        final String mConfig;
+
+        /** Delay times in milli-seconds, one per retry */
+        final int[] mDelayTimes;
+
+        /** Randomization times in milli-seconds, one per retry */
+        final int[] mRandomizationTimes;
+
+        /** The maximum number of retries to attempt */
+        final int mMaxRetryCount;
+
+        /** Whether to retry forever regardless of mMaxRetryCount */
+        final boolean mRetryForever;
 
-        int mDelayTime;
-        int mRandomizationTime;
+        /**
+         * Whether the whole configuration string was valid. An invalid policy only holds what
+         * was parsed before the first error.
+         */
+        final boolean mValid;
+
+        RetryPolicy(String config, int[] delayTimes, int[] randomizationTimes, int maxRetryCount,
+                boolean retryForever, boolean valid) {
+            mConfig = config;
+            mDelayTimes = delayTimes;
+            mRandomizationTimes = randomizationTimes;
+            mMaxRetryCount = maxRetryCount;
+            mRetryForever = retryForever;
+            mValid = valid;
+        }
     }
 
     /**
-     * The array of retry records
+     * The maximum number of parsed retry policies kept in sRetryPolicies. Carriers only define a
+     * handful of retry configurations, so this is only reached if the configuration keeps
+     * changing, in which case the cache is simply dropped.
      */
-    private ArrayList<RetryRec> mRetryArray = new ArrayList<RetryRec>();
+    private static final int MAX_CACHED_RETRY_POLICIES = 32;
 
-    private Phone mPhone;
+    /**
+     * Parsed retry policies keyed by configuration string, shared by all retry managers.
+     * Guarded by itself.
+     */
+    private static final HashMap<String, RetryPolicy> sRetryPolicies =
+            new HashMap<String, RetryPolicy>();
 
     /**
-     * Flag indicating whether retrying forever regardless the maximum retry count mMaxRetryCount
+     * The policy used before any configuration has been loaded.
      */
-    private boolean mRetryForever = false;
+    private static final RetryPolicy EMPTY_RETRY_POLICY =
+            new RetryPolicy("", new int[0], new int[0], 0, false, true);
 
     /**
-     * The maximum number of retries to attempt
+     * The retry policy currently in use. Never null.
      */
-    private int mMaxRetryCount;
+    private RetryPolicy mRetryPolicy = EMPTY_RETRY_POLICY;
+
+    private Phone mPhone;
 
     /**
      * The current number of retries
@@ -191,11 +228,6 @@ public class RetryManager {
      */
     private Random mRng = new Random();
 
-    /**
-     * Retry manager configuration string. See top of the detailed explanation.
-     */
-    private String mConfig;
-
     /**
      * The list to store APN setting candidates for data call setup. Most of the carriers only have
      * one APN, but few carriers have more than one.
@@ -238,15 +270,57 @@ public class RetryManager {
         // Reset the retry manager since delay, max retry count, etc...will be reset.
         reset();
 
-        if (DBG) log("configure: '" + configStr + "'");
-        mConfig = configStr;
+        RetryPolicy policy;
+        synchronized (sRetryPolicies) {
+            policy = sRetryPolicies.get(configStr);
+        }
+
+        boolean success = true;
+        if (policy == null) {
+            if (DBG) log("configure: '" + configStr + "'");
+            policy = parseRetryPolicy(configStr);
+            success = policy.mValid;
+            if (success) {
+                synchronized (sRetryPolicies) {
+                    if (sRetryPolicies.size() >= MAX_CACHED_RETRY_POLICIES) {
+                        sRetryPolicies.clear();
+                    }
+                    sRetryPolicies.put(configStr, policy);
+                }
+            }
+            // Invalid configurations are not cached, so the error is logged each time. As
+            // before, what was parsed up to the error is still used.
+        } else if (VDBG) {
+            log("configure: using cached policy for '" + configStr + "'");
+        }
+
+        mRetryPolicy = policy;
+        return success;
+    }
+
+    /**
+     * Parse a retry configuration string into an immutable retry policy. See class comments for
+     * the string format.
+     *
+     * @return The parsed policy. If the configuration is invalid, the policy holds the values
+     *         parsed before the first error and is marked as not valid.
+     */
+    private RetryPolicy parseRetryPolicy(String configStr) {
+        int maxRetryCount = 0;
+        boolean retryForever = false;
+        int[] delayTimes = new int[0];
+        int[] randomizationTimes = new int[0];
+        boolean valid = true;
 
         if (!TextUtils.isEmpty(configStr)) {
             int defaultRandomization = 0;
+            int count = 0;
 
             if (VDBG) log("configure: not empty");
 
             String strArray[] = configStr.split(",");
+            delayTimes = new int[strArray.length];
+            randomizationTimes = new int[strArray.length];
             for (int i = 0; i < strArray.length; i++) {
                 if (VDBG) log("configure: strArray[" + i + "]='" + strArray[i] + "'");
                 Pair<Boolean, Integer> value;
@@ -258,20 +332,27 @@ public class RetryManager {
                     if (VDBG) log("configure: splitStr[1]='" + splitStr[1] + "'");
                     if (TextUtils.equals(splitStr[0], "default_randomization")) {
                         value = parseNonNegativeInt(splitStr[0], splitStr[1]);
-                        if (!value.first) return false;
+                        if (!value.first) {
+                            valid = false;
+                            break;
+                        }
                         defaultRandomization = value.second;
                     } else if (TextUtils.equals(splitStr[0], "max_retries")) {
                         if (TextUtils.equals("infinite", splitStr[1])) {
-                            mRetryForever = true;
+                            retryForever = true;
                         } else {
                             value = parseNonNegativeInt(splitStr[0], splitStr[1]);
-                            if (!value.first) return false;
-                            mMaxRetryCount = value.second;
+                            if (!value.first) {
+                                valid = false;
+                                break;
+                            }
+                            maxRetryCount = value.second;
                         }
                     } else {
                         Rlog.e(LOG_TAG, "Unrecognized configuration name value pair: "
                                         + strArray[i]);
-                        return false;
+                        valid = false;
+                        break;
                     }
                 } else {
                     /**
@@ -280,34 +361,44 @@ public class RetryManager {
                      */
                     splitStr = strArray[i].split(":", 2);
                     splitStr[0] = splitStr[0].trim();
-                    RetryRec rr = new RetryRec(0, 0);
                     value = parseNonNegativeInt("delayTime", splitStr[0]);
-                    if (!value.first) return false;
-                    rr.mDelayTime = value.second;
+                    if (!value.first) {
+                        valid = false;
+                        break;
+                    }
+                    delayTimes[count] = value.second;
 
                     // Check if optional randomization value present
                     if (splitStr.length > 1) {
                         splitStr[1] = splitStr[1].trim();
                         if (VDBG) log("configure: splitStr[1]='" + splitStr[1] + "'");
                         value = parseNonNegativeInt("randomizationTime", splitStr[1]);
-                        if (!value.first) return false;
-                        rr.mRandomizationTime = value.second;
+                        if (!value.first) {
+                            valid = false;
+                            break;
+                        }
+                        randomizationTimes[count] = value.second;
                     } else {
-                        rr.mRandomizationTime = defaultRandomization;
+                        randomizationTimes[count] = defaultRandomization;
                     }
-                    mRetryArray.add(rr);
+                    count++;
                 }
             }
-            if (mRetryArray.size() > mMaxRetryCount) {
-                mMaxRetryCount = mRetryArray.size();
-                if (VDBG) log("configure: setting mMaxRetryCount=" + mMaxRetryCount);
+            if (count < strArray.length) {
+                delayTimes = Arrays.copyOf(delayTimes, count);
+                randomizationTimes = Arrays.copyOf(randomizationTimes, count);
+            }
+            if (valid && count > maxRetryCount) {
+                maxRetryCount = count;
+                if (VDBG) log("configure: setting maxRetryCount=" + maxRetryCount);
             }
         } else {
             log("configure: cleared");
         }
 
-        if (VDBG) log("configure: true");
-        return true;
+        if (VDBG) log("configure: " + valid);
+        return new RetryPolicy(configStr, delayTimes, randomizationTimes, maxRetryCount,
+                retryForever, valid);
     }
 
     /**
@@ -394,21 +485,23 @@ public class RetryManager {
      * Return the timer that should be used to trigger the data reconnection
      */
     private int getRetryTimer() {
+        final int[] delayTimes = mRetryPolicy.mDelayTimes;
         int index;
-        if (mRetryCount < mRetryArray.size()) {
+        if (mRetryCount < delayTimes.length) {
             index = mRetryCount;
         } else {
-            index = mRetryArray.size() - 1;
+            index = delayTimes.length - 1;
         }
 
         int retVal;
-        if ((index >= 0) && (index < mRetryArray.size())) {
-            retVal = mRetryArray.get(index).mDelayTime + nextRandomizationTime(index);
+        if (index >= 0) {
+            retVal = delayTimes[index] + nextRandomizationTime(index);
         } else {
             retVal = 0;
         }
 
-        if (DBG) log("getRetryTimer: " + retVal);
+        // This is on the retry path which should not allocate, so only log when verbose.
+        if (VDBG) log("getRetryTimer: " + retVal);
         return retVal;
     }
 
@@ -458,7 +551,7 @@ public class RetryManager {
      * @param index Retry index
      */
     private int nextRandomizationTime(int index) {
-        int randomTime = mRetryArray.get(index).mRandomizationTime;
+        int randomTime = mRetryPolicy.mRandomizationTimes[index];
         if (randomTime == 0) {
             return 0;
         } else {
@@ -554,8 +647,8 @@ public class RetryManager {
         long delay;
         if (index <= mCurrentApnIndex) {
             // Case 1, if the next APN is in the next round.
-            if (!mRetryForever && mRetryCount + 1 > mMaxRetryCount) {
-                log("Reached maximum retry count " + mMaxRetryCount + ".");
+            if (!mRetryPolicy.mRetryForever && mRetryCount + 1 > mRetryPolicy.mMaxRetryCount) {
+                log("Reached maximum retry count " + mRetryPolicy.mMaxRetryCount + ".");
                 return NO_RETRY;
             }
             delay = getRetryTimer();
@@ -590,12 +683,11 @@ public class RetryManager {
      * Reset the retry manager.
      */
     private void reset() {
-        mMaxRetryCount = 0;
+        mRetryPolicy = EMPTY_RETRY_POLICY;
         mRetryCount = 0;
         mCurrentApnIndex = -1;
         mSameApnRetryCount = 0;
         mModemSuggestedDelay = NO_SUGGESTED_RETRY_DELAY;
-        mRetryArray.clear();
     }
 
     /**
@@ -656,21 +748,23 @@ public class RetryManager {
 
     public String toString() {
         return "mApnType=" + mApnType + " mRetryCount=" + mRetryCount +
-                " mMaxRetryCount=" + mMaxRetryCount + " mCurrentApnIndex=" + mCurrentApnIndex +
+                " mMaxRetryCount=" + mRetryPolicy.mMaxRetryCount +
+                " mCurrentApnIndex=" + mCurrentApnIndex +
                 " mSameApnRtryCount=" + mSameApnRetryCount + " mModemSuggestedDelay=" +
-                mModemSuggestedDelay + " mRetryForever=" + mRetryForever +
-                " mConfig={" + mConfig + "}";
+                mModemSuggestedDelay + " mRetryForever=" + mRetryPolicy.mRetryForever +
+                " mConfig={" + mRetryPolicy.mConfig + "}";
     }
 
     public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
         pw.println("  RetryManager");
         pw.println("***************************************");
 
-        pw.println("    config = " + mConfig);
+        pw.println("    config = " + mRetryPolicy.mConfig);
         pw.println("    mApnType = " + mApnType);
         pw.println("    mCurrentApnIndex = " + mCurrentApnIndex);
         pw.println("    mRetryCount = " + mRetryCount);
-        pw.println("    mMaxRetryCount = " + mMaxRetryCount);
+        pw.println("    mMaxRetryCount = " + mRetryPolicy.mMaxRetryCount);
+        pw.println("    mRetryForever = " + mRetryPolicy.mRetryForever);
         pw.println("    mSameApnRetryCount = " + mSameApnRetryCount);
         pw.println("    mModemSuggestedDelay = " + mModemSuggestedDelay);
 
@@ -39,6 +39,7 @@ import android.os.Handler;
 import android.os.Message;
 import android.os.Process;
 import android.os.RemoteException;
+import android.os.SystemProperties;
 import android.os.UserHandle;
 import android.provider.Settings;
 import android.provider.Telephony;
@@ -66,10 +67,14 @@ import android.widget.CompoundButton;
 import android.widget.TextView;
 
 import com.android.internal.R;
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telephony.GsmAlphabet.TextEncodingDetails;
 import com.android.internal.telephony.uicc.UiccCard;
 import com.android.internal.telephony.uicc.UiccController;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -134,6 +139,9 @@ public abstract class SMSDispatcher extends Handler {
     protected static final int EVENT_NEW_ICC_SMS = 14;
     protected static final int EVENT_ICC_CHANGED = 15;
 
+    /** Send the next part of a multipart message whose send window has room. */
+    private static final int EVENT_SEND_NEXT_PART = 16;
+
     protected Phone mPhone;
     protected final Context mContext;
     protected final ContentResolver mResolver;
@@ -148,6 +156,11 @@ public abstract class SMSDispatcher extends Handler {
     private static final int SINGLE_PART_SMS = 1;
     /** Message sending queue limit */
     private static final int MO_MSG_QUEUE_LIMIT = 5;
+    /**
+     * Maximum number of parts of a multipart message outstanding at the radio at once, 0 to hand
+     * all of them to the radio right away.
+     */
+    private static final String PROPERTY_MULTIPART_SEND_WINDOW = "persist.radio.sms_send_window";
 
     /**
      * Message reference for a CONCATENATED_8_BIT_REFERENCE or
@@ -165,6 +178,9 @@ public abstract class SMSDispatcher extends Handler {
     /** Number of outgoing SmsTrackers waiting for user confirmation. */
     private int mPendingTrackerCount;
 
+    /** See {@link #PROPERTY_MULTIPART_SEND_WINDOW}. */
+    private int mMultipartSendWindow;
+
     /* Flags indicating whether the current device allows sms service */
     protected boolean mSmsCapable = true;
     protected boolean mSmsSendDisabled;
@@ -196,8 +212,25 @@ public abstract class SMSDispatcher extends Handler {
                 com.android.internal.R.bool.config_sms_capable);
         mSmsSendDisabled = !mTelephonyManager.getSmsSendCapableForPhone(
                 mPhone.getPhoneId(), mSmsCapable);
+        mMultipartSendWindow = SystemProperties.getInt(PROPERTY_MULTIPART_SEND_WINDOW, 0);
         Rlog.d(TAG, "SMSDispatcher: ctor mSmsCapable=" + mSmsCapable + " format=" + getFormat()
-                + " mSmsSendDisabled=" + mSmsSendDisabled);
+                + " mSmsSendDisabled=" + mSmsSendDisabled
+                + " mMultipartSendWindow=" + mMultipartSendWindow);
+    }
+
+    /**
+     * Set the maximum number of parts of a multipart message outstanding at the radio at once,
+     * 0 for no limit.
+     */
+    @VisibleForTesting
+    public void setMultipartSendWindow(int window) {
+        mMultipartSendWindow = window;
+    }
+
+    public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println(getClass().getSimpleName() + ":");
+        pw.println(" mPendingTrackerCount=" + mPendingTrackerCount);
+        pw.println(" mMultipartSendWindow=" + mMultipartSendWindow);
     }
 
     /**
@@ -323,6 +356,10 @@ public abstract class SMSDispatcher extends Handler {
             handleStatusReport(msg.obj);
             break;
 
+        case EVENT_SEND_NEXT_PART:
+            sendSubmitPdu((SmsTracker) msg.obj);
+            break;
+
         default:
             Rlog.e(TAG, "handleMessage() ignoring message of unexpected type " + msg.what);
         }
@@ -947,6 +984,10 @@ public abstract class SMSDispatcher extends Handler {
             smsSender.sendSmsByCarrierApp(carrierPackage, new MultipartSmsSenderCallback(smsSender));
         } else {
             Rlog.v(TAG, "No carrier package.");
+            if (mMultipartSendWindow > 0 && msgCount > mMultipartSendWindow) {
+                new MultipartSendWindow(mMultipartSendWindow, trackers).start();
+                return;
+            }
             for (SmsTracker tracker : trackers) {
                 if (tracker != null) {
                     sendSubmitPdu(tracker);
@@ -957,6 +998,60 @@ public abstract class SMSDispatcher extends Handler {
         }
     }
 
+    /**
+     * Hands the parts of a multipart message to the radio in order, at most a window of them at
+     * a time. A part leaves the window once it is sent or has failed for good; a part being
+     * retried keeps its place. Parts but the last are still sent with "expect more", so the
+     * link stays up between them.
+     */
+    private final class MultipartSendWindow {
+        private final ArrayDeque<SmsTracker> mWaitingParts = new ArrayDeque<SmsTracker>();
+        private final int mSize;
+        private int mOutstandingParts;
+
+        MultipartSendWindow(int size, SmsTracker[] trackers) {
+            mSize = size;
+            for (SmsTracker tracker : trackers) {
+                if (tracker != null) {
+                    tracker.mSendWindow = this;
+                    mWaitingParts.add(tracker);
+                } else {
+                    Rlog.e(TAG, "Null tracker.");
+                }
+            }
+        }
+
+        void start() {
+            List<SmsTracker> firstParts = new ArrayList<SmsTracker>(mSize);
+            synchronized (this) {
+                while (mOutstandingParts < mSize && !mWaitingParts.isEmpty()) {
+                    firstParts.add(mWaitingParts.poll());
+                    mOutstandingParts++;
+                }
+            }
+            for (SmsTracker tracker : firstParts) {
+                sendSubmitPdu(tracker);
+            }
+        }
+
+        /**
+         * Called when a part is done, on whatever thread that happens; the next part is sent
+         * from the handler.
+         */
+        void onPartDone() {
+            SmsTracker next;
+            synchronized (this) {
+                mOutstandingParts--;
+                next = mWaitingParts.poll();
+                if (next == null) {
+                    return;
+                }
+                mOutstandingParts++;
+            }
+            sendMessage(obtainMessage(EVENT_SEND_NEXT_PART, next));
+        }
+    }
+
     /**
      * Create a new SubmitPdu and return the SMS tracker.
      */
@@ -1420,6 +1515,9 @@ public abstract class SMSDispatcher extends Handler {
 
         private boolean mPersistMessage;
 
+        // The send window of the multipart message this part belongs to, if it uses one
+        private MultipartSendWindow mSendWindow;
+
         private SmsTracker(HashMap<String, Object> data, PendingIntent sentIntent,
                 PendingIntent deliveryIntent, PackageInfo appInfo, String destAddr, String format,
                 AtomicInteger unsentPartCount, AtomicBoolean anyPartFailed, Uri messageUri,
@@ -1608,6 +1706,9 @@ public abstract class SMSDispatcher extends Handler {
                     Rlog.e(TAG, "Failed to send result");
                 }
             }
+            if (mSendWindow != null) {
+                mSendWindow.onPartDone();
+            }
         }
 
         /**
@@ -1645,6 +1746,9 @@ public abstract class SMSDispatcher extends Handler {
                     Rlog.e(TAG, "Failed to send result");
                 }
             }
+            if (mSendWindow != null) {
+                mSendWindow.onPartDone();
+            }
         }
     }
 
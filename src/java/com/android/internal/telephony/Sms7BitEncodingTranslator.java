@@ -33,12 +33,16 @@ import org.xmlpull.v1.XmlPullParserException;
 public class Sms7BitEncodingTranslator {
     private static final String TAG = "Sms7BitEncodingTranslator";
     private static final boolean DBG = Build.IS_DEBUGGABLE ;
-    private static boolean mIs7BitTranslationTableLoaded = false;
+    private static volatile boolean mIs7BitTranslationTableLoaded = false;
     private static SparseIntArray mTranslationTable = null;
     private static SparseIntArray mTranslationTableCommon = null;
     private static SparseIntArray mTranslationTableGSM = null;
     private static SparseIntArray mTranslationTableCDMA = null;
 
+    // Translations of every char for each format, null if the translation table is empty
+    private static volatile CharTranslation sGsmTranslation;
+    private static volatile CharTranslation sCdmaTranslation;
+
     // Parser variables
     private static final String XML_START_TAG = "SmsEnforce7BitTranslationTable";
     private static final String XML_TRANSLATION_TYPE_TAG = "TranslationType";
@@ -46,6 +50,41 @@ public class Sms7BitEncodingTranslator {
     private static final String XML_FROM_TAG = "from";
     private static final String XML_TO_TAG = "to";
 
+    /**
+     * The translation of every char for one format, in pages of 256 chars. Pages of chars that
+     * are all replaced by a space share one array.
+     */
+    private static final class CharTranslation {
+        private static final int PAGE_SHIFT = 8;
+        private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+        private final char[][] mPages = new char[(Character.MAX_VALUE + 1) >> PAGE_SHIFT][];
+
+        CharTranslation(boolean isCdmaFormat) {
+            char[] spacePage = null;
+            for (int page = 0; page < mPages.length; page++) {
+                char[] translations = new char[PAGE_SIZE];
+                boolean allSpaces = true;
+                for (int i = 0; i < PAGE_SIZE; i++) {
+                    translations[i] = translateIfNeeded((char) ((page << PAGE_SHIFT) | i),
+                            isCdmaFormat);
+                    allSpaces &= translations[i] == ' ';
+                }
+                if (allSpaces) {
+                    if (spacePage == null) {
+                        spacePage = translations;
+                    }
+                    translations = spacePage;
+                }
+                mPages[page] = translations;
+            }
+        }
+
+        char translate(char c) {
+            return mPages[c >> PAGE_SHIFT][c & (PAGE_SIZE - 1)];
+        }
+    }
+
     /**
      * Translates each message character that is not supported by GSM 7bit
      * alphabet into a supported one
@@ -55,7 +94,8 @@ public class Sms7BitEncodingTranslator {
      * @param throwsException
      *            if true and some error occurs during translation, an exception
      *            is thrown; otherwise a null String is returned
-     * @return translated message or null if some error occur
+     * @return translated message or null if some error occur; message itself, as a String,
+     *         if none of its characters needs translating
      */
     public static String translate(CharSequence message) {
         if (message == null) {
@@ -69,26 +109,60 @@ public class Sms7BitEncodingTranslator {
         }
 
         if (!mIs7BitTranslationTableLoaded) {
-            mTranslationTableCommon = new SparseIntArray();
-            mTranslationTableGSM = new SparseIntArray();
-            mTranslationTableCDMA = new SparseIntArray();
-            load7BitTranslationTableFromXml();
-            mIs7BitTranslationTableLoaded = true;
-        }
-
-        if ((mTranslationTableCommon != null && mTranslationTableCommon.size() > 0) ||
-                (mTranslationTableGSM != null && mTranslationTableGSM.size() > 0) ||
-                (mTranslationTableCDMA != null && mTranslationTableCDMA.size() > 0)) {
-            char[] output = new char[size];
-            boolean isCdmaFormat = useCdmaFormatForMoSms();
-            for (int i = 0; i < size; i++) {
-                output[i] = translateIfNeeded(message.charAt(i), isCdmaFormat);
+            load7BitTranslationTables();
+        }
+        CharTranslation gsmTranslation = sGsmTranslation;
+        CharTranslation cdmaTranslation = sCdmaTranslation;
+        if (gsmTranslation == null) {
+            return null;
+        }
+
+        // Most messages need no translation in either format, and then the format, which
+        // takes a binder call to find, does not matter
+        int start = 0;
+        while (start < size) {
+            char c = message.charAt(start);
+            if (gsmTranslation.translate(c) != c || cdmaTranslation.translate(c) != c) {
+                break;
             }
+            start++;
+        }
+        if (start == size) {
+            return message.toString();
+        }
 
-            return String.valueOf(output);
+        CharTranslation translation = useCdmaFormatForMoSms() ? cdmaTranslation : gsmTranslation;
+        char[] output = new char[size];
+        for (int i = 0; i < start; i++) {
+            output[i] = message.charAt(i);
+        }
+        boolean translated = false;
+        for (int i = start; i < size; i++) {
+            char c = message.charAt(i);
+            output[i] = translation.translate(c);
+            translated |= output[i] != c;
         }
+        return translated ? String.valueOf(output) : message.toString();
+    }
 
-        return null;
+    /**
+     * Load the translation tables and build the translation of every char from them, once.
+     */
+    private static synchronized void load7BitTranslationTables() {
+        if (mIs7BitTranslationTableLoaded) {
+            return;
+        }
+        mTranslationTableCommon = new SparseIntArray();
+        mTranslationTableGSM = new SparseIntArray();
+        mTranslationTableCDMA = new SparseIntArray();
+        load7BitTranslationTableFromXml();
+
+        if (mTranslationTableCommon.size() > 0 || mTranslationTableGSM.size() > 0
+                || mTranslationTableCDMA.size() > 0) {
+            sGsmTranslation = new CharTranslation(false);
+            sCdmaTranslation = new CharTranslation(true);
+        }
+        mIs7BitTranslationTableLoaded = true;
     }
 
     /**
@@ -104,9 +178,6 @@ public class Sms7BitEncodingTranslator {
      */
     private static char translateIfNeeded(char c, boolean isCdmaFormat) {
         if (noTranslationNeeded(c, isCdmaFormat)) {
-            if (DBG) {
-                Rlog.v(TAG, "No translation needed for " + Integer.toHexString(c));
-            }
             return c;
         }
 
@@ -136,16 +207,8 @@ public class Sms7BitEncodingTranslator {
         }
 
         if (translation != -1) {
-            if (DBG) {
-                Rlog.v(TAG, Integer.toHexString(c) + " (" + c + ")" + " translated to "
-                        + Integer.toHexString(translation) + " (" + (char) translation + ")");
-            }
             return (char) translation;
         } else {
-            if (DBG) {
-                Rlog.w(TAG, "No translation found for " + Integer.toHexString(c)
-                        + "! Replacing for empty space");
-            }
             return ' ';
         }
     }
@@ -0,0 +1,488 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import android.content.res.Resources;
+import android.telephony.SmsMessage;
+import android.text.TextUtils;
+import android.util.SparseArray;
+
+import com.android.internal.telephony.GsmAlphabet.TextEncodingDetails;
+import com.android.internal.telephony.cdma.sms.UserData;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Plans how a message text is sent as MO SMS: the encoding, the national language tables, the
+ * number of segments and the text of each segment. The results are those of
+ * {@link com.android.internal.telephony.gsm.SmsMessage#calculateLength} (or its CDMA
+ * counterpart) followed by {@link android.telephony.SmsMessage#fragmentText}.
+ *
+ * <p>Those count the septets of the whole text for every pair of enabled language tables, then
+ * walk it again to find where to split it. The planner keeps the septet count and the split
+ * points of every pair up to date as text is appended, so each character is looked at once,
+ * and a message that is being typed only costs the characters typed since the last call.
+ *
+ * <p>The planner keeps a copy of the text appended so far, to tell whether a longer text
+ * extends it. The text is passed again to the methods that need it.
+ *
+ * <p>Not thread safe.
+ *
+ * {@hide}
+ */
+public final class SmsEncodingPlanner {
+
+    private static final Object sLock = new Object();
+    private static CostTable sCostTable;
+
+    private final boolean mCdmaFormat;
+    private final boolean mUse7bitOnly;
+    private final CostTable mCostTable;
+
+    // Whether the text is encoded after the 7-bit translation
+    private final boolean mForce7bit;
+
+    // The text appended so far
+    private final StringBuilder mText = new StringBuilder();
+    private int mLength;
+
+    // Whether every character has a 7-bit ASCII code, for CDMA
+    private boolean mAllAscii = true;
+
+    // Per pair of language tables, in the order of the cost table. The septet count is -1 once
+    // a character that the pair cannot encode is appended, unless unencodable characters are
+    // counted as spaces.
+    private final int[] mSeptets;
+    private final int[] mUnencodableChars;
+    // Septets in the last segment and the start of every segment, for a multipart message
+    private final int[] mSegmentSeptets;
+    private final int[][] mSegmentStarts;
+    private final int[] mSegmentCounts;
+
+    private TextEncodingDetails mDetails;
+    // The pair of language tables of mDetails, -1 for 16-bit or 7-bit ASCII
+    private int mDetailsPair;
+
+    /**
+     * Septet costs of characters for every pair of language tables that
+     * {@link GsmAlphabet#countGsmSeptets(CharSequence, boolean)} considers, in the same order.
+     * Shared by all planners while the enabled tables stay the same.
+     */
+    private static final class CostTable {
+        final int[] mLockingShiftTables;
+        final int[] mSingleShiftTables;
+
+        final int[] mLanguageTables;
+        final int[] mLanguageShiftTables;
+        // User data header septets of a single segment message, 0 without language tables
+        final int[] mUdhLengths;
+        // Septets of text in a segment of a multipart message
+        final int[] mSegmentLimits;
+
+        // Septet cost of a character for each pair: 1 or 2, 0 for the escape character and -1
+        // if the pair cannot encode it. Guarded by this.
+        private final SparseArray<byte[]> mCosts = new SparseArray<byte[]>();
+
+        CostTable(int[] lockingShiftTables, int[] singleShiftTables) {
+            mLockingShiftTables = lockingShiftTables;
+            mSingleShiftTables = singleShiftTables;
+
+            int[] languageTables = new int[lockingShiftTables.length + 1];
+            int languageCount = 1;
+            for (int table : lockingShiftTables) {
+                if (table != 0) {
+                    languageTables[languageCount++] = table;
+                }
+            }
+            // Like GsmAlphabet, only take the single shift tables in ascending order
+            int maxSingleShiftTable = singleShiftTables.length > 0
+                    ? singleShiftTables[singleShiftTables.length - 1] : 0;
+            int[] shiftTables = new int[singleShiftTables.length + 1];
+            int shiftCount = 1;
+            for (int table = 1, offset = 0; table <= maxSingleShiftTable; table++) {
+                if (offset < singleShiftTables.length && singleShiftTables[offset] == table) {
+                    shiftTables[shiftCount++] = table;
+                    offset++;
+                }
+            }
+
+            int pairCount = 0;
+            int[] pairLanguageTables = new int[languageCount * shiftCount];
+            int[] pairShiftTables = new int[languageCount * shiftCount];
+            for (int i = 0; i < languageCount; i++) {
+                for (int j = 0; j < shiftCount; j++) {
+                    int languageTable = languageTables[i];
+                    int shiftTable = shiftTables[j];
+                    // Turkish locking with Turkish single shift and Portuguese locking with
+                    // Spanish single shift are never optimal, GsmAlphabet skips them
+                    if ((languageTable == 1 && shiftTable == 1)
+                            || (languageTable == 3 && shiftTable == 2)) {
+                        continue;
+                    }
+                    pairLanguageTables[pairCount] = languageTable;
+                    pairShiftTables[pairCount] = shiftTable;
+                    pairCount++;
+                }
+            }
+            mLanguageTables = Arrays.copyOf(pairLanguageTables, pairCount);
+            mLanguageShiftTables = Arrays.copyOf(pairShiftTables, pairCount);
+
+            mUdhLengths = new int[pairCount];
+            mSegmentLimits = new int[pairCount];
+            for (int i = 0; i < pairCount; i++) {
+                int tablesLength;
+                if (mLanguageTables[i] != 0 && mLanguageShiftTables[i] != 0) {
+                    tablesLength = GsmAlphabet.UDH_SEPTET_COST_TWO_SHIFT_TABLES;
+                } else if (mLanguageTables[i] != 0 || mLanguageShiftTables[i] != 0) {
+                    tablesLength = GsmAlphabet.UDH_SEPTET_COST_ONE_SHIFT_TABLE;
+                } else {
+                    tablesLength = 0;
+                }
+                mUdhLengths[i] = (tablesLength != 0)
+                        ? GsmAlphabet.UDH_SEPTET_COST_LENGTH + tablesLength : 0;
+                mSegmentLimits[i] = SmsConstants.MAX_USER_DATA_SEPTETS
+                        - GsmAlphabet.UDH_SEPTET_COST_LENGTH - tablesLength
+                        - GsmAlphabet.UDH_SEPTET_COST_CONCATENATED_MESSAGE;
+            }
+        }
+
+        int getPairCount() {
+            return mLanguageTables.length;
+        }
+
+        byte[] getCosts(char c) {
+            byte[] costs = mCosts.get(c);
+            if (costs == null) {
+                String s = String.valueOf(c);
+                costs = new byte[getPairCount()];
+                for (int i = 0; i < costs.length; i++) {
+                    costs[i] = (byte) GsmAlphabet.countGsmSeptetsUsingTables(s, false,
+                            mLanguageTables[i], mLanguageShiftTables[i]);
+                }
+                mCosts.put(c, costs);
+            }
+            return costs;
+        }
+    }
+
+    private static CostTable getCostTable() {
+        // Counting no text has GsmAlphabet load the tables enabled for the current MCC
+        GsmAlphabet.countGsmSeptets("", false);
+        int[] lockingShiftTables = GsmAlphabet.getEnabledLockingShiftTables();
+        int[] singleShiftTables = GsmAlphabet.getEnabledSingleShiftTables();
+        synchronized (sLock) {
+            if (sCostTable == null
+                    || !Arrays.equals(sCostTable.mLockingShiftTables, lockingShiftTables)
+                    || !Arrays.equals(sCostTable.mSingleShiftTables, singleShiftTables)) {
+                sCostTable = new CostTable(lockingShiftTables.clone(),
+                        singleShiftTables.clone());
+            }
+            return sCostTable;
+        }
+    }
+
+    /**
+     * @param cdmaFormat whether the message is sent in 3GPP2 format
+     * @param use7bitOnly if true, characters that are not part of the 7-bit alphabet are counted
+     *         as spaces; otherwise they force 16-bit encoding
+     */
+    public SmsEncodingPlanner(boolean cdmaFormat, boolean use7bitOnly) {
+        mCdmaFormat = cdmaFormat;
+        mUse7bitOnly = use7bitOnly;
+        mCostTable = getCostTable();
+        mForce7bit = Resources.getSystem().getBoolean(
+                com.android.internal.R.bool.config_sms_force_7bit_encoding);
+
+        int pairCount = mCostTable.getPairCount();
+        mSeptets = new int[pairCount];
+        mUnencodableChars = new int[pairCount];
+        mSegmentSeptets = new int[pairCount];
+        mSegmentStarts = new int[pairCount][];
+        mSegmentCounts = new int[pairCount];
+    }
+
+    /**
+     * @return whether this planner can take the text by appending to what it has, that is the
+     * text starts with the text of the planner, and the settings and enabled language tables are
+     * the same
+     */
+    public boolean canAppendTo(CharSequence text, boolean cdmaFormat, boolean use7bitOnly) {
+        if (mCdmaFormat != cdmaFormat || mUse7bitOnly != use7bitOnly
+                || mCostTable != getCostTable() || text.length() < mLength) {
+            return false;
+        }
+        return TextUtils.regionMatches(text, 0, mText, 0, mLength);
+    }
+
+    /**
+     * @return the length of the text appended so far
+     */
+    public int length() {
+        return mLength;
+    }
+
+    /**
+     * @return the text as encoded, after the 7-bit translation if that is enforced
+     */
+    private CharSequence getEncodedText(CharSequence text) {
+        if (mForce7bit) {
+            // Characters are translated one by one, so the length does not change
+            String translated = Sms7BitEncodingTranslator.translate(text);
+            if (!TextUtils.isEmpty(translated)) {
+                return translated;
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Append text to the message.
+     */
+    public void append(CharSequence text) {
+        if (text.length() == 0) {
+            return;
+        }
+        mDetails = null;
+        mText.append(text);
+        int start = mLength;
+        mLength += text.length();
+        // Pieces can be translated separately
+        text = getEncodedText(text);
+
+        int pairCount = mSeptets.length;
+        synchronized (mCostTable) {
+            for (int i = start, end = mLength; i < end; i++) {
+                char c = text.charAt(i - start);
+                if (mAllAscii && UserData.charToAscii.get(c, -1) == -1) {
+                    mAllAscii = false;
+                }
+                byte[] costs = mCostTable.getCosts(c);
+                for (int pair = 0; pair < pairCount; pair++) {
+                    if (mSeptets[pair] == -1) {
+                        continue;
+                    }
+                    int cost = costs[pair];
+                    if (cost == -1) {
+                        if (!mUse7bitOnly) {
+                            mSeptets[pair] = -1;
+                            continue;
+                        }
+                        mUnencodableChars[pair]++;
+                        mSeptets[pair]++;
+                    } else {
+                        mSeptets[pair] += cost;
+                    }
+                    // GsmAlphabet.findGsmSeptetLimitIndex counts any character that is not in
+                    // the single shift table as one septet
+                    int splitCost = (cost == 2) ? 2 : 1;
+                    mSegmentSeptets[pair] += splitCost;
+                    if (i == 0 || mSegmentSeptets[pair] > mCostTable.mSegmentLimits[pair]) {
+                        addSegmentStart(pair, i);
+                        mSegmentSeptets[pair] = splitCost;
+                    }
+                }
+            }
+        }
+    }
+
+    private void addSegmentStart(int pair, int start) {
+        int[] starts = mSegmentStarts[pair];
+        int count = mSegmentCounts[pair];
+        if (starts == null) {
+            starts = new int[4];
+        } else if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count] = start;
+        mSegmentStarts[pair] = starts;
+        mSegmentCounts[pair] = count + 1;
+    }
+
+    /**
+     * @param text the text appended so far
+     * @return the encoding details of the text, as returned by
+     * {@link com.android.internal.telephony.gsm.SmsMessage#calculateLength} or
+     * {@link com.android.internal.telephony.cdma.SmsMessage#calculateLength} for the entire
+     * message. Not to be modified.
+     */
+    public TextEncodingDetails getEncodingDetails(CharSequence text) {
+        if (mDetails == null) {
+            CharSequence encodedText = getEncodedText(text);
+            mDetails = mCdmaFormat ? calcCdmaEncodingDetails(encodedText)
+                    : calcGsmEncodingDetails(encodedText);
+        }
+        return mDetails;
+    }
+
+    private TextEncodingDetails calcCdmaEncodingDetails(CharSequence text) {
+        // See BearerData.calcTextEncodingDetails
+        int septets = mLength;
+        if ((mUse7bitOnly || mAllAscii) && septets <= SmsConstants.MAX_USER_DATA_SEPTETS) {
+            TextEncodingDetails ted = new TextEncodingDetails();
+            ted.msgCount = 1;
+            ted.codeUnitCount = septets;
+            ted.codeUnitsRemaining = SmsConstants.MAX_USER_DATA_SEPTETS - septets;
+            ted.codeUnitSize = SmsConstants.ENCODING_7BIT;
+            mDetailsPair = -1;
+            return ted;
+        }
+        TextEncodingDetails ted = calcGsmEncodingDetails(text);
+        if (ted.msgCount == 1 && ted.codeUnitSize == SmsConstants.ENCODING_7BIT) {
+            // Single segment EMS is not supported
+            mDetailsPair = -1;
+            return SmsMessageBase.calcUnicodeEncodingDetails(text);
+        }
+        return ted;
+    }
+
+    private TextEncodingDetails calcGsmEncodingDetails(CharSequence text) {
+        // Same choice as GsmAlphabet.countGsmSeptets: the fewest unencodable characters when
+        // they are counted as spaces, then the fewest segments, then the most septets left
+        TextEncodingDetails ted = null;
+        int tedPair = -1;
+        int minUnencodableChars = Integer.MAX_VALUE;
+        for (int pair = 0; pair < mSeptets.length; pair++) {
+            int septets = mSeptets[pair];
+            if (septets == -1) {
+                continue;
+            }
+            int udhLength = mCostTable.mUdhLengths[pair];
+            int msgCount;
+            int septetsRemaining;
+            if (septets + udhLength > SmsConstants.MAX_USER_DATA_SEPTETS) {
+                int septetsPerMessage = mCostTable.mSegmentLimits[pair];
+                msgCount = (septets + septetsPerMessage - 1) / septetsPerMessage;
+                septetsRemaining = (msgCount * septetsPerMessage) - septets;
+            } else {
+                msgCount = 1;
+                septetsRemaining = SmsConstants.MAX_USER_DATA_SEPTETS - udhLength - septets;
+            }
+
+            int unencodableChars = mUnencodableChars[pair];
+            if (mUse7bitOnly && unencodableChars > minUnencodableChars) {
+                continue;
+            }
+            if ((mUse7bitOnly && unencodableChars < minUnencodableChars) || ted == null
+                    || msgCount < ted.msgCount
+                    || (msgCount == ted.msgCount && septetsRemaining > ted.codeUnitsRemaining)) {
+                if (ted == null) {
+                    ted = new TextEncodingDetails();
+                    ted.codeUnitSize = SmsConstants.ENCODING_7BIT;
+                }
+                minUnencodableChars = unencodableChars;
+                ted.msgCount = msgCount;
+                ted.codeUnitCount = septets;
+                ted.codeUnitsRemaining = septetsRemaining;
+                ted.languageTable = mCostTable.mLanguageTables[pair];
+                ted.languageShiftTable = mCostTable.mLanguageShiftTables[pair];
+                tedPair = pair;
+            }
+        }
+        if (ted == null) {
+            mDetailsPair = -1;
+            return SmsMessageBase.calcUnicodeEncodingDetails(text);
+        }
+        mDetailsPair = tedPair;
+        return ted;
+    }
+
+    /**
+     * @param text the text appended so far
+     * @return the text of each segment, as returned by
+     * {@link android.telephony.SmsMessage#fragmentText}
+     */
+    public ArrayList<String> getFragments(CharSequence text) {
+        TextEncodingDetails ted = getEncodingDetails(text);
+        String encodedText = getEncodedText(text).toString();
+        int textLen = mLength;
+        ArrayList<String> result = new ArrayList<String>(ted.msgCount);
+        if (ted.codeUnitSize == SmsConstants.ENCODING_7BIT) {
+            int pair = mDetailsPair;
+            if (pair == -1) {
+                // A single CDMA message, the encoding must be ASCII
+                for (int pos = 0; pos < textLen; pos += SmsConstants.MAX_USER_DATA_SEPTETS) {
+                    result.add(encodedText.substring(pos,
+                            Math.min(pos + SmsConstants.MAX_USER_DATA_SEPTETS, textLen)));
+                }
+            } else if (ted.msgCount > 1) {
+                int[] starts = mSegmentStarts[pair];
+                int count = mSegmentCounts[pair];
+                for (int i = 0; i < count; i++) {
+                    result.add(encodedText.substring(starts[i],
+                            (i + 1 < count) ? starts[i + 1] : textLen));
+                }
+            } else {
+                addSingleSegmentFragments(result, encodedText, pair);
+            }
+        } else {
+            int limit;
+            if (ted.msgCount > 1) {
+                limit = SmsConstants.MAX_USER_DATA_BYTES_WITH_HEADER;
+                // Without EMS, each segment has the page info " x/y" added, which takes 2
+                // bytes more than the header, see android.telephony.SmsMessage#fragmentText
+                if (!SmsMessage.hasEmsSupport() && ted.msgCount < 10) {
+                    limit -= 2;
+                }
+            } else {
+                limit = SmsConstants.MAX_USER_DATA_BYTES;
+            }
+            BreakIterator breakIterator = null;
+            int pos = 0;
+            while (pos < textLen) {
+                if (breakIterator == null && pos + limit / 2 < textLen) {
+                    breakIterator = SmsMessageBase.newCharacterIterator(encodedText);
+                }
+                int nextPos = SmsMessageBase.findNextUnicodePosition(pos, limit, encodedText,
+                        breakIterator);
+                if (nextPos <= pos) {
+                    break;
+                }
+                result.add(encodedText.substring(pos, nextPos));
+                pos = nextPos;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Split a message that fits in one segment the way GsmAlphabet.findGsmSeptetLimitIndex does,
+     * which counts the escape character and unencodable characters as one septet each and so may
+     * still split it.
+     */
+    private void addSingleSegmentFragments(ArrayList<String> result, String text, int pair) {
+        int limit = SmsConstants.MAX_USER_DATA_SEPTETS - mCostTable.mUdhLengths[pair];
+        int textLen = text.length();
+        int start = 0;
+        int septets = 0;
+        synchronized (mCostTable) {
+            for (int i = 0; i < textLen; i++) {
+                int splitCost = (mCostTable.getCosts(text.charAt(i))[pair] == 2) ? 2 : 1;
+                septets += splitCost;
+                if (septets > limit) {
+                    result.add(text.substring(start, i));
+                    start = i;
+                    septets = splitCost;
+                }
+            }
+        }
+        if (start < textLen) {
+            result.add(text.substring(start, textLen));
+        }
+    }
+}
@@ -363,13 +363,29 @@ public abstract class SmsMessageBase {
      */
     public static int findNextUnicodePosition(
             int currentPosition, int byteLimit, CharSequence msgBody) {
+        return findNextUnicodePosition(currentPosition, byteLimit, msgBody, null);
+    }
+
+    /**
+     * Find the next position to start a new fragment of a multipart SMS.
+     *
+     * @param currentPosition current start position of the fragment
+     * @param byteLimit maximum number of bytes in the fragment
+     * @param msgBody text of the SMS in UTF-16 encoding
+     * @param breakIterator character break iterator over msgBody, or null to create one when
+     *         needed; pass the same one for all the fragments of a message
+     * @return the position to start the next fragment
+     */
+    public static int findNextUnicodePosition(int currentPosition, int byteLimit,
+            CharSequence msgBody, BreakIterator breakIterator) {
         int nextPos = Math.min(currentPosition + byteLimit / 2, msgBody.length());
         // Check whether the fragment ends in a character boundary. Some characters take 4-bytes
         // in UTF-16 encoding. Many carriers cannot handle
         // a fragment correctly if it does not end at a character boundary.
         if (nextPos < msgBody.length()) {
-            BreakIterator breakIterator = BreakIterator.getCharacterInstance();
-            breakIterator.setText(msgBody.toString());
+            if (breakIterator == null) {
+                breakIterator = newCharacterIterator(msgBody);
+            }
             if (!breakIterator.isBoundary(nextPos)) {
                 int breakPos = breakIterator.preceding(nextPos);
                 while (breakPos + 4 <= nextPos
@@ -391,6 +407,15 @@ public abstract class SmsMessageBase {
         return nextPos;
     }
 
+    /**
+     * @return a character break iterator over the text
+     */
+    public static BreakIterator newCharacterIterator(CharSequence msgBody) {
+        BreakIterator breakIterator = BreakIterator.getCharacterInstance();
+        breakIterator.setText(msgBody.toString());
+        return breakIterator;
+    }
+
     /**
      * Calculate the TextEncodingDetails of a message encoded in Unicode.
      */
@@ -413,11 +438,12 @@ public abstract class SmsMessageBase {
                 }
             }
 
+            BreakIterator breakIterator = newCharacterIterator(msgBody);
             int pos = 0;  // Index in code units.
             int msgCount = 0;
             while (pos < msgBody.length()) {
                 int nextPos = findNextUnicodePosition(pos, maxUserDataBytesWithHeader,
-                        msgBody);
+                        msgBody, breakIterator);
                 if (nextPos == msgBody.length()) {
                     ted.codeUnitsRemaining = pos + maxUserDataBytesWithHeader / 2 -
                             msgBody.length();
@@ -21,6 +21,7 @@ import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -41,11 +42,13 @@ import android.text.TextUtils;
 import android.text.format.Time;
 import android.util.Log;
 import java.util.Objects;
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telephony.IccCardConstants.State;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -53,8 +56,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SubscriptionController to provide an inter-process communication to
@@ -130,13 +133,324 @@ public class SubscriptionController extends ISub.Stub {
     private AppOpsManager mAppOps;
 
     // FIXME: Does not allow for multiple subs in a slot and change to SparseArray
+    // Written only through putSlotIdxToSubId()/clearSlotIdxToSubId(), read through
+    // sSlotSubIdIndex.
     private static Map<Integer, Integer> sSlotIdxToSubId =
             new ConcurrentHashMap<Integer, Integer>();
+
+    // Read-only copy of sSlotIdxToSubId, replaced as a whole whenever it changes
+    private static volatile SlotSubIdIndex sSlotSubIdIndex = SlotSubIdIndex.EMPTY;
     protected static int mDefaultFallbackSubId = SubscriptionManager.INVALID_SUBSCRIPTION_ID;
     protected static int mDefaultPhoneId = SubscriptionManager.DEFAULT_PHONE_INDEX;
 
     private int[] colorArr;
 
+    /**
+     * Bidirectional slot/subId index over primitive arrays, for the lookups done on
+     * every subId to phone resolution. Immutable, so it can be read without locking.
+     */
+    static final class SlotSubIdIndex {
+        // Marks an empty bucket of mSubIdKeys; not a valid subId
+        private static final int EMPTY_KEY = Integer.MIN_VALUE;
+
+        static final SlotSubIdIndex EMPTY = new SlotSubIdIndex(new int[0], new int[0]);
+
+        // subIds of each slot, indexed by slot
+        private final int[][] mSlotToSubIds;
+
+        // Open addressed subId to slot map with linear probing, capacity a power of two
+        private final int[] mSubIdKeys;
+        private final int[] mSubIdSlots;
+        private final int mMask;
+
+        // All subIds, ordered by slot
+        private final int[] mSubIds;
+
+        /**
+         * @param slots slot of each entry
+         * @param subIds subId of each entry, same length as slots
+         */
+        SlotSubIdIndex(int[] slots, int[] subIds) {
+            int maxSlot = -1;
+            for (int slot : slots) {
+                if (slot > maxSlot) maxSlot = slot;
+            }
+
+            int[] subIdCount = new int[maxSlot + 1];
+            for (int slot : slots) {
+                if (slot >= 0) subIdCount[slot]++;
+            }
+            mSlotToSubIds = new int[maxSlot + 1][];
+            for (int slot = 0; slot <= maxSlot; slot++) {
+                mSlotToSubIds[slot] = subIdCount[slot] > 0 ? new int[subIdCount[slot]] : null;
+                subIdCount[slot] = 0;
+            }
+
+            int capacity = 4;
+            while (capacity < subIds.length * 2) capacity <<= 1;
+            mSubIdKeys = new int[capacity];
+            mSubIdSlots = new int[capacity];
+            mMask = capacity - 1;
+            Arrays.fill(mSubIdKeys, EMPTY_KEY);
+
+            int count = 0;
+            for (int i = 0; i < slots.length; i++) {
+                int slot = slots[i];
+                if (slot >= 0) {
+                    mSlotToSubIds[slot][subIdCount[slot]++] = subIds[i];
+                    count++;
+                }
+                int bucket = bucketOf(subIds[i]);
+                mSubIdKeys[bucket] = subIds[i];
+                mSubIdSlots[bucket] = slot;
+            }
+
+            mSubIds = new int[count];
+            int n = 0;
+            for (int slot = 0; slot <= maxSlot; slot++) {
+                if (mSlotToSubIds[slot] != null) {
+                    for (int subId : mSlotToSubIds[slot]) {
+                        mSubIds[n++] = subId;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the bucket of mSubIdKeys holding subId, or the empty bucket where it
+         * would go
+         */
+        private int bucketOf(int subId) {
+            int bucket = ((subId * 0x9E3779B9) >>> 16) & mMask;
+            while (mSubIdKeys[bucket] != EMPTY_KEY && mSubIdKeys[bucket] != subId) {
+                bucket = (bucket + 1) & mMask;
+            }
+            return bucket;
+        }
+
+        int size() {
+            return mSubIds.length;
+        }
+
+        /**
+         * @return the slot of subId, or INVALID_SIM_SLOT_INDEX if it is not active
+         */
+        int getSlotId(int subId) {
+            int bucket = bucketOf(subId);
+            return mSubIdKeys[bucket] == subId
+                    ? mSubIdSlots[bucket] : SubscriptionManager.INVALID_SIM_SLOT_INDEX;
+        }
+
+        boolean containsSubId(int subId) {
+            return mSubIdKeys[bucketOf(subId)] == subId;
+        }
+
+        /**
+         * @return a new array with the subIds in slotIdx, or null if there is none
+         */
+        int[] getSubIds(int slotIdx) {
+            if (slotIdx < 0 || slotIdx >= mSlotToSubIds.length
+                    || mSlotToSubIds[slotIdx] == null) {
+                return null;
+            }
+            return mSlotToSubIds[slotIdx].clone();
+        }
+
+        /**
+         * @return a new array with all subIds, ordered by slot
+         */
+        int[] getSubIds() {
+            return mSubIds.clone();
+        }
+    }
+
+    /**
+     * In-memory copy of the subinfo database, served to the SubscriptionInfo getters.
+     * The set* methods here update it in place. It is rebuilt with a single query on the first
+     * read after it was invalidated, which happens after the other writes made in this process
+     * and whenever the provider reports a change made by someone else.
+     */
+    private volatile SubInfoSnapshot mSubInfoSnapshot;
+
+    // Bumped on every invalidation and in-place update, so a snapshot read concurrently with
+    // a write is not kept
+    private final AtomicInteger mSubInfoGeneration = new AtomicInteger();
+
+    // Serializes rebuilds and in-place updates of mSubInfoSnapshot
+    private final Object mSubInfoSnapshotLock = new Object();
+
+    // Number of provider change notifications still to come for updates already applied to
+    // mSubInfoSnapshot in place
+    private final AtomicInteger mSubInfoSelfChanges = new AtomicInteger();
+
+    // Number of times mSubInfoSnapshot was rebuilt, for dump()
+    private int mSubInfoSnapshotBuilds;
+
+    // The blank icon shared by all SubscriptionInfo records, decoded once
+    private Bitmap mSubInfoIconBitmap;
+
+    private final ContentObserver mSubInfoObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            if (VDBG) logd("[mSubInfoObserver] subinfo database changed");
+            // The provider notifies once for each update that changed a row. Skip one
+            // notification per update already applied in place; if another writer's
+            // notification is skipped instead, the one for our update invalidates.
+            int count;
+            while ((count = mSubInfoSelfChanges.get()) > 0) {
+                if (mSubInfoSelfChanges.compareAndSet(count, count - 1)) {
+                    return;
+                }
+            }
+            invalidateSubInfoSnapshot();
+        }
+    };
+
+    /**
+     * One row of the subinfo database. Not modified once it is in a published snapshot.
+     */
+    private static final class SubInfoRow {
+        final int mId;
+        final String mIccId;
+        final int mSimSlotIndex;
+        String mDisplayName;
+        String mCarrierName;
+        int mNameSource;
+        int mIconTint;
+        String mNumber;
+        int mDataRoaming;
+        int mMcc;
+        int mMnc;
+        int mUserNwMode;
+
+        SubInfoRow(Cursor cursor) {
+            mId = cursor.getInt(cursor.getColumnIndexOrThrow(
+                    SubscriptionManager.UNIQUE_KEY_SUBSCRIPTION_ID));
+            mIccId = cursor.getString(cursor.getColumnIndexOrThrow(
+                    SubscriptionManager.ICC_ID));
+            mSimSlotIndex = cursor.getInt(cursor.getColumnIndexOrThrow(
+                    SubscriptionManager.SIM_SLOT_INDEX));
+            mDisplayName = cursor.getString(cursor.getColumnIndexOrThrow(
+                    SubscriptionManager.DISPLAY_NAME));
+            mCarrierName = cursor.getString(cursor.getColumnIndexOrThrow(
+                    SubscriptionManager.CARRIER_NAME));
+            mNameSource = cursor.getInt(cursor.getColumnIndexOrThrow(
+                    SubscriptionManager.NAME_SOURCE));
+            mIconTint = cursor.getInt(cursor.getColumnIndexOrThrow(
+                    SubscriptionManager.COLOR));
+            mNumber = cursor.getString(cursor.getColumnIndexOrThrow(
+                    SubscriptionManager.NUMBER));
+            mDataRoaming = cursor.getInt(cursor.getColumnIndexOrThrow(
+                    SubscriptionManager.DATA_ROAMING));
+            mMcc = cursor.getInt(cursor.getColumnIndexOrThrow(
+                    SubscriptionManager.MCC));
+            mMnc = cursor.getInt(cursor.getColumnIndexOrThrow(
+                    SubscriptionManager.MNC));
+            int userNwModeIndex = cursor.getColumnIndex(SubscriptionManager.USER_NETWORK_MODE);
+            mUserNwMode = userNwModeIndex >= 0
+                    ? cursor.getInt(userNwModeIndex) : SubscriptionManager.DEFAULT_NW_MODE;
+        }
+
+        SubInfoRow(SubInfoRow row) {
+            mId = row.mId;
+            mIccId = row.mIccId;
+            mSimSlotIndex = row.mSimSlotIndex;
+            mDisplayName = row.mDisplayName;
+            mCarrierName = row.mCarrierName;
+            mNameSource = row.mNameSource;
+            mIconTint = row.mIconTint;
+            mNumber = row.mNumber;
+            mDataRoaming = row.mDataRoaming;
+            mMcc = row.mMcc;
+            mMnc = row.mMnc;
+            mUserNwMode = row.mUserNwMode;
+        }
+
+        /**
+         * Apply the values written to this row of the database
+         * @return false if a value changes the identity or slot of the row, which is not
+         * applied, true otherwise. Values of columns not kept here are ignored.
+         */
+        boolean update(ContentValues values) {
+            for (String key : values.keySet()) {
+                switch (key) {
+                    case SubscriptionManager.UNIQUE_KEY_SUBSCRIPTION_ID:
+                    case SubscriptionManager.ICC_ID:
+                    case SubscriptionManager.SIM_SLOT_INDEX:
+                        return false;
+                    case SubscriptionManager.DISPLAY_NAME:
+                        mDisplayName = values.getAsString(key);
+                        break;
+                    case SubscriptionManager.CARRIER_NAME:
+                        mCarrierName = values.getAsString(key);
+                        break;
+                    case SubscriptionManager.NAME_SOURCE:
+                        mNameSource = values.getAsInteger(key);
+                        break;
+                    case SubscriptionManager.COLOR:
+                        mIconTint = values.getAsInteger(key);
+                        break;
+                    case SubscriptionManager.NUMBER:
+                        mNumber = values.getAsString(key);
+                        break;
+                    case SubscriptionManager.DATA_ROAMING:
+                        mDataRoaming = values.getAsInteger(key);
+                        break;
+                    case SubscriptionManager.MCC:
+                        mMcc = values.getAsInteger(key);
+                        break;
+                    case SubscriptionManager.MNC:
+                        mMnc = values.getAsInteger(key);
+                        break;
+                    case SubscriptionManager.USER_NETWORK_MODE:
+                        mUserNwMode = values.getAsInteger(key);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Contents of the subinfo database at one point in time. Immutable.
+     */
+    private static final class SubInfoSnapshot {
+        // Value of mSubInfoGeneration when the database was read
+        final int mGeneration;
+
+        // All rows, in database order
+        final List<SubInfoRow> mAll;
+
+        // Rows with a valid slot index, sorted on slot index then subId
+        final List<SubInfoRow> mActive;
+
+        SubInfoSnapshot(int generation, List<SubInfoRow> all) {
+            mGeneration = generation;
+            mAll = Collections.unmodifiableList(all);
+            ArrayList<SubInfoRow> active = new ArrayList<SubInfoRow>(all.size());
+            for (SubInfoRow row : all) {
+                if (row.mSimSlotIndex >= 0) {
+                    active.add(row);
+                }
+            }
+            Collections.sort(active, new Comparator<SubInfoRow>() {
+                @Override
+                public int compare(SubInfoRow arg0, SubInfoRow arg1) {
+                    // Primary sort key on SimSlotIndex
+                    int flag = arg0.mSimSlotIndex - arg1.mSimSlotIndex;
+                    if (flag == 0) {
+                        // Secondary sort on SubscriptionId
+                        return arg0.mId - arg1.mId;
+                    }
+                    return flag;
+                }
+            });
+            mActive = Collections.unmodifiableList(active);
+        }
+    }
+
     public static SubscriptionController init(Phone phone) {
         synchronized (SubscriptionController.class) {
             if (sInstance == null) {
@@ -178,6 +492,8 @@ public class SubscriptionController extends ISub.Stub {
         mTelephonyManager = TelephonyManager.from(mContext);
 
         mAppOps = (AppOpsManager)mContext.getSystemService(Context.APP_OPS_SERVICE);
+        mContext.getContentResolver().registerContentObserver(SubscriptionManager.CONTENT_URI,
+                true, mSubInfoObserver);
 
         if(ServiceManager.getService("isub") == null) {
                 ServiceManager.addService("isub", this);
@@ -187,13 +503,50 @@ public class SubscriptionController extends ISub.Stub {
     }
 
     private boolean isSubInfoReady() {
-        return sSlotIdxToSubId.size() > 0;
+        return sSlotSubIdIndex.size() > 0;
+    }
+
+    @VisibleForTesting
+    static void putSlotIdxToSubId(int slotIdx, int subId) {
+        synchronized (sSlotIdxToSubId) {
+            sSlotIdxToSubId.put(slotIdx, subId);
+            updateSlotSubIdIndex();
+        }
+    }
+
+    @VisibleForTesting
+    static void clearSlotIdxToSubId() {
+        synchronized (sSlotIdxToSubId) {
+            sSlotIdxToSubId.clear();
+            updateSlotSubIdIndex();
+        }
+    }
+
+    /**
+     * Publish a new sSlotSubIdIndex built from sSlotIdxToSubId.
+     */
+    private static void updateSlotSubIdIndex() {
+        synchronized (sSlotIdxToSubId) {
+            int[] slots = new int[sSlotIdxToSubId.size()];
+            int[] subIds = new int[slots.length];
+            int i = 0;
+            for (Entry<Integer, Integer> entry : sSlotIdxToSubId.entrySet()) {
+                if (i == slots.length) break;
+                slots[i] = entry.getKey();
+                subIds[i] = entry.getValue();
+                i++;
+            }
+            sSlotSubIdIndex = new SlotSubIdIndex(Arrays.copyOf(slots, i),
+                    Arrays.copyOf(subIds, i));
+        }
     }
 
     private SubscriptionController(Phone phone) {
         mContext = phone.getContext();
         mCM = CallManager.getInstance();
         mAppOps = mContext.getSystemService(AppOpsManager.class);
+        mContext.getContentResolver().registerContentObserver(SubscriptionManager.CONTENT_URI,
+                true, mSubInfoObserver);
 
         if(ServiceManager.getService("isub") == null) {
                 ServiceManager.addService("isub", this);
@@ -260,47 +613,30 @@ public class SubscriptionController extends ISub.Stub {
 
     /**
      * New SubInfoRecord instance and fill in detail info
-     * @param cursor
+     * @param row the database row of the record
      * @return the query result of desired SubInfoRecord
      */
-    private SubscriptionInfo getSubInfoRecord(Cursor cursor) {
-        int id = cursor.getInt(cursor.getColumnIndexOrThrow(
-                SubscriptionManager.UNIQUE_KEY_SUBSCRIPTION_ID));
-        String iccId = cursor.getString(cursor.getColumnIndexOrThrow(
-                SubscriptionManager.ICC_ID));
-        int simSlotIndex = cursor.getInt(cursor.getColumnIndexOrThrow(
-                SubscriptionManager.SIM_SLOT_INDEX));
-        String displayName = cursor.getString(cursor.getColumnIndexOrThrow(
-                SubscriptionManager.DISPLAY_NAME));
-        String carrierName = cursor.getString(cursor.getColumnIndexOrThrow(
-                SubscriptionManager.CARRIER_NAME));
-        int nameSource = cursor.getInt(cursor.getColumnIndexOrThrow(
-                SubscriptionManager.NAME_SOURCE));
-        int iconTint = cursor.getInt(cursor.getColumnIndexOrThrow(
-                SubscriptionManager.COLOR));
-        String number = cursor.getString(cursor.getColumnIndexOrThrow(
-                SubscriptionManager.NUMBER));
-        int dataRoaming = cursor.getInt(cursor.getColumnIndexOrThrow(
-                SubscriptionManager.DATA_ROAMING));
+    private SubscriptionInfo getSubInfoRecord(SubInfoRow row) {
+        int id = row.mId;
+        String number = row.mNumber;
         // Get the blank bitmap for this SubInfoRecord
-        Bitmap iconBitmap = BitmapFactory.decodeResource(mContext.getResources(),
-                com.android.internal.R.drawable.ic_sim_card_multi_24px_clr);
-        int mcc = cursor.getInt(cursor.getColumnIndexOrThrow(
-                SubscriptionManager.MCC));
-        int mnc = cursor.getInt(cursor.getColumnIndexOrThrow(
-                SubscriptionManager.MNC));
+        Bitmap iconBitmap = mSubInfoIconBitmap;
+        if (iconBitmap == null) {
+            iconBitmap = BitmapFactory.decodeResource(mContext.getResources(),
+                    com.android.internal.R.drawable.ic_sim_card_multi_24px_clr);
+            mSubInfoIconBitmap = iconBitmap;
+        }
         // FIXME: consider stick this into database too
         String countryIso = getSubscriptionCountryIso(id);
-        int userNwMode = cursor.getInt(cursor.getColumnIndexOrThrow(
-                SubscriptionManager.USER_NETWORK_MODE));
 
         if (VDBG) {
-            String iccIdToPrint = SubscriptionInfo.givePrintableIccid(iccId);
+            String iccIdToPrint = SubscriptionInfo.givePrintableIccid(row.mIccId);
             logd("[getSubInfoRecord] id:" + id + " iccid:" + iccIdToPrint + " simSlotIndex:"
-                    + simSlotIndex + " displayName:" + displayName + " nameSource:" + nameSource
-                    + " iconTint:" + iconTint + " dataRoaming:" + dataRoaming
-                    + " mcc:" + mcc + " mnc:" + mnc + " countIso:" + countryIso
-                    + " userNwMode:" + userNwMode);
+                    + row.mSimSlotIndex + " displayName:" + row.mDisplayName
+                    + " nameSource:" + row.mNameSource + " iconTint:" + row.mIconTint
+                    + " dataRoaming:" + row.mDataRoaming + " mcc:" + row.mMcc
+                    + " mnc:" + row.mMnc + " countIso:" + countryIso
+                    + " userNwMode:" + row.mUserNwMode);
         }
 
         // If line1number has been set to a different number, use it instead.
@@ -308,9 +644,9 @@ public class SubscriptionController extends ISub.Stub {
         if (!TextUtils.isEmpty(line1Number) && !line1Number.equals(number)) {
             number = line1Number;
         }
-        return new SubscriptionInfo(id, iccId, simSlotIndex, displayName, carrierName,
-                nameSource, iconTint, number, dataRoaming, iconBitmap, mcc, mnc,
-                countryIso, userNwMode);
+        return new SubscriptionInfo(id, row.mIccId, row.mSimSlotIndex, row.mDisplayName,
+                row.mCarrierName, row.mNameSource, row.mIconTint, number, row.mDataRoaming,
+                iconBitmap, row.mMcc, row.mMnc, countryIso, row.mUserNwMode);
     }
 
     /**
@@ -328,42 +664,111 @@ public class SubscriptionController extends ISub.Stub {
     }
 
     /**
-     * Query SubInfoRecord(s) from subinfo database
-     * @param selection A filter declaring which rows to return
-     * @param queryKey query key content
-     * @return Array list of queried result from database
+     * Drop the in-memory copy of the subinfo database, so the next read queries it again.
+     * Must be called after every write to the database made in this process.
      */
-     private List<SubscriptionInfo> getSubInfo(String selection, Object queryKey) {
-        if (VDBG) logd("selection:" + selection + " " + queryKey);
-        String[] selectionArgs = null;
-        if (queryKey != null) {
-            selectionArgs = new String[] {queryKey.toString()};
+    void invalidateSubInfoSnapshot() {
+        mSubInfoGeneration.incrementAndGet();
+        mSubInfoSnapshot = null;
+    }
+
+    /**
+     * Apply a write made here to one row of the subinfo database to the in-memory copy, so
+     * the next read does not query the database again. Falls back to invalidating it.
+     * @param subId the unique SubInfoRecord index in database
+     * @param values the values written
+     * @param result the number of records updated by the write
+     */
+    private void updateSubInfoSnapshot(int subId, ContentValues values, int result) {
+        if (result <= 0) {
+            return;
+        }
+        mSubInfoSelfChanges.incrementAndGet();
+        synchronized (mSubInfoSnapshotLock) {
+            SubInfoSnapshot snapshot = mSubInfoSnapshot;
+            int generation = mSubInfoGeneration.incrementAndGet();
+            if (snapshot == null || snapshot.mGeneration != generation - 1) {
+                // Not read since the last invalidation, or invalidated concurrently
+                mSubInfoSnapshot = null;
+                return;
+            }
+
+            ArrayList<SubInfoRow> rows = new ArrayList<SubInfoRow>(snapshot.mAll);
+            for (int i = 0, size = rows.size(); i < size; i++) {
+                if (rows.get(i).mId == subId) {
+                    SubInfoRow row = new SubInfoRow(rows.get(i));
+                    if (!row.update(values)) {
+                        mSubInfoSnapshot = null;
+                        return;
+                    }
+                    rows.set(i, row);
+                    break;
+                }
+            }
+            mSubInfoSnapshot = new SubInfoSnapshot(generation, rows);
         }
-        ArrayList<SubscriptionInfo> subList = null;
-        Cursor cursor = mContext.getContentResolver().query(SubscriptionManager.CONTENT_URI,
-                null, selection, selectionArgs, null);
-        try {
-            if (cursor != null) {
-                while (cursor.moveToNext()) {
-                    SubscriptionInfo subInfo = getSubInfoRecord(cursor);
-                    if (subInfo != null)
-                    {
-                        if (subList == null)
-                        {
-                            subList = new ArrayList<SubscriptionInfo>();
-                        }
-                        subList.add(subInfo);
+    }
+
+    /**
+     * @return the current contents of the subinfo database, from memory if still valid
+     */
+    private SubInfoSnapshot getSubInfoSnapshot() {
+        SubInfoSnapshot snapshot = mSubInfoSnapshot;
+        if (snapshot != null && snapshot.mGeneration == mSubInfoGeneration.get()) {
+            return snapshot;
+        }
+        synchronized (mSubInfoSnapshotLock) {
+            int generation = mSubInfoGeneration.get();
+            snapshot = mSubInfoSnapshot;
+            if (snapshot != null && snapshot.mGeneration == generation) {
+                return snapshot;
+            }
+
+            ArrayList<SubInfoRow> rows = new ArrayList<SubInfoRow>();
+            Cursor cursor = mContext.getContentResolver().query(SubscriptionManager.CONTENT_URI,
+                    null, null, null, null);
+            try {
+                if (cursor != null) {
+                    while (cursor.moveToNext()) {
+                        rows.add(new SubInfoRow(cursor));
+                    }
+                } else {
+                    if (DBG) logd("Query fail");
                 }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
                 }
-            } else {
-                if (DBG) logd("Query fail");
             }
-        } finally {
-            if (cursor != null) {
-                cursor.close();
+
+            snapshot = new SubInfoSnapshot(generation, rows);
+            mSubInfoSnapshotBuilds++;
+            // A write that raced with the query has invalidated what we read, keep it out
+            if (generation == mSubInfoGeneration.get()) {
+                mSubInfoSnapshot = snapshot;
             }
+            return snapshot;
         }
+    }
 
+    /**
+     * Build the SubInfoRecord(s) of the given database rows
+     * @param rows the rows, in the order of the returned list
+     * @param slotIdx only include rows of this slot if valid, else include all rows
+     * @return Array list of the records, null if there is none
+     */
+    private List<SubscriptionInfo> getSubInfo(List<SubInfoRow> rows, int slotIdx) {
+        ArrayList<SubscriptionInfo> subList = null;
+        for (int i = 0, size = rows.size(); i < size; i++) {
+            SubInfoRow row = rows.get(i);
+            if (SubscriptionManager.isValidSlotId(slotIdx) && row.mSimSlotIndex != slotIdx) {
+                continue;
+            }
+            if (subList == null) {
+                subList = new ArrayList<SubscriptionInfo>();
+            }
+            subList.add(getSubInfoRecord(row));
+        }
         return subList;
     }
 
@@ -532,7 +937,8 @@ public class SubscriptionController extends ISub.Stub {
         final long identity = Binder.clearCallingIdentity();
         try {
             List<SubscriptionInfo> subList = null;
-            subList = getSubInfo(null, null);
+            subList = getSubInfo(getSubInfoSnapshot().mAll,
+                    SubscriptionManager.INVALID_SIM_SLOT_INDEX);
             if (subList != null) {
                 if (DBG) logd("[getAllSubInfoList]- " + subList.size() + " infos return");
             } else {
@@ -564,24 +970,11 @@ public class SubscriptionController extends ISub.Stub {
                 return null;
             }
 
-            List<SubscriptionInfo> subList = getSubInfo(
-                    SubscriptionManager.SIM_SLOT_INDEX + ">=0", null);
+            // Already sorted on slot index then subId
+            List<SubscriptionInfo> subList = getSubInfo(getSubInfoSnapshot().mActive,
+                    SubscriptionManager.INVALID_SIM_SLOT_INDEX);
 
             if (subList != null) {
-                // FIXME: Unnecessary when an insertion sort is used!
-                Collections.sort(subList, new Comparator<SubscriptionInfo>() {
-                    @Override
-                    public int compare(SubscriptionInfo arg0, SubscriptionInfo arg1) {
-                        // Primary sort key on SimSlotIndex
-                        int flag = arg0.getSimSlotIndex() - arg1.getSimSlotIndex();
-                        if (flag == 0) {
-                            // Secondary sort on SubscriptionId
-                            return arg0.getSubscriptionId() - arg1.getSubscriptionId();
-                        }
-                        return flag;
-                    }
-                });
-
                 if (VDBG) logdl("[getActiveSubInfoList]- " + subList.size() + " infos return");
             } else {
                 if (DBG) logdl("[getActiveSubInfoList]- no info return");
@@ -638,18 +1031,10 @@ public class SubscriptionController extends ISub.Stub {
         // Now that all security checks passes, perform the operation as ourselves.
         final long identity = Binder.clearCallingIdentity();
         try {
-            Cursor cursor = mContext.getContentResolver().query(SubscriptionManager.CONTENT_URI,
-                    null, null, null, null);
-            try {
-                if (cursor != null) {
-                    int count = cursor.getCount();
-                    if (DBG) logd("[getAllSubInfoCount]- " + count + " SUB(s) in DB");
-                    return count;
-                }
-            } finally {
-                if (cursor != null) {
-                    cursor.close();
-                }
+            int count = getSubInfoSnapshot().mAll.size();
+            if (count > 0) {
+                if (DBG) logd("[getAllSubInfoCount]- " + count + " SUB(s) in DB");
+                return count;
             }
             if (DBG) logd("[getAllSubInfoCount]- no SUB in DB");
 
@@ -707,6 +1092,7 @@ public class SubscriptionController extends ISub.Stub {
                     value.put(SubscriptionManager.SIM_SLOT_INDEX, slotId);
                     value.put(SubscriptionManager.CARRIER_NAME, "");
                     Uri uri = resolver.insert(SubscriptionManager.CONTENT_URI, value);
+                    invalidateSubInfoSnapshot();
                     if (DBG) logdl("[addSubInfoRecord] New record created: " + uri);
                 } else {
                     int subId = cursor.getInt(0);
@@ -726,6 +1112,7 @@ public class SubscriptionController extends ISub.Stub {
                         resolver.update(SubscriptionManager.CONTENT_URI, value,
                                 SubscriptionManager.UNIQUE_KEY_SUBSCRIPTION_ID +
                                         "=" + Long.toString(subId), null);
+                        invalidateSubInfoSnapshot();
                     }
 
                     if (DBG) logdl("[addSubInfoRecord] Record already exists");
@@ -755,7 +1142,7 @@ public class SubscriptionController extends ISub.Stub {
                             // FIXME: Currently we assume phoneId == slotId which in the future
                             // may not be true, for instance with multiple subs per slot.
                             // But is true at the moment.
-                            sSlotIdxToSubId.put(slotId, subId);
+                            putSlotIdxToSubId(slotId, subId);
                             int subIdCountMax = getActiveSubInfoCountMax();
                             int defaultSubId = getDefaultSubId();
                             if (DBG) {
@@ -831,6 +1218,7 @@ public class SubscriptionController extends ISub.Stub {
                 resolver.update(SubscriptionManager.CONTENT_URI, value,
                         SubscriptionManager.UNIQUE_KEY_SUBSCRIPTION_ID +
                                 "=" + Long.toString(subIds[0]), null);
+                invalidateSubInfoSnapshot();
 
                 if (DBG) logdl("[addSubInfoRecord] sim name = " + nameToSet);
             }
@@ -917,6 +1305,7 @@ public class SubscriptionController extends ISub.Stub {
             result = mContext.getContentResolver().update(SubscriptionManager.CONTENT_URI,
                     value, SubscriptionManager.UNIQUE_KEY_SUBSCRIPTION_ID + "=" +
                     Long.toString(subId), null);
+            updateSubInfoSnapshot(subId, value, result);
             notifySubscriptionInfoChanged();
 
             return result;
@@ -951,6 +1340,7 @@ public class SubscriptionController extends ISub.Stub {
             int result = mContext.getContentResolver().update(SubscriptionManager.CONTENT_URI,
                     value, SubscriptionManager.UNIQUE_KEY_SUBSCRIPTION_ID + "=" +
                             Long.toString(subId), null);
+            updateSubInfoSnapshot(subId, value, result);
             notifySubscriptionInfoChanged();
 
             return result;
@@ -1008,6 +1398,7 @@ public class SubscriptionController extends ISub.Stub {
             int result = mContext.getContentResolver().update(SubscriptionManager.CONTENT_URI,
                     value, SubscriptionManager.UNIQUE_KEY_SUBSCRIPTION_ID + "=" +
                     Long.toString(subId), null);
+            updateSubInfoSnapshot(subId, value, result);
             notifySubscriptionInfoChanged();
 
             return result;
@@ -1051,6 +1442,7 @@ public class SubscriptionController extends ISub.Stub {
                     SubscriptionManager.UNIQUE_KEY_SUBSCRIPTION_ID
                             + "=" + Long.toString(subId), null);
             if (DBG) logd("[setDisplayNumber]- update result :" + result);
+            updateSubInfoSnapshot(subId, value, result);
             notifySubscriptionInfoChanged();
 
             return result;
@@ -1086,6 +1478,7 @@ public class SubscriptionController extends ISub.Stub {
             int result = mContext.getContentResolver().update(SubscriptionManager.CONTENT_URI,
                     value, SubscriptionManager.UNIQUE_KEY_SUBSCRIPTION_ID + "=" +
                     Long.toString(subId), null);
+            updateSubInfoSnapshot(subId, value, result);
             notifySubscriptionInfoChanged();
 
             return result;
@@ -1116,6 +1509,7 @@ public class SubscriptionController extends ISub.Stub {
 
         int result = mContext.getContentResolver().update(SubscriptionManager.CONTENT_URI, value,
                 SubscriptionManager.UNIQUE_KEY_SUBSCRIPTION_ID + "=" + Long.toString(subId), null);
+        updateSubInfoSnapshot(subId, value, result);
         notifySubscriptionInfoChanged();
 
         return result;
@@ -1133,7 +1527,8 @@ public class SubscriptionController extends ISub.Stub {
             return SubscriptionManager.INVALID_SIM_SLOT_INDEX;
         }
 
-        int size = sSlotIdxToSubId.size();
+        SlotSubIdIndex index = sSlotSubIdIndex;
+        int size = index.size();
 
         if (size == 0)
         {
@@ -1141,15 +1536,10 @@ public class SubscriptionController extends ISub.Stub {
             return SubscriptionManager.SIM_NOT_INSERTED;
         }
 
-        for (Entry<Integer, Integer> entry: sSlotIdxToSubId.entrySet()) {
-            int sim = entry.getKey();
-            int sub = entry.getValue();
-
-            if (subId == sub)
-            {
-                if (VDBG) logv("[getSlotId]- return = " + sim);
-                return sim;
-            }
+        if (index.containsSubId(subId)) {
+            int sim = index.getSlotId(subId);
+            if (VDBG) logv("[getSlotId]- return = " + sim);
+            return sim;
         }
 
         if (DBG) logd("[getSlotId]- return fail");
@@ -1182,7 +1572,8 @@ public class SubscriptionController extends ISub.Stub {
         }
 
         // Check if we've got any SubscriptionInfo records using slotIdToSubId as a surrogate.
-        int size = sSlotIdxToSubId.size();
+        SlotSubIdIndex index = sSlotSubIdIndex;
+        int size = index.size();
         if (size == 0) {
             if (VDBG) {
                 logd("[getSubId]- sSlotIdxToSubId.size == 0, return DummySubIds slotIdx="
@@ -1191,23 +1582,9 @@ public class SubscriptionController extends ISub.Stub {
             return getDummySubIds(slotIdx);
         }
 
-        // Create an array of subIds that are in this slot?
-        ArrayList<Integer> subIds = new ArrayList<Integer>();
-        for (Entry<Integer, Integer> entry: sSlotIdxToSubId.entrySet()) {
-            int slot = entry.getKey();
-            int sub = entry.getValue();
-            if (slotIdx == slot) {
-                subIds.add(sub);
-            }
-        }
-
-        // Convert ArrayList to array
-        int numSubIds = subIds.size();
-        if (numSubIds > 0) {
-            int[] subIdArr = new int[numSubIds];
-            for (int i = 0; i < numSubIds; i++) {
-                subIdArr[i] = subIds.get(i);
-            }
+        // Get the array of subIds that are in this slot
+        int[] subIdArr = index.getSubIds(slotIdx);
+        if (subIdArr != null) {
             if (VDBG) logd("[getSubId]- subIdArr=" + subIdArr);
             return subIdArr;
         } else {
@@ -1234,7 +1611,8 @@ public class SubscriptionController extends ISub.Stub {
             return SubscriptionManager.INVALID_PHONE_INDEX;
         }
 
-        int size = sSlotIdxToSubId.size();
+        SlotSubIdIndex index = sSlotSubIdIndex;
+        int size = index.size();
         if (size == 0) {
             phoneId = mDefaultPhoneId;
             if (DBG) logdl("[getPhoneId]- no sims, returning default phoneId=" + phoneId);
@@ -1242,14 +1620,10 @@ public class SubscriptionController extends ISub.Stub {
         }
 
         // FIXME: Assumes phoneId == slotId
-        for (Entry<Integer, Integer> entry: sSlotIdxToSubId.entrySet()) {
-            int sim = entry.getKey();
-            int sub = entry.getValue();
-
-            if (subId == sub) {
-                if (VDBG) logdl("[getPhoneId]- found subId=" + subId + " phoneId=" + sim);
-                return sim;
-            }
+        if (index.containsSubId(subId)) {
+            int sim = index.getSlotId(subId);
+            if (VDBG) logdl("[getPhoneId]- found subId=" + subId + " phoneId=" + sim);
+            return sim;
         }
 
         phoneId = mDefaultPhoneId;
@@ -1298,7 +1672,7 @@ public class SubscriptionController extends ISub.Stub {
                 return 0;
             }
 
-            sSlotIdxToSubId.clear();
+            clearSlotIdxToSubId();
             if (DBG) logdl("[clearSubInfo]- clear size=" + size);
             return size;
         } finally {
@@ -1622,27 +1996,7 @@ public class SubscriptionController extends ISub.Stub {
                 return null;
             }
 
-            Cursor cursor = mContext.getContentResolver().query(SubscriptionManager.CONTENT_URI,
-                    null, SubscriptionManager.SIM_SLOT_INDEX + "=?",
-                    new String[]{String.valueOf(slotId)}, null);
-            ArrayList<SubscriptionInfo> subList = null;
-            try {
-                if (cursor != null) {
-                    while (cursor.moveToNext()) {
-                        SubscriptionInfo subInfo = getSubInfoRecord(cursor);
-                        if (subInfo != null) {
-                            if (subList == null) {
-                                subList = new ArrayList<SubscriptionInfo>();
-                            }
-                            subList.add(subInfo);
-                        }
-                    }
-                }
-            } finally {
-                if (cursor != null) {
-                    cursor.close();
-                }
-            }
+            List<SubscriptionInfo> subList = getSubInfo(getSubInfoSnapshot().mAll, slotId);
             if (DBG) logd("[getSubInfoUsingSlotId]- null info return");
 
             return subList;
@@ -1669,19 +2023,10 @@ public class SubscriptionController extends ISub.Stub {
      */
     @Override
     public int[] getActiveSubIdList() {
-        Set<Entry<Integer, Integer>> simInfoSet = sSlotIdxToSubId.entrySet();
-
-        int[] subIdArr = new int[simInfoSet.size()];
-        int i = 0;
-        for (Entry<Integer, Integer> entry: simInfoSet) {
-            int sub = entry.getValue();
-            subIdArr[i] = sub;
-            i++;
-        }
+        int[] subIdArr = sSlotSubIdIndex.getSubIds();
 
         if (VDBG) {
-            logdl("[getActiveSubIdList] simInfoSet=" + simInfoSet + " subIdArr.length="
-                    + subIdArr.length);
+            logdl("[getActiveSubIdList] subIdArr=" + Arrays.toString(subIdArr));
         }
         return subIdArr;
     }
@@ -1689,7 +2034,7 @@ public class SubscriptionController extends ISub.Stub {
     @Override
     public boolean isActiveSubId(int subId) {
         boolean retVal = SubscriptionManager.isValidSubscriptionId(subId)
-                && sSlotIdxToSubId.containsValue(subId);
+                && sSlotSubIdIndex.containsSubId(subId);
 
         if (VDBG) logdl("[isActiveSubId]- " + retVal);
         return retVal;
@@ -1762,9 +2107,10 @@ public class SubscriptionController extends ISub.Stub {
                 break;
         }
 
-        resolver.update(SubscriptionManager.CONTENT_URI, value,
+        int result = resolver.update(SubscriptionManager.CONTENT_URI, value,
                 SubscriptionManager.UNIQUE_KEY_SUBSCRIPTION_ID +
                         "=" + Integer.toString(subId), null);
+        updateSubInfoSnapshot(subId, value, result);
         Binder.restoreCallingIdentity(token);
     }
 
@@ -1773,8 +2119,9 @@ public class SubscriptionController extends ISub.Stub {
         logd("setUserNwMode, nwMode: " + nwMode + " subId: " + subId);
         ContentValues value = new ContentValues(1);
         value.put(SubscriptionManager.USER_NETWORK_MODE, nwMode);
-        mContext.getContentResolver().update(SubscriptionManager.CONTENT_URI,
+        int result = mContext.getContentResolver().update(SubscriptionManager.CONTENT_URI,
                 value, BaseColumns._ID + "=" + Integer.toString(subId), null);
+        updateSubInfoSnapshot(subId, value, result);
     }
 
     /* {@hide} */
@@ -1908,6 +2255,15 @@ public class SubscriptionController extends ISub.Stub {
             pw.flush();
             pw.println("++++++++++++++++++++++++++++++++");
 
+            SubInfoSnapshot snapshot = mSubInfoSnapshot;
+            pw.println(" mSubInfoGeneration=" + mSubInfoGeneration.get()
+                    + " mSubInfoSnapshot.mGeneration="
+                    + (snapshot != null ? snapshot.mGeneration : "null")
+                    + " mSubInfoSnapshotBuilds=" + mSubInfoSnapshotBuilds
+                    + " mSubInfoSelfChanges=" + mSubInfoSelfChanges.get());
+            pw.flush();
+            pw.println("++++++++++++++++++++++++++++++++");
+
             mLocalLog.dump(fd, pw, args);
             pw.flush();
             pw.println("++++++++++++++++++++++++++++++++");
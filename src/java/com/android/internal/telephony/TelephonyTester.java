@@ -23,7 +23,9 @@ import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.telecom.ConferenceParticipant;
 import android.telephony.Rlog;
 import android.telephony.ServiceState;
 
@@ -32,10 +34,12 @@ import com.android.ims.ImsCallProfile;
 import com.android.ims.ImsConferenceState;
 import com.android.ims.ImsExternalCallState;
 import com.android.ims.ImsReasonInfo;
+import com.android.internal.telephony.imsphone.ConferenceEventPackageParser;
 import com.android.internal.telephony.imsphone.ImsExternalCallTracker;
 import com.android.internal.telephony.imsphone.ImsPhone;
 import com.android.internal.telephony.imsphone.ImsPhoneCall;
 import com.android.internal.telephony.imsphone.ImsPhoneCallTracker;
+import com.android.internal.telephony.imsphone.ImsPhoneConnection;
 import com.android.internal.telephony.test.TestConferenceEventPackageParser;
 
 import java.io.File;
@@ -51,6 +55,8 @@ import java.util.List;
  * adb shell am broadcast -a com.android.internal.telephony.{name}.action_attached
  * adb shell am broadcast -a com.android.internal.telephony.TestConferenceEventPackage -e filename
  *      test_filename.xml
+ * adb shell am broadcast -a com.android.internal.telephony.TestConferenceInfoNotify -e filename
+ *      conference_info.xml
  */
 public class TelephonyTester {
     private static final String LOG_TAG = "TelephonyTester";
@@ -62,6 +68,13 @@ public class TelephonyTester {
     private static final String ACTION_TEST_CONFERENCE_EVENT_PACKAGE =
             "com.android.internal.telephony.TestConferenceEventPackage";
 
+    /**
+     * Test-only intent used to send an RFC 4575 conference event package notification to the IMS
+     * framework. Partial notifications apply on top of the earlier notifications for the call.
+     */
+    private static final String ACTION_TEST_CONFERENCE_INFO_NOTIFY =
+            "com.android.internal.telephony.TestConferenceInfoNotify";
+
     /**
      * Test-only intent used to send a test dialog event package to the IMS framework.
      */
@@ -86,6 +99,11 @@ public class TelephonyTester {
 
     private Phone mPhone;
 
+    // Conference state built from the test conference info notifications, and the call it is for.
+    private final ConferenceEventPackageParser mConferenceEventPackageParser =
+            new ConferenceEventPackageParser();
+    private ImsCall mConferenceInfoCall;
+
     // The static intent receiver one for all instances and we assume this
     // is running on the same thread as Dcc.
     protected BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
@@ -102,6 +120,9 @@ public class TelephonyTester {
             } else if (action.equals(ACTION_TEST_CONFERENCE_EVENT_PACKAGE)) {
                 log("inject simulated conference event package");
                 handleTestConferenceEventPackage(context, intent.getStringExtra(EXTRA_FILENAME));
+            } else if (action.equals(ACTION_TEST_CONFERENCE_INFO_NOTIFY)) {
+                log("inject simulated conference info notification");
+                handleTestConferenceInfoNotify(context, intent.getStringExtra(EXTRA_FILENAME));
             } else if (action.equals(ACTION_TEST_DIALOG_EVENT_PACKAGE)) {
                 log("handle test dialog event package intent");
                 handleTestDialogEventPackageIntent(intent);
@@ -129,6 +150,7 @@ public class TelephonyTester {
             if (mPhone.getPhoneType() == PhoneConstants.PHONE_TYPE_IMS) {
                 log("register for intent action=" + ACTION_TEST_CONFERENCE_EVENT_PACKAGE);
                 filter.addAction(ACTION_TEST_CONFERENCE_EVENT_PACKAGE);
+                filter.addAction(ACTION_TEST_CONFERENCE_INFO_NOTIFY);
                 filter.addAction(ACTION_TEST_DIALOG_EVENT_PACKAGE);
                 filter.addAction(ACTION_TEST_HANDOVER_FAIL);
                 mImsExternalCallStates = new ArrayList<ImsExternalCallState>();
@@ -212,6 +234,91 @@ public class TelephonyTester {
         imsCall.conferenceStateUpdated(imsConferenceState);
     }
 
+    /**
+     * Handles request to send a test conference info notification to the active Ims call.
+     *
+     * @see ConferenceEventPackageParser
+     * @param context The context.
+     * @param fileName The name of the conference info notification file to read.
+     */
+    private void handleTestConferenceInfoNotify(Context context, String fileName) {
+        ImsPhone imsPhone = (ImsPhone) mPhone;
+        if (imsPhone == null) {
+            return;
+        }
+
+        ImsPhoneCall imsPhoneCall = imsPhone.getForegroundCall();
+        if (imsPhoneCall == null) {
+            return;
+        }
+
+        ImsPhoneConnection connection = imsPhoneCall.getFirstConnection();
+        if (connection == null) {
+            return;
+        }
+
+        ImsCall imsCall = connection.getImsCall();
+        if (imsCall == null) {
+            return;
+        }
+
+        File packageFile = new File(context.getFilesDir(), fileName);
+        final FileInputStream is;
+        try {
+            is = new FileInputStream(packageFile);
+        } catch (FileNotFoundException ex) {
+            log("Test conference info file not found: " + packageFile.getAbsolutePath());
+            return;
+        }
+
+        if (imsCall != mConferenceInfoCall) {
+            mConferenceEventPackageParser.reset();
+            mConferenceInfoCall = imsCall;
+        }
+
+        // Only pass on the participants the notification changed.
+        final List<ConferenceParticipant> changed = new ArrayList<ConferenceParticipant>();
+        final List<Uri> removedEndpoints = new ArrayList<Uri>();
+        ConferenceEventPackageParser.Listener listener =
+                new ConferenceEventPackageParser.Listener() {
+            @Override
+            public void onParticipantAdded(Bundle participant) {
+                onParticipantUpdated(participant);
+            }
+
+            @Override
+            public void onParticipantUpdated(Bundle participant) {
+                ConferenceParticipant conferenceParticipant = getConferenceParticipant(participant);
+                if (conferenceParticipant.getState()
+                        == android.telecom.Connection.STATE_DISCONNECTED) {
+                    removedEndpoints.add(conferenceParticipant.getEndpoint());
+                } else {
+                    changed.add(conferenceParticipant);
+                }
+            }
+
+            @Override
+            public void onParticipantRemoved(Bundle participant) {
+                removedEndpoints.add(getConferenceParticipant(participant).getEndpoint());
+            }
+        };
+        if (!mConferenceEventPackageParser.parse(is, listener)) {
+            return;
+        }
+
+        connection.updateConferenceParticipants(changed, removedEndpoints);
+    }
+
+    private static ConferenceParticipant getConferenceParticipant(Bundle participant) {
+        String endpoint = participant.getString(ImsConferenceState.ENDPOINT);
+        return new ConferenceParticipant(
+                Uri.parse(participant.getString(ImsConferenceState.USER)),
+                participant.getString(ImsConferenceState.DISPLAY_TEXT),
+                Uri.parse(endpoint == null ? "" : endpoint),
+                ImsConferenceState.getConnectionStateForStatus(
+                        participant.getString(ImsConferenceState.STATUS)));
+    }
+
     /**
      * Handles intents containing test dialog event package data.
      *
@@ -24,11 +24,14 @@ import android.telephony.TelephonyManager;
 import android.telephony.VisualVoicemailSmsFilterSettings;
 import android.util.ArrayMap;
 import android.util.Log;
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telephony.VisualVoicemailSmsParser.WrappedMessageData;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class VisualVoicemailSmsFilter {
@@ -37,7 +40,16 @@ public class VisualVoicemailSmsFilter {
 
     private static final String SYSTEM_VVM_CLIENT_PACKAGE = "com.android.phone";
 
-    private static Map<String, List<Pattern>> sPatterns;
+    // A backreference would point to the wrong group once patterns are joined together
+    private static final Pattern BACKREFERENCE = Pattern.compile("\\\\(\\d|k<)");
+
+    // The opening of a named group, not escaped; group 1 holds the escaped backslashes before it
+    private static final Pattern NAMED_GROUP =
+            Pattern.compile("(?<!\\\\)((?:\\\\\\\\)*)\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
+
+    private static final Object sPatternsLock = new Object();
+
+    private static volatile Map<String, List<Pattern>> sPatterns;
 
     /**
      * Attempt to parse the incoming SMS as a visual voicemail SMS. If the parsing succeeded, A
@@ -70,7 +82,37 @@ public class VisualVoicemailSmsFilter {
         }
         // TODO: filter base on originating number and destination port.
 
-        String messageBody = getFullMessage(pdus, format);
+        String clientPrefix = settings.clientPrefix;
+        List<Pattern> patterns = null;
+
+        String messageBody = null;
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < pdus.length; i++) {
+            SmsMessage message = SmsMessage.createFromPdu(pdus[i], format);
+            if (message == null) {
+                // The PDU is not recognized by android
+                builder = null;
+                break;
+            }
+            String body = message.getMessageBody();
+            if (body != null) {
+                builder.append(body);
+            }
+            if (i == 0 && pdus.length > 1) {
+                patterns = getPatterns(context, telephonyManager, subId);
+                if (!mayBeVvmSms(builder, clientPrefix, patterns)
+                        && VisualVoicemailSmsParser.parseAlternativeFormat(
+                                parseAsciiPduMessage(pdus)) == null) {
+                    // Whatever the other parts hold, this is not a VVM SMS, and the ASCII
+                    // fallback below has nothing to report if one of them is unparsable.
+                    // Don't decode them.
+                    return false;
+                }
+            }
+        }
+        if (builder != null) {
+            messageBody = builder.toString();
+        }
 
         if(messageBody == null){
             // Verizon WAP push SMS is not recognized by android, which has a ascii PDU.
@@ -86,7 +128,6 @@ public class VisualVoicemailSmsFilter {
             // system decide. Usually because it is not parsable it will be dropped.
             return false;
         }
-        String clientPrefix = settings.clientPrefix;
         WrappedMessageData messageData = VisualVoicemailSmsParser
             .parse(clientPrefix, messageBody);
         if (messageData != null) {
@@ -94,10 +135,9 @@ public class VisualVoicemailSmsFilter {
             return true;
         }
 
-        buildPatternsMap(context);
-        String mccMnc = telephonyManager.getSimOperator(subId);
-
-        List<Pattern> patterns = sPatterns.get(mccMnc);
+        if (patterns == null) {
+            patterns = getPatterns(context, telephonyManager, subId);
+        }
         if (patterns == null || patterns.isEmpty()) {
             return false;
         }
@@ -113,24 +153,109 @@ public class VisualVoicemailSmsFilter {
         return false;
     }
 
-    private static void buildPatternsMap(Context context) {
-        if (sPatterns != null) {
-            return;
+    /**
+     * @return true if a message starting with {@code text} could be a VVM SMS, in the client
+     * prefix format or matching one of the carrier patterns.
+     */
+    private static boolean mayBeVvmSms(CharSequence text, String clientPrefix,
+            @Nullable List<Pattern> patterns) {
+        String header = clientPrefix + ":";
+        int length = Math.min(text.length(), header.length());
+        if (header.regionMatches(0, text.toString(), 0, length)) {
+            return true;
+        }
+        if (patterns != null) {
+            for (Pattern pattern : patterns) {
+                Matcher matcher = pattern.matcher(text);
+                // hitEnd() is false only if no longer text could match
+                if (matcher.matches() || matcher.hitEnd()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private static List<Pattern> getPatterns(Context context, TelephonyManager telephonyManager,
+            int subId) {
+        return getPatternsMap(context).get(telephonyManager.getSimOperator(subId));
+    }
+
+    private static Map<String, List<Pattern>> getPatternsMap(Context context) {
+        Map<String, List<Pattern>> patterns = sPatterns;
+        if (patterns != null) {
+            return patterns;
         }
-        sPatterns = new ArrayMap<>();
-        // TODO(twyen): build from CarrierConfig once public API can be updated.
-        for (String entry : context.getResources()
-            .getStringArray(com.android.internal.R.array.config_vvmSmsFilterRegexes)) {
+        synchronized (sPatternsLock) {
+            if (sPatterns == null) {
+                // TODO(twyen): build from CarrierConfig once public API can be updated.
+                sPatterns = buildPatternsMap(context.getResources()
+                        .getStringArray(com.android.internal.R.array.config_vvmSmsFilterRegexes));
+            }
+            return sPatterns;
+        }
+    }
+
+    @VisibleForTesting
+    static void resetPatternsMap() {
+        synchronized (sPatternsLock) {
+            sPatterns = null;
+        }
+    }
+
+    /**
+     * Builds the carrier patterns of each MCC/MNC from entries of the form
+     * "[mccmnc],[mccmnc]...;[regex]". The patterns of an MCC/MNC are joined into a single
+     * alternation so a message body is matched in one pass. The map is not modified afterwards.
+     */
+    @VisibleForTesting
+    static Map<String, List<Pattern>> buildPatternsMap(String[] entries) {
+        Map<String, List<String>> regexes = new ArrayMap<>();
+        for (String entry : entries) {
             String[] mccMncList = entry.split(";")[0].split(",");
-            Pattern pattern = Pattern.compile(entry.split(";")[1]);
+            String regex = entry.split(";")[1];
+            // Reject a bad regex here rather than in the joined pattern, where it is harder to find
+            Pattern.compile(regex);
 
             for (String mccMnc : mccMncList) {
-                if (!sPatterns.containsKey(mccMnc)) {
-                    sPatterns.put(mccMnc, new ArrayList<>());
+                if (!regexes.containsKey(mccMnc)) {
+                    regexes.put(mccMnc, new ArrayList<>());
                 }
-                sPatterns.get(mccMnc).add(pattern);
+                regexes.get(mccMnc).add(regex);
             }
         }
+
+        Map<String, List<Pattern>> patterns = new ArrayMap<>();
+        for (Map.Entry<String, List<String>> entry : regexes.entrySet()) {
+            patterns.put(entry.getKey(), Collections.unmodifiableList(
+                    joinPatterns(entry.getValue())));
+        }
+        return patterns;
+    }
+
+    private static List<Pattern> joinPatterns(List<String> regexes) {
+        List<Pattern> patterns = new ArrayList<>();
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < regexes.size(); i++) {
+            String regex = regexes.get(i);
+            if (regexes.size() == 1 || BACKREFERENCE.matcher(regex).find()) {
+                patterns.add(Pattern.compile(regex));
+                continue;
+            }
+            if (joined.length() > 0) {
+                joined.append('|');
+            }
+            // Group names must be unique in the joined pattern, so prefix them with the index
+            // of their regex
+            joined.append("(?:")
+                    .append(NAMED_GROUP.matcher(regex).replaceAll("$1(?<r" + i + "$2>"))
+                    .append(')');
+        }
+        if (joined.length() > 0) {
+            patterns.add(Pattern.compile(joined.toString()));
+        }
+        return patterns;
     }
 
     private static void sendVvmSmsBroadcast(Context context, String vvmClientPackage, int subId,
@@ -149,27 +274,6 @@ public class VisualVoicemailSmsFilter {
         context.sendBroadcast(intent);
     }
 
-    /**
-     * @return the message body of the SMS, or {@code null} if it can not be parsed.
-     */
-    @Nullable
-    private static String getFullMessage(byte[][] pdus, String format) {
-        StringBuilder builder = new StringBuilder();
-        for (byte pdu[] : pdus) {
-            SmsMessage message = SmsMessage.createFromPdu(pdu, format);
-
-            if (message == null) {
-                // The PDU is not recognized by android
-                return null;
-            }
-            String body = message.getMessageBody();
-            if (body != null) {
-                builder.append(body);
-            }
-        }
-        return builder.toString();
-    }
-
     private static String parseAsciiPduMessage(byte[][] pdus) {
         StringBuilder builder = new StringBuilder();
         for (byte pdu[] : pdus) {
@@ -59,12 +59,12 @@ public class VisualVoicemailSmsParser {
             if (!(smsBody.charAt(prefixEnd) == ':')) {
                 return null;
             }
-            int eventTypeEnd = smsBody.indexOf(":", prefixEnd + 1);
+            int eventTypeEnd = smsBody.indexOf(':', prefixEnd + 1);
             if (eventTypeEnd == -1) {
                 return null;
             }
             String eventType = smsBody.substring(prefixEnd + 1, eventTypeEnd);
-            Bundle fields = parseSmsBody(smsBody.substring(eventTypeEnd + 1));
+            Bundle fields = parseSmsBody(smsBody, eventTypeEnd + 1);
             if (fields == null) {
                 return null;
             }
@@ -81,16 +81,24 @@ public class VisualVoicemailSmsParser {
      * e.g. "//VVM:STATUS:st=R;rc=0;srv=1;dn=1;ipt=1;spt=0;u=eg@example.com;pw=1" =>
      * "WrappedMessageData [fields={st=R, ipt=1, srv=1, dn=1, u=eg@example.com, pw=1, rc=0}]"
      *
-     * @param message The sms string with the prefix removed.
+     * <p>The fields are scanned in place, without splitting the body into intermediate strings.
+     *
+     * @param message The sms string.
+     * @param start The index in {@code message} the fields start at, after the prefix.
      * @return A WrappedMessageData object containing the map.
      */
     @Nullable
-    private static Bundle parseSmsBody(String message) {
+    private static Bundle parseSmsBody(String message, int start) {
         // TODO: ensure fail if format does not match
         Bundle keyValues = new Bundle();
-        String[] entries = message.split(";");
-        for (String entry : entries) {
-            if (entry.length() == 0) {
+        int entryStart = start;
+        while (entryStart < message.length()) {
+            int entryEnd = message.indexOf(';', entryStart);
+            if (entryEnd == -1) {
+                entryEnd = message.length();
+            }
+            if (entryEnd == entryStart) {
+                entryStart++;
                 continue;
             }
             // The format for a field is <key>=<value>.
@@ -98,16 +106,18 @@ public class VisualVoicemailSmsParser {
             // send an SMS with missing value, so only the presence of the key is enforced.
             // For example, an SMS for a voicemail from restricted number might have "s=" for the
             // sender field, instead of omitting the field.
-            int separatorIndex = entry.indexOf("=");
-            if (separatorIndex == -1 || separatorIndex == 0) {
+            int separatorIndex = message.indexOf('=', entryStart);
+            if (separatorIndex == -1 || separatorIndex >= entryEnd
+                    || separatorIndex == entryStart) {
                 // No separator or no key.
                 // For example "foo" or "=value".
                 // A VVM SMS should have all of its' field valid.
                 return null;
             }
-            String key = entry.substring(0, separatorIndex);
-            String value = entry.substring(separatorIndex + 1);
+            String key = message.substring(entryStart, separatorIndex);
+            String value = message.substring(separatorIndex + 1, entryEnd);
             keyValues.putString(key, value);
+            entryStart = entryEnd + 1;
         }
 
         return keyValues;
@@ -124,7 +134,7 @@ public class VisualVoicemailSmsParser {
     @Nullable
     public static WrappedMessageData parseAlternativeFormat(String smsBody) {
         try {
-            int eventTypeEnd = smsBody.indexOf("?");
+            int eventTypeEnd = smsBody.indexOf('?');
             if (eventTypeEnd == -1) {
                 return null;
             }
@@ -132,7 +142,7 @@ public class VisualVoicemailSmsParser {
             if (!isAllowedAlternativeFormatEvent(eventType)) {
                 return null;
             }
-            Bundle fields = parseSmsBody(smsBody.substring(eventTypeEnd + 1));
+            Bundle fields = parseSmsBody(smsBody, eventTypeEnd + 1);
             if (fields == null) {
                 return null;
             }
@@ -50,6 +50,7 @@ import android.util.Log;
 
 import com.android.internal.telephony.uicc.IccUtils;
 
+import java.util.Arrays;
 import java.util.HashMap;
 
 import com.google.android.mms.MmsException;
@@ -75,6 +76,8 @@ public class WapPushOverSms implements ServiceConnection {
 
     private String mWapPushManagerPackage;
 
+    private final MmsContentLocationIndex mContentLocationIndex = new MmsContentLocationIndex();
+
     /** Assigned from ServiceConnection callback on main threaad. */
     private volatile IWapPushManager mWapPushManager;
 
@@ -164,7 +167,7 @@ public class WapPushOverSms implements ServiceConnection {
      * Intents.RESULT_SMS_GENERIC_ERROR - the pdu is invalid.
      */
     private DecodedResult decodeWapPdu(byte[] pdu, InboundSmsHandler handler) {
-        DecodedResult result = new DecodedResult();
+        DecodedResult result = new DecodedResult(pdu);
         if (DBG) Rlog.d(TAG, "Rx: " + IccUtils.bytesToHexString(pdu));
 
         try {
@@ -241,8 +244,12 @@ public class WapPushOverSms implements ServiceConnection {
             long binaryContentType = pduDecoder.getValue32();
             index += pduDecoder.getDecodedDataLength();
 
-            byte[] header = new byte[headerLength];
-            System.arraycopy(pdu, headerStartIndex, header, 0, header.length);
+            if (headerLength < 0 || headerStartIndex + headerLength > pdu.length) {
+                // The header is only copied out later, check it fits now
+                if (DBG) Rlog.w(TAG, "Received PDU. Header length exceeds the PDU.");
+                result.statusCode = Intents.RESULT_SMS_GENERIC_ERROR;
+                return result;
+            }
 
             byte[] intentData;
 
@@ -302,9 +309,10 @@ public class WapPushOverSms implements ServiceConnection {
             result.mimeType = mimeType;
             result.transactionId = transactionId;
             result.pduType = pduType;
-            result.header = header;
+            result.headerStartIndex = headerStartIndex;
+            result.headerLength = headerLength;
             result.intentData = intentData;
-            result.contentTypeParameters = pduDecoder.getContentParameters();
+            result.pduDecoder = pduDecoder;
             result.statusCode = Activity.RESULT_OK;
         } catch (ArrayIndexOutOfBoundsException aie) {
             // 0-byte WAP PDU or other unexpected WAP PDU contents can easily throw this;
@@ -356,9 +364,9 @@ public class WapPushOverSms implements ServiceConnection {
                     Intent intent = new Intent();
                     intent.putExtra("transactionId", result.transactionId);
                     intent.putExtra("pduType", result.pduType);
-                    intent.putExtra("header", result.header);
+                    intent.putExtra("header", result.getHeader());
                     intent.putExtra("data", result.intentData);
-                    intent.putExtra("contentTypeParameters", result.contentTypeParameters);
+                    intent.putExtra("contentTypeParameters", result.getContentTypeParameters());
                     SubscriptionManager.putPhoneIdAndSubIdExtra(intent, result.phoneId);
 
                     int procRet = wapPushMan.processMessage(
@@ -387,9 +395,9 @@ public class WapPushOverSms implements ServiceConnection {
         intent.setType(result.mimeType);
         intent.putExtra("transactionId", result.transactionId);
         intent.putExtra("pduType", result.pduType);
-        intent.putExtra("header", result.header);
+        intent.putExtra("header", result.getHeader());
         intent.putExtra("data", result.intentData);
-        intent.putExtra("contentTypeParameters", result.contentTypeParameters);
+        intent.putExtra("contentTypeParameters", result.getContentTypeParameters());
         SubscriptionManager.putPhoneIdAndSubIdExtra(intent, result.phoneId);
 
         // Direct the intent to only the default MMS app. If we can't find a default MMS app
@@ -493,7 +501,7 @@ public class WapPushOverSms implements ServiceConnection {
                             nInd.setContentLocation(contentLocationWithId);
                         }
                     }
-                    if (!isDuplicateNotification(mContext, nInd)) {
+                    if (!isDuplicateNotification(mContext, mContentLocationIndex, nInd)) {
                         final Uri uri = persister.persist(
                                 pdu,
                                 Telephony.Mms.Inbox.CONTENT_URI,
@@ -563,10 +571,15 @@ public class WapPushOverSms implements ServiceConnection {
     private static final String LOCATION_SELECTION =
             Telephony.Mms.MESSAGE_TYPE + "=? AND " + Telephony.Mms.CONTENT_LOCATION + " =?";
 
-    private static boolean isDuplicateNotification(Context context, NotificationInd nInd) {
+    private static boolean isDuplicateNotification(Context context,
+            MmsContentLocationIndex index, NotificationInd nInd) {
         final byte[] rawLocation = nInd.getContentLocation();
         if (rawLocation != null) {
             String location = new String(rawLocation);
+            if (!index.mightContain(context, location)) {
+                // Not seen before, no need to look it up
+                return false;
+            }
             String[] selectionArgs = new String[] { location };
             Cursor cursor = null;
             try {
@@ -617,20 +630,35 @@ public class WapPushOverSms implements ServiceConnection {
     }
 
     /**
-     * Place holder for decoded Wap pdu data.
+     * Place holder for decoded Wap pdu data. The header is kept as offsets into the pdu, and the
+     * content type parameters in the decoder, until an intent needs them.
      */
-    private final class DecodedResult {
+    private static final class DecodedResult {
+        final byte[] pdu;
         String mimeType;
         String contentType;
         int transactionId;
         int pduType;
         int phoneId;
         int subId;
-        byte[] header;
+        int headerStartIndex;
+        int headerLength;
         String wapAppId;
         byte[] intentData;
-        HashMap<String, String> contentTypeParameters;
+        WspTypeDecoder pduDecoder;
         GenericPdu parsedPdu;
         int statusCode;
+
+        DecodedResult(byte[] pdu) {
+            this.pdu = pdu;
+        }
+
+        byte[] getHeader() {
+            return Arrays.copyOfRange(pdu, headerStartIndex, headerStartIndex + headerLength);
+        }
+
+        HashMap<String, String> getContentTypeParameters() {
+            return pduDecoder.getContentParameters();
+        }
     }
 }
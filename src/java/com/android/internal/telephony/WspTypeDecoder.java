@@ -31,165 +31,196 @@ public class WspTypeDecoder {
     public static final int PDU_TYPE_PUSH = 0x06;
     public static final int PDU_TYPE_CONFIRMED_PUSH = 0x07;
 
-    private final static HashMap<Integer, String> WELL_KNOWN_MIME_TYPES =
-            new HashMap<Integer, String>();
+    /**
+     * Well-known MIME types indexed by the high then the low byte of their value, so lookups need
+     * no boxing or hashing. Only values 0x00-0xff, 0x0200-0x02ff and 0x0300-0x03ff are assigned.
+     */
+    private final static String[][] WELL_KNOWN_MIME_TYPES = new String[4][];
 
-    private final static HashMap<Integer, String> WELL_KNOWN_PARAMETERS =
-            new HashMap<Integer, String>();
+    /** Well-known parameter names indexed by their value. */
+    private final static String[] WELL_KNOWN_PARAMETERS = new String[0x20];
 
     public static final int PARAMETER_ID_X_WAP_APPLICATION_ID = 0x2f;
     private static final int Q_VALUE = 0x00;
 
     static {
-        WELL_KNOWN_MIME_TYPES.put(0x00, "*/*");
-        WELL_KNOWN_MIME_TYPES.put(0x01, "text/*");
-        WELL_KNOWN_MIME_TYPES.put(0x02, "text/html");
-        WELL_KNOWN_MIME_TYPES.put(0x03, "text/plain");
-        WELL_KNOWN_MIME_TYPES.put(0x04, "text/x-hdml");
-        WELL_KNOWN_MIME_TYPES.put(0x05, "text/x-ttml");
-        WELL_KNOWN_MIME_TYPES.put(0x06, "text/x-vCalendar");
-        WELL_KNOWN_MIME_TYPES.put(0x07, "text/x-vCard");
-        WELL_KNOWN_MIME_TYPES.put(0x08, "text/vnd.wap.wml");
-        WELL_KNOWN_MIME_TYPES.put(0x09, "text/vnd.wap.wmlscript");
-        WELL_KNOWN_MIME_TYPES.put(0x0A, "text/vnd.wap.wta-event");
-        WELL_KNOWN_MIME_TYPES.put(0x0B, "multipart/*");
-        WELL_KNOWN_MIME_TYPES.put(0x0C, "multipart/mixed");
-        WELL_KNOWN_MIME_TYPES.put(0x0D, "multipart/form-data");
-        WELL_KNOWN_MIME_TYPES.put(0x0E, "multipart/byterantes");
-        WELL_KNOWN_MIME_TYPES.put(0x0F, "multipart/alternative");
-        WELL_KNOWN_MIME_TYPES.put(0x10, "application/*");
-        WELL_KNOWN_MIME_TYPES.put(0x11, "application/java-vm");
-        WELL_KNOWN_MIME_TYPES.put(0x12, "application/x-www-form-urlencoded");
-        WELL_KNOWN_MIME_TYPES.put(0x13, "application/x-hdmlc");
-        WELL_KNOWN_MIME_TYPES.put(0x14, "application/vnd.wap.wmlc");
-        WELL_KNOWN_MIME_TYPES.put(0x15, "application/vnd.wap.wmlscriptc");
-        WELL_KNOWN_MIME_TYPES.put(0x16, "application/vnd.wap.wta-eventc");
-        WELL_KNOWN_MIME_TYPES.put(0x17, "application/vnd.wap.uaprof");
-        WELL_KNOWN_MIME_TYPES.put(0x18, "application/vnd.wap.wtls-ca-certificate");
-        WELL_KNOWN_MIME_TYPES.put(0x19, "application/vnd.wap.wtls-user-certificate");
-        WELL_KNOWN_MIME_TYPES.put(0x1A, "application/x-x509-ca-cert");
-        WELL_KNOWN_MIME_TYPES.put(0x1B, "application/x-x509-user-cert");
-        WELL_KNOWN_MIME_TYPES.put(0x1C, "image/*");
-        WELL_KNOWN_MIME_TYPES.put(0x1D, "image/gif");
-        WELL_KNOWN_MIME_TYPES.put(0x1E, "image/jpeg");
-        WELL_KNOWN_MIME_TYPES.put(0x1F, "image/tiff");
-        WELL_KNOWN_MIME_TYPES.put(0x20, "image/png");
-        WELL_KNOWN_MIME_TYPES.put(0x21, "image/vnd.wap.wbmp");
-        WELL_KNOWN_MIME_TYPES.put(0x22, "application/vnd.wap.multipart.*");
-        WELL_KNOWN_MIME_TYPES.put(0x23, "application/vnd.wap.multipart.mixed");
-        WELL_KNOWN_MIME_TYPES.put(0x24, "application/vnd.wap.multipart.form-data");
-        WELL_KNOWN_MIME_TYPES.put(0x25, "application/vnd.wap.multipart.byteranges");
-        WELL_KNOWN_MIME_TYPES.put(0x26, "application/vnd.wap.multipart.alternative");
-        WELL_KNOWN_MIME_TYPES.put(0x27, "application/xml");
-        WELL_KNOWN_MIME_TYPES.put(0x28, "text/xml");
-        WELL_KNOWN_MIME_TYPES.put(0x29, "application/vnd.wap.wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x2A, "application/x-x968-cross-cert");
-        WELL_KNOWN_MIME_TYPES.put(0x2B, "application/x-x968-ca-cert");
-        WELL_KNOWN_MIME_TYPES.put(0x2C, "application/x-x968-user-cert");
-        WELL_KNOWN_MIME_TYPES.put(0x2D, "text/vnd.wap.si");
-        WELL_KNOWN_MIME_TYPES.put(0x2E, "application/vnd.wap.sic");
-        WELL_KNOWN_MIME_TYPES.put(0x2F, "text/vnd.wap.sl");
-        WELL_KNOWN_MIME_TYPES.put(0x30, "application/vnd.wap.slc");
-        WELL_KNOWN_MIME_TYPES.put(0x31, "text/vnd.wap.co");
-        WELL_KNOWN_MIME_TYPES.put(0x32, "application/vnd.wap.coc");
-        WELL_KNOWN_MIME_TYPES.put(0x33, "application/vnd.wap.multipart.related");
-        WELL_KNOWN_MIME_TYPES.put(0x34, "application/vnd.wap.sia");
-        WELL_KNOWN_MIME_TYPES.put(0x35, "text/vnd.wap.connectivity-xml");
-        WELL_KNOWN_MIME_TYPES.put(0x36, "application/vnd.wap.connectivity-wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x37, "application/pkcs7-mime");
-        WELL_KNOWN_MIME_TYPES.put(0x38, "application/vnd.wap.hashed-certificate");
-        WELL_KNOWN_MIME_TYPES.put(0x39, "application/vnd.wap.signed-certificate");
-        WELL_KNOWN_MIME_TYPES.put(0x3A, "application/vnd.wap.cert-response");
-        WELL_KNOWN_MIME_TYPES.put(0x3B, "application/xhtml+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x3C, "application/wml+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x3D, "text/css");
-        WELL_KNOWN_MIME_TYPES.put(0x3E, "application/vnd.wap.mms-message");
-        WELL_KNOWN_MIME_TYPES.put(0x3F, "application/vnd.wap.rollover-certificate");
-        WELL_KNOWN_MIME_TYPES.put(0x40, "application/vnd.wap.locc+wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x41, "application/vnd.wap.loc+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x42, "application/vnd.syncml.dm+wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x43, "application/vnd.syncml.dm+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x44, "application/vnd.syncml.notification");
-        WELL_KNOWN_MIME_TYPES.put(0x45, "application/vnd.wap.xhtml+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x46, "application/vnd.wv.csp.cir");
-        WELL_KNOWN_MIME_TYPES.put(0x47, "application/vnd.oma.dd+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x48, "application/vnd.oma.drm.message");
-        WELL_KNOWN_MIME_TYPES.put(0x49, "application/vnd.oma.drm.content");
-        WELL_KNOWN_MIME_TYPES.put(0x4A, "application/vnd.oma.drm.rights+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x4B, "application/vnd.oma.drm.rights+wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x4C, "application/vnd.wv.csp+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x4D, "application/vnd.wv.csp+wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x4E, "application/vnd.syncml.ds.notification");
-        WELL_KNOWN_MIME_TYPES.put(0x4F, "audio/*");
-        WELL_KNOWN_MIME_TYPES.put(0x50, "video/*");
-        WELL_KNOWN_MIME_TYPES.put(0x51, "application/vnd.oma.dd2+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x52, "application/mikey");
-        WELL_KNOWN_MIME_TYPES.put(0x53, "application/vnd.oma.dcd");
-        WELL_KNOWN_MIME_TYPES.put(0x54, "application/vnd.oma.dcdc");
-
-        WELL_KNOWN_MIME_TYPES.put(0x0201, "application/vnd.uplanet.cacheop-wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x0202, "application/vnd.uplanet.signal");
-        WELL_KNOWN_MIME_TYPES.put(0x0203, "application/vnd.uplanet.alert-wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x0204, "application/vnd.uplanet.list-wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x0205, "application/vnd.uplanet.listcmd-wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x0206, "application/vnd.uplanet.channel-wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x0207, "application/vnd.uplanet.provisioning-status-uri");
-        WELL_KNOWN_MIME_TYPES.put(0x0208, "x-wap.multipart/vnd.uplanet.header-set");
-        WELL_KNOWN_MIME_TYPES.put(0x0209, "application/vnd.uplanet.bearer-choice-wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x020A, "application/vnd.phonecom.mmc-wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x020B, "application/vnd.nokia.syncset+wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x020C, "image/x-up-wpng");
-        WELL_KNOWN_MIME_TYPES.put(0x0300, "application/iota.mmc-wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x0301, "application/iota.mmc-xml");
-        WELL_KNOWN_MIME_TYPES.put(0x0302, "application/vnd.syncml+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x0303, "application/vnd.syncml+wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x0304, "text/vnd.wap.emn+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x0305, "text/calendar");
-        WELL_KNOWN_MIME_TYPES.put(0x0306, "application/vnd.omads-email+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x0307, "application/vnd.omads-file+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x0308, "application/vnd.omads-folder+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x0309, "text/directory;profile=vCard");
-        WELL_KNOWN_MIME_TYPES.put(0x030A, "application/vnd.wap.emn+wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x030B, "application/vnd.nokia.ipdc-purchase-response");
-        WELL_KNOWN_MIME_TYPES.put(0x030C, "application/vnd.motorola.screen3+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x030D, "application/vnd.motorola.screen3+gzip");
-        WELL_KNOWN_MIME_TYPES.put(0x030E, "application/vnd.cmcc.setting+wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x030F, "application/vnd.cmcc.bombing+wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x0310, "application/vnd.docomo.pf");
-        WELL_KNOWN_MIME_TYPES.put(0x0311, "application/vnd.docomo.ub");
-        WELL_KNOWN_MIME_TYPES.put(0x0312, "application/vnd.omaloc-supl-init");
-        WELL_KNOWN_MIME_TYPES.put(0x0313, "application/vnd.oma.group-usage-list+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x0314, "application/oma-directory+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x0315, "application/vnd.docomo.pf2");
-        WELL_KNOWN_MIME_TYPES.put(0x0316, "application/vnd.oma.drm.roap-trigger+wbxml");
-        WELL_KNOWN_MIME_TYPES.put(0x0317, "application/vnd.sbm.mid2");
-        WELL_KNOWN_MIME_TYPES.put(0x0318, "application/vnd.wmf.bootstrap");
-        WELL_KNOWN_MIME_TYPES.put(0x0319, "application/vnc.cmcc.dcd+xml");
-        WELL_KNOWN_MIME_TYPES.put(0x031A, "application/vnd.sbm.cid");
-        WELL_KNOWN_MIME_TYPES.put(0x031B, "application/vnd.oma.bcast.provisioningtrigger");
-
-        WELL_KNOWN_PARAMETERS.put(0x00, "Q");
-        WELL_KNOWN_PARAMETERS.put(0x01, "Charset");
-        WELL_KNOWN_PARAMETERS.put(0x02, "Level");
-        WELL_KNOWN_PARAMETERS.put(0x03, "Type");
-        WELL_KNOWN_PARAMETERS.put(0x07, "Differences");
-        WELL_KNOWN_PARAMETERS.put(0x08, "Padding");
-        WELL_KNOWN_PARAMETERS.put(0x09, "Type");
-        WELL_KNOWN_PARAMETERS.put(0x0E, "Max-Age");
-        WELL_KNOWN_PARAMETERS.put(0x10, "Secure");
-        WELL_KNOWN_PARAMETERS.put(0x11, "SEC");
-        WELL_KNOWN_PARAMETERS.put(0x12, "MAC");
-        WELL_KNOWN_PARAMETERS.put(0x13, "Creation-date");
-        WELL_KNOWN_PARAMETERS.put(0x14, "Modification-date");
-        WELL_KNOWN_PARAMETERS.put(0x15, "Read-date");
-        WELL_KNOWN_PARAMETERS.put(0x16, "Size");
-        WELL_KNOWN_PARAMETERS.put(0x17, "Name");
-        WELL_KNOWN_PARAMETERS.put(0x18, "Filename");
-        WELL_KNOWN_PARAMETERS.put(0x19, "Start");
-        WELL_KNOWN_PARAMETERS.put(0x1A, "Start-info");
-        WELL_KNOWN_PARAMETERS.put(0x1B, "Comment");
-        WELL_KNOWN_PARAMETERS.put(0x1C, "Domain");
-        WELL_KNOWN_PARAMETERS.put(0x1D, "Path");
+        putWellKnownMimeType(0x00, "*/*");
+        putWellKnownMimeType(0x01, "text/*");
+        putWellKnownMimeType(0x02, "text/html");
+        putWellKnownMimeType(0x03, "text/plain");
+        putWellKnownMimeType(0x04, "text/x-hdml");
+        putWellKnownMimeType(0x05, "text/x-ttml");
+        putWellKnownMimeType(0x06, "text/x-vCalendar");
+        putWellKnownMimeType(0x07, "text/x-vCard");
+        putWellKnownMimeType(0x08, "text/vnd.wap.wml");
+        putWellKnownMimeType(0x09, "text/vnd.wap.wmlscript");
+        putWellKnownMimeType(0x0A, "text/vnd.wap.wta-event");
+        putWellKnownMimeType(0x0B, "multipart/*");
+        putWellKnownMimeType(0x0C, "multipart/mixed");
+        putWellKnownMimeType(0x0D, "multipart/form-data");
+        putWellKnownMimeType(0x0E, "multipart/byterantes");
+        putWellKnownMimeType(0x0F, "multipart/alternative");
+        putWellKnownMimeType(0x10, "application/*");
+        putWellKnownMimeType(0x11, "application/java-vm");
+        putWellKnownMimeType(0x12, "application/x-www-form-urlencoded");
+        putWellKnownMimeType(0x13, "application/x-hdmlc");
+        putWellKnownMimeType(0x14, "application/vnd.wap.wmlc");
+        putWellKnownMimeType(0x15, "application/vnd.wap.wmlscriptc");
+        putWellKnownMimeType(0x16, "application/vnd.wap.wta-eventc");
+        putWellKnownMimeType(0x17, "application/vnd.wap.uaprof");
+        putWellKnownMimeType(0x18, "application/vnd.wap.wtls-ca-certificate");
+        putWellKnownMimeType(0x19, "application/vnd.wap.wtls-user-certificate");
+        putWellKnownMimeType(0x1A, "application/x-x509-ca-cert");
+        putWellKnownMimeType(0x1B, "application/x-x509-user-cert");
+        putWellKnownMimeType(0x1C, "image/*");
+        putWellKnownMimeType(0x1D, "image/gif");
+        putWellKnownMimeType(0x1E, "image/jpeg");
+        putWellKnownMimeType(0x1F, "image/tiff");
+        putWellKnownMimeType(0x20, "image/png");
+        putWellKnownMimeType(0x21, "image/vnd.wap.wbmp");
+        putWellKnownMimeType(0x22, "application/vnd.wap.multipart.*");
+        putWellKnownMimeType(0x23, "application/vnd.wap.multipart.mixed");
+        putWellKnownMimeType(0x24, "application/vnd.wap.multipart.form-data");
+        putWellKnownMimeType(0x25, "application/vnd.wap.multipart.byteranges");
+        putWellKnownMimeType(0x26, "application/vnd.wap.multipart.alternative");
+        putWellKnownMimeType(0x27, "application/xml");
+        putWellKnownMimeType(0x28, "text/xml");
+        putWellKnownMimeType(0x29, "application/vnd.wap.wbxml");
+        putWellKnownMimeType(0x2A, "application/x-x968-cross-cert");
+        putWellKnownMimeType(0x2B, "application/x-x968-ca-cert");
+        putWellKnownMimeType(0x2C, "application/x-x968-user-cert");
+        putWellKnownMimeType(0x2D, "text/vnd.wap.si");
+        putWellKnownMimeType(0x2E, "application/vnd.wap.sic");
+        putWellKnownMimeType(0x2F, "text/vnd.wap.sl");
+        putWellKnownMimeType(0x30, "application/vnd.wap.slc");
+        putWellKnownMimeType(0x31, "text/vnd.wap.co");
+        putWellKnownMimeType(0x32, "application/vnd.wap.coc");
+        putWellKnownMimeType(0x33, "application/vnd.wap.multipart.related");
+        putWellKnownMimeType(0x34, "application/vnd.wap.sia");
+        putWellKnownMimeType(0x35, "text/vnd.wap.connectivity-xml");
+        putWellKnownMimeType(0x36, "application/vnd.wap.connectivity-wbxml");
+        putWellKnownMimeType(0x37, "application/pkcs7-mime");
+        putWellKnownMimeType(0x38, "application/vnd.wap.hashed-certificate");
+        putWellKnownMimeType(0x39, "application/vnd.wap.signed-certificate");
+        putWellKnownMimeType(0x3A, "application/vnd.wap.cert-response");
+        putWellKnownMimeType(0x3B, "application/xhtml+xml");
+        putWellKnownMimeType(0x3C, "application/wml+xml");
+        putWellKnownMimeType(0x3D, "text/css");
+        putWellKnownMimeType(0x3E, "application/vnd.wap.mms-message");
+        putWellKnownMimeType(0x3F, "application/vnd.wap.rollover-certificate");
+        putWellKnownMimeType(0x40, "application/vnd.wap.locc+wbxml");
+        putWellKnownMimeType(0x41, "application/vnd.wap.loc+xml");
+        putWellKnownMimeType(0x42, "application/vnd.syncml.dm+wbxml");
+        putWellKnownMimeType(0x43, "application/vnd.syncml.dm+xml");
+        putWellKnownMimeType(0x44, "application/vnd.syncml.notification");
+        putWellKnownMimeType(0x45, "application/vnd.wap.xhtml+xml");
+        putWellKnownMimeType(0x46, "application/vnd.wv.csp.cir");
+        putWellKnownMimeType(0x47, "application/vnd.oma.dd+xml");
+        putWellKnownMimeType(0x48, "application/vnd.oma.drm.message");
+        putWellKnownMimeType(0x49, "application/vnd.oma.drm.content");
+        putWellKnownMimeType(0x4A, "application/vnd.oma.drm.rights+xml");
+        putWellKnownMimeType(0x4B, "application/vnd.oma.drm.rights+wbxml");
+        putWellKnownMimeType(0x4C, "application/vnd.wv.csp+xml");
+        putWellKnownMimeType(0x4D, "application/vnd.wv.csp+wbxml");
+        putWellKnownMimeType(0x4E, "application/vnd.syncml.ds.notification");
+        putWellKnownMimeType(0x4F, "audio/*");
+        putWellKnownMimeType(0x50, "video/*");
+        putWellKnownMimeType(0x51, "application/vnd.oma.dd2+xml");
+        putWellKnownMimeType(0x52, "application/mikey");
+        putWellKnownMimeType(0x53, "application/vnd.oma.dcd");
+        putWellKnownMimeType(0x54, "application/vnd.oma.dcdc");
+
+        putWellKnownMimeType(0x0201, "application/vnd.uplanet.cacheop-wbxml");
+        putWellKnownMimeType(0x0202, "application/vnd.uplanet.signal");
+        putWellKnownMimeType(0x0203, "application/vnd.uplanet.alert-wbxml");
+        putWellKnownMimeType(0x0204, "application/vnd.uplanet.list-wbxml");
+        putWellKnownMimeType(0x0205, "application/vnd.uplanet.listcmd-wbxml");
+        putWellKnownMimeType(0x0206, "application/vnd.uplanet.channel-wbxml");
+        putWellKnownMimeType(0x0207, "application/vnd.uplanet.provisioning-status-uri");
+        putWellKnownMimeType(0x0208, "x-wap.multipart/vnd.uplanet.header-set");
+        putWellKnownMimeType(0x0209, "application/vnd.uplanet.bearer-choice-wbxml");
+        putWellKnownMimeType(0x020A, "application/vnd.phonecom.mmc-wbxml");
+        putWellKnownMimeType(0x020B, "application/vnd.nokia.syncset+wbxml");
+        putWellKnownMimeType(0x020C, "image/x-up-wpng");
+        putWellKnownMimeType(0x0300, "application/iota.mmc-wbxml");
+        putWellKnownMimeType(0x0301, "application/iota.mmc-xml");
+        putWellKnownMimeType(0x0302, "application/vnd.syncml+xml");
+        putWellKnownMimeType(0x0303, "application/vnd.syncml+wbxml");
+        putWellKnownMimeType(0x0304, "text/vnd.wap.emn+xml");
+        putWellKnownMimeType(0x0305, "text/calendar");
+        putWellKnownMimeType(0x0306, "application/vnd.omads-email+xml");
+        putWellKnownMimeType(0x0307, "application/vnd.omads-file+xml");
+        putWellKnownMimeType(0x0308, "application/vnd.omads-folder+xml");
+        putWellKnownMimeType(0x0309, "text/directory;profile=vCard");
+        putWellKnownMimeType(0x030A, "application/vnd.wap.emn+wbxml");
+        putWellKnownMimeType(0x030B, "application/vnd.nokia.ipdc-purchase-response");
+        putWellKnownMimeType(0x030C, "application/vnd.motorola.screen3+xml");
+        putWellKnownMimeType(0x030D, "application/vnd.motorola.screen3+gzip");
+        putWellKnownMimeType(0x030E, "application/vnd.cmcc.setting+wbxml");
+        putWellKnownMimeType(0x030F, "application/vnd.cmcc.bombing+wbxml");
+        putWellKnownMimeType(0x0310, "application/vnd.docomo.pf");
+        putWellKnownMimeType(0x0311, "application/vnd.docomo.ub");
+        putWellKnownMimeType(0x0312, "application/vnd.omaloc-supl-init");
+        putWellKnownMimeType(0x0313, "application/vnd.oma.group-usage-list+xml");
+        putWellKnownMimeType(0x0314, "application/oma-directory+xml");
+        putWellKnownMimeType(0x0315, "application/vnd.docomo.pf2");
+        putWellKnownMimeType(0x0316, "application/vnd.oma.drm.roap-trigger+wbxml");
+        putWellKnownMimeType(0x0317, "application/vnd.sbm.mid2");
+        putWellKnownMimeType(0x0318, "application/vnd.wmf.bootstrap");
+        putWellKnownMimeType(0x0319, "application/vnc.cmcc.dcd+xml");
+        putWellKnownMimeType(0x031A, "application/vnd.sbm.cid");
+        putWellKnownMimeType(0x031B, "application/vnd.oma.bcast.provisioningtrigger");
+
+        putWellKnownParameter(0x00, "Q");
+        putWellKnownParameter(0x01, "Charset");
+        putWellKnownParameter(0x02, "Level");
+        putWellKnownParameter(0x03, "Type");
+        putWellKnownParameter(0x07, "Differences");
+        putWellKnownParameter(0x08, "Padding");
+        putWellKnownParameter(0x09, "Type");
+        putWellKnownParameter(0x0E, "Max-Age");
+        putWellKnownParameter(0x10, "Secure");
+        putWellKnownParameter(0x11, "SEC");
+        putWellKnownParameter(0x12, "MAC");
+        putWellKnownParameter(0x13, "Creation-date");
+        putWellKnownParameter(0x14, "Modification-date");
+        putWellKnownParameter(0x15, "Read-date");
+        putWellKnownParameter(0x16, "Size");
+        putWellKnownParameter(0x17, "Name");
+        putWellKnownParameter(0x18, "Filename");
+        putWellKnownParameter(0x19, "Start");
+        putWellKnownParameter(0x1A, "Start-info");
+        putWellKnownParameter(0x1B, "Comment");
+        putWellKnownParameter(0x1C, "Domain");
+        putWellKnownParameter(0x1D, "Path");
+    }
+
+    private static void putWellKnownMimeType(int value, String mimeType) {
+        int page = value >> 8;
+        if (WELL_KNOWN_MIME_TYPES[page] == null) {
+            WELL_KNOWN_MIME_TYPES[page] = new String[0x100];
+        }
+        WELL_KNOWN_MIME_TYPES[page][value & 0xff] = mimeType;
+    }
+
+    private static void putWellKnownParameter(int value, String parameter) {
+        WELL_KNOWN_PARAMETERS[value] = parameter;
+    }
+
+    private static String getWellKnownMimeType(int value) {
+        int page = value >> 8;
+        if (value < 0 || page >= WELL_KNOWN_MIME_TYPES.length
+                || WELL_KNOWN_MIME_TYPES[page] == null) {
+            return null;
+        }
+        return WELL_KNOWN_MIME_TYPES[page][value & 0xff];
+    }
+
+    private static String getWellKnownParameter(int value) {
+        if (value < 0 || value >= WELL_KNOWN_PARAMETERS.length) {
+            return null;
+        }
+        return WELL_KNOWN_PARAMETERS[value];
     }
 
     public static final String CONTENT_TYPE_B_PUSH_CO = "application/vnd.wap.coc";
@@ -201,7 +232,12 @@ public class WspTypeDecoder {
     long   mUnsigned32bit;
     String mStringValue;
 
+    // Decoded from the parameters found by decodeContentType() when first asked for
     HashMap<String, String> mContentParameters;
+    boolean mContentTypeDecoded;
+    // Where the parameters found by decodeContentType() start, or -1 if there are none
+    int mContentParametersIndex = -1;
+    int mContentParametersLength;
 
     public WspTypeDecoder(byte[] pdu) {
         mWspData = pdu;
@@ -414,7 +450,9 @@ public class WspTypeDecoder {
      */
     public boolean decodeContentType(int startIndex) {
         int mediaPrefixLength;
-        mContentParameters = new HashMap<String, String>();
+        mContentParameters = null;
+        mContentTypeDecoded = true;
+        mContentParametersIndex = -1;
 
         try {
             if (decodeValueLength(startIndex) == false) {
@@ -433,8 +471,8 @@ public class WspTypeDecoder {
                 expandWellKnownMimeType();
                 long wellKnownValue = mUnsigned32bit;
                 String mimeType = mStringValue;
-                if (readContentParameters(startIndex + mDataLength,
-                        (headersLength - (mDataLength - mediaPrefixLength)), 0)) {
+                if (checkContentParameters(startIndex + mDataLength,
+                        (headersLength - (mDataLength - mediaPrefixLength)))) {
                     mDataLength += readLength;
                     mUnsigned32bit = wellKnownValue;
                     mStringValue = mimeType;
@@ -448,8 +486,8 @@ public class WspTypeDecoder {
                 expandWellKnownMimeType();
                 long wellKnownValue = mUnsigned32bit;
                 String mimeType = mStringValue;
-                if (readContentParameters(startIndex + mDataLength,
-                        (headersLength - (mDataLength - mediaPrefixLength)), 0)) {
+                if (checkContentParameters(startIndex + mDataLength,
+                        (headersLength - (mDataLength - mediaPrefixLength)))) {
                     mDataLength += readLength;
                     mUnsigned32bit = wellKnownValue;
                     mStringValue = mimeType;
@@ -463,7 +501,32 @@ public class WspTypeDecoder {
         return false;
     }
 
-    private boolean readContentParameters(int startIndex, int leftToRead, int accumulator) {
+    /**
+     * Check the parameters following a media type, and note where they are so that
+     * getContentParameters() can decode them if asked.
+     *
+     * @return false if the parameters are malformed
+     *         the length of the parameters can be retrieved by getDecodedDataLength() method
+     */
+    private boolean checkContentParameters(int startIndex, int leftToRead) {
+        if (!readContentParameters(startIndex, leftToRead, 0, false)) {
+            return false;
+        }
+        if (leftToRead > 0) {
+            mContentParametersIndex = startIndex;
+            mContentParametersLength = leftToRead;
+        }
+        return true;
+    }
+
+    /**
+     * Read the parameters following a media type.
+     *
+     * @param store true to put the parameters in mContentParameters, false to only check them
+     *        and compute their length without allocating
+     */
+    private boolean readContentParameters(int startIndex, int leftToRead, int accumulator,
+            boolean store) {
 
         int totalRead = 0;
 
@@ -472,25 +535,33 @@ public class WspTypeDecoder {
             String value = null;
             String param = null;
             if ((nextByte & 0x80) == 0x00 && nextByte > 31) { // untyped
-                decodeTokenText(startIndex);
-                param = mStringValue;
+                if (store) {
+                    decodeTokenText(startIndex);
+                    param = mStringValue;
+                } else {
+                    skipTokenText(startIndex);
+                }
                 totalRead += mDataLength;
             } else { // typed
                 if (decodeIntegerValue(startIndex)) {
                     totalRead += mDataLength;
                     int wellKnownParameterValue = (int) mUnsigned32bit;
-                    param = WELL_KNOWN_PARAMETERS.get(wellKnownParameterValue);
-                    if (param == null) {
-                        param = "unassigned/0x" + Long.toHexString(wellKnownParameterValue);
+                    if (store) {
+                        param = getWellKnownParameter(wellKnownParameterValue);
+                        if (param == null) {
+                            param = "unassigned/0x" + Long.toHexString(wellKnownParameterValue);
+                        }
                     }
                     // special case for the "Q" parameter, value is a uintvar
                     if (wellKnownParameterValue == Q_VALUE) {
                         if (decodeUintvarInteger(startIndex + totalRead)) {
                             totalRead += mDataLength;
-                            value = String.valueOf(mUnsigned32bit);
-                            mContentParameters.put(param, value);
+                            if (store) {
+                                value = String.valueOf(mUnsigned32bit);
+                                putContentParameter(param, value);
+                            }
                             return readContentParameters(startIndex + totalRead, leftToRead
-                                                            - totalRead, accumulator + totalRead);
+                                    - totalRead, accumulator + totalRead, store);
                         } else {
                             return false;
                         }
@@ -505,9 +576,11 @@ public class WspTypeDecoder {
                 value = null;
             } else if (decodeIntegerValue(startIndex + totalRead)) {
                 totalRead += mDataLength;
-                int intValue = (int) mUnsigned32bit;
-                value = String.valueOf(intValue);
-            } else {
+                if (store) {
+                    int intValue = (int) mUnsigned32bit;
+                    value = String.valueOf(intValue);
+                }
+            } else if (store) {
                 decodeTokenText(startIndex + totalRead);
                 totalRead += mDataLength;
                 value = mStringValue;
@@ -515,10 +588,15 @@ public class WspTypeDecoder {
                     // quoted string, so remove the quote
                     value = value.substring(1);
                 }
+            } else {
+                skipTokenText(startIndex + totalRead);
+                totalRead += mDataLength;
+            }
+            if (store) {
+                putContentParameter(param, value);
             }
-            mContentParameters.put(param, value);
             return readContentParameters(startIndex + totalRead, leftToRead - totalRead,
-                                            accumulator + totalRead);
+                    accumulator + totalRead, store);
 
         } else {
             mDataLength = accumulator;
@@ -526,6 +604,24 @@ public class WspTypeDecoder {
         }
     }
 
+    private void putContentParameter(String param, String value) {
+        if (mContentParameters == null) {
+            mContentParameters = new HashMap<String, String>();
+        }
+        mContentParameters.put(param, value);
+    }
+
+    /**
+     * Same as decodeTokenText(), without creating the string
+     */
+    private void skipTokenText(int startIndex) {
+        int index = startIndex;
+        while (mWspData[index] != 0) {
+            index++;
+        }
+        mDataLength = index - startIndex + 1;
+    }
+
     /**
      * Check if the next byte is No-Value
      *
@@ -550,7 +646,7 @@ public class WspTypeDecoder {
     private void expandWellKnownMimeType() {
         if (mStringValue == null) {
             int binaryContentType = (int) mUnsigned32bit;
-            mStringValue = WELL_KNOWN_MIME_TYPES.get(binaryContentType);
+            mStringValue = getWellKnownMimeType(binaryContentType);
         } else {
             mUnsigned32bit = -1;
         }
@@ -722,6 +818,20 @@ public class WspTypeDecoder {
      *
      */
     public HashMap<String, String> getContentParameters() {
+        if (mContentParameters == null && mContentTypeDecoded) {
+            mContentParameters = new HashMap<String, String>();
+            if (mContentParametersIndex >= 0) {
+                // Decoding the parameters must not change the values returned for the last
+                // decode call
+                int dataLength = mDataLength;
+                long unsigned32bit = mUnsigned32bit;
+                String stringValue = mStringValue;
+                readContentParameters(mContentParametersIndex, mContentParametersLength, 0, true);
+                mDataLength = dataLength;
+                mUnsigned32bit = unsigned32bit;
+                mStringValue = stringValue;
+            }
+        }
         return mContentParameters;
     }
 }
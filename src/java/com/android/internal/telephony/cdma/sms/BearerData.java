@@ -29,8 +29,6 @@ import com.android.internal.telephony.SmsConstants;
 import com.android.internal.telephony.SmsHeader;
 import com.android.internal.telephony.SmsMessageBase;
 import com.android.internal.telephony.uicc.IccUtils;
-import com.android.internal.util.BitwiseInputStream;
-import com.android.internal.util.BitwiseOutputStream;
 
 import java.util.ArrayList;
 import java.util.TimeZone;
@@ -41,6 +39,9 @@ import java.util.TimeZone;
 public final class BearerData {
     private final static String LOG_TAG = "BearerData";
 
+    // Bearer data parameter length, 3GPP2 C.S0015-B 3.4.3.7
+    private final static int MAX_BEARER_DATA_BYTES = 255;
+
     /**
      * Bearer Data Subparameter Identifiers
      * (See 3GPP2 C.S0015-B, v2.0, table 4.5-1)
@@ -443,8 +444,8 @@ public final class BearerData {
         return builder.toString();
     }
 
-    private static void encodeMessageId(BearerData bData, BitwiseOutputStream outStream)
-        throws BitwiseOutputStream.AccessException
+    private static void encodeMessageId(BearerData bData, BitWriter outStream)
+        throws BitWriter.AccessException
     {
         outStream.write(8, 3);
         outStream.write(4, bData.messageType);
@@ -500,7 +501,7 @@ public final class BearerData {
         throws CodingException
     {
         try {
-            BitwiseOutputStream outStream = new BitwiseOutputStream(msg.length());
+            BitWriter outStream = new BitWriter(msg.length());
             int msgLen = msg.length();
             for (int i = 0; i < msgLen; i++) {
                 int charCode = UserData.charToAscii.get(msg.charAt(i), -1);
@@ -515,7 +516,7 @@ public final class BearerData {
                 }
             }
             return outStream.toByteArray();
-        } catch (BitwiseOutputStream.AccessException ex) {
+        } catch (BitWriter.AccessException ex) {
             throw new CodingException("7bit ASCII encode failed: " + ex);
         }
     }
@@ -549,7 +550,7 @@ public final class BearerData {
              * resulting array length, since that cannot distinguish
              * if the last contains either 1 or 8 valid bits.
              *
-             * TODO(cleanup): The BitwiseXStreams could also be
+             * TODO(cleanup): BitWriter and BitReader could also be
              * extended with byte-wise reversed endianness read/write
              * routines to allow a corresponding implementation of
              * stringToGsm7BitPacked, and potentially directly support
@@ -607,7 +608,7 @@ public final class BearerData {
             String msg = uData.payloadStr;
             byte[] payload ;
             int msgLen = msg.length();
-            BitwiseOutputStream outStream = new BitwiseOutputStream(msgLen +
+            BitWriter outStream = new BitWriter(msgLen +
                     (paddingBits > 0 ? 1 : 0));
             outStream.write(paddingBits, 0);
             for (int i = 0; i < msgLen; i++) {
@@ -630,7 +631,7 @@ public final class BearerData {
             uData.payload[0] = (byte)udhData.length;
             System.arraycopy(udhData, 0, uData.payload, 1, udhData.length);
             System.arraycopy(payload, 0, uData.payload, udhBytes, payload.length);
-        } catch (BitwiseOutputStream.AccessException ex) {
+        } catch (BitWriter.AccessException ex) {
             throw new CodingException("7bit ASCII encode failed: " + ex);
         }
     }
@@ -725,8 +726,8 @@ public final class BearerData {
         }
     }
 
-    private static void encodeUserData(BearerData bData, BitwiseOutputStream outStream)
-        throws BitwiseOutputStream.AccessException, CodingException
+    private static void encodeUserData(BearerData bData, BitWriter outStream)
+        throws BitWriter.AccessException, CodingException
     {
         /*
          * TODO(cleanup): Do we really need to set userData.payload as
@@ -768,8 +769,8 @@ public final class BearerData {
         if (paddingBits > 0) outStream.write(paddingBits, 0);
     }
 
-    private static void encodeReplyOption(BearerData bData, BitwiseOutputStream outStream)
-        throws BitwiseOutputStream.AccessException
+    private static void encodeReplyOption(BearerData bData, BitWriter outStream)
+        throws BitWriter.AccessException
     {
         outStream.write(8, 1);
         outStream.write(1, bData.userAckReq     ? 1 : 0);
@@ -816,8 +817,8 @@ public final class BearerData {
         }
     }
 
-    private static void encodeCallbackNumber(BearerData bData, BitwiseOutputStream outStream)
-        throws BitwiseOutputStream.AccessException, CodingException
+    private static void encodeCallbackNumber(BearerData bData, BitWriter outStream)
+        throws BitWriter.AccessException, CodingException
     {
         CdmaSmsAddress addr = bData.callbackNumber;
         encodeCdmaSmsAddress(addr);
@@ -843,69 +844,69 @@ public final class BearerData {
         if (paddingBits > 0) outStream.write(paddingBits, 0);
     }
 
-    private static void encodeMsgStatus(BearerData bData, BitwiseOutputStream outStream)
-        throws BitwiseOutputStream.AccessException
+    private static void encodeMsgStatus(BearerData bData, BitWriter outStream)
+        throws BitWriter.AccessException
     {
         outStream.write(8, 1);
         outStream.write(2, bData.errorClass);
         outStream.write(6, bData.messageStatus);
     }
 
-    private static void encodeMsgCount(BearerData bData, BitwiseOutputStream outStream)
-        throws BitwiseOutputStream.AccessException
+    private static void encodeMsgCount(BearerData bData, BitWriter outStream)
+        throws BitWriter.AccessException
     {
         outStream.write(8, 1);
         outStream.write(8, bData.numberOfMessages);
     }
 
-    private static void encodeValidityPeriodRel(BearerData bData, BitwiseOutputStream outStream)
-        throws BitwiseOutputStream.AccessException
+    private static void encodeValidityPeriodRel(BearerData bData, BitWriter outStream)
+        throws BitWriter.AccessException
     {
         outStream.write(8, 1);
         outStream.write(8, bData.validityPeriodRelative);
     }
 
-    private static void encodePrivacyIndicator(BearerData bData, BitwiseOutputStream outStream)
-        throws BitwiseOutputStream.AccessException
+    private static void encodePrivacyIndicator(BearerData bData, BitWriter outStream)
+        throws BitWriter.AccessException
     {
         outStream.write(8, 1);
         outStream.write(2, bData.privacy);
         outStream.skip(6);
     }
 
-    private static void encodeLanguageIndicator(BearerData bData, BitwiseOutputStream outStream)
-        throws BitwiseOutputStream.AccessException
+    private static void encodeLanguageIndicator(BearerData bData, BitWriter outStream)
+        throws BitWriter.AccessException
     {
         outStream.write(8, 1);
         outStream.write(8, bData.language);
     }
 
-    private static void encodeDisplayMode(BearerData bData, BitwiseOutputStream outStream)
-        throws BitwiseOutputStream.AccessException
+    private static void encodeDisplayMode(BearerData bData, BitWriter outStream)
+        throws BitWriter.AccessException
     {
         outStream.write(8, 1);
         outStream.write(2, bData.displayMode);
         outStream.skip(6);
     }
 
-    private static void encodePriorityIndicator(BearerData bData, BitwiseOutputStream outStream)
-        throws BitwiseOutputStream.AccessException
+    private static void encodePriorityIndicator(BearerData bData, BitWriter outStream)
+        throws BitWriter.AccessException
     {
         outStream.write(8, 1);
         outStream.write(2, bData.priority);
         outStream.skip(6);
     }
 
-    private static void encodeMsgDeliveryAlert(BearerData bData, BitwiseOutputStream outStream)
-        throws BitwiseOutputStream.AccessException
+    private static void encodeMsgDeliveryAlert(BearerData bData, BitWriter outStream)
+        throws BitWriter.AccessException
     {
         outStream.write(8, 1);
         outStream.write(2, bData.alert);
         outStream.skip(6);
     }
 
-    private static void encodeScpResults(BearerData bData, BitwiseOutputStream outStream)
-        throws BitwiseOutputStream.AccessException
+    private static void encodeScpResults(BearerData bData, BitWriter outStream)
+        throws BitWriter.AccessException
     {
         ArrayList<CdmaSmsCbProgramResults> results = bData.serviceCategoryProgramResults;
         outStream.write(8, (results.size() * 4));   // 4 octets per program result
@@ -931,7 +932,8 @@ public final class BearerData {
         bData.hasUserDataHeader = ((bData.userData != null) &&
                 (bData.userData.userDataHeader != null));
         try {
-            BitwiseOutputStream outStream = new BitwiseOutputStream(200);
+            // Bearer data fits in the 255 bytes of its SMS parameter
+            BitWriter outStream = new BitWriter(MAX_BEARER_DATA_BYTES);
             outStream.write(8, SUBPARAM_MESSAGE_IDENTIFIER);
             encodeMessageId(bData, outStream);
             if (bData.userData != null) {
@@ -983,7 +985,7 @@ public final class BearerData {
                 encodeScpResults(bData, outStream);
             }
             return outStream.toByteArray();
-        } catch (BitwiseOutputStream.AccessException ex) {
+        } catch (BitWriter.AccessException ex) {
             Rlog.e(LOG_TAG, "BearerData encode failed: " + ex);
         } catch (CodingException ex) {
             Rlog.e(LOG_TAG, "BearerData encode failed: " + ex);
@@ -991,8 +993,8 @@ public final class BearerData {
         return null;
    }
 
-    private static boolean decodeMessageId(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodeMessageId(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 3 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1015,8 +1017,8 @@ public final class BearerData {
     }
 
     private static boolean decodeReserved(
-            BearerData bData, BitwiseInputStream inStream, int subparamId)
-        throws BitwiseInputStream.AccessException, CodingException
+            BearerData bData, BitReader inStream, int subparamId)
+        throws BitReader.AccessException, CodingException
     {
         boolean decodeSuccess = false;
         int subparamLen = inStream.read(8); // SUBPARAM_LEN
@@ -1035,8 +1037,8 @@ public final class BearerData {
         return decodeSuccess;
     }
 
-    private static boolean decodeUserData(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException
+    private static boolean decodeUserData(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException
     {
         int paramBits = inStream.read(8) * 8;
         bData.userData = new UserData();
@@ -1102,30 +1104,30 @@ public final class BearerData {
             numFields -= offsetSeptets;
             int paddingBits = (offsetSeptets * 7) - offsetBits;
 
-            StringBuffer strBuf = new StringBuffer(numFields);
-            BitwiseInputStream inStream = new BitwiseInputStream(data);
+            BitReader inStream = new BitReader(data);
             int wantedBits = (offsetSeptets * 7) + (numFields * 7);
             if (inStream.available() < wantedBits) {
                 throw new CodingException("insufficient data (wanted " + wantedBits +
                                           " bits, but only have " + inStream.available() + ")");
             }
             inStream.skip(offsetBits + paddingBits);
+            char[] chars = new char[numFields];
             for (int i = 0; i < numFields; i++) {
                 int charCode = inStream.read(7);
                 if ((charCode >= UserData.ASCII_MAP_BASE_INDEX) &&
                         (charCode <= UserData.ASCII_MAP_MAX_INDEX)) {
-                    strBuf.append(UserData.ASCII_MAP[charCode - UserData.ASCII_MAP_BASE_INDEX]);
+                    chars[i] = UserData.ASCII_MAP[charCode - UserData.ASCII_MAP_BASE_INDEX];
                 } else if (charCode == UserData.ASCII_NL_INDEX) {
-                    strBuf.append('\n');
+                    chars[i] = '\n';
                 } else if (charCode == UserData.ASCII_CR_INDEX) {
-                    strBuf.append('\r');
+                    chars[i] = '\r';
                 } else {
                     /* For other charCodes, they are unprintable, and so simply use SPACE. */
-                    strBuf.append(' ');
+                    chars[i] = ' ';
                 }
             }
-            return strBuf.toString();
-        } catch (BitwiseInputStream.AccessException ex) {
+            return new String(chars);
+        } catch (BitReader.AccessException ex) {
             throw new CodingException("7bit ASCII decode failed: " + ex);
         }
     }
@@ -1196,12 +1198,14 @@ public final class BearerData {
             // Strip off any padding bytes, meaning any differences between the length of the
             // array and the target length specified by numFields.  This is to avoid any
             // confusion by code elsewhere that only considers the payload array length.
-            byte[] payload = new byte[userData.numFields];
-            int copyLen = userData.numFields < userData.payload.length
-                    ? userData.numFields : userData.payload.length;
+            if (userData.payload.length != userData.numFields) {
+                byte[] payload = new byte[userData.numFields];
+                int copyLen = userData.numFields < userData.payload.length
+                        ? userData.numFields : userData.payload.length;
 
-            System.arraycopy(userData.payload, 0, payload, 0, copyLen);
-            userData.payload = payload;
+                System.arraycopy(userData.payload, 0, payload, 0, copyLen);
+                userData.payload = payload;
+            }
 
             if (!decodingtypeUTF8) {
                 // There are many devices in the market that send 8bit text sms (latin encoded) as
@@ -1253,9 +1257,9 @@ public final class BearerData {
      * Note that the characters encoding is 6-bit packed.
      */
     private static void decodeIs91VoicemailStatus(BearerData bData)
-        throws BitwiseInputStream.AccessException, CodingException
+        throws BitReader.AccessException, CodingException
     {
-        BitwiseInputStream inStream = new BitwiseInputStream(bData.userData.payload);
+        BitReader inStream = new BitReader(bData.userData.payload);
         int dataLen = inStream.available() / 6;  // 6-bit packed character encoding.
         int numFields = bData.userData.numFields;
         if ((dataLen > 14) || (dataLen < 3) || (dataLen < numFields)) {
@@ -1296,9 +1300,9 @@ public final class BearerData {
      * Note that the characters encoding is 6-bit packed.
      */
     private static void decodeIs91ShortMessage(BearerData bData)
-        throws BitwiseInputStream.AccessException, CodingException
+        throws BitReader.AccessException, CodingException
     {
-        BitwiseInputStream inStream = new BitwiseInputStream(bData.userData.payload);
+        BitReader inStream = new BitReader(bData.userData.payload);
         int dataLen = inStream.available() / 6;  // 6-bit packed character encoding.
         int numFields = bData.userData.numFields;
         // dataLen may be > 14 characters due to octet padding
@@ -1321,7 +1325,7 @@ public final class BearerData {
      * callback number.
      */
     private static void decodeIs91Cli(BearerData bData) throws CodingException {
-        BitwiseInputStream inStream = new BitwiseInputStream(bData.userData.payload);
+        BitReader inStream = new BitReader(bData.userData.payload);
         int dataLen = inStream.available() / 4;  // 4-bit packed DTMF digit encoding.
         int numFields = bData.userData.numFields;
         if ((dataLen > 14) || (dataLen < 3) || (dataLen < numFields)) {
@@ -1336,7 +1340,7 @@ public final class BearerData {
     }
 
     private static void decodeIs91(BearerData bData)
-        throws BitwiseInputStream.AccessException, CodingException
+        throws BitReader.AccessException, CodingException
     {
         switch (bData.userData.msgType) {
         case UserData.IS91_MSG_TYPE_VOICEMAIL_STATUS:
@@ -1355,8 +1359,8 @@ public final class BearerData {
         }
     }
 
-    private static boolean decodeReplyOption(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodeReplyOption(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 1 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1378,8 +1382,8 @@ public final class BearerData {
         return decodeSuccess;
     }
 
-    private static boolean decodeMsgCount(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodeMsgCount(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 1 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1397,8 +1401,8 @@ public final class BearerData {
         return decodeSuccess;
     }
 
-    private static boolean decodeDepositIndex(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodeDepositIndex(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 2 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1447,8 +1451,8 @@ public final class BearerData {
         }
     }
 
-    private static boolean decodeCallbackNumber(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException, CodingException
+    private static boolean decodeCallbackNumber(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException, CodingException
     {
         final int EXPECTED_PARAM_SIZE = 1 * 8; //at least
         int paramBits = inStream.read(8) * 8;
@@ -1483,8 +1487,8 @@ public final class BearerData {
         return true;
     }
 
-    private static boolean decodeMsgStatus(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodeMsgStatus(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 1 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1504,8 +1508,8 @@ public final class BearerData {
         return decodeSuccess;
     }
 
-    private static boolean decodeMsgCenterTimeStamp(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodeMsgCenterTimeStamp(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 6 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1523,8 +1527,8 @@ public final class BearerData {
         return decodeSuccess;
     }
 
-    private static boolean decodeValidityAbs(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodeValidityAbs(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 6 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1542,8 +1546,8 @@ public final class BearerData {
         return decodeSuccess;
     }
 
-    private static boolean decodeDeferredDeliveryAbs(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodeDeferredDeliveryAbs(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 6 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1562,8 +1566,8 @@ public final class BearerData {
         return decodeSuccess;
     }
 
-    private static boolean decodeValidityRel(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodeValidityRel(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 1 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1582,8 +1586,8 @@ public final class BearerData {
         return decodeSuccess;
     }
 
-    private static boolean decodeDeferredDeliveryRel(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodeDeferredDeliveryRel(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 1 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1602,8 +1606,8 @@ public final class BearerData {
         return decodeSuccess;
     }
 
-    private static boolean decodePrivacyIndicator(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodePrivacyIndicator(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 1 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1623,8 +1627,8 @@ public final class BearerData {
         return decodeSuccess;
     }
 
-    private static boolean decodeLanguageIndicator(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodeLanguageIndicator(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 1 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1643,8 +1647,8 @@ public final class BearerData {
         return decodeSuccess;
     }
 
-    private static boolean decodeDisplayMode(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodeDisplayMode(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 1 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1664,8 +1668,8 @@ public final class BearerData {
         return decodeSuccess;
     }
 
-    private static boolean decodePriorityIndicator(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodePriorityIndicator(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 1 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1685,8 +1689,8 @@ public final class BearerData {
         return decodeSuccess;
     }
 
-    private static boolean decodeMsgDeliveryAlert(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodeMsgDeliveryAlert(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 1 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1706,8 +1710,8 @@ public final class BearerData {
         return decodeSuccess;
     }
 
-    private static boolean decodeUserResponseCode(BearerData bData, BitwiseInputStream inStream)
-        throws BitwiseInputStream.AccessException {
+    private static boolean decodeUserResponseCode(BearerData bData, BitReader inStream)
+        throws BitReader.AccessException {
         final int EXPECTED_PARAM_SIZE = 1 * 8;
         boolean decodeSuccess = false;
         int paramBits = inStream.read(8) * 8;
@@ -1727,7 +1731,7 @@ public final class BearerData {
     }
 
     private static boolean decodeServiceCategoryProgramData(BearerData bData,
-            BitwiseInputStream inStream) throws BitwiseInputStream.AccessException, CodingException
+            BitReader inStream) throws BitReader.AccessException, CodingException
     {
         if (inStream.available() < 13) {
             throw new CodingException("SERVICE_CATEGORY_PROGRAM_DATA decode failed: only "
@@ -1849,8 +1853,8 @@ public final class BearerData {
      * @param serviceCategory is the service category from the SMS envelope
      */
     private static void decodeCmasUserData(BearerData bData, int serviceCategory)
-            throws BitwiseInputStream.AccessException, CodingException {
-        BitwiseInputStream inStream = new BitwiseInputStream(bData.userData.payload);
+            throws BitReader.AccessException, CodingException {
+        BitReader inStream = new BitReader(bData.userData.payload);
         if (inStream.available() < 8) {
             throw new CodingException("emergency CB with no CMAE_protocol_version");
         }
@@ -1949,7 +1953,7 @@ public final class BearerData {
      */
     public static BearerData decode(byte[] smsData, int serviceCategory) {
         try {
-            BitwiseInputStream inStream = new BitwiseInputStream(smsData);
+            BitReader inStream = new BitReader(smsData);
             BearerData bData = new BearerData();
             int foundSubparamMask = 0;
             while (inStream.available() > 0) {
@@ -2055,7 +2059,7 @@ public final class BearerData {
                 }
             }
             return bData;
-        } catch (BitwiseInputStream.AccessException ex) {
+        } catch (BitReader.AccessException ex) {
             Rlog.e(LOG_TAG, "BearerData decode failed: " + ex);
         } catch (CodingException ex) {
             Rlog.e(LOG_TAG, "BearerData decode failed: " + ex);
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.cdma.sms;
+
+/**
+ * Reads bit fields, most significant bit first, as BitwiseInputStream does, straight out of the
+ * array it is given.
+ */
+final class BitReader {
+    private final byte[] mBuf;
+    private final int mEnd;
+    private int mPos;
+
+    /**
+     * Thrown when a read goes past the end of the data or has an illegal number of bits.
+     */
+    static class AccessException extends Exception {
+        AccessException(String s) {
+            super("BitReader access failed: " + s);
+        }
+    }
+
+    BitReader(byte[] buf) {
+        mBuf = buf;
+        mEnd = buf.length * 8;
+    }
+
+    /**
+     * @return the number of bits left to read
+     */
+    int available() {
+        return mEnd - mPos;
+    }
+
+    /**
+     * Read a field as the lowest bits of an int.
+     *
+     * @param bits number of bits, 0 to 32
+     */
+    int read(int bits) throws AccessException {
+        checkBits(bits);
+        if (bits == 0) {
+            return 0;
+        }
+        if (bits > 24) {
+            // Keep the word within an int
+            return (read(bits - 16) << 16) | read(16);
+        }
+        int index = mPos >>> 3;
+        int lastIndex = (mPos + bits - 1) >>> 3;
+        int word = mBuf[index] & 0xFF;
+        while (index < lastIndex) {
+            word = (word << 8) | (mBuf[++index] & 0xFF);
+        }
+        mPos += bits;
+        return (word >>> (-mPos & 0x07)) & (-1 >>> (32 - bits));
+    }
+
+    /**
+     * Read bits into an array, the last byte padded with zero bits.
+     */
+    byte[] readByteArray(int bits) throws AccessException {
+        if (bits < 0 || mPos + bits > mEnd) {
+            throw new AccessException("illegal read (pos " + mPos + ", end " + mEnd
+                    + ", bits " + bits + ")");
+        }
+        int wholeBytes = bits >>> 3;
+        int lastBits = bits & 0x07;
+        byte[] arr = new byte[wholeBytes + (lastBits > 0 ? 1 : 0)];
+        if ((mPos & 0x07) == 0) {
+            System.arraycopy(mBuf, mPos >>> 3, arr, 0, wholeBytes);
+            mPos += wholeBytes * 8;
+        } else {
+            for (int i = 0; i < wholeBytes; i++) {
+                arr[i] = (byte) read(8);
+            }
+        }
+        if (lastBits > 0) {
+            arr[wholeBytes] = (byte) (read(lastBits) << (8 - lastBits));
+        }
+        return arr;
+    }
+
+    /**
+     * Move past bits without reading them.
+     */
+    void skip(int bits) throws AccessException {
+        if (bits < 0 || mPos + bits > mEnd) {
+            throw new AccessException("illegal skip (pos " + mPos + ", end " + mEnd
+                    + ", bits " + bits + ")");
+        }
+        mPos += bits;
+    }
+
+    private void checkBits(int bits) throws AccessException {
+        if (bits < 0 || bits > 32 || mPos + bits > mEnd) {
+            throw new AccessException("illegal read (pos " + mPos + ", end " + mEnd
+                    + ", bits " + bits + ")");
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.cdma.sms;
+
+import java.util.Arrays;
+
+/**
+ * Writes bit fields, most significant bit first, as BitwiseOutputStream does.
+ *
+ * <p>Fields are shifted into an int and stored a whole byte at a time, instead of being or-ed
+ * into the buffer bit position by bit position. The buffer only grows if the starting size was
+ * too small.
+ */
+final class BitWriter {
+    // Bits that do not make a whole byte yet, the last written lowest
+    private int mWord;
+    private int mWordBits;
+
+    private byte[] mBuf;
+    private int mLength;
+
+    /**
+     * Thrown when a field has an illegal number of bits.
+     */
+    static class AccessException extends Exception {
+        AccessException(String s) {
+            super("BitWriter access failed: " + s);
+        }
+    }
+
+    /**
+     * @param startingLength the number of bytes expected to be written
+     */
+    BitWriter(int startingLength) {
+        mBuf = new byte[Math.max(startingLength, 1)];
+    }
+
+    /**
+     * Write the lowest bits of the data.
+     *
+     * @param bits number of bits, 0 to 32
+     */
+    void write(int bits, int data) throws AccessException {
+        if (bits < 0 || bits > 32) {
+            throw new AccessException("illegal write (" + bits + " bits)");
+        }
+        if (bits == 0) {
+            return;
+        }
+        if (bits > 24) {
+            // Keep the word within an int
+            write(bits - 16, data >>> 16);
+            bits = 16;
+        }
+        if (mLength + 4 > mBuf.length) {
+            mBuf = Arrays.copyOf(mBuf, Math.max(mBuf.length * 2, mLength + 4));
+        }
+        int word = (mWord << bits) | (data & (-1 >>> (32 - bits)));
+        int wordBits = mWordBits + bits;
+        while (wordBits >= 8) {
+            wordBits -= 8;
+            mBuf[mLength++] = (byte) (word >>> wordBits);
+        }
+        mWord = word;
+        mWordBits = wordBits;
+    }
+
+    /**
+     * Write the leading bits of an array, at most all of it.
+     */
+    void writeByteArray(int bits, byte[] arr) throws AccessException {
+        if (bits < 0) {
+            throw new AccessException("illegal write (" + bits + " bits)");
+        }
+        bits = Math.min(bits, arr.length * 8);
+        int bytes = bits >>> 3;
+        if (mWordBits == 0) {
+            if (mLength + bytes + 4 > mBuf.length) {
+                mBuf = Arrays.copyOf(mBuf, Math.max(mBuf.length * 2, mLength + bytes + 4));
+            }
+            System.arraycopy(arr, 0, mBuf, mLength, bytes);
+            mLength += bytes;
+        } else {
+            for (int i = 0; i < bytes; i++) {
+                write(8, arr[i]);
+            }
+        }
+        int lastBits = bits & 0x07;
+        if (lastBits > 0) {
+            write(lastBits, (arr[bytes] & 0xFF) >>> (8 - lastBits));
+        }
+    }
+
+    /**
+     * Write zero bits.
+     */
+    void skip(int bits) throws AccessException {
+        if (bits < 0) {
+            throw new AccessException("illegal skip (" + bits + " bits)");
+        }
+        for (; bits > 32; bits -= 32) {
+            write(32, 0);
+        }
+        write(bits, 0);
+    }
+
+    /**
+     * @return the bits written so far, the last byte padded with zero bits
+     */
+    byte[] toByteArray() {
+        byte[] arr = Arrays.copyOf(mBuf, mLength + (mWordBits > 0 ? 1 : 0));
+        if (mWordBits > 0) {
+            arr[mLength] = (byte) (mWord << (8 - mWordBits));
+        }
+        return arr;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.gsm;
+
+import android.telephony.SmsCbLocation;
+
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the pages of concatenated GSM cell broadcasts until all of them have arrived.
+ *
+ * <p>Messages are kept in the order their first page arrived. A message is dropped when it has
+ * waited longer than the expiry time, when more than the maximum number of messages are waiting
+ * (oldest first), or when the device leaves the area the message was broadcast to.
+ */
+final class SmsCbPageCache {
+    /** Maximum number of incomplete messages held at once. */
+    static final int MAX_MESSAGES = 32;
+
+    /**
+     * Time an incomplete message is held, long enough for a missing page to be picked up from
+     * a later repetition of the broadcast.
+     */
+    static final long EXPIRY_MS = 10 * 60 * 1000;
+
+    private final int mMaxMessages;
+    private final long mExpiryMs;
+
+    /** Incomplete messages, oldest first. */
+    private final LinkedHashMap<SmsCbConcatInfo, Pages> mMessages =
+            new LinkedHashMap<SmsCbConcatInfo, Pages>();
+
+    // Location the cached messages were last checked against
+    private String mPlmn;
+    private int mLac = -1;
+    private int mCid = -1;
+
+    private int mCompletedCount;
+    private int mDuplicatePageCount;
+    private int mExpiredCount;
+    private int mEvictedCount;
+    private int mOutOfAreaCount;
+
+    /**
+     * Pages received so far for one message.
+     */
+    private static final class Pages {
+        final byte[][] mPdus;
+        final long mFirstPageTime;
+        int mReceived;
+
+        Pages(int pageCount, long firstPageTime) {
+            mPdus = new byte[pageCount][];
+            mFirstPageTime = firstPageTime;
+        }
+    }
+
+    SmsCbPageCache() {
+        this(MAX_MESSAGES, EXPIRY_MS);
+    }
+
+    SmsCbPageCache(int maxMessages, long expiryMs) {
+        mMaxMessages = maxMessages;
+        mExpiryMs = expiryMs;
+    }
+
+    /**
+     * Add a page of a multi-page message.
+     *
+     * @param header the header of the page
+     * @param location the location the message applies to
+     * @param pdu the page
+     * @param now the current time in milliseconds since boot
+     * @return all pages of the message if this page completed it, null otherwise
+     */
+    byte[][] addPage(SmsCbHeader header, SmsCbLocation location, byte[] pdu, long now) {
+        expire(now);
+
+        SmsCbConcatInfo concatInfo = new SmsCbConcatInfo(header, location);
+        int pageCount = header.getNumberOfPages();
+        Pages pages = mMessages.get(concatInfo);
+        if (pages != null && pages.mPdus.length != pageCount) {
+            // Same message announced with a different number of pages, start over
+            mMessages.remove(concatInfo);
+            pages = null;
+        }
+        if (pages == null) {
+            // This is the first page of this message, make room for all pages
+            if (mMessages.size() >= mMaxMessages) {
+                Iterator<Pages> iter = mMessages.values().iterator();
+                iter.next();
+                iter.remove();
+                mEvictedCount++;
+            }
+            pages = new Pages(pageCount, now);
+            mMessages.put(concatInfo, pages);
+        }
+
+        // Page parameter is one-based
+        int index = header.getPageIndex() - 1;
+        if (pages.mPdus[index] != null) {
+            mDuplicatePageCount++;
+            return null;
+        }
+        pages.mPdus[index] = pdu;
+        if (++pages.mReceived < pageCount) {
+            // Still missing pages
+            return null;
+        }
+
+        // Message complete, remove and dispatch
+        mMessages.remove(concatInfo);
+        mCompletedCount++;
+        return pages.mPdus;
+    }
+
+    /**
+     * Drop the messages that do not apply to the current location. The cached messages are only
+     * checked when the location differs from the last call.
+     *
+     * @param plmn the current PLMN
+     * @param lac the current Location Area (GSM) or Service Area (UMTS)
+     * @param cid the current Cell ID
+     */
+    void removeOutOfArea(String plmn, int lac, int cid) {
+        if (lac == mLac && cid == mCid && (plmn == null ? mPlmn == null : plmn.equals(mPlmn))) {
+            return;
+        }
+        mPlmn = plmn;
+        mLac = lac;
+        mCid = cid;
+
+        Iterator<SmsCbConcatInfo> iter = mMessages.keySet().iterator();
+        while (iter.hasNext()) {
+            if (!iter.next().matchesLocation(plmn, lac, cid)) {
+                iter.remove();
+                mOutOfAreaCount++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages still missing pages
+     */
+    int size() {
+        return mMessages.size();
+    }
+
+    void dump(PrintWriter pw) {
+        pw.println(" mSmsCbPageCache: incomplete=" + mMessages.size()
+                + " completed=" + mCompletedCount
+                + " duplicatePages=" + mDuplicatePageCount
+                + " expired=" + mExpiredCount
+                + " evicted=" + mEvictedCount
+                + " outOfArea=" + mOutOfAreaCount);
+    }
+
+    private void expire(long now) {
+        Iterator<Pages> iter = mMessages.values().iterator();
+        while (iter.hasNext() && now - iter.next().mFirstPageTime >= mExpiryMs) {
+            iter.remove();
+            mExpiredCount++;
+        }
+    }
+
+    /**
+     * Holds all info about a message page needed to assemble a complete concatenated message.
+     */
+    private static final class SmsCbConcatInfo {
+
+        private final int mSerialNumber;
+        private final int mMessageIdentifier;
+        private final SmsCbLocation mLocation;
+
+        SmsCbConcatInfo(SmsCbHeader header, SmsCbLocation location) {
+            mSerialNumber = header.getSerialNumber();
+            mMessageIdentifier = header.getServiceCategory();
+            mLocation = location;
+        }
+
+        @Override
+        public int hashCode() {
+            return (((mSerialNumber * 31) + mMessageIdentifier) * 31) + mLocation.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof SmsCbConcatInfo) {
+                SmsCbConcatInfo other = (SmsCbConcatInfo)obj;
+
+                // Two pages match if they have the same serial number (which includes the
+                // geographical scope and update number) and message identifier, and both pages
+                // belong to the same location (PLMN, plus LAC and CID if these are part of the
+                // geographical scope).
+                return mSerialNumber == other.mSerialNumber
+                        && mMessageIdentifier == other.mMessageIdentifier
+                        && mLocation.equals(other.mLocation);
+            }
+
+            return false;
+        }
+
+        /**
+         * Compare the location code for this message to the current location code. The match is
+         * relative to the geographical scope of the message, which determines whether the LAC
+         * and Cell ID are saved in mLocation or set to -1 to match all values.
+         *
+         * @param plmn the current PLMN
+         * @param lac the current Location Area (GSM) or Service Area (UMTS)
+         * @param cid the current Cell ID
+         * @return true if this message is valid for the current location; false otherwise
+         */
+        boolean matchesLocation(String plmn, int lac, int cid) {
+            return mLocation.isInLocationArea(plmn, lac, cid);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.gsm;
+
+import android.telephony.Rlog;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import com.android.internal.telephony.EncodeException;
+import com.android.internal.telephony.GsmAlphabet;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+import static com.android.internal.telephony.SmsConstants.ENCODING_7BIT;
+import static com.android.internal.telephony.SmsConstants.MAX_USER_DATA_BYTES;
+import static com.android.internal.telephony.SmsConstants.MAX_USER_DATA_SEPTETS;
+
+/**
+ * Encodes SMS-SUBMIT PDUs, 3GPP TS 23.040 9.2.2.2, straight into an array of the exact size.
+ *
+ * <p>The size of the user data is worked out first, so the PDU is the only array allocated. The
+ * septets are packed as {@link GsmAlphabet#stringToGsm7BitPackedWithHeader} packs them, with the
+ * septet of each character looked up once per pair of language tables and cached.
+ */
+final class SubmitPduEncoder {
+    private static final String LOG_TAG = "SubmitPduEncoder";
+
+    // TP-MTI, TP-MR, TP-DA length, TP-PID and TP-DCS
+    private static final int FIXED_HEAD_LENGTH = 5;
+
+    // Septet codes: a septet of the language table, or of the single shift table with
+    // SHIFT_TABLE_SEPTET added, or one of the following
+    private static final int SHIFT_TABLE_SEPTET = 0x80;
+    private static final int NOT_ENCODABLE = -1;
+    // The escape character, which GsmAlphabet counts as no septet but cannot pack
+    private static final int ESCAPE = -2;
+    private static final int NOT_LOOKED_UP = -3;
+
+    private static final int LATIN1_CHARS = 0x100;
+
+    private static final SparseArray<SeptetCodes> sSeptetCodes = new SparseArray<SeptetCodes>();
+
+    /**
+     * The septets of characters for a pair of language tables, looked up from GsmAlphabet as
+     * they are first seen.
+     */
+    private static final class SeptetCodes {
+        private final int mLanguageTable;
+        private final int mLanguageShiftTable;
+        private final int[] mLatin1Codes = new int[LATIN1_CHARS];
+        private final SparseIntArray mCodes = new SparseIntArray();
+
+        SeptetCodes(int languageTable, int languageShiftTable) {
+            mLanguageTable = languageTable;
+            mLanguageShiftTable = languageShiftTable;
+            Arrays.fill(mLatin1Codes, NOT_LOOKED_UP);
+        }
+
+        /**
+         * Callers hold the lock of this.
+         */
+        int getCode(char c) {
+            if (c < LATIN1_CHARS) {
+                int code = mLatin1Codes[c];
+                if (code == NOT_LOOKED_UP) {
+                    code = lookUp(c);
+                    mLatin1Codes[c] = code;
+                }
+                return code;
+            }
+            int code = mCodes.get(c, NOT_LOOKED_UP);
+            if (code == NOT_LOOKED_UP) {
+                code = lookUp(c);
+                mCodes.put(c, code);
+            }
+            return code;
+        }
+
+        private int lookUp(char c) {
+            byte[] packed;
+            try {
+                packed = GsmAlphabet.stringToGsm7BitPacked(String.valueOf(c), 0, true,
+                        mLanguageTable, mLanguageShiftTable);
+            } catch (EncodeException ex) {
+                return NOT_ENCODABLE;
+            }
+            switch (packed[0]) {
+                case 1:
+                    return packed[1] & 0x7f;
+                case 2:
+                    // The escape septet, then the septet of the single shift table
+                    return SHIFT_TABLE_SEPTET
+                            | ((packed[1] & 0xff) >> 7) | ((packed[2] & 0x3f) << 1);
+                default:
+                    return ESCAPE;
+            }
+        }
+    }
+
+    private SubmitPduEncoder() {
+    }
+
+    private static SeptetCodes getSeptetCodes(int languageTable, int languageShiftTable) {
+        int key = (languageTable << 8) | languageShiftTable;
+        synchronized (sSeptetCodes) {
+            SeptetCodes codes = sSeptetCodes.get(key);
+            if (codes == null) {
+                codes = new SeptetCodes(languageTable, languageShiftTable);
+                sSeptetCodes.put(key, codes);
+            }
+            return codes;
+        }
+    }
+
+    /**
+     * Encode the PDU of a text message, falling back to UCS-2 if the text cannot be encoded
+     * in the 7-bit alphabet.
+     *
+     * @param mtiByte the first octet, TP-MTI and its flags
+     * @param daBytes the destination address in BCD with the TON byte
+     * @param header the user data header, or null
+     * @param encoding ENCODING_7BIT or else UCS-2
+     * @param relativeValidityPeriod TP-VP in relative format, or -1 for none
+     * @return the PDU, or null if the message is too long
+     */
+    static byte[] encodeText(byte mtiByte, byte[] daBytes, String message, byte[] header,
+            int encoding, int languageTable, int languageShiftTable,
+            int relativeValidityPeriod) {
+        if (encoding == ENCODING_7BIT) {
+            try {
+                return encode7bit(mtiByte, daBytes, message, header, languageTable,
+                        languageShiftTable, relativeValidityPeriod);
+            } catch (EncodeException ex) {
+                // Encoding error, likely due to custom 7-bit tables, fall back to UCS-2
+            }
+        }
+        return encodeUcs2(mtiByte, daBytes, message, header, relativeValidityPeriod);
+    }
+
+    /**
+     * @throws EncodeException where {@link GsmAlphabet#stringToGsm7BitPackedWithHeader} would
+     */
+    private static byte[] encode7bit(byte mtiByte, byte[] daBytes, String message,
+            byte[] header, int languageTable, int languageShiftTable,
+            int relativeValidityPeriod) throws EncodeException {
+        boolean hasHeader = header != null && header.length != 0;
+        int headerSeptets = hasHeader ? ((header.length + 1) * 8 + 6) / 7 : 0;
+        int length = message.length();
+
+        SeptetCodes codes = getSeptetCodes(languageTable, languageShiftTable);
+        synchronized (codes) {
+            int septets = headerSeptets;
+            for (int i = 0; i < length; i++) {
+                int code = codes.getCode(message.charAt(i));
+                if (code == NOT_ENCODABLE) {
+                    throw new EncodeException("Unencodable char: '" + message.charAt(i) + "'");
+                } else if (code == ESCAPE) {
+                    // Rare enough to leave to GsmAlphabet
+                    return encodeUserData(mtiByte, daBytes, 0x00, relativeValidityPeriod,
+                            GsmAlphabet.stringToGsm7BitPackedWithHeader(message, header,
+                                    languageTable, languageShiftTable));
+                }
+                septets += (code & SHIFT_TABLE_SEPTET) != 0 ? 2 : 1;
+            }
+            if (septets > 255) {
+                throw new EncodeException("Payload cannot exceed 255 septets");
+            }
+            if (septets > MAX_USER_DATA_SEPTETS) {
+                Rlog.e(LOG_TAG, "Message too long (" + septets + " septets)");
+                return null;
+            }
+
+            byte[] pdu = new byte[FIXED_HEAD_LENGTH + daBytes.length
+                    + (relativeValidityPeriod >= 0 ? 1 : 0) + 1 + (septets * 7 + 7) / 8];
+            // TP-DCS: default alphabet, uncompressed
+            int offset = writeHead(pdu, mtiByte, daBytes, 0x00, relativeValidityPeriod);
+
+            // TP-UDL in septets, then the header and the packed text
+            pdu[offset] = (byte) septets;
+            if (hasHeader) {
+                pdu[offset + 1] = (byte) header.length;
+                System.arraycopy(header, 0, pdu, offset + 2, header.length);
+            }
+            int bitOffset = headerSeptets * 7;
+            for (int i = 0; i < length; i++) {
+                int code = codes.getCode(message.charAt(i));
+                if ((code & SHIFT_TABLE_SEPTET) != 0) {
+                    packSeptet(pdu, offset, bitOffset, GsmAlphabet.GSM_EXTENDED_ESCAPE);
+                    bitOffset += 7;
+                    code &= ~SHIFT_TABLE_SEPTET;
+                }
+                packSeptet(pdu, offset, bitOffset, code);
+                bitOffset += 7;
+            }
+            return pdu;
+        }
+    }
+
+    /**
+     * Encode the PDU around user data that starts with TP-UDL in septets.
+     */
+    private static byte[] encodeUserData(byte mtiByte, byte[] daBytes, int dataCodingScheme,
+            int relativeValidityPeriod, byte[] userData) {
+        if ((0xff & userData[0]) > MAX_USER_DATA_SEPTETS) {
+            Rlog.e(LOG_TAG, "Message too long (" + (0xff & userData[0]) + " septets)");
+            return null;
+        }
+        byte[] pdu = new byte[FIXED_HEAD_LENGTH + daBytes.length
+                + (relativeValidityPeriod >= 0 ? 1 : 0) + userData.length];
+        int offset = writeHead(pdu, mtiByte, daBytes, dataCodingScheme, relativeValidityPeriod);
+        System.arraycopy(userData, 0, pdu, offset, userData.length);
+        return pdu;
+    }
+
+    private static byte[] encodeUcs2(byte mtiByte, byte[] daBytes, String message,
+            byte[] header, int relativeValidityPeriod) {
+        int length = message.length();
+        byte[] text = null;
+        for (int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            if (Character.isSurrogate(c) && (!Character.isHighSurrogate(c) || i + 1 == length
+                    || !Character.isLowSurrogate(message.charAt(++i)))) {
+                // Unpaired surrogate, let the charset replace it
+                try {
+                    text = message.getBytes("utf-16be");
+                } catch (UnsupportedEncodingException uex) {
+                    Rlog.e(LOG_TAG, "Implausible UnsupportedEncodingException ", uex);
+                    return null;
+                }
+                break;
+            }
+        }
+
+        int textLength = (text != null) ? text.length : length * 2;
+        int userDataLength = textLength + (header != null ? header.length + 1 : 0);
+        // TP-UDL only has room for the low octet
+        if ((0xff & userDataLength) > MAX_USER_DATA_BYTES) {
+            Rlog.e(LOG_TAG, "Message too long (" + (0xff & userDataLength) + " bytes)");
+            return null;
+        }
+
+        byte[] pdu = new byte[FIXED_HEAD_LENGTH + daBytes.length
+                + (relativeValidityPeriod >= 0 ? 1 : 0) + 1 + userDataLength];
+        // TP-DCS: UCS-2, uncompressed
+        int offset = writeHead(pdu, mtiByte, daBytes, 0x08, relativeValidityPeriod);
+        pdu[offset++] = (byte) userDataLength;
+        if (header != null) {
+            pdu[offset++] = (byte) header.length;
+            System.arraycopy(header, 0, pdu, offset, header.length);
+            offset += header.length;
+        }
+        if (text != null) {
+            System.arraycopy(text, 0, pdu, offset, text.length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                char c = message.charAt(i);
+                pdu[offset++] = (byte) (c >> 8);
+                pdu[offset++] = (byte) c;
+            }
+        }
+        return pdu;
+    }
+
+    /**
+     * Encode the PDU of an 8-bit data message.
+     *
+     * @param header the user data header, which with the data fits in MAX_USER_DATA_BYTES
+     */
+    static byte[] encodeData(byte mtiByte, byte[] daBytes, byte[] header, byte[] data) {
+        int userDataLength = header.length + 1 + data.length;
+        byte[] pdu = new byte[FIXED_HEAD_LENGTH + daBytes.length + 1 + userDataLength];
+        // TP-DCS: no class, 8 bit data
+        int offset = writeHead(pdu, mtiByte, daBytes, 0x04, -1);
+        pdu[offset++] = (byte) userDataLength;
+        pdu[offset++] = (byte) header.length;
+        System.arraycopy(header, 0, pdu, offset, header.length);
+        System.arraycopy(data, 0, pdu, offset + header.length, data.length);
+        return pdu;
+    }
+
+    /**
+     * Write the fields before TP-UDL.
+     *
+     * @return the offset of TP-UDL
+     */
+    private static int writeHead(byte[] pdu, byte mtiByte, byte[] daBytes,
+            int dataCodingScheme, int relativeValidityPeriod) {
+        int offset = 0;
+        pdu[offset++] = mtiByte;
+        // space for TP-Message-Reference
+        pdu[offset++] = 0;
+        // destination address length in BCD digits, ignoring TON byte and pad
+        pdu[offset++] = (byte) ((daBytes.length - 1) * 2
+                - ((daBytes[daBytes.length - 1] & 0xf0) == 0xf0 ? 1 : 0));
+        System.arraycopy(daBytes, 0, pdu, offset, daBytes.length);
+        offset += daBytes.length;
+        // TP-Protocol-Identifier
+        pdu[offset++] = 0;
+        pdu[offset++] = (byte) dataCodingScheme;
+        if (relativeValidityPeriod >= 0) {
+            pdu[offset++] = (byte) relativeValidityPeriod;
+        }
+        return offset;
+    }
+
+    /**
+     * Pack a septet into the user data that starts, with TP-UDL, at the offset.
+     */
+    private static void packSeptet(byte[] pdu, int offset, int bitOffset, int value) {
+        int byteOffset = offset + 1 + bitOffset / 8;
+        int shift = bitOffset % 8;
+        pdu[byteOffset] |= value << shift;
+        if (shift > 1) {
+            pdu[byteOffset + 1] = (byte) (value >> (8 - shift));
+        }
+    }
+}
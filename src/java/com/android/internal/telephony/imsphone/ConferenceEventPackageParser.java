@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.internal.telephony.imsphone;
+
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.Xml;
+
+import com.android.ims.ImsConferenceState;
+import com.android.internal.util.XmlUtils;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Parses RFC 4575 conference event package notifications ({@code conference-info} documents)
+ * and keeps the conference state they describe.
+ * <pre>
+ * {@code
+ * <conference-info entity="sips:conf@ims-test-provider.com" state="partial" version="2">
+ *     <users>
+ *         <user entity="tel:+16505551212" state="partial">
+ *             <display-text>Joe Q. Public</display-text>
+ *             <endpoint entity="sip:+16505551212@ims-test-provider.com">
+ *                 <status>on-hold</status>
+ *             </endpoint>
+ *         </user>
+ *     </users>
+ * </conference-info>
+ * }
+ * </pre>
+ * <p>
+ * Each endpoint of a user is a participant, described by a {@link Bundle} with the same keys as
+ * the participants of an {@link ImsConferenceState}. A notification with {@code state="full"}
+ * replaces the conference state, while a {@code state="partial"} notification only lists the
+ * users and endpoints that changed; a partial element leaves the values it omits unchanged.
+ * Notifications with a version not greater than the last one applied are ignored.
+ * <p>
+ * The document is read in a single pass, and each participant change is reported to the
+ * {@link Listener} as soon as its endpoint has been read, so a notification about one
+ * participant of a large conference does not touch the others.
+ */
+public class ConferenceEventPackageParser {
+    private static final String LOG_TAG = "ConferenceEventPackageParser";
+
+    private static final String CONFERENCE_INFO_TAG = "conference-info";
+    private static final String USERS_TAG = "users";
+    private static final String USER_TAG = "user";
+    private static final String DISPLAY_TEXT_TAG = "display-text";
+    private static final String ENDPOINT_TAG = "endpoint";
+    private static final String STATUS_TAG = "status";
+
+    private static final String ENTITY_ATTR = "entity";
+    private static final String STATE_ATTR = "state";
+    private static final String VERSION_ATTR = "version";
+
+    private static final String STATE_PARTIAL = "partial";
+    private static final String STATE_DELETED = "deleted";
+
+    /**
+     * Receives the participant changes found while parsing a notification.
+     */
+    public interface Listener {
+        void onParticipantAdded(Bundle participant);
+        void onParticipantUpdated(Bundle participant);
+        void onParticipantRemoved(Bundle participant);
+    }
+
+    /**
+     * The participants of the conference keyed by endpoint, in the order they were added.
+     * Bundles are replaced rather than modified once reported.
+     */
+    private final LinkedHashMap<String, Bundle> mParticipants = new LinkedHashMap<>();
+
+    /**
+     * Endpoints listed in the notification being parsed.
+     */
+    private final HashSet<String> mListedEndpoints = new HashSet<>();
+
+    private XmlPullParser mParser;
+    private long mVersion = -1;
+
+    /**
+     * Parses a notification and applies it to the conference state.
+     *
+     * @param inputStream The notification, closed once read.
+     * @param listener Notified of each participant change, or {@code null}.
+     * @return {@code false} if the notification could not be read. Changes read before the
+     *         error are kept.
+     */
+    public boolean parse(InputStream inputStream, Listener listener) {
+        try {
+            if (mParser == null) {
+                mParser = Xml.newPullParser();
+            }
+            XmlPullParser parser = mParser;
+            parser.setInput(inputStream, null);
+            parser.nextTag();
+            parser.require(XmlPullParser.START_TAG, null, CONFERENCE_INFO_TAG);
+
+            long version = parseVersion(parser.getAttributeValue(null, VERSION_ATTR));
+            if (version >= 0 && version <= mVersion) {
+                Log.v(LOG_TAG, "Ignoring stale version " + version);
+                return true;
+            }
+            mListedEndpoints.clear();
+            String state = parser.getAttributeValue(null, STATE_ATTR);
+            if (STATE_DELETED.equals(state)) {
+                removeParticipants(null, listener);
+                updateVersion(version);
+                return true;
+            }
+            boolean partial = STATE_PARTIAL.equals(state);
+
+            int outerDepth = parser.getDepth();
+            while (XmlUtils.nextElementWithin(parser, outerDepth)) {
+                if (parser.getName().equals(USERS_TAG)) {
+                    int usersDepth = parser.getDepth();
+                    while (XmlUtils.nextElementWithin(parser, usersDepth)) {
+                        if (parser.getName().equals(USER_TAG)) {
+                            parseUser(parser, partial, listener);
+                        }
+                    }
+                }
+            }
+            if (!partial) {
+                removeParticipants(null, listener);
+            }
+            updateVersion(version);
+        } catch (IOException | XmlPullParserException e) {
+            Log.e(LOG_TAG, "Failed to read conference event package", e);
+            return false;
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to close conference event package InputStream", e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return A new {@link ImsConferenceState} holding the current participants.
+     */
+    public ImsConferenceState getConferenceState() {
+        ImsConferenceState conferenceState = new ImsConferenceState();
+        conferenceState.mParticipants.putAll(mParticipants);
+        return conferenceState;
+    }
+
+    /**
+     * @return The current number of participants.
+     */
+    public int getParticipantCount() {
+        return mParticipants.size();
+    }
+
+    /**
+     * Forgets the conference state, for example when a new conference starts.
+     */
+    public void reset() {
+        mParticipants.clear();
+        mVersion = -1;
+    }
+
+    /**
+     * Parses a user element and applies its endpoints.
+     *
+     * @param parser The XML parser, positioned on the user element.
+     * @param partialNotification {@code true} if the notification is a partial one.
+     * @param listener The listener, or {@code null}.
+     */
+    private void parseUser(XmlPullParser parser, boolean partialNotification, Listener listener)
+            throws IOException, XmlPullParserException {
+        String user = parser.getAttributeValue(null, ENTITY_ATTR);
+        if (user == null) {
+            return;
+        }
+        String state = parser.getAttributeValue(null, STATE_ATTR);
+        if (STATE_DELETED.equals(state)) {
+            removeParticipants(user, listener);
+            return;
+        }
+
+        // The schema places display-text before the endpoints of the user.
+        String displayText = null;
+        int outerDepth = parser.getDepth();
+        while (XmlUtils.nextElementWithin(parser, outerDepth)) {
+            if (parser.getName().equals(DISPLAY_TEXT_TAG)) {
+                displayText = readText(parser);
+            } else if (parser.getName().equals(ENDPOINT_TAG)) {
+                parseEndpoint(parser, user, displayText, listener);
+            }
+        }
+
+        if (partialNotification) {
+            // Endpoints of this user the notification did not list keep their state, apart from
+            // a new display text, unless the user element holds the full user state.
+            if (!STATE_PARTIAL.equals(state)) {
+                removeParticipants(user, listener);
+            } else if (displayText != null) {
+                for (Bundle participant : mParticipants.values()) {
+                    if (user.equals(participant.getString(ImsConferenceState.USER))
+                            && !mListedEndpoints.contains(
+                                    participant.getString(ImsConferenceState.ENDPOINT))) {
+                        updateParticipant(participant.getString(ImsConferenceState.ENDPOINT),
+                                user, displayText, null, listener);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses an endpoint element and applies it.
+     *
+     * @param parser The XML parser, positioned on the endpoint element.
+     * @param user The entity of the user the endpoint belongs to.
+     * @param displayText The display text of the user, or {@code null} if not given.
+     * @param listener The listener, or {@code null}.
+     */
+    private void parseEndpoint(XmlPullParser parser, String user, String displayText,
+            Listener listener) throws IOException, XmlPullParserException {
+        String endpoint = parser.getAttributeValue(null, ENTITY_ATTR);
+        if (endpoint == null) {
+            return;
+        }
+        if (STATE_DELETED.equals(parser.getAttributeValue(null, STATE_ATTR))) {
+            Bundle participant = mParticipants.remove(endpoint);
+            if (participant != null && listener != null) {
+                listener.onParticipantRemoved(participant);
+            }
+            return;
+        }
+
+        String status = null;
+        int outerDepth = parser.getDepth();
+        while (XmlUtils.nextElementWithin(parser, outerDepth)) {
+            if (parser.getName().equals(STATUS_TAG)) {
+                status = readText(parser);
+            }
+        }
+        mListedEndpoints.add(endpoint);
+        updateParticipant(endpoint, user, displayText, status, listener);
+    }
+
+    /**
+     * Adds or updates a participant, reporting it if anything changed.
+     *
+     * @param displayText The new display text, or {@code null} to keep the current one.
+     * @param status The new status, or {@code null} to keep the current one.
+     */
+    private void updateParticipant(String endpoint, String user, String displayText,
+            String status, Listener listener) {
+        Bundle current = mParticipants.get(endpoint);
+        if (current == null) {
+            Bundle participant = new Bundle();
+            participant.putString(ImsConferenceState.USER, user);
+            participant.putString(ImsConferenceState.DISPLAY_TEXT,
+                    displayText == null ? "" : displayText);
+            participant.putString(ImsConferenceState.ENDPOINT, endpoint);
+            participant.putString(ImsConferenceState.STATUS, status == null ? "" : status);
+            mParticipants.put(endpoint, participant);
+            if (listener != null) {
+                listener.onParticipantAdded(participant);
+            }
+            return;
+        }
+
+        if (displayText == null) {
+            displayText = current.getString(ImsConferenceState.DISPLAY_TEXT);
+        }
+        if (status == null) {
+            status = current.getString(ImsConferenceState.STATUS);
+        }
+        if (TextUtils.equals(user, current.getString(ImsConferenceState.USER))
+                && TextUtils.equals(displayText,
+                        current.getString(ImsConferenceState.DISPLAY_TEXT))
+                && TextUtils.equals(status, current.getString(ImsConferenceState.STATUS))) {
+            return;
+        }
+        Bundle participant = new Bundle(current);
+        participant.putString(ImsConferenceState.USER, user);
+        participant.putString(ImsConferenceState.DISPLAY_TEXT, displayText);
+        participant.putString(ImsConferenceState.STATUS, status);
+        mParticipants.put(endpoint, participant);
+        if (listener != null) {
+            listener.onParticipantUpdated(participant);
+        }
+    }
+
+    /**
+     * Removes the participants not listed in the notification being parsed.
+     *
+     * @param user Only remove endpoints of this user, or {@code null} for all users.
+     * @param listener The listener, or {@code null}.
+     */
+    private void removeParticipants(String user, Listener listener) {
+        Iterator<Bundle> iterator = mParticipants.values().iterator();
+        while (iterator.hasNext()) {
+            Bundle participant = iterator.next();
+            if ((user == null || user.equals(participant.getString(ImsConferenceState.USER)))
+                    && !mListedEndpoints.contains(
+                            participant.getString(ImsConferenceState.ENDPOINT))) {
+                iterator.remove();
+                if (listener != null) {
+                    listener.onParticipantRemoved(participant);
+                }
+            }
+        }
+    }
+
+    private void updateVersion(long version) {
+        if (version >= 0) {
+            mVersion = version;
+        }
+    }
+
+    private static String readText(XmlPullParser parser)
+            throws IOException, XmlPullParserException {
+        if (parser.next() == XmlPullParser.TEXT) {
+            return parser.getText().trim();
+        }
+        return "";
+    }
+
+    private static long parseVersion(String version) {
+        if (version != null) {
+            try {
+                return Long.parseLong(version.trim());
+            } catch (NumberFormatException e) {
+                Log.w(LOG_TAG, "Invalid version " + version);
+            }
+        }
+        return -1;
+    }
+}
@@ -88,6 +88,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -224,6 +225,16 @@ public class ImsPhoneCallTracker extends CallTracker implements ImsPullCall {
 
     //***** Instance Variables
     private ArrayList<ImsPhoneConnection> mConnections = new ArrayList<ImsPhoneConnection>();
+    // Connections in mConnections keyed by their ImsCall, so that the ImsCall.Listener
+    // callbacks find their connection without locking or scanning. ImsCall does not override
+    // equals(), so the lookup is by identity. Written with the tracker lock held.
+    private final ConcurrentHashMap<ImsCall, ImsPhoneConnection> mConnectionsByImsCall =
+            new ConcurrentHashMap<>();
+    // The ImsCall each connection is indexed under, as the connection drops its ImsCall when
+    // it disconnects. Guarded by the tracker lock.
+    private final HashMap<ImsPhoneConnection, ImsCall> mIndexedImsCalls = new HashMap<>();
+    // Number of emergency connections in mConnections. Guarded by the tracker lock.
+    private int mEmergencyConnectionCount = 0;
     private RegistrantList mVoiceCallEndedRegistrants = new RegistrantList();
     private RegistrantList mVoiceCallStartedRegistrants = new RegistrantList();
 
@@ -234,10 +245,8 @@ public class ImsPhoneCallTracker extends CallTracker implements ImsPullCall {
             ImsPhoneCall.CONTEXT_BACKGROUND);
     public ImsPhoneCall mHandoverCall = new ImsPhoneCall(this, ImsPhoneCall.CONTEXT_HANDOVER);
 
-    // Hold aggregated video call data usage for each video call since boot.
-    // The ImsCall's call id is the key of the map.
-    private final HashMap<Integer, Long> mVtDataUsageMap = new HashMap<>();
-    private volatile long mTotalVtDataUsage = 0;
+    // Aggregated video call data usage since boot, keyed by the ImsCall's unique id.
+    private final VtDataUsageAccumulator mVtDataUsage = new VtDataUsageAccumulator();
 
     private ImsPhoneConnection mPendingMO;
     private int mClirMode = CommandsInterface.CLIR_DEFAULT;
@@ -734,7 +743,7 @@ public class ImsPhoneCallTracker extends CallTracker implements ImsPullCall {
 
             ImsCall imsCall = mImsManager.makeCall(mServiceId, profile,
                     callees, mImsCallListener);
-            conn.setImsCall(imsCall);
+            setImsCall(conn, imsCall);
 
             mMetrics.writeOnImsCallStart(mPhone.getPhoneId(),
                     imsCall.getSession());
@@ -1196,7 +1205,7 @@ public class ImsPhoneCallTracker extends CallTracker implements ImsPullCall {
             if (DBG) log("callEndCleanupHandOverCallIfAny, mHandoverCall.mConnections="
                     + mHandoverCall.mConnections);
             mHandoverCall.mConnections.clear();
-            mConnections.clear();
+            clearConnections();
             mState = PhoneConstants.State.IDLE;
         }
     }
@@ -1281,9 +1290,18 @@ public class ImsPhoneCallTracker extends CallTracker implements ImsPullCall {
 
     }
 
-    private synchronized ImsPhoneConnection findConnection(final ImsCall imsCall) {
+    private ImsPhoneConnection findConnection(final ImsCall imsCall) {
+        if (imsCall == null) {
+            return findConnectionWithoutImsCall();
+        }
+        ImsPhoneConnection conn = mConnectionsByImsCall.get(imsCall);
+        // The connection may have dropped its ImsCall on disconnect before being removed
+        return (conn != null && conn.getImsCall() == imsCall) ? conn : null;
+    }
+
+    private synchronized ImsPhoneConnection findConnectionWithoutImsCall() {
         for (ImsPhoneConnection conn : mConnections) {
-            if (conn.getImsCall() == imsCall) {
+            if (conn.getImsCall() == null) {
                 return conn;
             }
         }
@@ -1291,33 +1309,58 @@ public class ImsPhoneCallTracker extends CallTracker implements ImsPullCall {
     }
 
     private synchronized void removeConnection(ImsPhoneConnection conn) {
-        mConnections.remove(conn);
-        // If not emergency call is remaining, notify emergency call registrants
-        if (mIsInEmergencyCall) {
-            boolean isEmergencyCallInList = false;
-            // if no emergency calls pending, set this to false
-            for (ImsPhoneConnection imsPhoneConnection : mConnections) {
-                if (imsPhoneConnection != null && imsPhoneConnection.isEmergency() == true) {
-                    isEmergencyCallInList = true;
-                    break;
-                }
-            }
-
-            if (!isEmergencyCallInList) {
-                mIsInEmergencyCall = false;
-                mPhone.sendEmergencyCallStateChange(false);
+        if (mConnections.remove(conn)) {
+            indexConnection(conn, null);
+            if (conn != null && conn.isEmergency()) {
+                mEmergencyConnectionCount--;
             }
         }
+        // If not emergency call is remaining, notify emergency call registrants
+        if (mIsInEmergencyCall && mEmergencyConnectionCount == 0) {
+            mIsInEmergencyCall = false;
+            mPhone.sendEmergencyCallStateChange(false);
+        }
     }
 
     private synchronized void addConnection(ImsPhoneConnection conn) {
         mConnections.add(conn);
+        indexConnection(conn, conn.getImsCall());
         if (conn.isEmergency()) {
+            mEmergencyConnectionCount++;
             mIsInEmergencyCall = true;
             mPhone.sendEmergencyCallStateChange(true);
         }
     }
 
+    private synchronized void setImsCall(ImsPhoneConnection conn, ImsCall imsCall) {
+        conn.setImsCall(imsCall);
+        if (mConnections.contains(conn)) {
+            indexConnection(conn, imsCall);
+        }
+    }
+
+    private synchronized void clearConnections() {
+        mConnections.clear();
+        mConnectionsByImsCall.clear();
+        mIndexedImsCalls.clear();
+        mEmergencyConnectionCount = 0;
+    }
+
+    /**
+     * Moves the connection to the given ImsCall in the lookup index, or drops it from the index
+     * if imsCall is null.
+     */
+    private void indexConnection(ImsPhoneConnection conn, ImsCall imsCall) {
+        ImsCall indexed = mIndexedImsCalls.remove(conn);
+        if (indexed != null) {
+            mConnectionsByImsCall.remove(indexed, conn);
+        }
+        if (imsCall != null) {
+            mIndexedImsCalls.put(conn, imsCall);
+            mConnectionsByImsCall.put(imsCall, conn);
+        }
+    }
+
     private void processCallStateChange(ImsCall imsCall, ImsPhoneCall.State state, int cause) {
         if (DBG) log("processCallStateChange " + imsCall + " state=" + state + " cause=" + cause);
         // This method is called on onCallUpdate() where there is not necessarily a call state
@@ -1674,6 +1717,7 @@ public class ImsPhoneCallTracker extends CallTracker implements ImsPullCall {
                     reasonInfo);
 
             processCallStateChange(imsCall, ImsPhoneCall.State.DISCONNECTED, cause);
+            mVtDataUsage.onCallEnded(imsCall.uniqueId);
             if (mForegroundCall.getState() != ImsPhoneCall.State.ACTIVE) {
                 if (mRingingCall.getState().isRinging()) {
                     // Drop pending MO. We should address incoming call first
@@ -2415,15 +2459,14 @@ public class ImsPhoneCallTracker extends CallTracker implements ImsPullCall {
             case EVENT_VT_DATA_USAGE_UPDATE:
                 ar = (AsyncResult) msg.obj;
                 ImsCall call = (ImsCall) ar.userObj;
-                Long usage = (long) ar.result;
+                long usage = (long) ar.result;
                 log("VT data usage update. usage = " + usage + ", imsCall = " + call);
 
-                Long oldUsage = 0L;
-                if (mVtDataUsageMap.containsKey(call.uniqueId)) {
-                    oldUsage = mVtDataUsageMap.get(call.uniqueId);
+                long delta = mVtDataUsage.update(call.uniqueId, usage);
+                if (delta > 0) {
+                    mMetrics.writeImsCallVtDataUsage(mPhone.getPhoneId(), call.getCallSession(),
+                            delta);
                 }
-                mTotalVtDataUsage += (usage - oldUsage);
-                mVtDataUsageMap.put(call.uniqueId, usage);
                 break;
             case EVENT_DATA_ENABLED_CHANGED:
                 ar = (AsyncResult) msg.obj;
@@ -2523,10 +2566,7 @@ public class ImsPhoneCallTracker extends CallTracker implements ImsPullCall {
             pw.println(" " + mImsFeatureStrings[i] + ": "
                     + ((mImsFeatureEnabled[i]) ? "enabled" : "disabled"));
         }
-        pw.println(" mTotalVtDataUsage=" + mTotalVtDataUsage);
-        for (Map.Entry<Integer, Long> entry : mVtDataUsageMap.entrySet()) {
-            pw.println("    id=" + entry.getKey() + " ,usage=" + entry.getValue());
-        }
+        mVtDataUsage.dump(pw);
 
         pw.flush();
         pw.println("++++++++++++++++++++++++++++++++");
@@ -2759,15 +2799,16 @@ public class ImsPhoneCallTracker extends CallTracker implements ImsPullCall {
         // usage will return asynchronously so it won't be counted in this round, but it will be
         // eventually counted when next getVtDataUsage is called.
         if (mState != PhoneConstants.State.IDLE) {
-            for (ImsPhoneConnection conn : mConnections) {
-                android.telecom.Connection.VideoProvider videoProvider = conn.getVideoProvider();
+            for (int i = 0; i < mConnections.size(); i++) {
+                android.telecom.Connection.VideoProvider videoProvider =
+                        mConnections.get(i).getVideoProvider();
                 if (videoProvider != null) {
                     videoProvider.onRequestConnectionDataUsage();
                 }
             }
         }
 
-        return mTotalVtDataUsage;
+        return mVtDataUsage.getTotalUsage();
     }
 
     public void registerPhoneStateListener(PhoneStateListener listener) {
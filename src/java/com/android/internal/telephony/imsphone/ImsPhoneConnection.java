@@ -27,6 +27,7 @@ import android.os.PersistableBundle;
 import android.os.PowerManager;
 import android.os.Registrant;
 import android.os.SystemClock;
+import android.telecom.ConferenceParticipant;
 import android.telecom.VideoProfile;
 import android.telephony.CarrierConfigManager;
 import android.telephony.DisconnectCause;
@@ -34,6 +35,8 @@ import android.telephony.PhoneNumberUtils;
 import android.telephony.Rlog;
 import android.telephony.ServiceState;
 import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 
 import com.android.ims.ImsException;
 import com.android.ims.ImsStreamMediaProfile;
@@ -48,6 +51,8 @@ import com.android.internal.telephony.UUSInfo;
 import com.android.ims.ImsCall;
 import com.android.ims.ImsCallProfile;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -92,6 +97,9 @@ public class ImsPhoneConnection extends Connection implements
 
     private boolean mIsEmergency = false;
 
+    // The conference participants last reported to the listeners, keyed by endpoint.
+    private final ArrayMap<Uri, ConferenceParticipant> mConferenceParticipants = new ArrayMap<>();
+
     /**
      * Used to indicate that video state changes detected by
      * {@link #updateMediaCapabilities(ImsCall)} should be ignored.  When a video state change from
@@ -732,6 +740,89 @@ public class ImsPhoneConnection extends Connection implements
         }
     }
 
+    /**
+     * Reports a new state of the conference participants to the listeners, along with the
+     * participants which joined, changed or left since the previous state. The changes are only
+     * reported if there are any.
+     *
+     * @param conferenceParticipants The participants of the conference.
+     */
+    @Override
+    public void updateConferenceParticipants(List<ConferenceParticipant> conferenceParticipants) {
+        List<ConferenceParticipant> added = new ArrayList<>();
+        List<ConferenceParticipant> updated = new ArrayList<>();
+        List<ConferenceParticipant> removed = new ArrayList<>();
+
+        ArraySet<Uri> endpoints = new ArraySet<>(conferenceParticipants.size());
+        for (ConferenceParticipant participant : conferenceParticipants) {
+            endpoints.add(participant.getEndpoint());
+            putConferenceParticipant(participant, added, updated);
+        }
+        for (int i = mConferenceParticipants.size() - 1; i >= 0; i--) {
+            if (!endpoints.contains(mConferenceParticipants.keyAt(i))) {
+                removed.add(mConferenceParticipants.removeAt(i));
+            }
+        }
+
+        super.updateConferenceParticipants(conferenceParticipants);
+        notifyConferenceParticipantsDelta(added, updated, removed);
+    }
+
+    /**
+     * Applies the participants which joined, changed or left the conference to the last reported
+     * state, then reports the new state and the changes to the listeners. Used when the
+     * conference state arrives as partial notifications.
+     *
+     * @param changed The participants which joined or changed.
+     * @param removedEndpoints The endpoints of the participants which left.
+     */
+    public void updateConferenceParticipants(List<ConferenceParticipant> changed,
+            List<Uri> removedEndpoints) {
+        List<ConferenceParticipant> added = new ArrayList<>();
+        List<ConferenceParticipant> updated = new ArrayList<>();
+        List<ConferenceParticipant> removed = new ArrayList<>();
+
+        for (ConferenceParticipant participant : changed) {
+            putConferenceParticipant(participant, added, updated);
+        }
+        for (Uri endpoint : removedEndpoints) {
+            ConferenceParticipant previous = mConferenceParticipants.remove(endpoint);
+            if (previous != null) {
+                removed.add(previous);
+            }
+        }
+
+        super.updateConferenceParticipants(
+                new ArrayList<ConferenceParticipant>(mConferenceParticipants.values()));
+        notifyConferenceParticipantsDelta(added, updated, removed);
+    }
+
+    private void putConferenceParticipant(ConferenceParticipant participant,
+            List<ConferenceParticipant> added, List<ConferenceParticipant> updated) {
+        ConferenceParticipant previous =
+                mConferenceParticipants.put(participant.getEndpoint(), participant);
+        if (previous == null) {
+            added.add(participant);
+        } else if (!isSameParticipant(previous, participant)) {
+            updated.add(participant);
+        }
+    }
+
+    private void notifyConferenceParticipantsDelta(List<ConferenceParticipant> added,
+            List<ConferenceParticipant> updated, List<ConferenceParticipant> removed) {
+        if (added.isEmpty() && updated.isEmpty() && removed.isEmpty()) {
+            if (DBG) Rlog.d(LOG_TAG, "updateConferenceParticipants: no change");
+            return;
+        }
+        updateConferenceParticipantsDelta(added, updated, removed);
+    }
+
+    private static boolean isSameParticipant(ConferenceParticipant a, ConferenceParticipant b) {
+        return a.getState() == b.getState()
+                && Objects.equals(a.getHandle(), b.getHandle())
+                && Objects.equals(a.getDisplayName(), b.getDisplayName());
+    }
+
     /**
      * Sets the conference connect time.  Used when an {@code ImsConference} is created to out of
      * this phone connection.
@@ -49,11 +49,9 @@ import static com.android.internal.telephony.CommandsInterface.SERVICE_CLASS_PAD
 import static com.android.internal.telephony.CommandsInterface.SERVICE_CLASS_MAX;
 
 import com.android.internal.telephony.MmiCode;
+import com.android.internal.telephony.MmiCodeTokenizer;
 import com.android.internal.telephony.Phone;
 
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-
 /**
  * The motto for this file is:
  *
@@ -188,37 +186,6 @@ public final class ImsPhoneMmiCode extends Handler implements MmiCode {
     static final String IcbDnMmi = "Specific Incoming Call Barring";
     //ICB (Anonymous)
     static final String IcbAnonymousMmi = "Anonymous Incoming Call Barring";
-    //***** Class Variables
-
-
-    // See TS 22.030 6.5.2 "Structure of the MMI"
-
-    private static Pattern sPatternSuppService = Pattern.compile(
-        "((\\*|#|\\*#|\\*\\*|##)(\\d{2,3})(\\*([^*#]*)(\\*([^*#]*)(\\*([^*#]*)(\\*([^*#]*))?)?)?)?#)(.*)");
-/*       1  2                    3          4  5       6   7         8    9     10  11             12
-
-         1 = Full string up to and including #
-         2 = action (activation/interrogation/registration/erasure)
-         3 = service code
-         5 = SIA
-         7 = SIB
-         9 = SIC
-         10 = dialing number
-*/
-
-    private static final int MATCH_GROUP_POUND_STRING = 1;
-
-    private static final int MATCH_GROUP_ACTION = 2;
-                        //(activation/interrogation/registration/erasure)
-
-    private static final int MATCH_GROUP_SERVICE_CODE = 3;
-    private static final int MATCH_GROUP_SIA = 5;
-    private static final int MATCH_GROUP_SIB = 7;
-    private static final int MATCH_GROUP_SIC = 9;
-    private static final int MATCH_GROUP_PWD_CONFIRM = 11;
-    private static final int MATCH_GROUP_DIALING_NUMBER = 12;
-    static private String[] sTwoDigitNumberPattern;
-
     //***** Public Class methods
 
     /**
@@ -236,22 +203,22 @@ public final class ImsPhoneMmiCode extends Handler implements MmiCode {
 
     static ImsPhoneMmiCode
     newFromDialString(String dialString, ImsPhone phone) {
-        Matcher m;
+        MmiCodeTokenizer.Tokens tokens;
         ImsPhoneMmiCode ret = null;
 
-        m = sPatternSuppService.matcher(dialString);
+        tokens = MmiCodeTokenizer.tokenize(dialString);
 
         // Is this formatted like a standard supplementary service code?
-        if (m.matches()) {
+        if (tokens != null) {
             ret = new ImsPhoneMmiCode(phone);
-            ret.mPoundString = makeEmptyNull(m.group(MATCH_GROUP_POUND_STRING));
-            ret.mAction = makeEmptyNull(m.group(MATCH_GROUP_ACTION));
-            ret.mSc = makeEmptyNull(m.group(MATCH_GROUP_SERVICE_CODE));
-            ret.mSia = makeEmptyNull(m.group(MATCH_GROUP_SIA));
-            ret.mSib = makeEmptyNull(m.group(MATCH_GROUP_SIB));
-            ret.mSic = makeEmptyNull(m.group(MATCH_GROUP_SIC));
-            ret.mPwd = makeEmptyNull(m.group(MATCH_GROUP_PWD_CONFIRM));
-            ret.mDialingNumber = makeEmptyNull(m.group(MATCH_GROUP_DIALING_NUMBER));
+            ret.mPoundString = makeEmptyNull(tokens.poundString);
+            ret.mAction = makeEmptyNull(tokens.action);
+            ret.mSc = makeEmptyNull(tokens.serviceCode);
+            ret.mSia = makeEmptyNull(tokens.sia);
+            ret.mSib = makeEmptyNull(tokens.sib);
+            ret.mSic = makeEmptyNull(tokens.sic);
+            ret.mPwd = makeEmptyNull(tokens.pwd);
+            ret.mDialingNumber = makeEmptyNull(tokens.dialingNumber);
             // According to TS 22.030 6.5.2 "Structure of the MMI",
             // the dialing number should not ending with #.
             // The dialing number ending # is treated as unique USSD,
@@ -270,7 +237,7 @@ public final class ImsPhoneMmiCode extends Handler implements MmiCode {
 
             ret = new ImsPhoneMmiCode(phone);
             ret.mPoundString = dialString;
-        } else if (isTwoDigitShortCode(phone.getContext(), dialString)) {
+        } else if (MmiCodeTokenizer.isTwoDigitShortCode(phone.getContext(), dialString)) {
             //Is a country-specific exception to short codes as defined in TS 22.030, 6.5.3.2
             ret = null;
         } else if (isShortCode(dialString, phone)) {
@@ -326,9 +293,9 @@ public final class ImsPhoneMmiCode extends Handler implements MmiCode {
 
     static boolean isScMatchesSuppServType(String dialString) {
         boolean isMatch = false;
-        Matcher m = sPatternSuppService.matcher(dialString);
-        if (m.matches()) {
-            String sc = makeEmptyNull(m.group(MATCH_GROUP_SERVICE_CODE));
+        MmiCodeTokenizer.Tokens tokens = MmiCodeTokenizer.tokenize(dialString);
+        if (tokens != null) {
+            String sc = makeEmptyNull(tokens.serviceCode);
             if (sc.equals(SC_CFUT)) {
                 isMatch = true;
             } else if(sc.equals(SC_BS_MT)) {
@@ -534,28 +501,6 @@ public final class ImsPhoneMmiCode extends Handler implements MmiCode {
 
     }
 
-    static private boolean
-    isTwoDigitShortCode(Context context, String dialString) {
-        Rlog.d(LOG_TAG, "isTwoDigitShortCode");
-
-        if (dialString == null || dialString.length() > 2) return false;
-
-        if (sTwoDigitNumberPattern == null) {
-            sTwoDigitNumberPattern = context.getResources().getStringArray(
-                    com.android.internal.R.array.config_twoDigitNumberPattern);
-        }
-
-        for (String dialnumber : sTwoDigitNumberPattern) {
-            Rlog.d(LOG_TAG, "Two Digit Number Pattern " + dialnumber);
-            if (dialString.equals(dialnumber)) {
-                Rlog.d(LOG_TAG, "Two Digit Number Pattern -true");
-                return true;
-            }
-        }
-        Rlog.d(LOG_TAG, "Two Digit Number Pattern -false");
-        return false;
-    }
-
     /**
      * Helper function for newFromDialString. Returns true if dialString appears
      * to be a short code AND conditions are correct for it to be treated as
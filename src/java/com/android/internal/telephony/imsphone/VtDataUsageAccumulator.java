@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.imsphone;
+
+import java.io.PrintWriter;
+
+/**
+ * Adds up the video data used by IMS calls since boot.
+ *
+ * <p>The video call provider reports the cumulative usage of a call, so the usage last reported
+ * by each call is kept and only the difference is added to the total. Calls are held in a fixed
+ * number of slots. Ended calls keep their slot until it is needed for a new call, so that a
+ * report arriving after the call ended is not counted twice.
+ *
+ * <p>Usage is reported on the call tracker's handler thread; the total may be read from any
+ * thread.
+ */
+final class VtDataUsageAccumulator {
+    /** Maximum number of calls whose last reported usage is kept. */
+    static final int MAX_CALLS = 8;
+
+    private final int[] mCallIds;
+    private final long[] mCallUsage;
+    private final boolean[] mCallEnded;
+    // Report sequence number of the last report for each call, to find the oldest slot
+    private final long[] mLastReport;
+    private int mCallCount;
+    private long mReportCount;
+
+    private volatile long mTotalUsage;
+
+    VtDataUsageAccumulator() {
+        this(MAX_CALLS);
+    }
+
+    VtDataUsageAccumulator(int maxCalls) {
+        mCallIds = new int[maxCalls];
+        mCallUsage = new long[maxCalls];
+        mCallEnded = new boolean[maxCalls];
+        mLastReport = new long[maxCalls];
+    }
+
+    /**
+     * Record the cumulative usage reported for a call.
+     *
+     * @param callId the unique id of the call
+     * @param usage the data used by the call so far, in bytes
+     * @return the usage added to the total
+     */
+    long update(int callId, long usage) {
+        int index = indexOf(callId);
+        if (index < 0) {
+            index = add(callId);
+        }
+        mLastReport[index] = ++mReportCount;
+        long delta = usage - mCallUsage[index];
+        if (delta < 0) {
+            // The provider started counting again, so all of the reported usage is new
+            delta = usage;
+        }
+        mCallUsage[index] = usage;
+        mTotalUsage += delta;
+        return delta;
+    }
+
+    /**
+     * Mark a call as ended, allowing its slot to be reused.
+     *
+     * @param callId the unique id of the call
+     */
+    void onCallEnded(int callId) {
+        int index = indexOf(callId);
+        if (index >= 0) {
+            mCallEnded[index] = true;
+        }
+    }
+
+    /**
+     * @return the data used by all calls since boot, in bytes
+     */
+    long getTotalUsage() {
+        return mTotalUsage;
+    }
+
+    void dump(PrintWriter pw) {
+        pw.println(" mTotalVtDataUsage=" + mTotalUsage);
+        for (int i = 0; i < mCallCount; i++) {
+            pw.println("    id=" + mCallIds[i] + " ,usage=" + mCallUsage[i]
+                    + (mCallEnded[i] ? " ,ended" : ""));
+        }
+    }
+
+    private int indexOf(int callId) {
+        for (int i = 0; i < mCallCount; i++) {
+            if (mCallIds[i] == callId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int add(int callId) {
+        int index;
+        if (mCallCount < mCallIds.length) {
+            index = mCallCount++;
+        } else {
+            // Reuse the slot of the ended call, or failing that the call, reported least recently
+            index = 0;
+            for (int i = 1; i < mCallCount; i++) {
+                if (mCallEnded[i] != mCallEnded[index]
+                        ? mCallEnded[i] : mLastReport[i] < mLastReport[index]) {
+                    index = i;
+                }
+            }
+        }
+        mCallIds[index] = callId;
+        mCallUsage[index] = 0;
+        mCallEnded[index] = false;
+        return index;
+    }
+}
@@ -124,4 +124,9 @@ public class CallSessionEventBuilder {
         mEvent.setNitzTimestampMillis(timestamp);
         return this;
     }
+
+    public CallSessionEventBuilder setVtDataUsage(long bytes) {
+        mEvent.setVtDataUsageBytes(bytes);
+        return this;
+    }
 }
@@ -104,6 +104,23 @@ public class TelephonyEventBuilder {
         return this;
     }
 
+    public TelephonyEventBuilder setCallPollStats(int pollsIssued, int pollsSuppressed) {
+        mEvent.setType(TelephonyEvent.Type.CALL_POLL_STATS);
+        mEvent.callPollStats = new TelephonyEvent.CallPollStats();
+        mEvent.callPollStats.setPollsIssued(pollsIssued);
+        mEvent.callPollStats.setPollsSuppressed(pollsSuppressed);
+        return this;
+    }
+
+    public TelephonyEventBuilder setCellBroadcastDuplicate(int serviceCategory,
+            int serialNumber) {
+        mEvent.setType(TelephonyEvent.Type.CELL_BROADCAST_DUPLICATE);
+        mEvent.cellBroadcastDuplicate = new TelephonyEvent.CellBroadcastDuplicate();
+        mEvent.cellBroadcastDuplicate.setServiceCategory(serviceCategory);
+        mEvent.cellBroadcastDuplicate.setSerialNumber(serialNumber);
+        return this;
+    }
+
     public TelephonyEventBuilder setNITZ(long timestamp) {
         mEvent.setType(TelephonyEvent.Type.NITZ_TIME);
         mEvent.setNitzTimestampMillis(timestamp);
@@ -214,6 +214,10 @@ public class TelephonyMetrics {
                 return "DATA_STALL_ACTION";
             case TelephonyEvent.Type.MODEM_RESTART:
                 return "MODEM_RESTART";
+            case TelephonyEvent.Type.CALL_POLL_STATS:
+                return "CALL_POLL_STATS";
+            case TelephonyEvent.Type.CELL_BROADCAST_DUPLICATE:
+                return "CELL_BROADCAST_DUPLICATE";
             default:
                 return Integer.toString(event);
         }
@@ -271,6 +275,8 @@ public class TelephonyMetrics {
                 return "PHONE_STATE_CHANGED";
             case TelephonyCallSession.Event.Type.NITZ_TIME:
                 return "NITZ_TIME";
+            case TelephonyCallSession.Event.Type.IMS_CALL_VT_DATA_USAGE:
+                return "IMS_CALL_VT_DATA_USAGE";
             default:
                 return Integer.toString(event);
         }
@@ -1452,6 +1458,25 @@ public class TelephonyMetrics {
         }
     }
 
+    /**
+     * Write IMS video call data usage event
+     *
+     * @param phoneId Phone id
+     * @param session IMS call session
+     * @param bytes Video data used since the previous event for the call
+     */
+    public void writeImsCallVtDataUsage(int phoneId, ImsCallSession session, long bytes) {
+        InProgressCallSession callSession = mInProgressCallSessions.get(phoneId);
+        if (callSession == null) {
+            // Usage may still be reported after the call session has ended
+            return;
+        }
+        callSession.addEvent(new CallSessionEventBuilder(
+                TelephonyCallSession.Event.Type.IMS_CALL_VT_DATA_USAGE)
+                .setCallIndex(getCallId(session))
+                .setVtDataUsage(bytes));
+    }
+
     /**
      * Write IMS call hangover event
      *
@@ -1516,6 +1541,30 @@ public class TelephonyMetrics {
         finishSmsSessionIfNeeded(smsSession);
     }
 
+    /**
+     * Write call list polling statistics
+     *
+     * @param phoneId Phone id
+     * @param pollsIssued Number of getCurrentCalls() sent to the modem
+     * @param pollsSuppressed Number of poll requests absorbed without a modem request
+     */
+    public void writeCallPollStats(int phoneId, int pollsIssued, int pollsSuppressed) {
+        addTelephonyEvent(new TelephonyEventBuilder(phoneId)
+                .setCallPollStats(pollsIssued, pollsSuppressed).build());
+    }
+
+    /**
+     * Write cell broadcast repeated by the network
+     *
+     * @param phoneId Phone id
+     * @param serviceCategory Message identifier (3GPP) or service category (3GPP2)
+     * @param serialNumber Serial number (3GPP) or message id (3GPP2)
+     */
+    public void writeCellBroadcastDuplicate(int phoneId, int serviceCategory, int serialNumber) {
+        addTelephonyEvent(new TelephonyEventBuilder(phoneId)
+                .setCellBroadcastDuplicate(serviceCategory, serialNumber).build());
+    }
+
     /**
      * Write NITZ event
      *
@@ -129,6 +129,11 @@ public class SimulatedCommands extends BaseCommands
     private boolean mDcSuccess = true;
     private DataCallResponse mDcResponse;
 
+    private int mSmsResponseDelayMs;
+    // Submitted SMS not acknowledged yet, and the most there were at once
+    private int mSmsInFlightCount;
+    private int mMaxSmsInFlightCount;
+
     //***** Constructor
     public
     SimulatedCommands() {
@@ -1033,7 +1038,7 @@ public class SimulatedCommands extends BaseCommands
     @Override
     public void sendSMS (String smscPDU, String pdu, Message result) {
         SimulatedCommandsVerifier.getInstance().sendSMS(smscPDU, pdu, result);
-        resultSuccess(result, new SmsResponse(0 /*messageRef*/, null, 0));
+        smsResultSuccess(result);
     }
 
     /**
@@ -1046,7 +1051,55 @@ public class SimulatedCommands extends BaseCommands
      */
     @Override
     public void sendSMSExpectMore (String smscPDU, String pdu, Message result) {
-        unimplemented(result);
+        SimulatedCommandsVerifier.getInstance().sendSMSExpectMore(smscPDU, pdu, result);
+        smsResultSuccess(result);
+    }
+
+    /**
+     * Set how long the network takes to acknowledge a submitted SMS. Messages in flight at the
+     * same time are acknowledged independently.
+     */
+    @VisibleForTesting
+    public void setSmsResponseDelay(int delayMs) {
+        mSmsResponseDelayMs = delayMs;
+    }
+
+    /**
+     * @return the most submitted SMS that were waiting for their acknowledgement at once, since
+     * the last call to {@link #resetMaxSmsInFlightCount}
+     */
+    @VisibleForTesting
+    public synchronized int getMaxSmsInFlightCount() {
+        return mMaxSmsInFlightCount;
+    }
+
+    @VisibleForTesting
+    public synchronized void resetMaxSmsInFlightCount() {
+        mMaxSmsInFlightCount = mSmsInFlightCount;
+    }
+
+    private void smsResultSuccess(final Message result) {
+        synchronized (this) {
+            mSmsInFlightCount++;
+            mMaxSmsInFlightCount = Math.max(mMaxSmsInFlightCount, mSmsInFlightCount);
+        }
+        if (mSmsResponseDelayMs > 0 && result != null && mPausedResponseCount == 0) {
+            AsyncResult.forMessage(result).result = new SmsResponse(0 /*messageRef*/, null, 0);
+            result.getTarget().postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    onSmsAcknowledged();
+                    result.sendToTarget();
+                }
+            }, mSmsResponseDelayMs);
+        } else {
+            onSmsAcknowledged();
+            resultSuccess(result, new SmsResponse(0 /*messageRef*/, null, 0));
+        }
+    }
+
+    private synchronized void onSmsAcknowledged() {
+        mSmsInFlightCount--;
     }
 
     @Override
@@ -1722,13 +1775,15 @@ public class SimulatedCommands extends BaseCommands
 
     @Override
     public void setGsmBroadcastActivation(boolean activate, Message response) {
-        unimplemented(response);
+        SimulatedCommandsVerifier.getInstance().setGsmBroadcastActivation(activate, response);
+        resultSuccess(response, null);
     }
 
 
     @Override
     public void setGsmBroadcastConfig(SmsBroadcastConfigInfo[] config, Message response) {
-        unimplemented(response);
+        SimulatedCommandsVerifier.getInstance().setGsmBroadcastConfig(config, response);
+        resultSuccess(response, null);
     }
 
     @Override
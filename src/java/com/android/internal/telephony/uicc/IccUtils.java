@@ -320,6 +320,8 @@ public class IccUtils {
     }
 
 
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
     /**
      * Converts a byte array into a String of hexadecimal characters.
      *
@@ -331,21 +333,14 @@ public class IccUtils {
     bytesToHexString(byte[] bytes) {
         if (bytes == null) return null;
 
-        StringBuilder ret = new StringBuilder(2*bytes.length);
+        char[] ret = new char[2 * bytes.length];
 
         for (int i = 0 ; i < bytes.length ; i++) {
-            int b;
-
-            b = 0x0f & (bytes[i] >> 4);
-
-            ret.append("0123456789abcdef".charAt(b));
-
-            b = 0x0f & bytes[i];
-
-            ret.append("0123456789abcdef".charAt(b));
+            ret[2 * i] = HEX_CHARS[0x0f & (bytes[i] >> 4)];
+            ret[2 * i + 1] = HEX_CHARS[0x0f & bytes[i]];
         }
 
-        return ret.toString();
+        return new String(ret);
     }
 
 
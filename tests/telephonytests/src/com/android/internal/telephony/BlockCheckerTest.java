@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.provider.BlockedNumberContract;
+import android.test.mock.MockContentResolver;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BlockCheckerTest extends TelephonyTest {
+
+    private static final String NUMBER = "6505551212";
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp(getClass().getSimpleName());
+        BlockChecker.resetForTest();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test @SmallTest
+    public void testVerdictCached() {
+        mFakeBlockedNumberContentProvider.mBlockedNumbers.add(NUMBER);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(BlockChecker.isBlocked(mContext, NUMBER));
+        }
+        // formatting does not matter
+        assertTrue(BlockChecker.isBlocked(mContext, "(650) 555-1212"));
+        assertEquals(1, mFakeBlockedNumberContentProvider.mNumShouldSystemBlockNumberCalls);
+
+        assertFalse(BlockChecker.isBlocked(mContext, "6505551213"));
+        assertFalse(BlockChecker.isBlocked(mContext, "6505551213"));
+        assertEquals(2, mFakeBlockedNumberContentProvider.mNumShouldSystemBlockNumberCalls);
+    }
+
+    @Test @SmallTest
+    public void testInvalidateCache() {
+        assertFalse(BlockChecker.isBlocked(mContext, NUMBER));
+
+        mFakeBlockedNumberContentProvider.mBlockedNumbers.add(NUMBER);
+        BlockChecker.invalidateCache();
+
+        assertTrue(BlockChecker.isBlocked(mContext, NUMBER));
+        assertEquals(2, mFakeBlockedNumberContentProvider.mNumShouldSystemBlockNumberCalls);
+    }
+
+    @Test @SmallTest
+    public void testChangeDuringLookupNotCached() {
+        // The number is blocked while the first lookup is in flight
+        FakeBlockedNumberContentProvider racingProvider = new FakeBlockedNumberContentProvider() {
+            @Override
+            public Bundle call(String method, String arg, Bundle extras) {
+                Bundle result = super.call(method, arg, extras);
+                if (mNumShouldSystemBlockNumberCalls == 1) {
+                    mBlockedNumbers.add(NUMBER);
+                    BlockChecker.invalidateCache();
+                }
+                return result;
+            }
+        };
+        ((MockContentResolver) mContext.getContentResolver()).addProvider(
+                BlockedNumberContract.AUTHORITY, racingProvider);
+
+        assertFalse(BlockChecker.isBlocked(mContext, NUMBER));
+        assertTrue(BlockChecker.isBlocked(mContext, NUMBER));
+        assertTrue(BlockChecker.isBlocked(mContext, NUMBER));
+        assertEquals(2, racingProvider.mNumShouldSystemBlockNumberCalls);
+    }
+
+    @Test @SmallTest
+    public void testBlockSuppressionInvalidatesCache() {
+        mFakeBlockedNumberContentProvider.mBlockedNumbers.add(NUMBER);
+        assertTrue(BlockChecker.isBlocked(mContext, NUMBER));
+
+        // an emergency contact suppresses blocking without changing the blocked numbers
+        mFakeBlockedNumberContentProvider.mBlockedNumbers.remove(NUMBER);
+        mContext.sendBroadcast(new Intent(
+                BlockedNumberContract.SystemContract.ACTION_BLOCK_SUPPRESSION_STATE_CHANGED));
+
+        assertFalse(BlockChecker.isBlocked(mContext, NUMBER));
+        assertEquals(2, mFakeBlockedNumberContentProvider.mNumShouldSystemBlockNumberCalls);
+    }
+
+    @Test @SmallTest
+    public void testCacheBounded() {
+        for (int i = 0; i <= BlockChecker.MAX_CACHED_VERDICTS; i++) {
+            assertFalse(BlockChecker.isBlocked(mContext, Integer.toString(1000 + i)));
+        }
+        int calls = mFakeBlockedNumberContentProvider.mNumShouldSystemBlockNumberCalls;
+
+        // the least recently used number was evicted, the most recent one was not
+        assertFalse(BlockChecker.isBlocked(mContext,
+                Integer.toString(1000 + BlockChecker.MAX_CACHED_VERDICTS)));
+        assertEquals(calls, mFakeBlockedNumberContentProvider.mNumShouldSystemBlockNumberCalls);
+        assertFalse(BlockChecker.isBlocked(mContext, "1000"));
+        assertEquals(calls + 1, mFakeBlockedNumberContentProvider.mNumShouldSystemBlockNumberCalls);
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.android.internal.telephony;
 
+import android.os.AsyncResult;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
@@ -30,6 +31,7 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -39,6 +41,7 @@ import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -61,6 +64,7 @@ public class CallManagerTest extends TelephonyTest {
     private CallManagerHandlerThread mCallManagerHandlerThread;
     private Handler mHandler;
     private static final int PHONE_REGISTER_EVENT = 0;
+    private static final int CALL_STATE_SYNC_EVENT = 1;
 
     private class CallManagerHandlerThread extends HandlerThread {
         private CallManagerHandlerThread(String name) {
@@ -81,6 +85,9 @@ public class CallManagerTest extends TelephonyTest {
                             registerForPhone((Phone) msg.obj);
                             setReady(true);
                             break;
+                        case CALL_STATE_SYNC_EVENT:
+                            setReady(true);
+                            break;
                         default:
                             logd("Unknown Event " + msg.what);
                     }
@@ -119,6 +126,34 @@ public class CallManagerTest extends TelephonyTest {
         waitUntilReady();
     }
 
+    private int getCallManagerEvent(String eventName) throws Exception {
+        Field field = CallManager.class.getDeclaredField(eventName);
+        field.setAccessible(true);
+        return (Integer) field.get(CallManager.getInstance());
+    }
+
+    /**
+     * @return the handler through which CallManager receives the events of the phone
+     */
+    private Handler getCallManagerHandler(Phone phone) throws Exception {
+        ArgumentCaptor<Handler> handlerCaptor = ArgumentCaptor.forClass(Handler.class);
+        verify(phone, atLeastOnce()).registerForPreciseCallStateChanged(handlerCaptor.capture(),
+                eq(getCallManagerEvent("EVENT_PRECISE_CALL_STATE_CHANGED")), any());
+        return handlerCaptor.getValue();
+    }
+
+    /**
+     * Wait until the messages queued on the CallManager looper have been processed. Each
+     * round also covers the messages queued by those processed in the previous round.
+     */
+    private void waitForCallManagerLooper(int rounds) {
+        for (int i = 0; i < rounds; i++) {
+            setReady(false);
+            mHandler.sendEmptyMessage(CALL_STATE_SYNC_EVENT);
+            waitUntilReady();
+        }
+    }
+
     @After
     public void tearDown() throws Exception {
         CallManager.getInstance().unregisterPhone(mPhone);
@@ -358,4 +393,47 @@ public class CallManagerTest extends TelephonyTest {
                 CallManager.getInstance().getServiceState());
         CallManager.getInstance().unregisterPhone(mSecondPhone);
     }
+
+    @Test @SmallTest
+    public void testPreciseCallStateNotificationsCoalesced() throws Exception {
+        final ArrayList<Integer> received = new ArrayList<Integer>();
+        final int preciseEvent = 1;
+        final int disconnectEvent = 2;
+        Handler listener = new Handler(mCallManagerHandlerThread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                received.add(msg.what);
+            }
+        };
+        CallManager.getInstance().registerForPreciseCallStateChanged(listener, preciseEvent, null);
+        CallManager.getInstance().registerForDisconnect(listener, disconnectEvent, null);
+
+        final Handler cmHandler = getCallManagerHandler(mPhone);
+        final int preciseCallStateChanged =
+                getCallManagerEvent("EVENT_PRECISE_CALL_STATE_CHANGED");
+        final int disconnect = getCallManagerEvent("EVENT_DISCONNECT");
+
+        // a burst of precise call state changes followed by a disconnect, in one looper turn
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    cmHandler.obtainMessage(preciseCallStateChanged,
+                            new AsyncResult(null, mPhone, null)).sendToTarget();
+                }
+                cmHandler.obtainMessage(disconnect,
+                        new AsyncResult(null, null, null)).sendToTarget();
+            }
+        });
+        // burst, CallManager events, coalesced dispatch and listener, listener
+        waitForCallManagerLooper(4);
+
+        // the disconnect is relayed first, then a single precise call state notification
+        assertEquals(2, received.size());
+        assertEquals(disconnectEvent, (int) received.get(0));
+        assertEquals(preciseEvent, (int) received.get(1));
+
+        CallManager.getInstance().unregisterForPreciseCallStateChanged(listener);
+        CallManager.getInstance().unregisterForDisconnect(listener);
+    }
 }
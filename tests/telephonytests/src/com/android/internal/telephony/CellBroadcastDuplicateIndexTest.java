@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import android.telephony.SmsCbEtwsInfo;
+import android.telephony.SmsCbLocation;
+import android.telephony.SmsCbMessage;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * Test cases for CellBroadcastDuplicateIndex.
+ */
+public class CellBroadcastDuplicateIndexTest extends AndroidTestCase {
+
+    private static final String PLMN = "310260";
+    private static final int MESSAGE_IDENTIFIER = 0x1112;  // CMAS presidential alert
+    private static final long EXPIRY_MS = 1000;
+
+    private static SmsCbMessage makeMessage(int geographicalScope, int serialNumber,
+            SmsCbLocation location, SmsCbEtwsInfo etwsInfo) {
+        return new SmsCbMessage(SmsCbMessage.MESSAGE_FORMAT_3GPP, geographicalScope,
+                serialNumber, location, MESSAGE_IDENTIFIER, "en", "Alert",
+                SmsCbMessage.MESSAGE_PRIORITY_EMERGENCY, etwsInfo, null);
+    }
+
+    private static SmsCbMessage makeMessage(int serialNumber, SmsCbLocation location) {
+        return makeMessage(SmsCbMessage.GEOGRAPHICAL_SCOPE_CELL_WIDE, serialNumber, location,
+                null);
+    }
+
+    @SmallTest
+    public void testRepetitionsInSameCell() {
+        CellBroadcastDuplicateIndex index = new CellBroadcastDuplicateIndex(4, EXPIRY_MS);
+        SmsCbLocation cell = new SmsCbLocation(PLMN, 1234, 5678);
+        assertEquals(0, index.addMessage(makeMessage(0xc010, cell), 0));
+        assertEquals(1, index.addMessage(makeMessage(0xc010, cell), 10));
+        assertEquals(2, index.addMessage(makeMessage(0xc010, new SmsCbLocation(PLMN, 1234, 5678)),
+                20));
+
+        // New update number, or a different cell
+        assertEquals(0, index.addMessage(makeMessage(0xc011, cell), 30));
+        assertEquals(0, index.addMessage(makeMessage(0xc010, new SmsCbLocation(PLMN, 1234, 9999)),
+                40));
+        assertEquals(2, index.getSuppressedCount());
+    }
+
+    @SmallTest
+    public void testPlmnWideRepetitions() {
+        CellBroadcastDuplicateIndex index = new CellBroadcastDuplicateIndex(4, EXPIRY_MS);
+        // A PLMN wide message only carries the PLMN, wherever in it the device is
+        SmsCbLocation plmn = new SmsCbLocation(PLMN);
+        assertEquals(0, index.addMessage(
+                makeMessage(SmsCbMessage.GEOGRAPHICAL_SCOPE_PLMN_WIDE, 0x4010, plmn, null), 0));
+        assertEquals(1, index.addMessage(
+                makeMessage(SmsCbMessage.GEOGRAPHICAL_SCOPE_PLMN_WIDE, 0x4010, plmn, null), 0));
+        assertEquals(0, index.addMessage(makeMessage(SmsCbMessage.GEOGRAPHICAL_SCOPE_PLMN_WIDE,
+                0x4010, new SmsCbLocation("310410"), null), 0));
+    }
+
+    @SmallTest
+    public void testEtwsPrimaryAndSecondary() {
+        CellBroadcastDuplicateIndex index = new CellBroadcastDuplicateIndex(4, EXPIRY_MS);
+        SmsCbLocation plmn = new SmsCbLocation(PLMN);
+        SmsCbEtwsInfo primary = new SmsCbEtwsInfo(SmsCbEtwsInfo.ETWS_WARNING_TYPE_EARTHQUAKE,
+                true, true, true, null);
+        SmsCbEtwsInfo secondary = new SmsCbEtwsInfo(SmsCbEtwsInfo.ETWS_WARNING_TYPE_EARTHQUAKE,
+                true, true, false, null);
+        assertEquals(0, index.addMessage(makeMessage(SmsCbMessage.GEOGRAPHICAL_SCOPE_PLMN_WIDE,
+                0x4010, plmn, primary), 0));
+        assertEquals(0, index.addMessage(makeMessage(SmsCbMessage.GEOGRAPHICAL_SCOPE_PLMN_WIDE,
+                0x4010, plmn, secondary), 0));
+        assertEquals(1, index.addMessage(makeMessage(SmsCbMessage.GEOGRAPHICAL_SCOPE_PLMN_WIDE,
+                0x4010, plmn, secondary), 0));
+    }
+
+    @SmallTest
+    public void testExpiryAndBound() {
+        CellBroadcastDuplicateIndex index = new CellBroadcastDuplicateIndex(2, EXPIRY_MS);
+        SmsCbLocation cell = new SmsCbLocation(PLMN, 1234, 5678);
+        assertEquals(0, index.addMessage(makeMessage(0xc010, cell), 0));
+        assertEquals(0, index.addMessage(makeMessage(0xc020, cell), 500));
+        assertEquals(0, index.addMessage(makeMessage(0xc010, cell), EXPIRY_MS));
+        assertEquals(1, index.addMessage(makeMessage(0xc020, cell), EXPIRY_MS));
+
+        // The oldest message is forgotten to make room
+        assertEquals(0, index.addMessage(makeMessage(0xc030, cell), EXPIRY_MS));
+        assertEquals(0, index.addMessage(makeMessage(0xc020, cell), EXPIRY_MS));
+    }
+}
@@ -16,6 +16,7 @@
 package com.android.internal.telephony;
 
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.platform.test.annotations.Postsubmit;
 import android.telephony.DisconnectCause;
 import android.telephony.PhoneNumberUtils;
@@ -35,6 +36,8 @@ import android.os.Handler;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.Mockito.doReturn;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 import static com.android.internal.telephony.TelephonyTestUtils.waitForMs;
 
@@ -390,5 +393,105 @@ public class GsmCdmaCallTrackerTest extends TelephonyTest {
         assertEquals(GsmCdmaCall.State.IDLE, mCTUT.mBackgroundCall.getState());
         assertEquals(GsmCdmaCall.State.IDLE, mCTUT.mRingingCall.getState());
     }
-}
 
+    /**
+     * Replay rapid conference hold/unhold cycles, each followed by a burst of redundant
+     * CLCC polls, and check that only the slots whose call changed state are updated.
+     */
+    @Test
+    @MediumTest
+    public void testConferencePollStormReplay() {
+        final int rounds = 20;
+        final int pollsPerRound = 50;
+
+        testMOCallSwitch();
+        mSimulatedCommands.progressConnectingToActive();
+        waitForMs(200);
+        mCTUT.conference();
+        waitForMs(200);
+        assertEquals(GsmCdmaCall.State.ACTIVE, mCTUT.mForegroundCall.getState());
+        assertEquals(2, mCTUT.mForegroundCall.getConnections().size());
+
+        Handler pollHandler = new Handler(mCTUT.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                mCTUT.pollCallsWhenSafe();
+            }
+        };
+
+        int slotsUnchanged = mCTUT.mPollSlotsUnchanged;
+        int slotsUpdated = mCTUT.mPollSlotsUpdated;
+        long start = SystemClock.elapsedRealtime();
+        for (int round = 0; round < rounds; round++) {
+            try {
+                mCTUT.switchWaitingOrHoldingAndActive();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                Assert.fail("unexpected exception thrown" + ex.getMessage());
+            }
+            for (int i = 0; i < pollsPerRound; i++) {
+                pollHandler.sendEmptyMessage(0);
+            }
+            waitForMs(50);
+        }
+        logd("Replayed " + rounds + " conference rounds with " + pollsPerRound
+                + " polls each in " + (SystemClock.elapsedRealtime() - start) + "ms");
+
+        // Each swap changes the state of both conference calls once. The polls after that
+        // find them unchanged and skip them.
+        assertEquals(2 * rounds, mCTUT.mPollSlotsUpdated - slotsUpdated);
+        assertTrue(mCTUT.mPollSlotsUnchanged - slotsUnchanged >= 2 * rounds);
+
+        // An even number of swaps leaves the conference in the foreground
+        assertEquals(GsmCdmaCall.State.ACTIVE, mCTUT.mForegroundCall.getState());
+        assertEquals(2, mCTUT.mForegroundCall.getConnections().size());
+        assertEquals(GsmCdmaCall.State.IDLE, mCTUT.mBackgroundCall.getState());
+        assertEquals(PhoneConstants.State.OFFHOOK, mCTUT.getState());
+    }
+
+    @Test
+    @SmallTest
+    public void testCallStateChangeBurstCoalesced() {
+        testMTCallRinging();
+        reset(mSimulatedCommandsVerifier);
+
+        // A burst of unsolicited call state changes should result in a single poll
+        for (int i = 0; i < 10; i++) {
+            mCTUT.sendEmptyMessage(GsmCdmaCallTracker.EVENT_CALL_STATE_CHANGE);
+        }
+        waitForMs(100);
+        verify(mSimulatedCommandsVerifier, times(1)).getCurrentCalls(any(Message.class));
+        assertEquals(PhoneConstants.State.RINGING, mCTUT.getState());
+
+        // A disconnect after the burst is still detected within the coalescing window
+        mSimulatedCommands.triggerHangupAll();
+        waitForMs(CallTracker.POLL_COALESCE_WINDOW_MSEC + 50);
+        verify(mSimulatedCommandsVerifier, times(2)).getCurrentCalls(any(Message.class));
+        assertEquals(PhoneConstants.State.IDLE, mCTUT.getState());
+    }
+
+    @Test
+    @SmallTest
+    public void testCallStateChangeDuringPollNotDelayed() {
+        testMTCallRinging();
+        reset(mSimulatedCommandsVerifier);
+
+        mSimulatedCommands.pauseResponses();
+        mCTUT.sendEmptyMessage(GsmCdmaCallTracker.EVENT_CALL_STATE_CHANGE);
+        waitForMs(CallTracker.POLL_COALESCE_WINDOW_MSEC + 50);
+        verify(mSimulatedCommandsVerifier, times(1)).getCurrentCalls(any(Message.class));
+
+        // A change notified while the poll is in flight does not wait for another window, the
+        // next poll is issued as soon as the result arrives
+        mCTUT.sendEmptyMessage(GsmCdmaCallTracker.EVENT_CALL_STATE_CHANGE);
+        waitForMs(50);
+        assertFalse(mCTUT.hasMessages(CallTracker.EVENT_COALESCED_CALL_STATE_CHANGE));
+        verify(mSimulatedCommandsVerifier, times(1)).getCurrentCalls(any(Message.class));
+
+        mSimulatedCommands.resumeResponses();
+        waitForMs(50);
+        verify(mSimulatedCommandsVerifier, times(2)).getCurrentCalls(any(Message.class));
+        assertFalse(mCTUT.hasMessages(CallTracker.EVENT_COALESCED_CALL_STATE_CHANGE));
+        assertEquals(PhoneConstants.State.RINGING, mCTUT.getState());
+    }
+}
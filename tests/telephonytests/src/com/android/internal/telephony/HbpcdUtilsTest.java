@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.test.mock.MockContentProvider;
+import android.test.mock.MockContentResolver;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.internal.telephony.HbpcdLookup.ArbitraryMccSidMatch;
+import com.android.internal.telephony.HbpcdLookup.MccIdd;
+import com.android.internal.telephony.HbpcdLookup.MccLookup;
+import com.android.internal.telephony.HbpcdLookup.MccSidConflicts;
+import com.android.internal.telephony.HbpcdLookup.MccSidRange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class HbpcdUtilsTest extends TelephonyTest {
+
+    private FakeHbpcdContentProvider mFakeHbpcdContentProvider;
+    private HbpcdUtils mHbpcdUtils;
+
+    /**
+     * Serves whole tables, the columns in the order of the projection.
+     */
+    private static class FakeHbpcdContentProvider extends MockContentProvider {
+        final Map<Uri, Object[][]> mTables = new HashMap<>();
+        int mNumQueries;
+
+        FakeHbpcdContentProvider() {
+            mTables.put(ArbitraryMccSidMatch.CONTENT_URI, new Object[][] {
+                    // SID, MCC
+                    {7, 310}, {3000, 311}, {3000, 312}
+            });
+            mTables.put(MccLookup.CONTENT_URI, new Object[][] {
+                    // MCC, GMT_OFFSET_LOW, GMT_OFFSET_HIGH, GMT_DST_LOW, GMT_DST_HIGH,
+                    // COUNTRY_CODE
+                    {310, -10, -5, -9, -4, 1}, {440, 9, 9, 9, 9, 81}, {460, 8, 8, 8, 8, 86}
+            });
+            mTables.put(MccSidConflicts.CONTENT_URI, new Object[][] {
+                    // SID_CONFLICT, MCC
+                    {100, 310}, {100, 440}, {200, 460}
+            });
+            mTables.put(MccSidRange.CONTENT_URI, new Object[][] {
+                    // RANGE_LOW, RANGE_HIGH, MCC
+                    {2, 2175, 310}, {12288, 13311, 440}, {12000, 12500, 460}, {3000, 3000, 320}
+            });
+            mTables.put(MccIdd.CONTENT_URI, new Object[][] {
+                    // IDD, MCC
+                    {"011", 310}, {"010", 440}, {"001", 440}
+            });
+        }
+
+        private static int column(Uri uri, String name) {
+            if (uri.equals(ArbitraryMccSidMatch.CONTENT_URI)) {
+                return name.equals(ArbitraryMccSidMatch.SID) ? 0 : 1;
+            } else if (uri.equals(MccLookup.CONTENT_URI)) {
+                String[] columns = {MccLookup.MCC, MccLookup.GMT_OFFSET_LOW,
+                        MccLookup.GMT_OFFSET_HIGH, MccLookup.GMT_DST_LOW, MccLookup.GMT_DST_HIGH,
+                        MccLookup.COUNTRY_CODE};
+                for (int i = 0; i < columns.length; i++) {
+                    if (columns[i].equals(name)) return i;
+                }
+            } else if (uri.equals(MccSidConflicts.CONTENT_URI)) {
+                return name.equals(MccSidConflicts.SID_CONFLICT) ? 0 : 1;
+            } else if (uri.equals(MccSidRange.CONTENT_URI)) {
+                if (name.equals(MccSidRange.RANGE_LOW)) return 0;
+                return name.equals(MccSidRange.RANGE_HIGH) ? 1 : 2;
+            } else if (uri.equals(MccIdd.CONTENT_URI)) {
+                return name.equals(MccIdd.IDD) ? 0 : 1;
+            }
+            throw new IllegalArgumentException(uri + " " + name);
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder) {
+            mNumQueries++;
+            MatrixCursor cursor = new MatrixCursor(projection);
+            for (Object[] row : mTables.get(uri)) {
+                Object[] values = new Object[projection.length];
+                for (int i = 0; i < projection.length; i++) {
+                    values[i] = row[column(uri, projection[i])];
+                }
+                cursor.addRow(values);
+            }
+            return cursor;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp(getClass().getSimpleName());
+        mFakeHbpcdContentProvider = new FakeHbpcdContentProvider();
+        ((MockContentResolver) mContext.getContentResolver()).addProvider(
+                HbpcdLookup.AUTHORITY, mFakeHbpcdContentProvider);
+        HbpcdTables.resetForTest();
+        mHbpcdUtils = new HbpcdUtils(mContext);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mHbpcdUtils = null;
+        super.tearDown();
+    }
+
+    @Test @SmallTest
+    public void testArbitraryMatch() {
+        assertEquals(310, mHbpcdUtils.getMcc(7, 0, 0, false));
+        // SID used by more than one MCC, falls through to the ranges
+        assertEquals(320, mHbpcdUtils.getMcc(3000, 0, 0, false));
+    }
+
+    @Test @SmallTest
+    public void testSidConflict() {
+        assertEquals(310, mHbpcdUtils.getMcc(100, -8, 0, true));
+        assertEquals(440, mHbpcdUtils.getMcc(100, 9, 0, true));
+        assertEquals(310, mHbpcdUtils.getMcc(100, -4, 1, true));
+        // not in the time zone of the normal offset
+        assertEquals(310, mHbpcdUtils.getMcc(100, -4, 0, true));
+        // the time zone is not trusted
+        assertEquals(0, mHbpcdUtils.getMcc(100, 9, 0, false));
+        // no conflicting MCC in that time zone, SID 100 is in the range of 310
+        assertEquals(310, mHbpcdUtils.getMcc(100, 3, 0, true));
+    }
+
+    @Test @SmallTest
+    public void testSidRange() {
+        assertEquals(310, mHbpcdUtils.getMcc(2, 0, 0, false));
+        assertEquals(310, mHbpcdUtils.getMcc(2175, 0, 0, false));
+        assertEquals(0, mHbpcdUtils.getMcc(2176, 0, 0, false));
+        assertEquals(460, mHbpcdUtils.getMcc(12100, 0, 0, false));
+        // overlapping ranges, the first row wins
+        assertEquals(440, mHbpcdUtils.getMcc(12400, 0, 0, false));
+        assertEquals(440, mHbpcdUtils.getMcc(13000, 0, 0, false));
+        assertEquals(0, mHbpcdUtils.getMcc(20000, 0, 0, false));
+    }
+
+    @Test @SmallTest
+    public void testIddByMcc() {
+        assertEquals("011", mHbpcdUtils.getIddByMcc(310));
+        assertEquals("010", mHbpcdUtils.getIddByMcc(440));
+        assertEquals("", mHbpcdUtils.getIddByMcc(460));
+    }
+
+    @Test @SmallTest
+    public void testTablesReadOnce() {
+        for (int sid = 0; sid < 20000; sid += 7) {
+            mHbpcdUtils.getMcc(sid, 0, 0, true);
+        }
+        mHbpcdUtils.getIddByMcc(310);
+        mHbpcdUtils.getIddByMcc(440);
+        // arbitrary, lookup and conflicts, ranges, IDDs
+        assertEquals(5, mFakeHbpcdContentProvider.mNumQueries);
+
+        HbpcdTables.resetForTest();
+        mHbpcdUtils.getMcc(7, 0, 0, true);
+        assertEquals(6, mFakeHbpcdContentProvider.mNumQueries);
+    }
+}
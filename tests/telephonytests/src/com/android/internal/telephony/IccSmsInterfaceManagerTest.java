@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.os.HandlerThread;
+import android.os.Message;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.internal.telephony.gsm.SmsBroadcastConfigInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class IccSmsInterfaceManagerTest extends TelephonyTest {
+    private IccSmsInterfaceManager mIccSmsInterfaceManagerUT;
+    private IccSmsInterfaceManagerTestHandler mIccSmsInterfaceManagerTestHandler;
+
+    private class IccSmsInterfaceManagerTestHandler extends HandlerThread {
+
+        private IccSmsInterfaceManagerTestHandler(String name) {
+            super(name);
+        }
+
+        @Override
+        public void onLooperPrepared() {
+            mIccSmsInterfaceManagerUT = new IccSmsInterfaceManager(mPhone);
+            setReady(true);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp(getClass().getSimpleName());
+        doNothing().when(mContext).enforceCallingPermission(anyString(), anyString());
+        doReturn(TAG).when(mPackageManager).getNameForUid(anyInt());
+
+        mIccSmsInterfaceManagerTestHandler =
+                new IccSmsInterfaceManagerTestHandler(getClass().getSimpleName());
+        mIccSmsInterfaceManagerTestHandler.start();
+        waitUntilReady();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mIccSmsInterfaceManagerUT = null;
+        mIccSmsInterfaceManagerTestHandler.quitSafely();
+        super.tearDown();
+    }
+
+    @Test @SmallTest
+    public void testGsmBroadcastConfigHoldsAllRanges() {
+        assertTrue(mIccSmsInterfaceManagerUT.enableGsmBroadcastRange(4370, 4379));
+        assertTrue(mIccSmsInterfaceManagerUT.enableGsmBroadcastRange(50, 60));
+
+        // The radio replaces its configuration, so the last one must hold both ranges
+        ArgumentCaptor<SmsBroadcastConfigInfo[]> configCaptor =
+                ArgumentCaptor.forClass(SmsBroadcastConfigInfo[].class);
+        verify(mSimulatedCommandsVerifier, times(2)).setGsmBroadcastConfig(
+                configCaptor.capture(), any(Message.class));
+        SmsBroadcastConfigInfo[] configs = configCaptor.getValue();
+        assertEquals(2, configs.length);
+        assertConfig(50, 60, configs[0]);
+        assertConfig(4370, 4379, configs[1]);
+
+        // Disabling one range keeps the other
+        assertTrue(mIccSmsInterfaceManagerUT.disableGsmBroadcastRange(50, 60));
+        verify(mSimulatedCommandsVerifier, times(3)).setGsmBroadcastConfig(
+                configCaptor.capture(), any(Message.class));
+        configs = configCaptor.getValue();
+        assertEquals(1, configs.length);
+        assertConfig(4370, 4379, configs[0]);
+    }
+
+    private static void assertConfig(int fromServiceId, int toServiceId,
+            SmsBroadcastConfigInfo config) {
+        assertEquals(fromServiceId, config.getFromServiceId());
+        assertEquals(toServiceId, config.getToServiceId());
+        assertTrue(config.isSelected());
+    }
+}
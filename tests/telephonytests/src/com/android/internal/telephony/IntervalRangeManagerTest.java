@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test cases for the IntervalRangeManager class.
+ */
+public class IntervalRangeManagerTest extends AndroidTestCase {
+
+    private static final int MAX_ID = 200;
+
+    /**
+     * IntervalRangeManager that records the last update and, like the radio, replaces its
+     * channel map with it.
+     */
+    private static class TestIntervalRangeManager extends IntervalRangeManager {
+        final ArrayList<String> mUpdate = new ArrayList<String>();
+        final boolean[] mRadioChannels = new boolean[MAX_ID + 1];
+        int mUpdateCount;
+        boolean mFinishUpdateReturnValue = true;
+
+        @Override
+        protected void startUpdate() {
+            mUpdate.clear();
+        }
+
+        @Override
+        protected void addRange(int startId, int endId, boolean selected) {
+            mUpdate.add((selected ? "+" : "-") + startId + "-" + endId);
+        }
+
+        @Override
+        protected boolean finishUpdate() {
+            mUpdateCount++;
+            if (mFinishUpdateReturnValue) {
+                Arrays.fill(mRadioChannels, false);
+                for (String range : mUpdate) {
+                    String[] ids = range.substring(1).split("-");
+                    Arrays.fill(mRadioChannels, Integer.parseInt(ids[0]),
+                            Integer.parseInt(ids[1]) + 1, range.charAt(0) == '+');
+                }
+            }
+            return mFinishUpdateReturnValue;
+        }
+
+        String update() {
+            return mUpdate.toString();
+        }
+    }
+
+    /** IntRangeManager that records the ranges of its last update. */
+    private static class TestIntRangeManager extends IntRangeManager {
+        final ArrayList<int[]> mRanges = new ArrayList<int[]>();
+
+        @Override
+        protected void startUpdate() {
+            mRanges.clear();
+        }
+
+        @Override
+        protected void addRange(int startId, int endId, boolean selected) {
+            mRanges.add(new int[] {startId, endId});
+        }
+
+        @Override
+        protected boolean finishUpdate() {
+            return true;
+        }
+    }
+
+    @SmallTest
+    public void testEnableSendsAllChannels() {
+        TestIntervalRangeManager testManager = new TestIntervalRangeManager();
+        assertTrue(testManager.isEmpty());
+        assertTrue(testManager.enableRange(10, 20, "client1"));
+        assertEquals("[+10-20]", testManager.update());
+        assertTrue(testManager.enableRange(30, 40, "client1"));
+        assertEquals("[+10-20, +30-40]", testManager.update());
+
+        assertTrue(testManager.enableRange(5, 45, "client2"));
+        assertEquals("[+5-45]", testManager.update());
+        assertEquals(3, testManager.mUpdateCount);
+
+        // Already enabled: no update
+        assertTrue(testManager.enableRange(12, 14, "client3"));
+        assertTrue(testManager.enableRange(10, 20, "client1"));
+        assertEquals(3, testManager.mUpdateCount);
+        assertFalse(testManager.isEmpty());
+
+        assertTrue(testManager.updateRanges());
+        assertEquals("[+5-45]", testManager.update());
+    }
+
+    @SmallTest
+    public void testDisableSendsRemainingChannels() {
+        TestIntervalRangeManager testManager = new TestIntervalRangeManager();
+        assertTrue(testManager.enableRange(10, 20, "client1"));
+        assertTrue(testManager.enableRange(15, 30, "client2"));
+        assertTrue(testManager.enableRange(18, 18, "client3"));
+        assertTrue(testManager.enableRange(40, 50, "client3"));
+        assertTrue(testManager.enableRange(40, 50, "client4"));
+        int updateCount = testManager.mUpdateCount;
+
+        assertFalse(testManager.disableRange(10, 20, "client2"));
+        assertFalse(testManager.disableRange(10, 19, "client1"));
+        assertEquals(updateCount, testManager.mUpdateCount);
+
+        // Still enabled by another client: no update
+        assertTrue(testManager.disableRange(40, 50, "client4"));
+        assertEquals(updateCount, testManager.mUpdateCount);
+
+        assertTrue(testManager.disableRange(15, 30, "client2"));
+        assertEquals("[+10-20, +40-50]", testManager.update());
+        assertTrue(testManager.disableRange(10, 20, "client1"));
+        assertEquals("[+18-18, +40-50]", testManager.update());
+        assertTrue(testManager.disableRange(40, 50, "client3"));
+        assertEquals("[+18-18]", testManager.update());
+        assertTrue(testManager.disableRange(18, 18, "client3"));
+        assertEquals("[]", testManager.update());
+        assertTrue(testManager.isEmpty());
+
+        assertTrue(testManager.updateRanges());
+        assertEquals("[]", testManager.update());
+    }
+
+    @SmallTest
+    public void testFailedUpdateKeepsRanges() {
+        TestIntervalRangeManager testManager = new TestIntervalRangeManager();
+        assertTrue(testManager.enableRange(10, 20, "client1"));
+        testManager.mFinishUpdateReturnValue = false;
+        assertFalse(testManager.enableRange(15, 25, "client2"));
+        assertFalse(testManager.disableRange(10, 20, "client1"));
+        testManager.mFinishUpdateReturnValue = true;
+
+        // client2 was not added, client1 was not removed
+        assertFalse(testManager.disableRange(15, 25, "client2"));
+        assertTrue(testManager.updateRanges());
+        assertEquals("[+10-20]", testManager.update());
+    }
+
+    @SmallTest
+    public void testInvalidRange() {
+        TestIntervalRangeManager testManager = new TestIntervalRangeManager();
+        assertFalse(testManager.enableRange(20, 10, "client1"));
+        assertTrue(testManager.isEmpty());
+        assertEquals(0, testManager.mUpdateCount);
+    }
+
+    /**
+     * Runs random enables and disables through both managers, checking that the radio always
+     * ends up with the channels IntRangeManager would have enabled.
+     */
+    @MediumTest
+    public void testMatchesIntRangeManager() {
+        Random random = new Random(0x1e7);
+        String[] clients = {"client1", "client2", "client3", "client4"};
+        for (int run = 0; run < 200; run++) {
+            TestIntervalRangeManager testManager = new TestIntervalRangeManager();
+            TestIntRangeManager intRangeManager = new TestIntRangeManager();
+            ArrayList<int[]> enabled = new ArrayList<int[]>();
+            for (int op = 0; op < 60; op++) {
+                if (enabled.isEmpty() || random.nextInt(5) < 3) {
+                    int startId = random.nextInt(MAX_ID);
+                    int endId = Math.min(MAX_ID, startId + random.nextInt(random.nextInt(4) == 0
+                            ? MAX_ID : 10));
+                    int client = random.nextInt(clients.length);
+                    assertTrue(testManager.enableRange(startId, endId, clients[client]));
+                    assertTrue(intRangeManager.enableRange(startId, endId, clients[client]));
+                    enabled.add(new int[] {startId, endId, client});
+                } else {
+                    int[] range = enabled.get(random.nextInt(enabled.size()));
+                    // A client holds a range it enabled twice once
+                    for (int i = enabled.size() - 1; i >= 0; i--) {
+                        if (Arrays.equals(range, enabled.get(i))) {
+                            enabled.remove(i);
+                        }
+                    }
+                    assertTrue(testManager.disableRange(range[0], range[1], clients[range[2]]));
+                    assertTrue(intRangeManager.disableRange(range[0], range[1],
+                            clients[range[2]]));
+                }
+
+                assertTrue(intRangeManager.updateRanges());
+                boolean[] expected = new boolean[MAX_ID + 1];
+                for (int[] range : intRangeManager.mRanges) {
+                    Arrays.fill(expected, range[0], range[1] + 1, true);
+                }
+                assertTrue("op " + op + " of run " + run,
+                        Arrays.equals(expected, testManager.mRadioChannels));
+                assertEquals(intRangeManager.isEmpty(), testManager.isEmpty());
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class MmiCodeTokenizerTest extends TestCase {
+
+    // The regular expression the MMI codes used before, see TS 22.030 6.5.2
+    private static final Pattern SUPP_SERVICE_PATTERN = Pattern.compile(
+        "((\\*|#|\\*#|\\*\\*|##)(\\d{2,3})(\\*([^*#]*)(\\*([^*#]*)(\\*([^*#]*)(\\*([^*#]*))?)?)?)?#)(.*)");
+
+    private static final String[] ACTIONS = {"", "*", "#", "*#", "**", "##", "#*", "***"};
+    private static final String FIELD_CHARS = "0123456789+,p";
+    private static final String ANY_CHARS = "*#0123456789+a\n";
+
+    @SmallTest
+    public void testTokenize() {
+        MmiCodeTokenizer.Tokens tokens = MmiCodeTokenizer.tokenize("**21*+16505551212*11#");
+        assertEquals("**21*+16505551212*11#", tokens.poundString);
+        assertEquals("**", tokens.action);
+        assertEquals("21", tokens.serviceCode);
+        assertEquals("+16505551212", tokens.sia);
+        assertEquals("11", tokens.sib);
+        assertNull(tokens.sic);
+        assertNull(tokens.pwd);
+        assertEquals("", tokens.dialingNumber);
+
+        tokens = MmiCodeTokenizer.tokenize("*#31#6505551212");
+        assertEquals("*#31#", tokens.poundString);
+        assertEquals("*#", tokens.action);
+        assertEquals("31", tokens.serviceCode);
+        assertNull(tokens.sia);
+        assertEquals("6505551212", tokens.dialingNumber);
+
+        tokens = MmiCodeTokenizer.tokenize("**03*330*1234**#");
+        assertEquals("1234", tokens.sib);
+        assertEquals("", tokens.sic);
+        assertEquals("", tokens.pwd);
+
+        assertNull(MmiCodeTokenizer.tokenize("6505551212"));
+        assertNull(MmiCodeTokenizer.tokenize("*1#"));
+        assertNull(MmiCodeTokenizer.tokenize("*1234#"));
+        assertNull(MmiCodeTokenizer.tokenize("#*21#"));
+        assertNull(MmiCodeTokenizer.tokenize("*21*1*2*3*4*5#"));
+        assertNull(MmiCodeTokenizer.tokenize("*21*1"));
+        assertNull(MmiCodeTokenizer.tokenize("*21#\n"));
+        assertNull(MmiCodeTokenizer.tokenize(""));
+    }
+
+    /**
+     * Compares the tokenizer with the regular expression on a generated corpus of dial strings,
+     * most of them shaped like MMI codes with a mistake here and there.
+     */
+    @MediumTest
+    public void testMatchesRegularExpression() {
+        Random random = new Random(22030);
+        int mmiCodes = 0;
+        for (int i = 0; i < 200000; i++) {
+            String dialString = (i % 4 == 0) ? randomString(random, ANY_CHARS, 16)
+                    : randomMmiCode(random);
+            if (assertSameTokens(dialString)) {
+                mmiCodes++;
+            }
+        }
+        // The corpus exercises both outcomes
+        assertTrue(mmiCodes > 10000);
+        assertTrue(mmiCodes < 190000);
+    }
+
+    private static String randomMmiCode(Random random) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(ACTIONS[random.nextInt(ACTIONS.length)]);
+        builder.append(randomString(random, "0123456789", 1 + random.nextInt(4)));
+        int fields = random.nextInt(6);
+        for (int i = 0; i < fields; i++) {
+            builder.append('*');
+            builder.append(randomString(random, FIELD_CHARS, random.nextInt(12)));
+        }
+        if (random.nextInt(10) != 0) {
+            builder.append('#');
+        }
+        builder.append(randomString(random, ANY_CHARS, random.nextInt(12)));
+        return builder.toString();
+    }
+
+    private static String randomString(Random random, String chars, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return true if the dial string is an MMI code
+     */
+    private static boolean assertSameTokens(String dialString) {
+        Matcher m = SUPP_SERVICE_PATTERN.matcher(dialString);
+        MmiCodeTokenizer.Tokens tokens = MmiCodeTokenizer.tokenize(dialString);
+        if (!m.matches()) {
+            assertNull(dialString, tokens);
+            return false;
+        }
+        assertNotNull(dialString, tokens);
+        assertEquals(dialString, m.group(1), tokens.poundString);
+        assertEquals(dialString, m.group(2), tokens.action);
+        assertEquals(dialString, m.group(3), tokens.serviceCode);
+        assertEquals(dialString, m.group(5), tokens.sia);
+        assertEquals(dialString, m.group(7), tokens.sib);
+        assertEquals(dialString, m.group(9), tokens.sic);
+        assertEquals(dialString, m.group(11), tokens.pwd);
+        assertEquals(dialString, m.group(12), tokens.dialingNumber);
+        return true;
+    }
+}
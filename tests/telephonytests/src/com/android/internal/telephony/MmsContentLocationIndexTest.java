@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.Telephony;
+import android.test.mock.MockContentProvider;
+import android.test.mock.MockContentResolver;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MmsContentLocationIndexTest extends TelephonyTest {
+
+    private static final int HISTORY_SIZE = 50000;
+
+    private FakeMmsContentProvider mFakeMmsContentProvider;
+    private MmsContentLocationIndex mIndex;
+
+    /**
+     * Holds notification ind content locations, with ids starting at 1.
+     */
+    private static class FakeMmsContentProvider extends MockContentProvider {
+        final List<String> mLocations = new ArrayList<>();
+        int mNumQueries;
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder) {
+            mNumQueries++;
+            MatrixCursor cursor = new MatrixCursor(projection);
+            long afterId = Long.parseLong(selectionArgs[1]);
+            for (int id = (int) Math.max(afterId, 0) + 1; id <= mLocations.size(); id++) {
+                cursor.addRow(new Object[] {id, mLocations.get(id - 1)});
+            }
+            return cursor;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp(getClass().getSimpleName());
+        mFakeMmsContentProvider = new FakeMmsContentProvider();
+        ((MockContentResolver) mContext.getContentResolver()).addProvider(
+                Telephony.Mms.CONTENT_URI.getAuthority(), mFakeMmsContentProvider);
+        mIndex = new MmsContentLocationIndex();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mIndex = null;
+        super.tearDown();
+    }
+
+    private static String location(int i) {
+        return "http://mms.example.com/mms/wapenc?location=" + i + "&rid=" + (i * 31);
+    }
+
+    @Test @MediumTest
+    public void testLargeHistory() {
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            mFakeMmsContentProvider.mLocations.add(location(i));
+        }
+
+        // No false negatives
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            assertTrue(mIndex.mightContain(mContext, location(i)));
+        }
+
+        // Few false positives
+        int possibleHits = 0;
+        for (int i = HISTORY_SIZE; i < 2 * HISTORY_SIZE; i++) {
+            if (mIndex.mightContain(mContext, location(i))) {
+                possibleHits++;
+            }
+        }
+        logd("False positives: " + possibleHits + " of " + HISTORY_SIZE);
+        assertTrue(possibleHits < HISTORY_SIZE / 200);
+
+        // One full scan, and no catch-up scans without changes
+        assertEquals(1, mFakeMmsContentProvider.mNumQueries);
+    }
+
+    @Test @SmallTest
+    public void testCatchesUpWithNewRows() {
+        mFakeMmsContentProvider.mLocations.add(location(0));
+        assertFalse(mIndex.mightContain(mContext, location(1)));
+
+        // Stored by another app, caught up with once the provider reports the change
+        mFakeMmsContentProvider.mLocations.add(location(1));
+        assertFalse(mIndex.mightContain(mContext, location(1)));
+        assertEquals(1, mFakeMmsContentProvider.mNumQueries);
+        mIndex.mObserver.onChange(false);
+        assertTrue(mIndex.mightContain(mContext, location(1)));
+        assertEquals(2, mFakeMmsContentProvider.mNumQueries);
+        assertTrue(mIndex.mightContain(mContext, location(0)));
+        assertEquals(2, mFakeMmsContentProvider.mNumQueries);
+    }
+
+    @Test @SmallTest
+    public void testRebuiltWhenFull() {
+        for (int i = 0; i <= 2 * MmsContentLocationIndex.MIN_CAPACITY; i++) {
+            mFakeMmsContentProvider.mLocations.add(location(i));
+            mIndex.mObserver.onChange(false);
+            assertTrue(mIndex.mightContain(mContext, location(i)));
+        }
+        assertEquals(2, mIndex.getRebuildCount());
+        for (int i = 0; i <= 2 * MmsContentLocationIndex.MIN_CAPACITY; i++) {
+            assertTrue(mIndex.mightContain(mContext, location(i)));
+        }
+    }
+}
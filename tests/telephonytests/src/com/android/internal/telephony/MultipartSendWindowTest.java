@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.location.Country;
+import android.location.CountryDetector;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.android.internal.telephony.gsm.GsmInboundSmsHandler;
+import com.android.internal.telephony.gsm.GsmSMSDispatcher;
+import com.android.internal.telephony.uicc.IccUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+
+/**
+ * Sends multipart messages through a {@link GsmSMSDispatcher} on top of the simulated radio, with
+ * and without a send window.
+ */
+public class MultipartSendWindowTest extends TelephonyTest {
+    private static final int PART_COUNT = 8;
+    private static final int SMS_RESPONSE_DELAY_MS = 50;
+
+    @Mock
+    private ImsSMSDispatcher mImsSmsDispatcher;
+    @Mock
+    private GsmInboundSmsHandler mGsmInboundSmsHandler;
+    @Mock
+    private CountryDetector mCountryDetector;
+
+    private GsmSMSDispatcher mGsmSmsDispatcher;
+    private GsmSmsDispatcherTestHandler mGsmSmsDispatcherTestHandler;
+
+    private final Object mLock = new Object();
+    // Sequence numbers of the submitted parts, in the order they reached the radio
+    private final ArrayList<Integer> mSubmittedParts = new ArrayList<Integer>();
+
+    private class GsmSmsDispatcherTestHandler extends HandlerThread {
+
+        private GsmSmsDispatcherTestHandler(String name) {
+            super(name);
+        }
+
+        @Override
+        public void onLooperPrepared() {
+            mGsmSmsDispatcher = new GsmSMSDispatcher(mPhone, mSmsUsageMonitor,
+                    mImsSmsDispatcher, mGsmInboundSmsHandler);
+            setReady(true);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp(getClass().getSimpleName());
+        setupMockPackagePermissionChecks();
+
+        mContextFixture.setSystemService(Context.COUNTRY_DETECTOR, mCountryDetector);
+        when(mCountryDetector.detectCountry())
+                .thenReturn(new Country("US", Country.COUNTRY_SOURCE_SIM));
+
+        Answer<Void> countSubmit = new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                synchronized (mLock) {
+                    mSubmittedParts.add(getSequenceNumber((String) invocation.getArguments()[1]));
+                }
+                return null;
+            }
+        };
+        doAnswer(countSubmit).when(mSimulatedCommandsVerifier).sendSMS(
+                anyString(), anyString(), any(Message.class));
+        doAnswer(countSubmit).when(mSimulatedCommandsVerifier).sendSMSExpectMore(
+                anyString(), anyString(), any(Message.class));
+
+        mGsmSmsDispatcherTestHandler = new GsmSmsDispatcherTestHandler(getClass().getSimpleName());
+        mGsmSmsDispatcherTestHandler.start();
+        waitUntilReady();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mGsmSmsDispatcher = null;
+        mGsmSmsDispatcherTestHandler.quitSafely();
+        super.tearDown();
+    }
+
+    private void sendMultipartText() {
+        ArrayList<String> parts = new ArrayList<String>();
+        for (int i = 0; i < PART_COUNT; i++) {
+            parts.add("part " + i);
+        }
+        mGsmSmsDispatcher.sendMultipartText("6501002000", "121" /*scAddr*/, parts,
+                null, null, null, null, false, -1, false, -1);
+    }
+
+    /**
+     * @return the sequence number in the concatenation header of a submit PDU
+     */
+    private static int getSequenceNumber(String pdu) {
+        byte[] bytes = IccUtils.hexStringToBytes(pdu);
+        // First octet and message reference, then the destination address
+        int offset = 2;
+        int addressDigits = bytes[offset++];
+        offset += 1 + (addressDigits + 1) / 2;
+        // Protocol identifier, data coding scheme, user data length
+        offset += 3;
+        // Header length, IEI, IE length, reference number, message count, sequence number
+        return bytes[offset + 5];
+    }
+
+    private int getSubmittedParts() {
+        synchronized (mLock) {
+            return mSubmittedParts.size();
+        }
+    }
+
+    private void waitForSubmittedParts(int parts) {
+        for (int i = 0; i < 200 && getSubmittedParts() < parts; i++) {
+            TelephonyTestUtils.waitForMs(10);
+        }
+        assertEquals(parts, getSubmittedParts());
+    }
+
+    /**
+     * Sends a message and checks that its parts are submitted in order, with no more than the
+     * given number of them waiting for their acknowledgement at once.
+     */
+    private void sendAndCheckInFlightParts(int window, int expectedMaxInFlight) {
+        synchronized (mLock) {
+            mSubmittedParts.clear();
+        }
+        mSimulatedCommands.resetMaxSmsInFlightCount();
+        mGsmSmsDispatcher.setMultipartSendWindow(window);
+        sendMultipartText();
+        waitForSubmittedParts(PART_COUNT);
+        // Let the last acknowledgement arrive before the next run
+        TelephonyTestUtils.waitForMs(2 * SMS_RESPONSE_DELAY_MS);
+
+        assertEquals(expectedMaxInFlight, mSimulatedCommands.getMaxSmsInFlightCount());
+        synchronized (mLock) {
+            for (int i = 0; i < PART_COUNT; i++) {
+                assertEquals(i + 1, (int) mSubmittedParts.get(i));
+            }
+        }
+    }
+
+    @Test @MediumTest
+    public void testWindowLimitsOutstandingParts() {
+        mGsmSmsDispatcher.setMultipartSendWindow(3);
+        mSimulatedCommands.pauseResponses();
+        sendMultipartText();
+        TelephonyTestUtils.waitForMs(100);
+        assertEquals(3, getSubmittedParts());
+
+        // Each acknowledgement frees a slot for the next part
+        mSimulatedCommands.resumeResponses();
+        waitForSubmittedParts(PART_COUNT);
+
+        // All but the last part keep the link up
+        verify(mSimulatedCommandsVerifier, times(PART_COUNT - 1)).sendSMSExpectMore(
+                anyString(), anyString(), any(Message.class));
+        verify(mSimulatedCommandsVerifier, times(1)).sendSMS(
+                anyString(), anyString(), any(Message.class));
+    }
+
+    @Test @MediumTest
+    public void testInFlightParts() {
+        // Parts stay in flight long enough for the window to fill up
+        mSimulatedCommands.setSmsResponseDelay(SMS_RESPONSE_DELAY_MS);
+
+        sendAndCheckInFlightParts(1, 1);
+        sendAndCheckInFlightParts(4, 4);
+        sendAndCheckInFlightParts(0, PART_COUNT);
+    }
+}
@@ -17,6 +17,7 @@
 package com.android.internal.telephony;
 
 import com.android.internal.telephony.MccTable;
+import com.android.internal.telephony.dataconnection.DcRequest;
 import com.android.internal.telephony.mocks.ConnectivityServiceMock;
 import com.android.internal.telephony.mocks.SubscriptionControllerMock;
 import com.android.internal.telephony.mocks.TelephonyRegistryMock;
@@ -39,6 +40,10 @@ import android.test.suitebuilder.annotation.SmallTest;
 
 import android.telephony.Rlog;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -544,6 +549,128 @@ public class PhoneSwitcherTest extends AndroidTestCase {
         handlerThread.quit();
     }
 
+    /**
+     * Simulate many apps filing and releasing requests and verify after every event that the
+     * active phones are the ones a full re-evaluation would pick, and that phones only get
+     * notified when they actually switch.
+     */
+    @SmallTest
+    public void testRequestChurn() throws Exception {
+        mTestName = "testRequestChurn";
+        final int numPhones = 3;
+        final int maxActivePhones = 2;
+        final int numEvents = 3000;
+        final HandlerThread handlerThread = new HandlerThread("PhoneSwitcherTestThread");
+        handlerThread.start();
+        final ContextFixture contextFixture = new ContextFixture();
+        String[] networkConfigString = getContext().getResources().getStringArray(
+                com.android.internal.R.array.networkAttributes);
+        contextFixture.putStringArrayResource(com.android.internal.R.array.networkAttributes,
+                networkConfigString);
+        final Context contextMock = contextFixture.getTestDouble();
+        final ConnectivityServiceMock connectivityServiceMock =
+                new ConnectivityServiceMock(contextMock);
+        final ConnectivityManager cm =
+                new ConnectivityManager(contextMock, connectivityServiceMock);
+        contextFixture.setSystemService(Context.CONNECTIVITY_SERVICE, cm);
+        final ITelephonyRegistry.Stub telRegistryMock = new TelephonyRegistryMock();
+        final SubscriptionControllerMock subControllerMock =
+                new SubscriptionControllerMock(contextMock, telRegistryMock, numPhones);
+        final SimulatedCommands[] commandsInterfaces = new SimulatedCommands[numPhones];
+        final PhoneMock[] phones = new PhoneMock[numPhones];
+        for (int i = 0; i < numPhones; i++) {
+            commandsInterfaces[i] = new SimulatedCommands();
+        }
+
+        PhoneSwitcher phoneSwitcher = new PhoneSwitcher(maxActivePhones, numPhones,
+                contextMock, subControllerMock, handlerThread.getLooper(), telRegistryMock,
+                commandsInterfaces, phones);
+        TestHandler switcherIdleHandler = new TestHandler(handlerThread.getLooper());
+
+        for (int i = 0; i < numPhones; i++) {
+            subControllerMock.setSlotSubId(i, i);
+        }
+        subControllerMock.setDefaultDataSubId(0);
+        waitABit();
+
+        TestHandler testHandler = TestHandler.makeHandler();
+        Object activePhoneSwitchObject = new Object();
+        testHandler.setActivePhoneSwitchObject(activePhoneSwitchObject);
+        for (int i = 0; i < numPhones; i++) {
+            phoneSwitcher.registerForActivePhoneSwitch(i, testHandler,
+                    TestHandler.ACTIVE_PHONE_SWITCH, activePhoneSwitchObject);
+        }
+        int expectedSwitchCount = numPhones;
+
+        Random random = new Random(numEvents);
+        List<DcRequest> liveRequests = new ArrayList<DcRequest>();
+        boolean[] expectedActive = new boolean[numPhones];
+        int nextRequestId = 1;
+        for (int event = 0; event < numEvents; event++) {
+            Message msg;
+            if (liveRequests.isEmpty() || random.nextInt(100) < 52) {
+                NetworkCapabilities netCap = new NetworkCapabilities().
+                        addCapability(random.nextInt(4) == 0 ?
+                                NetworkCapabilities.NET_CAPABILITY_MMS :
+                                NetworkCapabilities.NET_CAPABILITY_INTERNET).
+                        addCapability(NetworkCapabilities.NET_CAPABILITY_NOT_RESTRICTED).
+                        addTransportType(NetworkCapabilities.TRANSPORT_CELLULAR);
+                int subId = random.nextInt(numPhones + 1);
+                if (subId < numPhones) {
+                    netCap.setNetworkSpecifier(Integer.toString(subId));
+                }
+                NetworkRequest request = new NetworkRequest(netCap, -1, nextRequestId++,
+                        NetworkRequest.Type.REQUEST);
+                liveRequests.add(new DcRequest(request, contextMock));
+                msg = phoneSwitcher.obtainMessage(PhoneSwitcher.EVENT_REQUEST_NETWORK, request);
+            } else {
+                DcRequest released = liveRequests.remove(random.nextInt(liveRequests.size()));
+                msg = phoneSwitcher.obtainMessage(PhoneSwitcher.EVENT_RELEASE_NETWORK,
+                        released.networkRequest);
+            }
+            msg.sendToTarget();
+
+            // what a full evaluation of the requests in arrival order picks
+            List<DcRequest> sorted = new ArrayList<DcRequest>(liveRequests);
+            Collections.sort(sorted);
+            boolean[] active = new boolean[numPhones];
+            int activeCount = 0;
+            for (DcRequest dcRequest : sorted) {
+                if (activeCount >= maxActivePhones) break;
+                String specifier = dcRequest.networkRequest.networkCapabilities.
+                        getNetworkSpecifier();
+                int phoneId = (specifier == null) ? 0 : Integer.parseInt(specifier);
+                if (active[phoneId]) continue;
+                active[phoneId] = true;
+                activeCount++;
+            }
+            for (int i = 0; i < numPhones; i++) {
+                if (active[i] != expectedActive[i]) expectedSwitchCount++;
+            }
+            expectedActive = active;
+
+            switcherIdleHandler.blockTilIdle();
+            for (int i = 0; i < numPhones; i++) {
+                if (phoneSwitcher.isPhoneActive(i) != expectedActive[i] ||
+                        commandsInterfaces[i].isDataAllowed() != expectedActive[i]) {
+                    fail("phone " + i + " active=" + phoneSwitcher.isPhoneActive(i) +
+                            " after event " + event + " with " + liveRequests.size() +
+                            " requests");
+                }
+            }
+        }
+
+        testHandler.blockTilIdle();
+        if (testHandler.getActivePhoneSwitchCount() != expectedSwitchCount) {
+            fail("ActivePhoneSwitchCount " + testHandler.getActivePhoneSwitchCount() +
+                    ", expected " + expectedSwitchCount);
+        }
+        log("requests left " + liveRequests.size() + ", switches " + expectedSwitchCount);
+
+        testHandler.die();
+        handlerThread.quit();
+    }
+
     /**
      * Test MSMA testing prioritiziation
      * - leave multiple on (up to the limit)
@@ -16,7 +16,9 @@
 
 package com.android.internal.telephony;
 
+import android.os.SystemClock;
 import android.platform.test.annotations.Postsubmit;
+import android.test.suitebuilder.annotation.LargeTest;
 import android.test.suitebuilder.annotation.SmallTest;
 
 import org.junit.After;
@@ -27,12 +29,26 @@ import org.mockito.Mock;
 import java.io.UnsupportedEncodingException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.doReturn;
 
 public class Sms7BitEncodingTranslatorTest extends TelephonyTest {
 
+    // Typical messages, most of which need no translation
+    private static final String[] CORPUS = {
+        "Running 10 min late, start without me",
+        "Your verification code is 482913. Do not share it with anyone.",
+        "Ok! See you at 7:30 @ the station?",
+        "Meeting moved to room 4B (2nd floor) - bring the Q3 numbers",
+        "R\u00e9union demain \u00e0 9h, n'oublie pas le dossier",
+        "\u00bfVienes ma\u00f1ana? Cena a las 21:00 en casa de Mar\u00eda",
+        "Gr\u00fc\u00dfe aus M\u00fcnchen! Wetter ist sch\u00f6n.",
+        "Thanks \u2013 that\u2019s great \u201cnews\u201d!",
+    };
+
     @Mock
     UiccSmsController mUiccSmsController;
 
@@ -101,4 +117,39 @@ public class Sms7BitEncodingTranslatorTest extends TelephonyTest {
         }
         assertEquals("OUc", Sms7BitEncodingTranslator.translate(s));
     }
-}
\ No newline at end of file
+
+    @Test
+    @SmallTest
+    public void testNoTranslateReturnsMessage() {
+        String s = "Hello {world} \u00e9\u00c7";
+        assertSame(s, Sms7BitEncodingTranslator.translate(s));
+        assertEquals("Hello", Sms7BitEncodingTranslator.translate(new StringBuilder("Hello")));
+    }
+
+    @Test
+    @SmallTest
+    public void testTranslateAfterPrefix() {
+        String s = "Hello \u00d3\u00cf\u0104 world";
+        String translated = Sms7BitEncodingTranslator.translate(s);
+        assertNotSame(s, translated);
+        assertEquals("Hello OIA world", translated);
+    }
+
+    /**
+     * Times translating a corpus of typical messages.
+     */
+    @Test
+    @LargeTest
+    public void testTranslateTime() {
+        int iterations = 2000;
+        int chars = 0;
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < iterations; i++) {
+            for (String message : CORPUS) {
+                chars += Sms7BitEncodingTranslator.translate(message).length();
+            }
+        }
+        long translateMs = SystemClock.elapsedRealtime() - start;
+        logd("Translated " + chars + " characters in " + translateMs + " ms");
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import android.content.res.Resources;
+import android.telephony.SmsMessage;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.internal.telephony.GsmAlphabet.TextEncodingDetails;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares {@link SmsEncodingPlanner} with calculateLength and the way fragmentText split the
+ * text before the planner, for all the enabled national language tables of
+ * {@link SmsMessageBodyTest}.
+ */
+public class SmsEncodingPlannerTest extends AndroidTestCase {
+    private static final String ASCII_CHARS = "abcdefghijklmnopqrstuvwxyz ABCXYZ0123456789.,?!\n";
+
+    private static final String[] SPECIAL_CHARS = {
+        "{}[]~\\|^\u20ac",  // GSM default extension table
+        "\u015e\u015f\u011e\u011f\u0130\u0131\u00e7",  // Turkish
+        "\u00c1\u00e1\u00cd\u00ed\u00d3\u00f3\u00fa",  // Spanish
+        "\u00ea\u00d4\u00f4\u00c3\u00e3\u00d5\u00f5",  // Portuguese
+        "\u0394\u03a6\u0393\u039b\u03a9\u00e9\u00e8",  // Greek and default table
+        "\u4e2d\u6587\u0416\u05d0\u0627",  // no 7-bit encoding
+        "\ud83d\ude00\ud83c\udde9\ud83c\uddea",  // surrogate pairs
+    };
+
+    private static final int[][] LOCKING_SHIFT_TABLES = {{}, {1}, {}, {1, 3}};
+    private static final int[][] SINGLE_SHIFT_TABLES = {{}, {1}, {1, 2, 3}, {1, 2, 3}};
+
+    private int[] mOrigLockingShiftTables;
+    private int[] mOrigSingleShiftTables;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mOrigLockingShiftTables = GsmAlphabet.getEnabledLockingShiftTables();
+        mOrigSingleShiftTables = GsmAlphabet.getEnabledSingleShiftTables();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        GsmAlphabet.setEnabledLockingShiftTables(mOrigLockingShiftTables);
+        GsmAlphabet.setEnabledSingleShiftTables(mOrigSingleShiftTables);
+        super.tearDown();
+    }
+
+    @SmallTest
+    public void testEmpty() {
+        SmsEncodingPlanner planner = new SmsEncodingPlanner(false, false);
+        assertEquals(1, planner.getEncodingDetails("").msgCount);
+        assertEquals(0, planner.getFragments("").size());
+    }
+
+    @SmallTest
+    public void testAppend() {
+        StringBuilder text = new StringBuilder();
+        SmsEncodingPlanner planner = new SmsEncodingPlanner(false, false);
+        for (int i = 0; i < 40; i++) {
+            String word = "word" + i + (i % 7 == 0 ? "\u20ac " : " ");
+            text.append(word);
+            planner.append(word);
+        }
+        assertTrue(planner.canAppendTo(text + "more", false, false));
+        assertFalse(planner.canAppendTo("other" + text, false, false));
+        assertFalse(planner.canAppendTo("x" + text.substring(1), false, false));
+        assertFalse(planner.canAppendTo(text, true, false));
+
+        TextEncodingDetails ted = planner.getEncodingDetails(text);
+        assertEquals(SmsConstants.ENCODING_7BIT, ted.codeUnitSize);
+        assertEquals(2, ted.msgCount);
+        ArrayList<String> fragments = planner.getFragments(text);
+        assertEquals(2, fragments.size());
+        assertEquals(text.toString(), fragments.get(0) + fragments.get(1));
+    }
+
+    /**
+     * Types random messages a few characters at a time and compares the planner with
+     * calculateLength after each, for both formats and both ways of handling characters that
+     * are not in the 7-bit alphabet.
+     */
+    @MediumTest
+    public void testMatchesCalculateLength() {
+        Random random = new Random(0x5ec7);
+        for (int config = 0; config < LOCKING_SHIFT_TABLES.length; config++) {
+            GsmAlphabet.setEnabledLockingShiftTables(LOCKING_SHIFT_TABLES[config]);
+            GsmAlphabet.setEnabledSingleShiftTables(SINGLE_SHIFT_TABLES[config]);
+            for (int run = 0; run < 40; run++) {
+                boolean cdmaFormat = (run % 2) == 1;
+                boolean use7bitOnly = (run % 4) >= 2;
+                SmsEncodingPlanner planner = new SmsEncodingPlanner(cdmaFormat, use7bitOnly);
+                StringBuilder text = new StringBuilder();
+                int length = 10 + random.nextInt(500);
+                int specialOdds = 1 + random.nextInt(60);
+                while (text.length() < length) {
+                    String typed = randomText(random, 1 + random.nextInt(4), specialOdds);
+                    text.append(typed);
+                    planner.append(typed);
+                    TextEncodingDetails expected = cdmaFormat
+                            ? com.android.internal.telephony.cdma.SmsMessage.calculateLength(
+                                    text, use7bitOnly, true)
+                            : com.android.internal.telephony.gsm.SmsMessage.calculateLength(
+                                    text, use7bitOnly);
+                    assertSameDetails(text.toString(), expected,
+                            planner.getEncodingDetails(text));
+                }
+            }
+        }
+    }
+
+    @MediumTest
+    public void testMatchesFragmentText() {
+        Random random = new Random(0xf4a6);
+        for (int config = 0; config < LOCKING_SHIFT_TABLES.length; config++) {
+            GsmAlphabet.setEnabledLockingShiftTables(LOCKING_SHIFT_TABLES[config]);
+            GsmAlphabet.setEnabledSingleShiftTables(SINGLE_SHIFT_TABLES[config]);
+            for (int run = 0; run < 100; run++) {
+                boolean cdmaFormat = (run % 2) == 1;
+                String text = randomText(random, random.nextInt(1200), 1 + random.nextInt(100));
+                SmsEncodingPlanner planner = new SmsEncodingPlanner(cdmaFormat, false);
+                planner.append(text);
+                assertEquals(text, fragmentText(text, cdmaFormat), planner.getFragments(text));
+            }
+        }
+    }
+
+    /**
+     * Types a long multilingual message one character at a time, asking for the length after
+     * each character, and compares the planner with calculateLength at every step.
+     */
+    @MediumTest
+    public void testTypingLongMessage() {
+        GsmAlphabet.setEnabledLockingShiftTables(LOCKING_SHIFT_TABLES[3]);
+        GsmAlphabet.setEnabledSingleShiftTables(SINGLE_SHIFT_TABLES[3]);
+        String text = randomText(new Random(0x7e27), 1500, 30);
+
+        SmsEncodingPlanner planner = new SmsEncodingPlanner(false, false);
+        for (int i = 0; i < text.length(); i++) {
+            CharSequence typed = text.subSequence(0, i + 1);
+            assertTrue(planner.canAppendTo(typed, false, false));
+            planner.append(text.subSequence(i, i + 1));
+            assertSameDetails(typed.toString(),
+                    com.android.internal.telephony.gsm.SmsMessage.calculateLength(typed, false),
+                    planner.getEncodingDetails(typed));
+        }
+        assertEquals(fragmentText(text, false), planner.getFragments(text));
+    }
+
+    private static String randomText(Random random, int length, int specialOdds) {
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            if (random.nextInt(specialOdds) == 0) {
+                String chars = SPECIAL_CHARS[random.nextInt(SPECIAL_CHARS.length)];
+                int i = random.nextInt(chars.length());
+                if (Character.isLowSurrogate(chars.charAt(i))) {
+                    i--;
+                }
+                text.append(chars, i, Character.isHighSurrogate(chars.charAt(i)) ? i + 2 : i + 1);
+            } else {
+                text.append(ASCII_CHARS.charAt(random.nextInt(ASCII_CHARS.length())));
+            }
+        }
+        return text.toString();
+    }
+
+    private static void assertSameDetails(String text, TextEncodingDetails expected,
+            TextEncodingDetails actual) {
+        assertEquals(text, expected.msgCount, actual.msgCount);
+        assertEquals(text, expected.codeUnitCount, actual.codeUnitCount);
+        assertEquals(text, expected.codeUnitsRemaining, actual.codeUnitsRemaining);
+        assertEquals(text, expected.codeUnitSize, actual.codeUnitSize);
+        assertEquals(text, expected.languageTable, actual.languageTable);
+        assertEquals(text, expected.languageShiftTable, actual.languageShiftTable);
+    }
+
+    /**
+     * SmsMessage.fragmentText as it was before the planner, for a given format.
+     */
+    private static ArrayList<String> fragmentText(String text, boolean cdmaFormat) {
+        TextEncodingDetails ted = cdmaFormat
+                ? com.android.internal.telephony.cdma.SmsMessage.calculateLength(text, false, true)
+                : com.android.internal.telephony.gsm.SmsMessage.calculateLength(text, false);
+
+        int limit;
+        if (ted.codeUnitSize == SmsConstants.ENCODING_7BIT) {
+            int udhLength;
+            if (ted.languageTable != 0 && ted.languageShiftTable != 0) {
+                udhLength = GsmAlphabet.UDH_SEPTET_COST_TWO_SHIFT_TABLES;
+            } else if (ted.languageTable != 0 || ted.languageShiftTable != 0) {
+                udhLength = GsmAlphabet.UDH_SEPTET_COST_ONE_SHIFT_TABLE;
+            } else {
+                udhLength = 0;
+            }
+            if (ted.msgCount > 1) {
+                udhLength += GsmAlphabet.UDH_SEPTET_COST_CONCATENATED_MESSAGE;
+            }
+            if (udhLength != 0) {
+                udhLength += GsmAlphabet.UDH_SEPTET_COST_LENGTH;
+            }
+            limit = SmsConstants.MAX_USER_DATA_SEPTETS - udhLength;
+        } else if (ted.msgCount > 1) {
+            limit = SmsConstants.MAX_USER_DATA_BYTES_WITH_HEADER;
+            if (!SmsMessage.hasEmsSupport() && ted.msgCount < 10) {
+                limit -= 2;
+            }
+        } else {
+            limit = SmsConstants.MAX_USER_DATA_BYTES;
+        }
+
+        String newMsgBody = null;
+        if (Resources.getSystem().getBoolean(
+                com.android.internal.R.bool.config_sms_force_7bit_encoding)) {
+            newMsgBody = Sms7BitEncodingTranslator.translate(text);
+        }
+        if (newMsgBody == null || newMsgBody.isEmpty()) {
+            newMsgBody = text;
+        }
+        int pos = 0;
+        int textLen = newMsgBody.length();
+        ArrayList<String> result = new ArrayList<String>(ted.msgCount);
+        while (pos < textLen) {
+            int nextPos;
+            if (ted.codeUnitSize == SmsConstants.ENCODING_7BIT) {
+                if (cdmaFormat && ted.msgCount == 1) {
+                    nextPos = pos + Math.min(limit, textLen - pos);
+                } else {
+                    nextPos = GsmAlphabet.findGsmSeptetLimitIndex(newMsgBody, pos, limit,
+                            ted.languageTable, ted.languageShiftTable);
+                }
+            } else {
+                nextPos = SmsMessageBase.findNextUnicodePosition(pos, limit, newMsgBody);
+            }
+            assertTrue(nextPos > pos && nextPos <= textLen);
+            result.add(newMsgBody.substring(pos, nextPos));
+            pos = nextPos;
+        }
+        return result;
+    }
+}
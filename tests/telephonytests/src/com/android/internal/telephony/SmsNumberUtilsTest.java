@@ -19,9 +19,12 @@ package com.android.internal.telephony;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.SystemClock;
+import android.os.UserHandle;
 import android.telephony.TelephonyManager;
 import android.test.mock.MockContentProvider;
 import android.test.mock.MockContentResolver;
+import android.test.suitebuilder.annotation.MediumTest;
 import android.test.suitebuilder.annotation.SmallTest;
 
 import org.junit.After;
@@ -44,6 +47,7 @@ public class SmsNumberUtilsTest extends TelephonyTest {
 
     // Simulate partial packages/providers/TelephonyProvider/res/xml/hbpcd_lookup_tables.xml
     private class HbpcdContentProvider extends MockContentProvider {
+        int mNumQueries;
 
         public HbpcdContentProvider() {}
 
@@ -56,29 +60,19 @@ public class SmsNumberUtilsTest extends TelephonyTest {
             logd("   selection = " + selection);
             logd("   selectionArgs = " + Arrays.toString(selectionArgs));
             logd("   sortOrder = " + sortOrder);
+            mNumQueries++;
 
             if (uri.compareTo(HbpcdLookup.MccIdd.CONTENT_URI) == 0) {
                 if (projection.length == 2 && projection[0].equals(HbpcdLookup.MccIdd.IDD) &&
-                        projection[1].equals(HbpcdLookup.MccIdd.MCC) && selectionArgs.length == 1) {
+                        projection[1].equals(HbpcdLookup.MccIdd.MCC) && selection == null &&
+                        selectionArgs == null) {
                     MatrixCursor mc = new MatrixCursor(
-                            new String[]{HbpcdLookup.MccIdd.IDD});
-
-                    switch (Integer.parseInt(selectionArgs[0])) {
-                        case 310:
-                            mc.addRow(new Object[]{"011"}); // US IDD code
-                            break;
-                        case 466:
-                            mc.addRow(new Object[]{"002"}); // Taiwan IDD code
-                            break;
-                        case 440:
-                            mc.addRow(new Object[]{"010"}); // Japan IDD code
-                            break;
-                        case 405:
-                            mc.addRow(new Object[]{"010"}); // India IDD code
-                            break;
-                        default:
-                            logd("Unhandled MCC" + Integer.parseInt(selectionArgs[0]));
-                    }
+                            new String[]{HbpcdLookup.MccIdd.IDD, HbpcdLookup.MccIdd.MCC});
+
+                    mc.addRow(new Object[]{"011", 310}); // US IDD code
+                    mc.addRow(new Object[]{"002", 466}); // Taiwan IDD code
+                    mc.addRow(new Object[]{"010", 440}); // Japan IDD code
+                    mc.addRow(new Object[]{"010", 405}); // India IDD code
 
                     return mc;
                 } else {
@@ -117,6 +111,7 @@ public class SmsNumberUtilsTest extends TelephonyTest {
         super.setUp(getClass().getSimpleName());
 
         mHbpcdContentProvider = new HbpcdContentProvider();
+        HbpcdTables.resetForTest();
 
         doReturn(TMO_MCC_MNC).when(mTelephonyManager).getNetworkOperator(anyInt());
 
@@ -243,4 +238,47 @@ public class SmsNumberUtilsTest extends TelephonyTest {
         assertEquals("01118582345678",
                 SmsNumberUtils.filterDestAddr(mPhone, "+011-1-858-234-5678"));
     }
-}
\ No newline at end of file
+
+    @Test
+    @MediumTest
+    public void testFilterDestAddrCost() {
+        final int numMessages = 10000;
+        String[] destAddrs = {"+886-7-1234567", "011886-7-1234567", "858-234-5678",
+                "+011-1-858-234-5678", "886-2-86281234"};
+
+        // Warm up, this reads the tables
+        for (String destAddr : destAddrs) {
+            SmsNumberUtils.filterDestAddr(mPhone, destAddr);
+        }
+        int numQueries = mHbpcdContentProvider.mNumQueries;
+
+        long startTimeNano = System.nanoTime();
+        for (int i = 0; i < numMessages; i++) {
+            SmsNumberUtils.filterDestAddr(mPhone, destAddrs[i % destAddrs.length]);
+        }
+        long elapsedNano = System.nanoTime() - startTimeNano;
+        logd("filterDestAddr: " + (elapsedNano / numMessages / 1000) + " us per message");
+
+        // No provider access per message
+        assertEquals(numQueries, mHbpcdContentProvider.mNumQueries);
+        assertEquals("01188671234567", SmsNumberUtils.filterDestAddr(mPhone, "+886-7-1234567"));
+    }
+
+    @Test
+    @SmallTest
+    public void testTablesReloadedAfterChange() {
+        assertEquals("01188671234567", SmsNumberUtils.filterDestAddr(mPhone, "+886-7-1234567"));
+        int numQueries = mHbpcdContentProvider.mNumQueries;
+
+        // MockContentResolver drops change notifications, so send this one to the content
+        // service, which calls the observer on a binder thread
+        mContext.getContentResolver().notifyChange(HbpcdLookup.MccIdd.CONTENT_URI,
+                null /* observer */, false /* syncToNetwork */, UserHandle.myUserId());
+        for (int i = 0; i < 50 && mHbpcdContentProvider.mNumQueries == numQueries; i++) {
+            SystemClock.sleep(20);
+            assertEquals("01188671234567",
+                    SmsNumberUtils.filterDestAddr(mPhone, "+886-7-1234567"));
+        }
+        assertEquals(2 * numQueries, mHbpcdContentProvider.mNumQueries);
+    }
+}
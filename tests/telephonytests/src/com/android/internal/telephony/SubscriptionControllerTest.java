@@ -26,6 +26,7 @@ import android.os.UserHandle;
 import android.provider.Settings;
 import android.test.mock.MockContentProvider;
 import android.test.mock.MockContentResolver;
+import android.test.suitebuilder.annotation.MediumTest;
 import android.test.suitebuilder.annotation.SmallTest;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -41,6 +42,9 @@ import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SubscriptionControllerTest extends TelephonyTest {
 
@@ -139,6 +143,78 @@ public class SubscriptionControllerTest extends TelephonyTest {
         }
     }
 
+    /**
+     * Provider holding many subscription records, counting the queries it gets.
+     */
+    public class CountingSubscriptionContentProvider extends MockContentProvider {
+        private final String[] mColumns = new String[]{
+                SubscriptionManager.UNIQUE_KEY_SUBSCRIPTION_ID,
+                SubscriptionManager.ICC_ID, SubscriptionManager.SIM_SLOT_INDEX,
+                SubscriptionManager.DISPLAY_NAME, SubscriptionManager.CARRIER_NAME,
+                SubscriptionManager.NAME_SOURCE, SubscriptionManager.COLOR,
+                SubscriptionManager.NUMBER, SubscriptionManager.DATA_ROAMING,
+                SubscriptionManager.MCC, SubscriptionManager.MNC,
+                SubscriptionManager.USER_NETWORK_MODE};
+
+        private final ArrayList<Object[]> mRows = new ArrayList<Object[]>();
+        private int mQueryCount;
+
+        /**
+         * @param slots number of records in a slot, with subIds 1 to slots
+         * @param profiles total number of records
+         */
+        CountingSubscriptionContentProvider(int slots, int profiles) {
+            // inactive profiles first, then the active ones in reverse slot order
+            for (int subId = slots + 1; subId <= profiles; subId++) {
+                mRows.add(newRow(subId, SubscriptionManager.INVALID_SIM_SLOT_INDEX));
+            }
+            for (int subId = slots; subId >= 1; subId--) {
+                mRows.add(newRow(subId, subId - 1));
+            }
+        }
+
+        private Object[] newRow(int subId, int slotId) {
+            return new Object[]{subId, "8901000000000000" + subId, slotId, "CARD " + subId,
+                    "carrier", SubscriptionManager.NAME_SOURCE_DEFAULT_SOURCE, 5, "", 0,
+                    310, 260, SubscriptionManager.DEFAULT_NW_MODE};
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                            String sortOrder) {
+            mQueryCount++;
+            MatrixCursor cursor = new MatrixCursor(mColumns);
+            for (Object[] row : mRows) {
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection,
+                          String[] selectionArgs) {
+            int subId = Integer.parseInt(selection.substring(selection.indexOf('=') + 1));
+            for (Object[] row : mRows) {
+                if ((Integer) row[0] == subId) {
+                    for (int i = 0; i < mColumns.length; i++) {
+                        if (values.containsKey(mColumns[i])) {
+                            row[i] = values.get(mColumns[i]);
+                        }
+                    }
+                    return 1;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            int count = mRows.size();
+            mRows.clear();
+            return count;
+        }
+    }
+
     @Before
     public void setUp() throws Exception {
         super.setUp("SubscriptionControllerTest");
@@ -308,4 +384,184 @@ public class SubscriptionControllerTest extends TelephonyTest {
         assertTrue(b.containsKey(PhoneConstants.SUBSCRIPTION_KEY));
         assertEquals(1, b.getInt(PhoneConstants.SUBSCRIPTION_KEY));
     }
+
+    @Test @MediumTest
+    public void testSubInfoReadsServedFromMemory() {
+        final int slots = 4;
+        // an eSIM can hold many downloaded profiles besides the ones in use
+        final int profiles = 40;
+        CountingSubscriptionContentProvider provider =
+                new CountingSubscriptionContentProvider(slots, profiles);
+        mMockContentResolver.addProvider(SubscriptionManager.CONTENT_URI.getAuthority(),
+                provider);
+        mSubscriptionControllerUT.invalidateSubInfoSnapshot();
+
+        for (int slot = 0; slot < slots; slot++) {
+            SubscriptionController.putSlotIdxToSubId(slot, slot + 1);
+        }
+
+        try {
+            final int iterations = 1000;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                List<SubscriptionInfo> active = mSubscriptionControllerUT
+                        .getActiveSubscriptionInfoList(mCallingPackage);
+                assertEquals(slots, active.size());
+                for (int slot = 0; slot < slots; slot++) {
+                    assertEquals(slot, active.get(slot).getSimSlotIndex());
+                    assertEquals(slot + 1, active.get(slot).getSubscriptionId());
+                }
+                assertNotNull(mSubscriptionControllerUT.getActiveSubscriptionInfo(
+                        1 + i % slots, mCallingPackage));
+                assertNotNull(mSubscriptionControllerUT.getActiveSubscriptionInfoForSimSlotIndex(
+                        i % slots, mCallingPackage));
+                assertEquals(profiles, mSubscriptionControllerUT
+                        .getAllSubInfoList(mCallingPackage).size());
+                assertEquals(profiles, mSubscriptionControllerUT
+                        .getAllSubInfoCount(mCallingPackage));
+            }
+            logd("subscription info reads: " + (System.nanoTime() - start) / iterations
+                    + " ns per iteration");
+            assertEquals(1, provider.mQueryCount);
+
+            // a write goes through to the provider and updates the copy in memory
+            mSubscriptionControllerUT.setDisplayName("TESTING", 2);
+            mSubscriptionControllerUT.setIconTint(7, 3);
+            assertEquals("TESTING", mSubscriptionControllerUT
+                    .getActiveSubscriptionInfo(2, mCallingPackage).getDisplayName());
+            assertEquals(7, mSubscriptionControllerUT
+                    .getActiveSubscriptionInfo(3, mCallingPackage).getIconTint());
+            assertEquals(1, provider.mQueryCount);
+
+            // after an invalidation the next read queries the provider again
+            mSubscriptionControllerUT.invalidateSubInfoSnapshot();
+            assertEquals("TESTING", mSubscriptionControllerUT
+                    .getActiveSubscriptionInfo(2, mCallingPackage).getDisplayName());
+            assertEquals(2, provider.mQueryCount);
+        } finally {
+            SubscriptionController.clearSlotIdxToSubId();
+        }
+    }
+
+    @Test @SmallTest
+    public void testSlotSubIdIndex() {
+        SubscriptionController.SlotSubIdIndex index = new SubscriptionController.SlotSubIdIndex(
+                new int[]{1, 0, 3}, new int[]{7, 12, 1000});
+        assertEquals(3, index.size());
+        assertEquals(0, index.getSlotId(12));
+        assertEquals(1, index.getSlotId(7));
+        assertEquals(3, index.getSlotId(1000));
+        assertEquals(SubscriptionManager.INVALID_SIM_SLOT_INDEX, index.getSlotId(8));
+        assertTrue(index.containsSubId(1000));
+        assertFalse(index.containsSubId(0));
+        assertArrayEquals(new int[]{7}, index.getSubIds(1));
+        assertNull(index.getSubIds(2));
+        assertNull(index.getSubIds(4));
+        assertNull(index.getSubIds(-1));
+        assertArrayEquals(new int[]{12, 7, 1000}, index.getSubIds());
+
+        // returned arrays are copies
+        index.getSubIds()[0] = 99;
+        assertArrayEquals(new int[]{12, 7, 1000}, index.getSubIds());
+
+        assertEquals(0, SubscriptionController.SlotSubIdIndex.EMPTY.size());
+        assertFalse(SubscriptionController.SlotSubIdIndex.EMPTY.containsSubId(1));
+    }
+
+    /**
+     * The lookups done by getSlotId() and getSubId() before the index, over a boxed map.
+     */
+    private static int mapGetSlotId(Map<Integer, Integer> slotIdxToSubId, int subId) {
+        for (Entry<Integer, Integer> entry : slotIdxToSubId.entrySet()) {
+            if (subId == entry.getValue()) {
+                return entry.getKey();
+            }
+        }
+        return SubscriptionManager.INVALID_SIM_SLOT_INDEX;
+    }
+
+    private static int[] mapGetSubIds(Map<Integer, Integer> slotIdxToSubId, int slotIdx) {
+        ArrayList<Integer> subIds = new ArrayList<Integer>();
+        for (Entry<Integer, Integer> entry : slotIdxToSubId.entrySet()) {
+            if (slotIdx == entry.getKey()) {
+                subIds.add(entry.getValue());
+            }
+        }
+        int[] subIdArr = new int[subIds.size()];
+        for (int i = 0; i < subIdArr.length; i++) {
+            subIdArr[i] = subIds.get(i);
+        }
+        return subIdArr;
+    }
+
+    private static long runConcurrentReaders(int readers, final int iterations,
+            final Runnable lookup) throws Exception {
+        Thread[] threads = new Thread[readers];
+        for (int i = 0; i < readers; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < iterations; j++) {
+                        lookup.run();
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    @Test @MediumTest
+    public void testSlotSubIdIndexConcurrentReaders() throws Exception {
+        final int slots = 4;
+        final Map<Integer, Integer> slotIdxToSubId = new ConcurrentHashMap<Integer, Integer>();
+        int[] slotArr = new int[slots];
+        int[] subIdArr = new int[slots];
+        for (int slot = 0; slot < slots; slot++) {
+            slotIdxToSubId.put(slot, slot + 1);
+            slotArr[slot] = slot;
+            subIdArr[slot] = slot + 1;
+        }
+        final SubscriptionController.SlotSubIdIndex index =
+                new SubscriptionController.SlotSubIdIndex(slotArr, subIdArr);
+        final int[] errors = new int[1];
+
+        final int readers = 4;
+        final int iterations = 100000;
+        long mapNs = runConcurrentReaders(readers, iterations, new Runnable() {
+            @Override
+            public void run() {
+                for (int subId = 1; subId <= slots; subId++) {
+                    if (mapGetSlotId(slotIdxToSubId, subId) != subId - 1
+                            || mapGetSubIds(slotIdxToSubId, subId - 1)[0] != subId) {
+                        synchronized (errors) {
+                            errors[0]++;
+                        }
+                    }
+                }
+            }
+        });
+        long indexNs = runConcurrentReaders(readers, iterations, new Runnable() {
+            @Override
+            public void run() {
+                for (int subId = 1; subId <= slots; subId++) {
+                    if (index.getSlotId(subId) != subId - 1
+                            || index.getSubIds(subId - 1)[0] != subId) {
+                        synchronized (errors) {
+                            errors[0]++;
+                        }
+                    }
+                }
+            }
+        });
+        logd("slot/subId lookups with " + readers + " readers: map=" + mapNs / 1000000
+                + "ms index=" + indexNs / 1000000 + "ms");
+        assertEquals(0, errors[0]);
+    }
 }
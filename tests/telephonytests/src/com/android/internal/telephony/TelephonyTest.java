@@ -428,6 +428,10 @@ public abstract class TelephonyTest {
         SharedPreferences sharedPreferences = mContext.getSharedPreferences((String) null, 0);
         sharedPreferences.edit().clear().commit();
 
+        // Verdicts and HBPCD tables are cached across tests otherwise, and read from this test's
+        // provider
+        BlockChecker.resetForTest();
+        HbpcdTables.resetForTest();
         restoreInstances();
     }
 
@@ -438,11 +442,13 @@ public abstract class TelephonyTest {
     public static class FakeBlockedNumberContentProvider extends MockContentProvider {
         public Set<String> mBlockedNumbers = new HashSet<>();
         public int mNumEmergencyContactNotifications = 0;
+        public int mNumShouldSystemBlockNumberCalls = 0;
 
         @Override
         public Bundle call(String method, String arg, Bundle extras) {
             switch (method) {
                 case BlockedNumberContract.SystemContract.METHOD_SHOULD_SYSTEM_BLOCK_NUMBER:
+                    mNumShouldSystemBlockNumberCalls++;
                     Bundle bundle = new Bundle();
                     bundle.putBoolean(BlockedNumberContract.RES_NUMBER_IS_BLOCKED,
                             mBlockedNumbers.contains(arg));
@@ -17,15 +17,47 @@
 package com.android.internal.telephony;
 
 import android.content.Context;
+import android.content.Intent;
+import android.content.res.Resources;
 import android.telephony.TelephonyManager;
 import android.telephony.VisualVoicemailSmsFilterSettings;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
 
 import junit.framework.TestCase;
 
 import org.mockito.Mockito;
 
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
 public class VisualVoicemailSmsFilterTest extends TestCase {
 
+    private static final String TAG = "VisualVoicemailSmsFilterTest";
+
+    private static final String MCC_MNC = "310999";
+
+    private static final String[] CARRIER_REGEXES = {
+            "310999,311999;^VVM notification \\d+$",
+            "310999;^Voicemail from (\\d+) to \\1$",
+            "310999;^New voicemail.*$"
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        VisualVoicemailSmsFilter.resetPatternsMap();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        VisualVoicemailSmsFilter.resetPatternsMap();
+        super.tearDown();
+    }
+
     /**
      * b/29123941 iPhone style notification SMS is neither 3GPP nor 3GPP2, but some plain text
      * message. {@link android.telephony.SmsMessage.createFromPdu()} will fail to parse it and
@@ -52,4 +84,129 @@ public class VisualVoicemailSmsFilterTest extends TestCase {
         VisualVoicemailSmsFilter.filter(context, pdus, SmsConstants.FORMAT_3GPP2, 0, 0);
     }
 
+    @SmallTest
+    public void testBuildPatternsMap() {
+        Map<String, List<Pattern>> patterns =
+                VisualVoicemailSmsFilter.buildPatternsMap(CARRIER_REGEXES);
+
+        List<Pattern> joined = patterns.get(MCC_MNC);
+        // The pattern with a backreference is kept apart, the others are joined
+        assertEquals(2, joined.size());
+        assertTrue(matchesAny(joined, "VVM notification 12"));
+        assertTrue(matchesAny(joined, "Voicemail from 1234 to 1234"));
+        assertTrue(matchesAny(joined, "New voicemail from 1234"));
+        assertFalse(matchesAny(joined, "Voicemail from 1234 to 5678"));
+        assertFalse(matchesAny(joined, "Hello"));
+
+        List<Pattern> single = patterns.get("311999");
+        assertEquals(1, single.size());
+        assertTrue(matchesAny(single, "VVM notification 12"));
+        assertFalse(matchesAny(single, "New voicemail from 1234"));
+    }
+
+    @SmallTest
+    public void testBuildPatternsMapSameGroupName() {
+        Map<String, List<Pattern>> patterns = VisualVoicemailSmsFilter.buildPatternsMap(
+                new String[] {
+                        "310999;^VVM notification (?<count>\\d+)$",
+                        "310999;^(?<count>\\d+) new voicemails?$"
+                });
+
+        List<Pattern> joined = patterns.get(MCC_MNC);
+        assertEquals(1, joined.size());
+        assertTrue(matchesAny(joined, "VVM notification 12"));
+        assertTrue(matchesAny(joined, "2 new voicemails"));
+        assertFalse(matchesAny(joined, "Hello"));
+    }
+
+    /**
+     * Runs a corpus of mostly regular SMS with some VVM SMS through the filter, checking the
+     * verdicts and logging the throughput.
+     */
+    @MediumTest
+    public void testFilterThroughput() throws Exception {
+        Context context = createContext();
+
+        byte[][][] corpus = {
+                {createDeliverPdu("//VVM:SYNC:ev=NM;id=3446456;c=1;t=v;s=01234567898;dt=02/08/"
+                        + "2011 12:23 +0200;l=30")},
+                {createDeliverPdu("VVM notification 3")},
+                {createDeliverPdu("Hey, are we still on for lunch today?")},
+                {createDeliverPdu("Your verification code is 123456")},
+                {createDeliverPdu("Running late, be there in 10"),
+                        createDeliverPdu(" minutes, order for me please")},
+                {createDeliverPdu("New voicemail "), createDeliverPdu("from 1234")},
+                {createDeliverPdu("Reminder: your appointment is tomorrow at 9am. Reply C to "
+                        + "confirm or R to reschedule."),
+                        createDeliverPdu(" Standard message rates apply.")},
+                {createDeliverPdu("Voicemail from 1234 to 5678")},
+        };
+        boolean[] isVvm = {true, true, false, false, false, true, false, false};
+
+        for (int i = 0; i < corpus.length; i++) {
+            assertEquals("message " + i, isVvm[i], VisualVoicemailSmsFilter.filter(context,
+                    corpus[i], SmsConstants.FORMAT_3GPP, 0, 0));
+        }
+
+        final int rounds = 200;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (byte[][] pdus : corpus) {
+                VisualVoicemailSmsFilter.filter(context, pdus, SmsConstants.FORMAT_3GPP, 0, 0);
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        Log.d(TAG, "Filtered " + rounds * corpus.length + " messages in "
+                + elapsedNanos / 1000000 + " ms");
+        Mockito.verify(context, Mockito.times(3 * (rounds + 1)))
+                .sendBroadcast(Mockito.any(Intent.class));
+    }
+
+    private static Context createContext() {
+        Context context = Mockito.mock(Context.class);
+        TelephonyManager telephonyManager = Mockito.mock(TelephonyManager.class);
+        Resources resources = Mockito.mock(Resources.class);
+        Mockito.when(context.getSystemServiceName(TelephonyManager.class))
+                .thenReturn(Context.TELEPHONY_SERVICE);
+        Mockito.when(context.getSystemService(Mockito.anyString())).thenReturn(telephonyManager);
+        Mockito.when(context.getResources()).thenReturn(resources);
+        Mockito.when(resources.getStringArray(
+                com.android.internal.R.array.config_vvmSmsFilterRegexes))
+                .thenReturn(CARRIER_REGEXES);
+        Mockito.when(telephonyManager.getSimOperator(Mockito.anyInt())).thenReturn(MCC_MNC);
+
+        VisualVoicemailSmsFilterSettings settings = new VisualVoicemailSmsFilterSettings.Builder()
+                .setClientPrefix("//VVM")
+                .build();
+        Mockito.when(telephonyManager
+                .getVisualVoicemailSmsFilterSettings(Mockito.anyString(), Mockito.anyInt()))
+                .thenReturn(settings);
+        return context;
+    }
+
+    /**
+     * @return a 3GPP SMS-DELIVER PDU with a 7-bit encoded body of at most 160 characters.
+     */
+    private static byte[] createDeliverPdu(String body) throws Exception {
+        ByteArrayOutputStream pdu = new ByteArrayOutputStream();
+        pdu.write(0x00); // no SMSC address
+        pdu.write(0x04); // SMS-DELIVER, no more messages to send
+        pdu.write(0x0B); // originating address of 11 digits
+        pdu.write(0x91); // international number
+        pdu.write(new byte[] {0x51, 0x55, 0x21, 0x43, 0x65, (byte) 0xF7});
+        pdu.write(0x00); // protocol identifier
+        pdu.write(0x00); // GSM 7-bit default alphabet
+        pdu.write(new byte[] {0x61, 0x10, 0x02, 0x21, 0x43, 0x65, 0x00}); // timestamp
+        pdu.write(GsmAlphabet.stringToGsm7BitPacked(body));
+        return pdu.toByteArray();
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String text) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(text).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -24,6 +24,7 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.isNull;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -145,4 +146,28 @@ public class WapPushOverSmsTest extends TelephonyTest {
                 any(BroadcastReceiver.class),
                 any(UserHandle.class));
     }
-}
\ No newline at end of file
+
+    @Test @SmallTest
+    public void testContentParametersDecodedForDispatchOnly() {
+        doReturn(true).when(mWspTypeDecoder).decodeUintvarInteger(anyInt());
+        doReturn(true).when(mWspTypeDecoder).decodeContentType(anyInt());
+        doReturn((long) 2).when(mWspTypeDecoder).getValue32();
+        doReturn(2).when(mWspTypeDecoder).getDecodedDataLength();
+        doReturn(WspTypeDecoder.CONTENT_TYPE_B_PUSH_CO).when(mWspTypeDecoder).getValueString();
+        byte[] pdu = new byte[]{
+                (byte) 0xFF,
+                (byte) 0x06,
+                (byte) 0xFF,
+                (byte) 0xFF,
+                (byte) 0xFF,
+                (byte) 0xFF,
+                (byte) 0xFF
+        };
+
+        assertEquals(false, mWapPushOverSmsUT.isWapPushForMms(pdu, mInboundSmsHandler));
+        verify(mWspTypeDecoder, never()).getContentParameters();
+
+        mWapPushOverSmsUT.dispatchWapPdu(pdu, null, mInboundSmsHandler);
+        verify(mWspTypeDecoder, times(1)).getContentParameters();
+    }
+}
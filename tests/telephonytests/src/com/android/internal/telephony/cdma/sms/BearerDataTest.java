@@ -28,8 +28,19 @@
  */
 package com.android.internal.telephony.cdma.sms;
 
+import android.os.SystemClock;
+import android.telephony.Rlog;
 import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.internal.telephony.SmsHeader;
+import com.android.internal.util.HexDump;
+
 import java.lang.reflect.*;
+import java.util.Arrays;
+import java.util.Random;
 
 import static org.mockito.Mockito.mock;
 
@@ -37,6 +48,25 @@ import static org.mockito.Mockito.mock;
  * Test cases for BearerData testDecode7bitAscii
  */
 public class BearerDataTest extends AndroidTestCase {
+    private static final String TAG = "BearerDataTest";
+
+    // Encoded bearer data from CdmaSmsTest, in encodings that encode() also supports
+    private static final String[] PDUS = {
+        "00031040900112488ea794e074d69e1b7392c270326cde9e98",
+        "0003100160010610262d5ab500",
+        "00031001d00109104539b4d052ebb3d0",
+        "0003200010010410168d2002010503060812011101590501c706069706180000000701c108"
+                + "01c00901800a01e00b01030c01c00d01070e05039acc13880f018011020566",
+    };
+
+    private static final String ASCII_CHARS = "abcdefghijklmnopqrstuvwxyz ABCXYZ0123456789.,?!\n";
+
+    private static final int[] TEXT_ENCODINGS = {
+        UserData.ENCODING_7BIT_ASCII,
+        UserData.ENCODING_GSM_7BIT_ALPHABET,
+        UserData.ENCODING_UNICODE_16,
+    };
+
     public void testDecode7bitAscii() throws Exception {
         Method dm = BearerData.class.getDeclaredMethod("decode7bitAscii",
                 byte[].class, int.class, int.class);
@@ -52,4 +82,124 @@ public class BearerDataTest extends AndroidTestCase {
         dm.invoke(null, testbyte, offset, numFields);
         assertTrue(true);
     }
+
+    /**
+     * Encoding what was decoded from a vector, then decoding and encoding that again, gives the
+     * same bytes.
+     */
+    @SmallTest
+    public void testRoundTripVectors() throws Exception {
+        for (String pdu : PDUS) {
+            BearerData bearerData = BearerData.decode(HexDump.hexStringToByteArray(pdu));
+            byte[] encoded = BearerData.encode(bearerData);
+            BearerData revBearerData = BearerData.decode(encoded);
+            assertEquals(pdu, bearerData.messageId, revBearerData.messageId);
+            assertEquals(pdu, bearerData.userData.payloadStr, revBearerData.userData.payloadStr);
+            assertTrue(pdu, Arrays.equals(encoded, BearerData.encode(revBearerData)));
+        }
+    }
+
+    @MediumTest
+    public void testRoundTripRandom() throws Exception {
+        Random random = new Random(0xbea7);
+        for (int run = 0; run < 500; run++) {
+            BearerData bearerData = randomBearerData(random);
+            byte[] encoded = BearerData.encode(bearerData);
+            BearerData revBearerData = BearerData.decode(encoded);
+            String what = bearerData.toString();
+            assertEquals(what, bearerData.messageType, revBearerData.messageType);
+            assertEquals(what, bearerData.messageId, revBearerData.messageId);
+            assertEquals(what, bearerData.hasUserDataHeader, revBearerData.hasUserDataHeader);
+            assertEquals(what, bearerData.userData.msgEncoding,
+                    revBearerData.userData.msgEncoding);
+            assertEquals(what, bearerData.userData.payloadStr,
+                    revBearerData.userData.payloadStr);
+            if (bearerData.hasUserDataHeader) {
+                assertEquals(what, bearerData.userData.userDataHeader.concatRef.seqNumber,
+                        revBearerData.userData.userDataHeader.concatRef.seqNumber);
+            }
+            assertEquals(what, bearerData.numberOfMessages, revBearerData.numberOfMessages);
+            assertEquals(what, bearerData.priorityIndicatorSet,
+                    revBearerData.priorityIndicatorSet);
+            assertEquals(what, bearerData.priority, revBearerData.priority);
+            assertEquals(what, bearerData.userAckReq, revBearerData.userAckReq);
+            assertEquals(what, bearerData.deliveryAckReq, revBearerData.deliveryAckReq);
+            if (bearerData.callbackNumber != null) {
+                assertEquals(what, bearerData.callbackNumber.address,
+                        revBearerData.callbackNumber.address);
+            }
+            assertTrue(what, Arrays.equals(encoded, BearerData.encode(revBearerData)));
+        }
+    }
+
+    /**
+     * Times encoding and decoding the parts of a long message.
+     */
+    @LargeTest
+    public void testEncodeDecodeTime() throws Exception {
+        Random random = new Random(0x7173);
+        BearerData[] parts = new BearerData[50];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = randomBearerData(random);
+        }
+        int iterations = 200;
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < iterations; i++) {
+            for (BearerData bearerData : parts) {
+                assertNotNull(BearerData.decode(BearerData.encode(bearerData)));
+            }
+        }
+        long elapsedMs = SystemClock.elapsedRealtime() - start;
+        Rlog.d(TAG, "Encoded and decoded " + (iterations * parts.length) + " parts in "
+                + elapsedMs + " ms");
+    }
+
+    private static BearerData randomBearerData(Random random) {
+        BearerData bearerData = new BearerData();
+        bearerData.messageType = random.nextBoolean()
+                ? BearerData.MESSAGE_TYPE_SUBMIT : BearerData.MESSAGE_TYPE_DELIVER;
+        bearerData.messageId = random.nextInt(0x10000);
+
+        UserData userData = new UserData();
+        userData.msgEncoding = TEXT_ENCODINGS[random.nextInt(TEXT_ENCODINGS.length)];
+        userData.msgEncodingSet = true;
+        StringBuilder text = new StringBuilder();
+        for (int i = random.nextInt(userData.msgEncoding == UserData.ENCODING_UNICODE_16
+                ? 60 : 140); i > 0; i--) {
+            text.append(userData.msgEncoding == UserData.ENCODING_UNICODE_16
+                    && random.nextInt(4) == 0 ? (char) (0x4e00 + random.nextInt(0x100))
+                    : ASCII_CHARS.charAt(random.nextInt(ASCII_CHARS.length())));
+        }
+        userData.payloadStr = text.toString();
+        if (random.nextBoolean()) {
+            SmsHeader.ConcatRef concatRef = new SmsHeader.ConcatRef();
+            concatRef.refNumber = random.nextInt(0x100);
+            concatRef.msgCount = 3;
+            concatRef.seqNumber = 1 + random.nextInt(3);
+            concatRef.isEightBits = true;
+            userData.userDataHeader = new SmsHeader();
+            userData.userDataHeader.concatRef = concatRef;
+        }
+        bearerData.userData = userData;
+        bearerData.hasUserDataHeader = userData.userDataHeader != null;
+
+        if (random.nextBoolean()) {
+            // Encoded as is but decoded as BCD, so keep to one digit
+            bearerData.numberOfMessages = 1 + random.nextInt(9);
+        }
+        if (random.nextBoolean()) {
+            bearerData.priorityIndicatorSet = true;
+            bearerData.priority = random.nextInt(4);
+        }
+        bearerData.userAckReq = random.nextBoolean();
+        bearerData.deliveryAckReq = random.nextBoolean();
+        if (random.nextBoolean()) {
+            CdmaSmsAddress addr = new CdmaSmsAddress();
+            addr.digitMode = CdmaSmsAddress.DIGIT_MODE_4BIT_DTMF;
+            addr.address = Integer.toString(1000000 + random.nextInt(9000000));
+            addr.numberOfDigits = addr.address.length();
+            bearerData.callbackNumber = addr;
+        }
+        return bearerData;
+    }
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.cdma.sms;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.internal.util.BitwiseInputStream;
+import com.android.internal.util.BitwiseOutputStream;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares {@link BitWriter} and {@link BitReader} with BitwiseOutputStream and
+ * BitwiseInputStream.
+ */
+public class BitReaderWriterTest extends AndroidTestCase {
+
+    @SmallTest
+    public void testWrite() throws Exception {
+        BitWriter writer = new BitWriter(1);
+        writer.write(4, 0xa);
+        writer.write(8, 0x1ff);
+        writer.skip(3);
+        writer.write(1, 1);
+        writer.writeByteArray(12, new byte[] {(byte) 0xab, (byte) 0xcd});
+        writer.write(20, 0x12345);
+        assertEquals("aff1abc12345", toHex(writer.toByteArray()));
+
+        try {
+            writer.write(33, 0);
+            fail();
+        } catch (BitWriter.AccessException ex) {
+            // expected
+        }
+    }
+
+    @SmallTest
+    public void testRead() throws Exception {
+        BitReader reader = new BitReader(
+                new byte[] {(byte) 0xaf, (byte) 0xf1, (byte) 0xab, (byte) 0xc1});
+        assertEquals(32, reader.available());
+        assertEquals(0xa, reader.read(4));
+        assertEquals(0xff, reader.read(8));
+        reader.skip(3);
+        assertEquals(1, reader.read(1));
+        assertTrue(Arrays.equals(new byte[] {(byte) 0xab, (byte) 0xc0},
+                reader.readByteArray(12)));
+        assertEquals(4, reader.available());
+
+        try {
+            reader.read(5);
+            fail();
+        } catch (BitReader.AccessException ex) {
+            // expected
+        }
+        try {
+            reader.readByteArray(-1);
+            fail();
+        } catch (BitReader.AccessException ex) {
+            // expected
+        }
+        assertEquals(1, reader.read(4));
+    }
+
+    @MediumTest
+    public void testMatchesBitwiseOutputStream() throws Exception {
+        Random random = new Random(0xb175);
+        for (int run = 0; run < 5000; run++) {
+            int startingLength = random.nextInt(20);
+            BitwiseOutputStream expected = new BitwiseOutputStream(startingLength + 1);
+            BitWriter actual = new BitWriter(startingLength);
+            for (int op = random.nextInt(40); op > 0; op--) {
+                int kind = random.nextInt(10);
+                if (kind < 6) {
+                    int bits = 1 + random.nextInt(8);
+                    int data = random.nextInt();
+                    expected.write(bits, data);
+                    actual.write(bits, data);
+                } else if (kind < 8) {
+                    byte[] arr = new byte[random.nextInt(6)];
+                    random.nextBytes(arr);
+                    int bits = random.nextInt(arr.length * 8 + 1);
+                    expected.writeByteArray(bits, arr);
+                    actual.writeByteArray(bits, arr);
+                } else {
+                    int bits = random.nextInt(20);
+                    expected.skip(bits);
+                    actual.skip(bits);
+                }
+            }
+            assertEquals(toHex(expected.toByteArray()), toHex(actual.toByteArray()));
+        }
+    }
+
+    @MediumTest
+    public void testMatchesBitwiseInputStream() throws Exception {
+        Random random = new Random(0xb176);
+        for (int run = 0; run < 5000; run++) {
+            byte[] data = new byte[random.nextInt(12)];
+            random.nextBytes(data);
+            BitwiseInputStream expected = new BitwiseInputStream(data);
+            BitReader actual = new BitReader(data);
+            while (true) {
+                int kind = random.nextInt(10);
+                int bits;
+                if (kind < 6) {
+                    bits = 1 + random.nextInt(8);
+                } else if (kind < 8) {
+                    bits = random.nextInt(30);
+                } else {
+                    bits = random.nextInt(20);
+                }
+                if (bits > expected.available()) {
+                    // Both refuse, stop as BearerData does
+                    assertReadFails(actual, kind, bits);
+                    break;
+                }
+                if (kind < 6) {
+                    assertEquals(expected.read(bits), actual.read(bits));
+                } else if (kind < 8) {
+                    assertEquals(toHex(expected.readByteArray(bits)),
+                            toHex(actual.readByteArray(bits)));
+                } else {
+                    expected.skip(bits);
+                    actual.skip(bits);
+                }
+                assertEquals(expected.available(), actual.available());
+            }
+        }
+    }
+
+    @SmallTest
+    public void testWideFields() throws Exception {
+        Random random = new Random(0xb177);
+        for (int run = 0; run < 1000; run++) {
+            int skip = random.nextInt(8);
+            int bits = 1 + random.nextInt(32);
+            int data = random.nextInt() & (-1 >>> (32 - bits));
+            BitWriter writer = new BitWriter(4);
+            writer.skip(skip);
+            writer.write(bits, data);
+            BitReader reader = new BitReader(writer.toByteArray());
+            reader.skip(skip);
+            assertEquals(data, reader.read(bits));
+        }
+    }
+
+    private static void assertReadFails(BitReader reader, int kind, int bits) {
+        try {
+            if (kind < 6) {
+                reader.read(bits);
+            } else if (kind < 8) {
+                reader.readByteArray(bits);
+            } else {
+                reader.skip(bits);
+            }
+            fail();
+        } catch (BitReader.AccessException ex) {
+            // expected
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+}
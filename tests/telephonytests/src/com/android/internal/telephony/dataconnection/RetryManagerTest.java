@@ -18,6 +18,7 @@ package com.android.internal.telephony.dataconnection;
 
 import android.os.PersistableBundle;
 import android.telephony.CarrierConfigManager;
+import android.test.suitebuilder.annotation.MediumTest;
 import android.test.suitebuilder.annotation.SmallTest;
 
 import com.android.internal.telephony.RetryManager;
@@ -238,6 +239,38 @@ public class RetryManagerTest extends TelephonyTest {
         assertEquals(RetryManager.NO_RETRY, delay);
     }
 
+    /**
+     * Test that an invalid configuration keeps the values parsed before the error.
+     */
+    @Test
+    @SmallTest
+    public void testRetryManagerInvalidConfig() throws Exception {
+
+        mBundle.putStringArray(CarrierConfigManager.KEY_CARRIER_DATA_CALL_RETRY_CONFIG_STRINGS,
+                new String[]{"supl:max_retries=2,2000,3000,bogus=1,4000"});
+
+        ArrayList<ApnSetting> waitingApns = new ArrayList<ApnSetting>();
+        waitingApns.add(new ApnSetting(mApn1));
+
+        RetryManager rm = new RetryManager(mPhone, "supl");
+        rm.setWaitingApns(waitingApns);
+
+        ApnSetting nextApn = rm.getNextApnSetting();
+        assertTrue(nextApn.equals(mApn1));
+        long delay = rm.getDelayForNextApn(false);
+        assertEquals(2000, delay);
+
+        nextApn = rm.getNextApnSetting();
+        assertTrue(nextApn.equals(mApn1));
+        delay = rm.getDelayForNextApn(false);
+        assertEquals(3000, delay);
+
+        nextApn = rm.getNextApnSetting();
+        assertTrue(nextApn.equals(mApn1));
+        delay = rm.getDelayForNextApn(false);
+        assertEquals(RetryManager.NO_RETRY, delay);
+    }
+
     /**
      * Test the basic retry scenario where two waiting APNs with one retry configured.
      */
@@ -1028,4 +1061,62 @@ public class RetryManagerTest extends TelephonyTest {
         delay = rm.getDelayForNextApn(false);
         assertEquals(4000, delay);
     }
+
+    /**
+     * Simulate many failure and retry cycles on several APN types sharing the same carrier
+     * config, re-applying the waiting APN list (and hence the retry configuration) periodically
+     * as happens when coverage is flapping.
+     */
+    @Test
+    @MediumTest
+    public void testRetryManagerFailureRetrySimulation() throws Exception {
+
+        mBundle.putStringArray(CarrierConfigManager.KEY_CARRIER_DATA_CALL_RETRY_CONFIG_STRINGS,
+                new String[]{"default:max_retries=infinite,1000,2000,3000",
+                        "others:max_retries=infinite,4000,5000"});
+
+        final int cycles = 5000;
+        final long[] defaultDelays = new long[]{1000, 2000, 3000};
+        final long[] othersDelays = new long[]{4000, 5000};
+
+        RetryManager defaultRm = new RetryManager(mPhone, "default");
+        RetryManager mmsRm = new RetryManager(mPhone, "mms");
+        RetryManager suplRm = new RetryManager(mPhone, "supl");
+
+        int round = 0;
+        for (int cycle = 0; cycle < cycles; cycle++) {
+            if (cycle % 100 == 0) {
+                // Coverage came back and went away again; start over with a fresh APN list.
+                round = 0;
+                ArrayList<ApnSetting> defaultApns = new ArrayList<ApnSetting>();
+                defaultApns.add(new ApnSetting(mApn1));
+                defaultApns.add(new ApnSetting(mApn2));
+                defaultRm.setWaitingApns(defaultApns);
+
+                ArrayList<ApnSetting> mmsApns = new ArrayList<ApnSetting>();
+                mmsApns.add(new ApnSetting(mApn3));
+                mmsRm.setWaitingApns(mmsApns);
+
+                ArrayList<ApnSetting> suplApns = new ArrayList<ApnSetting>();
+                suplApns.add(new ApnSetting(mApn3));
+                suplRm.setWaitingApns(suplApns);
+            }
+
+            // Two APNs for default: first the inter-APN delay, then the round delay.
+            assertTrue(defaultRm.getNextApnSetting().equals(mApn1));
+            assertEquals(20000, defaultRm.getDelayForNextApn(false));
+            assertTrue(defaultRm.getNextApnSetting().equals(mApn2));
+            assertEquals(defaultDelays[Math.min(round, defaultDelays.length - 1)],
+                    defaultRm.getDelayForNextApn(false));
+
+            // One APN for mms and supl, both falling back to the "others" configuration.
+            assertTrue(mmsRm.getNextApnSetting().equals(mApn3));
+            assertEquals(othersDelays[Math.min(round, othersDelays.length - 1)],
+                    mmsRm.getDelayForNextApn(false));
+            assertTrue(suplRm.getNextApnSetting().equals(mApn3));
+            assertEquals(3000, suplRm.getDelayForNextApn(true));
+
+            round++;
+        }
+    }
 }
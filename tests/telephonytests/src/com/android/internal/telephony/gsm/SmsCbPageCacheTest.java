@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.gsm;
+
+import android.telephony.SmsCbLocation;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Test cases for SmsCbPageCache.
+ */
+public class SmsCbPageCacheTest extends AndroidTestCase {
+
+    private static final SmsCbLocation LOCATION = new SmsCbLocation("310260", 1234, 5678);
+    private static final SmsCbLocation OTHER_LOCATION = new SmsCbLocation("310260", 4321, 5678);
+
+    private static final int PDU_LENGTH_GSM = 88;
+
+    private static final long EXPIRY_MS = 1000;
+
+    /** GSM format page: serial number, message identifier, DCS and page parameter. */
+    private static byte[] makePdu(int serialNumber, int messageIdentifier, int page,
+            int pageCount) {
+        byte[] pdu = new byte[PDU_LENGTH_GSM];
+        pdu[0] = (byte) (serialNumber >> 8);
+        pdu[1] = (byte) serialNumber;
+        pdu[2] = (byte) (messageIdentifier >> 8);
+        pdu[3] = (byte) messageIdentifier;
+        pdu[4] = 0x0f;
+        pdu[5] = (byte) ((page << 4) | pageCount);
+        return pdu;
+    }
+
+    private static byte[][] addPage(SmsCbPageCache cache, SmsCbLocation location, byte[] pdu,
+            long now) {
+        return cache.addPage(new SmsCbHeader(pdu), location, pdu, now);
+    }
+
+    @SmallTest
+    public void testAssemblePages() {
+        SmsCbPageCache cache = new SmsCbPageCache(4, EXPIRY_MS);
+        byte[] page1 = makePdu(0x3001, 0x32, 1, 3);
+        byte[] page2 = makePdu(0x3001, 0x32, 2, 3);
+        byte[] page3 = makePdu(0x3001, 0x32, 3, 3);
+
+        assertNull(addPage(cache, LOCATION, page3, 0));
+        assertNull(addPage(cache, LOCATION, page1, 10));
+        assertNull(addPage(cache, LOCATION, page1, 20));
+        assertEquals(1, cache.size());
+
+        byte[][] pdus = addPage(cache, LOCATION, page2, 30);
+        assertNotNull(pdus);
+        assertSame(page1, pdus[0]);
+        assertSame(page2, pdus[1]);
+        assertSame(page3, pdus[2]);
+        assertEquals(0, cache.size());
+        assertTrue(dump(cache).contains("completed=1 duplicatePages=1"));
+    }
+
+    @SmallTest
+    public void testSeparateMessages() {
+        SmsCbPageCache cache = new SmsCbPageCache(4, EXPIRY_MS);
+
+        // Same serial number but a different message identifier or location
+        assertNull(addPage(cache, LOCATION, makePdu(0x3001, 0x32, 1, 2), 0));
+        assertNull(addPage(cache, LOCATION, makePdu(0x3001, 0x33, 2, 2), 0));
+        assertNull(addPage(cache, OTHER_LOCATION, makePdu(0x3001, 0x32, 2, 2), 0));
+        assertEquals(3, cache.size());
+
+        assertNotNull(addPage(cache, LOCATION, makePdu(0x3001, 0x32, 2, 2), 0));
+        assertEquals(2, cache.size());
+    }
+
+    @SmallTest
+    public void testChangedPageCount() {
+        SmsCbPageCache cache = new SmsCbPageCache(4, EXPIRY_MS);
+        assertNull(addPage(cache, LOCATION, makePdu(0x3001, 0x32, 1, 3), 0));
+        assertNull(addPage(cache, LOCATION, makePdu(0x3001, 0x32, 1, 2), 0));
+        assertNotNull(addPage(cache, LOCATION, makePdu(0x3001, 0x32, 2, 2), 0));
+        assertEquals(0, cache.size());
+    }
+
+    @SmallTest
+    public void testExpiry() {
+        SmsCbPageCache cache = new SmsCbPageCache(4, EXPIRY_MS);
+        assertNull(addPage(cache, LOCATION, makePdu(0x3001, 0x32, 1, 2), 0));
+        assertNull(addPage(cache, LOCATION, makePdu(0x3002, 0x32, 1, 2), 500));
+
+        // The first message expired before its second page arrived
+        assertNull(addPage(cache, LOCATION, makePdu(0x3001, 0x32, 2, 2), EXPIRY_MS));
+        assertEquals(2, cache.size());
+        assertNotNull(addPage(cache, LOCATION, makePdu(0x3002, 0x32, 2, 2), EXPIRY_MS));
+        assertTrue(dump(cache).contains("expired=1"));
+    }
+
+    @SmallTest
+    public void testEvictOldest() {
+        SmsCbPageCache cache = new SmsCbPageCache(2, EXPIRY_MS);
+        assertNull(addPage(cache, LOCATION, makePdu(0x3001, 0x32, 1, 2), 0));
+        assertNull(addPage(cache, LOCATION, makePdu(0x3002, 0x32, 1, 2), 0));
+        assertNull(addPage(cache, LOCATION, makePdu(0x3003, 0x32, 1, 2), 0));
+        assertEquals(2, cache.size());
+
+        assertNull(addPage(cache, LOCATION, makePdu(0x3001, 0x32, 2, 2), 0));
+        assertNotNull(addPage(cache, LOCATION, makePdu(0x3003, 0x32, 2, 2), 0));
+        assertTrue(dump(cache).contains("evicted=2"));
+    }
+
+    @SmallTest
+    public void testRemoveOutOfArea() {
+        SmsCbPageCache cache = new SmsCbPageCache(4, EXPIRY_MS);
+        SmsCbLocation plmnWide = new SmsCbLocation("310260");
+        cache.removeOutOfArea("310260", 1234, 5678);
+        assertNull(addPage(cache, LOCATION, makePdu(0x3001, 0x32, 1, 2), 0));
+        assertNull(addPage(cache, plmnWide, makePdu(0x3002, 0x32, 1, 2), 0));
+
+        cache.removeOutOfArea("310260", 1234, 5678);
+        assertEquals(2, cache.size());
+        cache.removeOutOfArea("310260", 4321, 5678);
+        assertEquals(1, cache.size());
+        assertNotNull(addPage(cache, plmnWide, makePdu(0x3002, 0x32, 2, 2), 0));
+        assertTrue(dump(cache).contains("outOfArea=1"));
+    }
+
+    private static String dump(SmsCbPageCache cache) {
+        StringWriter sw = new StringWriter();
+        cache.dump(new PrintWriter(sw));
+        return sw.toString();
+    }
+}
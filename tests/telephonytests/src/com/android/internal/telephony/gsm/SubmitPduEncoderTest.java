@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.gsm;
+
+import android.os.SystemClock;
+import android.telephony.PhoneNumberUtils;
+import android.telephony.Rlog;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.internal.telephony.EncodeException;
+import com.android.internal.telephony.GsmAlphabet;
+import com.android.internal.telephony.SmsConstants;
+import com.android.internal.telephony.uicc.IccUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares {@link SubmitPduEncoder} with the way SmsMessage.getSubmitPdu encoded PDUs through
+ * GsmAlphabet and a ByteArrayOutputStream.
+ */
+public class SubmitPduEncoderTest extends AndroidTestCase {
+    private static final String TAG = "SubmitPduEncoderTest";
+
+    private static final String ASCII_CHARS = "abcdefghijklmnopqrstuvwxyz ABCXYZ0123456789.,?!\n";
+
+    private static final String SPECIAL_CHARS =
+            "{}[]~\\|^\u20ac"  // GSM default extension table
+            + "\u015e\u015f\u011e\u011f\u0130\u0131\u00e7"  // Turkish
+            + "\u00c1\u00e1\u00cd\u00ed\u00d3\u00f3\u00fa"  // Spanish
+            + "\u00ea\u00d4\u00f4\u00c3\u00e3\u00d5\u00f5"  // Portuguese
+            + "\u4e2d\u6587\u0416"  // no 7-bit encoding
+            + "\ud83d\ude00\ud83d"  // surrogate pair and a lone surrogate
+            + "\u001b";  // escape
+
+    // none, Turkish, Spanish, Portuguese
+    private static final int[] LANGUAGE_TABLES = {0, 1, 2, 3};
+
+    private static final byte[] DA_BYTES =
+            PhoneNumberUtils.networkPortionToCalledPartyBCD("+15551234567");
+
+    @SmallTest
+    public void testEncode7bit() {
+        // TP-MTI, TP-MR, TP-DA, TP-PID, TP-DCS, TP-UDL and the text with two escaped septets
+        byte[] pdu = SubmitPduEncoder.encodeText((byte) 0x01, DA_BYTES, "Hi [there]", null,
+                SmsConstants.ENCODING_7BIT, 0, 0, -1);
+        assertEquals("01000b915155214365f7" + "0000" + "0c" + "c83468c3a3a3cbf2f2c607",
+                IccUtils.bytesToHexString(pdu));
+
+        // The text starts on the septet boundary after the header
+        byte[] header = {0x00, 0x03, 0x2a, 0x02, 0x01};
+        pdu = SubmitPduEncoder.encodeText((byte) 0x41, DA_BYTES, "abc", header,
+                SmsConstants.ENCODING_7BIT, 0, 0, -1);
+        assertEquals("41000b915155214365f7" + "0000" + "0a" + "0500032a0201" + "c2e231",
+                IccUtils.bytesToHexString(pdu));
+    }
+
+    @SmallTest
+    public void testEncodeUcs2() {
+        byte[] header = {0x00, 0x03, 0x2a, 0x02, 0x01};
+        byte[] pdu = SubmitPduEncoder.encodeText((byte) 0x51, DA_BYTES, "\u4e2d\u6587",
+                header, SmsConstants.ENCODING_16BIT, 0, 0, 0xa7);
+        assertEquals("51000b915155214365f7" + "0008a7" + "0a" + "0500032a0201" + "4e2d6587",
+                IccUtils.bytesToHexString(pdu));
+    }
+
+    @SmallTest
+    public void testFallBackToUcs2() {
+        byte[] pdu = SubmitPduEncoder.encodeText((byte) 0x01, DA_BYTES, "a\u4e2d", null,
+                SmsConstants.ENCODING_7BIT, 0, 0, -1);
+        assertEquals("01000b915155214365f7" + "0008" + "04" + "00614e2d",
+                IccUtils.bytesToHexString(pdu));
+    }
+
+    @SmallTest
+    public void testTooLong() {
+        char[] text = new char[161];
+        Arrays.fill(text, 'a');
+        assertNull(SubmitPduEncoder.encodeText((byte) 0x01, DA_BYTES, new String(text), null,
+                SmsConstants.ENCODING_7BIT, 0, 0, -1));
+        assertNotNull(SubmitPduEncoder.encodeText((byte) 0x01, DA_BYTES,
+                new String(text, 0, 160), null, SmsConstants.ENCODING_7BIT, 0, 0, -1));
+        assertNull(SubmitPduEncoder.encodeText((byte) 0x01, DA_BYTES, new String(text, 0, 71),
+                null, SmsConstants.ENCODING_16BIT, 0, 0, -1));
+    }
+
+    @SmallTest
+    public void testEncodeData() {
+        byte[] header = {0x05, 0x04, 0x0b, (byte) 0x84, 0x00, 0x00};
+        byte[] pdu = SubmitPduEncoder.encodeData((byte) 0x61, DA_BYTES, header,
+                new byte[] {1, 2, 3});
+        assertEquals("61000b915155214365f7" + "0004" + "0a" + "06" + "05040b840000" + "010203",
+                IccUtils.bytesToHexString(pdu));
+    }
+
+    @MediumTest
+    public void testMatchesLegacyEncoding() throws Exception {
+        Random random = new Random(0x5d0e);
+        for (int run = 0; run < 3000; run++) {
+            String text = randomText(random, random.nextInt(run % 3 == 0 ? 300 : 170),
+                    1 + random.nextInt(40));
+            byte[] header = null;
+            if (random.nextInt(3) != 0) {
+                header = new byte[random.nextInt(12)];
+                random.nextBytes(header);
+            }
+            int encoding = random.nextInt(4) == 0
+                    ? SmsConstants.ENCODING_16BIT : SmsConstants.ENCODING_7BIT;
+            int languageTable = LANGUAGE_TABLES[random.nextInt(LANGUAGE_TABLES.length)];
+            int languageShiftTable = LANGUAGE_TABLES[random.nextInt(LANGUAGE_TABLES.length)];
+            int relativeValidityPeriod = random.nextBoolean() ? -1 : random.nextInt(256);
+            byte mtiByte = (byte) random.nextInt(256);
+
+            byte[] expected = encodeLegacy(mtiByte, DA_BYTES, text, header, encoding,
+                    languageTable, languageShiftTable, relativeValidityPeriod);
+            byte[] actual = SubmitPduEncoder.encodeText(mtiByte, DA_BYTES, text, header,
+                    encoding, languageTable, languageShiftTable, relativeValidityPeriod);
+            assertTrue(text, Arrays.equals(expected, actual));
+        }
+    }
+
+    /**
+     * Times encoding a full 7-bit part and a UCS-2 part, both with a concatenation header.
+     */
+    @LargeTest
+    public void testEncodeTime() throws Exception {
+        String text7bit = randomText(new Random(0x7b17), 150, 30).replaceAll("[^ -~]", "e");
+        String textUcs2 = "\u4e2d" + text7bit.substring(0, 60);
+        byte[] header = {0x00, 0x03, 0x2a, 0x02, 0x01};
+        int iterations = 20000;
+
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < iterations; i++) {
+            encodeLegacy((byte) 0x41, DA_BYTES, text7bit, header, SmsConstants.ENCODING_7BIT,
+                    0, 0, -1);
+            encodeLegacy((byte) 0x41, DA_BYTES, textUcs2, header, SmsConstants.ENCODING_16BIT,
+                    0, 0, -1);
+        }
+        long legacyMs = SystemClock.elapsedRealtime() - start;
+
+        start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < iterations; i++) {
+            SubmitPduEncoder.encodeText((byte) 0x41, DA_BYTES, text7bit, header,
+                    SmsConstants.ENCODING_7BIT, 0, 0, -1);
+            SubmitPduEncoder.encodeText((byte) 0x41, DA_BYTES, textUcs2, header,
+                    SmsConstants.ENCODING_16BIT, 0, 0, -1);
+        }
+        long encoderMs = SystemClock.elapsedRealtime() - start;
+
+        Rlog.d(TAG, "Encoding " + iterations + " pairs of parts: legacy " + legacyMs
+                + " ms, encoder " + encoderMs + " ms");
+        assertTrue(encoderMs <= legacyMs);
+    }
+
+    private static String randomText(Random random, int length, int specialOdds) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            if (random.nextInt(specialOdds) == 0) {
+                text.append(SPECIAL_CHARS.charAt(random.nextInt(SPECIAL_CHARS.length())));
+            } else {
+                text.append(ASCII_CHARS.charAt(random.nextInt(ASCII_CHARS.length())));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * SmsMessage.getSubmitPdu as it was before SubmitPduEncoder, from the first octet on.
+     */
+    private static byte[] encodeLegacy(byte mtiByte, byte[] daBytes, String message,
+            byte[] header, int encoding, int languageTable, int languageShiftTable,
+            int relativeValidityPeriod) throws Exception {
+        ByteArrayOutputStream bo = new ByteArrayOutputStream(
+                SmsConstants.MAX_USER_DATA_BYTES + 40);
+        bo.write(mtiByte);
+        bo.write(0);
+        bo.write((daBytes.length - 1) * 2
+                - ((daBytes[daBytes.length - 1] & 0xf0) == 0xf0 ? 1 : 0));
+        bo.write(daBytes, 0, daBytes.length);
+        bo.write(0);
+
+        byte[] userData;
+        try {
+            if (encoding == SmsConstants.ENCODING_7BIT) {
+                userData = GsmAlphabet.stringToGsm7BitPackedWithHeader(message, header,
+                        languageTable, languageShiftTable);
+            } else {
+                userData = encodeUcs2Legacy(message, header);
+            }
+        } catch (EncodeException ex) {
+            userData = encodeUcs2Legacy(message, header);
+            encoding = SmsConstants.ENCODING_16BIT;
+        }
+
+        if (encoding == SmsConstants.ENCODING_7BIT) {
+            if ((0xff & userData[0]) > SmsConstants.MAX_USER_DATA_SEPTETS) {
+                return null;
+            }
+            bo.write(0x00);
+        } else {
+            if ((0xff & userData[0]) > SmsConstants.MAX_USER_DATA_BYTES) {
+                return null;
+            }
+            bo.write(0x08);
+        }
+        if (relativeValidityPeriod >= 0) {
+            bo.write(relativeValidityPeriod);
+        }
+        bo.write(userData, 0, userData.length);
+        return bo.toByteArray();
+    }
+
+    private static byte[] encodeUcs2Legacy(String message, byte[] header) throws Exception {
+        byte[] userData;
+        byte[] textPart = message.getBytes("utf-16be");
+        if (header != null) {
+            userData = new byte[header.length + textPart.length + 1];
+            userData[0] = (byte) header.length;
+            System.arraycopy(header, 0, userData, 1, header.length);
+            System.arraycopy(textPart, 0, userData, header.length + 1, textPart.length);
+        } else {
+            userData = textPart;
+        }
+        byte[] ret = new byte[userData.length + 1];
+        ret[0] = (byte) (userData.length & 0xff);
+        System.arraycopy(userData, 0, ret, 1, userData.length);
+        return ret;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.imsphone;
+
+import static com.android.internal.telephony.imsphone.ConferenceEventPackageParserTest.conferenceInfo;
+import static com.android.internal.telephony.imsphone.ConferenceEventPackageParserTest.endpoint;
+import static com.android.internal.telephony.imsphone.ConferenceEventPackageParserTest.parse;
+import static com.android.internal.telephony.imsphone.ConferenceEventPackageParserTest.user;
+
+import android.os.SystemClock;
+import android.telephony.Rlog;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.android.internal.telephony.imsphone.ConferenceEventPackageParserTest.RecordingListener;
+
+/**
+ * Timing of ConferenceEventPackageParser, kept apart from its test cases.
+ */
+public class ConferenceEventPackageParserBenchmark extends AndroidTestCase {
+    private static final String TAG = "ConferenceEventPackageParserBenchmark";
+
+    /**
+     * Times applying partial notifications about one participant of a large conference, compared
+     * with applying the full state each time.
+     */
+    @LargeTest
+    public void testPartialNotificationTime() {
+        int participants = 64;
+        int notifications = 500;
+        StringBuilder users = new StringBuilder();
+        for (int i = 0; i < participants; i++) {
+            users.append(user("tel:+1650555" + (1000 + i), null, "User " + i,
+                    endpoint("sip:+1650555" + (1000 + i) + "@ims-test-provider.com", null,
+                            "connected")));
+        }
+        String fullState = conferenceInfo("full", 1, users.toString());
+
+        RecordingListener listener = new RecordingListener();
+        ConferenceEventPackageParser parser = new ConferenceEventPackageParser();
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < notifications; i++) {
+            parser.reset();
+            assertTrue(parse(parser, fullState, listener));
+        }
+        long fullMs = SystemClock.elapsedRealtime() - start;
+        assertEquals(participants * notifications, listener.mChanges.size());
+        listener.mChanges.clear();
+
+        start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < notifications; i++) {
+            int participant = i % participants;
+            String status = (i / participants) % 2 == 0 ? "on-hold" : "connected";
+            assertTrue(parse(parser, conferenceInfo("partial", i + 2,
+                    user("tel:+1650555" + (1000 + participant), "partial", null,
+                            endpoint("sip:+1650555" + (1000 + participant)
+                                    + "@ims-test-provider.com", "partial", status))),
+                    listener));
+        }
+        long partialMs = SystemClock.elapsedRealtime() - start;
+        assertEquals(notifications, listener.mChanges.size());
+        assertEquals(participants, parser.getParticipantCount());
+        Rlog.d(TAG, notifications + " notifications for " + participants + " participants: full "
+                + fullMs + " ms, partial " + partialMs + " ms");
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.imsphone;
+
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.ims.ImsConferenceState;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Test cases for ConferenceEventPackageParser.
+ */
+public class ConferenceEventPackageParserTest extends AndroidTestCase {
+    private static final String ALICE = "tel:+16505551212";
+    private static final String ALICE_SIP = "sip:+16505551212@ims-test-provider.com";
+    private static final String ALICE_SIP2 = "sip:+16505551212;gr=2@ims-test-provider.com";
+    private static final String BOB = "tel:+16505550000";
+    private static final String BOB_SIP = "sip:+16505550000@ims-test-provider.com";
+
+    /** Listener recording the changes as "+endpoint=status", "~endpoint=status", "-endpoint". */
+    static class RecordingListener implements ConferenceEventPackageParser.Listener {
+        final ArrayList<String> mChanges = new ArrayList<String>();
+
+        @Override
+        public void onParticipantAdded(Bundle participant) {
+            mChanges.add("+" + participant.getString(ImsConferenceState.ENDPOINT) + "="
+                    + participant.getString(ImsConferenceState.STATUS));
+        }
+
+        @Override
+        public void onParticipantUpdated(Bundle participant) {
+            mChanges.add("~" + participant.getString(ImsConferenceState.ENDPOINT) + "="
+                    + participant.getString(ImsConferenceState.STATUS));
+        }
+
+        @Override
+        public void onParticipantRemoved(Bundle participant) {
+            mChanges.add("-" + participant.getString(ImsConferenceState.ENDPOINT));
+        }
+
+        String changes() {
+            String changes = mChanges.toString();
+            mChanges.clear();
+            return changes;
+        }
+    }
+
+    static String conferenceInfo(String state, int version, String users) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<conference-info xmlns=\"urn:ietf:params:xml:ns:conference-info\""
+                + " entity=\"sips:conf@ims-test-provider.com\" state=\"" + state + "\""
+                + " version=\"" + version + "\">"
+                + "<conference-description><display-text>Test</display-text>"
+                + "</conference-description>"
+                + "<users>" + users + "</users>"
+                + "</conference-info>";
+    }
+
+    static String user(String entity, String state, String displayText,
+            String endpoints) {
+        return "<user entity=\"" + entity + "\""
+                + (state != null ? " state=\"" + state + "\"" : "") + ">"
+                + (displayText != null ? "<display-text>" + displayText + "</display-text>" : "")
+                + "<roles><entry>participant</entry></roles>"
+                + endpoints
+                + "</user>";
+    }
+
+    static String endpoint(String entity, String state, String status) {
+        return "<endpoint entity=\"" + entity + "\""
+                + (state != null ? " state=\"" + state + "\"" : "") + ">"
+                + (status != null ? "<status>" + status + "</status>" : "")
+                + "<media id=\"1\"><type>audio</type></media>"
+                + "</endpoint>";
+    }
+
+    static boolean parse(ConferenceEventPackageParser parser, String xml,
+            ConferenceEventPackageParser.Listener listener) {
+        return parser.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+                listener);
+    }
+
+    /** Conference with Alice on two devices and Bob. */
+    private static ConferenceEventPackageParser parseFullState(RecordingListener listener) {
+        ConferenceEventPackageParser parser = new ConferenceEventPackageParser();
+        assertTrue(parse(parser, conferenceInfo("full", 1,
+                user(ALICE, null, "Alice", endpoint(ALICE_SIP, null, "connected")
+                        + endpoint(ALICE_SIP2, null, "on-hold"))
+                + user(BOB, null, "Bob", endpoint(BOB_SIP, null, "alerting"))), listener));
+        return parser;
+    }
+
+    @SmallTest
+    public void testFullState() {
+        RecordingListener listener = new RecordingListener();
+        ConferenceEventPackageParser parser = parseFullState(listener);
+        assertEquals("[+" + ALICE_SIP + "=connected, +" + ALICE_SIP2 + "=on-hold, +" + BOB_SIP
+                + "=alerting]", listener.changes());
+        assertEquals(3, parser.getParticipantCount());
+
+        Bundle alice = parser.getConferenceState().mParticipants.get(ALICE_SIP2);
+        assertEquals(ALICE, alice.getString(ImsConferenceState.USER));
+        assertEquals("Alice", alice.getString(ImsConferenceState.DISPLAY_TEXT));
+        assertEquals(ALICE_SIP2, alice.getString(ImsConferenceState.ENDPOINT));
+        assertEquals(ImsConferenceState.STATUS_ON_HOLD,
+                alice.getString(ImsConferenceState.STATUS));
+
+        // A new full state removes the participants it does not list
+        assertTrue(parse(parser, conferenceInfo("full", 2,
+                user(ALICE, null, "Alice", endpoint(ALICE_SIP, null, "connected"))), listener));
+        assertEquals("[-" + ALICE_SIP2 + ", -" + BOB_SIP + "]", listener.changes());
+        assertEquals(1, parser.getParticipantCount());
+    }
+
+    @SmallTest
+    public void testPartialState() {
+        RecordingListener listener = new RecordingListener();
+        ConferenceEventPackageParser parser = parseFullState(listener);
+        listener.changes();
+
+        // Only the endpoint whose status changed is reported
+        assertTrue(parse(parser, conferenceInfo("partial", 2,
+                user(BOB, "partial", null, endpoint(BOB_SIP, "partial", "connected"))),
+                listener));
+        assertEquals("[~" + BOB_SIP + "=connected]", listener.changes());
+        assertTrue(parse(parser, conferenceInfo("partial", 3,
+                user(ALICE, "partial", null, endpoint(ALICE_SIP, "partial", "connected"))),
+                listener));
+        assertEquals("[]", listener.changes());
+
+        // New user, and an endpoint leaving
+        String carol = "sip:carol@ims-test-provider.com";
+        assertTrue(parse(parser, conferenceInfo("partial", 4,
+                user(ALICE, "partial", null, endpoint(ALICE_SIP2, "deleted", null))
+                + user("tel:+16505559999", "full", "Carol", endpoint(carol, null, "dialing-in"))),
+                listener));
+        assertEquals("[-" + ALICE_SIP2 + ", +" + carol + "=dialing-in]", listener.changes());
+        assertEquals(3, parser.getParticipantCount());
+        assertEquals("Bob", parser.getConferenceState().mParticipants.get(BOB_SIP)
+                .getString(ImsConferenceState.DISPLAY_TEXT));
+    }
+
+    @SmallTest
+    public void testPartialUserState() {
+        RecordingListener listener = new RecordingListener();
+        ConferenceEventPackageParser parser = parseFullState(listener);
+        listener.changes();
+
+        // A new display text applies to all endpoints of the user
+        assertTrue(parse(parser, conferenceInfo("partial", 2,
+                user(ALICE, "partial", "Alice Smith", "")), listener));
+        assertEquals("[~" + ALICE_SIP + "=connected, ~" + ALICE_SIP2 + "=on-hold]",
+                listener.changes());
+        assertEquals("Alice Smith", parser.getConferenceState().mParticipants.get(ALICE_SIP2)
+                .getString(ImsConferenceState.DISPLAY_TEXT));
+
+        // The full state of a user removes the endpoints it does not list
+        assertTrue(parse(parser, conferenceInfo("partial", 3,
+                user(ALICE, "full", "Alice Smith", endpoint(ALICE_SIP, null, "connected"))),
+                listener));
+        assertEquals("[-" + ALICE_SIP2 + "]", listener.changes());
+
+        assertTrue(parse(parser, conferenceInfo("partial", 4, user(BOB, "deleted", null, "")),
+                listener));
+        assertEquals("[-" + BOB_SIP + "]", listener.changes());
+        assertEquals(1, parser.getParticipantCount());
+    }
+
+    @SmallTest
+    public void testVersion() {
+        RecordingListener listener = new RecordingListener();
+        ConferenceEventPackageParser parser = parseFullState(listener);
+        listener.changes();
+
+        // Stale or repeated notifications are ignored
+        assertTrue(parse(parser, conferenceInfo("partial", 1,
+                user(BOB, "partial", null, endpoint(BOB_SIP, "partial", "disconnected"))),
+                listener));
+        assertEquals("[]", listener.changes());
+
+        assertTrue(parse(parser, conferenceInfo("deleted", 2, ""), listener));
+        assertEquals(3, listener.mChanges.size());
+        assertEquals(0, parser.getParticipantCount());
+
+        // A new conference starts over from version 1
+        parser.reset();
+        assertTrue(parse(parser, conferenceInfo("full", 1,
+                user(BOB, null, "Bob", endpoint(BOB_SIP, null, "connected"))), listener));
+        assertEquals(1, parser.getParticipantCount());
+    }
+
+    @SmallTest
+    public void testInvalidDocument() {
+        ConferenceEventPackageParser parser = new ConferenceEventPackageParser();
+        assertFalse(parse(parser, "<xml><participant/></xml>", null));
+        assertFalse(parse(parser, conferenceInfo("full", 1,
+                user(BOB, null, "Bob", endpoint(BOB_SIP, null, "connected"))).substring(0, 300),
+                null));
+        assertTrue(parse(parser, conferenceInfo("full", 1, ""), null));
+        assertEquals(0, parser.getParticipantCount());
+    }
+}
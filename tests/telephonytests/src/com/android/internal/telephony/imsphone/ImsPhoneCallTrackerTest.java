@@ -21,6 +21,7 @@ import android.os.Bundle;
 import android.os.HandlerThread;
 import android.os.Message;
 import android.telephony.PhoneNumberUtils;
+import android.test.suitebuilder.annotation.MediumTest;
 import android.test.suitebuilder.annotation.SmallTest;
 
 import com.android.ims.ImsCall;
@@ -55,6 +56,7 @@ import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.isNull;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -412,4 +414,33 @@ public class ImsPhoneCallTrackerTest extends TelephonyTest {
         //verify trigger sendDtmf to mImsSecondCall
         verify(mSecondImsCall, times(1)).sendDtmf(eq(PhoneNumberUtils.WAIT), (Message) isNull());
     }
+
+    @Test
+    @MediumTest
+    public void testImsCallbackStorm() {
+        // An active MT call on hold and a dialing MO call
+        testImsMTActiveMODial();
+        ImsCall unknownImsCall = mock(ImsCall.class);
+        for (int i = 0; i < 5000; i++) {
+            mImsCallListener.onCallUpdated(mImsCall);
+            mImsCallListener.onCallUpdated(mSecondImsCall);
+            mImsCallListener.onCallUpdated(unknownImsCall);
+            mImsCallListener.onCallProgressing(mSecondImsCall);
+        }
+        assertEquals(Call.State.ALERTING, mCTUT.mForegroundCall.getState());
+        assertEquals(Call.State.HOLDING, mCTUT.mBackgroundCall.getState());
+        assertEquals(1, mCTUT.mForegroundCall.getConnections().size());
+        assertEquals(1, mCTUT.mBackgroundCall.getConnections().size());
+        assertEquals(PhoneConstants.State.OFFHOOK, mCTUT.getState());
+
+        // Callbacks for the dropped call no longer find a connection
+        mImsCallListener.onCallTerminated(mSecondImsCall,
+                new ImsReasonInfo(ImsReasonInfo.CODE_USER_TERMINATED, -1));
+        for (int i = 0; i < 1000; i++) {
+            mImsCallListener.onCallProgressing(mSecondImsCall);
+            mImsCallListener.onCallUpdated(mImsCall);
+        }
+        assertFalse(mCTUT.mForegroundCall.getState().isAlive());
+        assertEquals(Call.State.HOLDING, mCTUT.mBackgroundCall.getState());
+    }
 }
@@ -15,11 +15,13 @@
  */
 package com.android.internal.telephony.imsphone;
 
+import android.net.Uri;
 import android.os.AsyncResult;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.telecom.ConferenceParticipant;
 import android.telephony.DisconnectCause;
 import android.telephony.PhoneNumberUtils;
 import android.telephony.ServiceState;
@@ -42,6 +44,9 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static com.android.internal.telephony.TelephonyTestUtils.waitForMs;
 import static org.junit.Assert.assertEquals;
@@ -53,6 +58,7 @@ import static org.mockito.Mockito.anyChar;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -268,4 +274,49 @@ public class ImsPhoneConnectionTest extends TelephonyTest {
         //keep using the wifi state from extra, not update
         assertFalse(mConnectionUT.updateWifiState());
     }
+
+    @Test
+    @SmallTest
+    public void testConferenceParticipantsDelta() {
+        mConnectionUT = new ImsPhoneConnection(mImsPhone, mImsCall, mImsCT, mForeGroundCall, false);
+        Connection.Listener listener = mock(Connection.Listener.class);
+        mConnectionUT.addListener(listener);
+
+        ConferenceParticipant alice = new ConferenceParticipant(Uri.parse("tel:+16505551212"),
+                "Alice", Uri.parse("sip:alice@test.com"),
+                android.telecom.Connection.STATE_ACTIVE);
+        ConferenceParticipant bob = new ConferenceParticipant(Uri.parse("tel:+16505550000"),
+                "Bob", Uri.parse("sip:bob@test.com"), android.telecom.Connection.STATE_DIALING);
+        List<ConferenceParticipant> participants = Arrays.asList(alice, bob);
+        mConnectionUT.updateConferenceParticipants(participants);
+        verify(listener, times(1)).onConferenceParticipantsChanged(eq(participants));
+        verify(listener, times(1)).onConferenceParticipantsDelta(eq(participants),
+                eq(new ArrayList<ConferenceParticipant>()),
+                eq(new ArrayList<ConferenceParticipant>()));
+
+        // Same state again: the state is reported, but no changes
+        ConferenceParticipant aliceAgain = new ConferenceParticipant(
+                Uri.parse("tel:+16505551212"), "Alice", Uri.parse("sip:alice@test.com"),
+                android.telecom.Connection.STATE_ACTIVE);
+        mConnectionUT.updateConferenceParticipants(Arrays.asList(aliceAgain, bob));
+        verify(listener, times(2)).onConferenceParticipantsChanged(any());
+        verify(listener, times(1)).onConferenceParticipantsDelta(any(), any(), any());
+
+        // Bob answers and Alice leaves
+        ConferenceParticipant bobActive = new ConferenceParticipant(Uri.parse("tel:+16505550000"),
+                "Bob", Uri.parse("sip:bob@test.com"), android.telecom.Connection.STATE_ACTIVE);
+        participants = Arrays.asList(bobActive);
+        mConnectionUT.updateConferenceParticipants(participants);
+        verify(listener, times(1)).onConferenceParticipantsChanged(eq(participants));
+        verify(listener, times(1)).onConferenceParticipantsDelta(
+                eq(new ArrayList<ConferenceParticipant>()), eq(participants),
+                eq(Arrays.asList(aliceAgain)));
+
+        // Partial update: Alice joins again and Bob leaves
+        mConnectionUT.updateConferenceParticipants(Arrays.asList(alice),
+                Arrays.asList(Uri.parse("sip:bob@test.com")));
+        verify(listener, times(1)).onConferenceParticipantsChanged(eq(Arrays.asList(alice)));
+        verify(listener, times(1)).onConferenceParticipantsDelta(eq(Arrays.asList(alice)),
+                eq(new ArrayList<ConferenceParticipant>()), eq(Arrays.asList(bobActive)));
+    }
 }
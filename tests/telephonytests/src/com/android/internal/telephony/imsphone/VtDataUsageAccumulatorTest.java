@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.imsphone;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Test cases for VtDataUsageAccumulator.
+ */
+public class VtDataUsageAccumulatorTest extends AndroidTestCase {
+
+    @SmallTest
+    public void testCumulativeReports() {
+        VtDataUsageAccumulator accumulator = new VtDataUsageAccumulator();
+        assertEquals(100, accumulator.update(1, 100));
+        assertEquals(50, accumulator.update(2, 50));
+        assertEquals(150, accumulator.update(1, 250));
+        assertEquals(0, accumulator.update(1, 250));
+        assertEquals(300, accumulator.getTotalUsage());
+
+        // A lower count means the provider started over, so all of it is new
+        assertEquals(10, accumulator.update(2, 10));
+        assertEquals(5, accumulator.update(2, 15));
+        assertEquals(315, accumulator.getTotalUsage());
+    }
+
+    @SmallTest
+    public void testEndedCalls() {
+        VtDataUsageAccumulator accumulator = new VtDataUsageAccumulator(2);
+        accumulator.update(1, 100);
+        accumulator.update(2, 200);
+        accumulator.onCallEnded(1);
+
+        // A late report of an ended call only adds the difference
+        assertEquals(10, accumulator.update(1, 110));
+
+        // The ended call makes room for a new one, and the total is kept
+        assertEquals(300, accumulator.update(3, 300));
+        assertEquals(20, accumulator.update(2, 220));
+        assertEquals(630, accumulator.getTotalUsage());
+        assertFalse(dump(accumulator).contains("id=1 "));
+    }
+
+    @SmallTest
+    public void testBound() {
+        VtDataUsageAccumulator accumulator = new VtDataUsageAccumulator(3);
+        for (int callId = 0; callId < 100; callId++) {
+            accumulator.update(callId, 10);
+            accumulator.update(callId, 20);
+            if (callId % 2 == 0) {
+                accumulator.onCallEnded(callId);
+            }
+        }
+        assertEquals(2000, accumulator.getTotalUsage());
+
+        // The calls still in progress keep their slots over ended ones
+        accumulator.update(200, 10);
+        assertEquals(1, accumulator.update(99, 21));
+        assertEquals(1, accumulator.update(97, 21));
+    }
+
+    private static String dump(VtDataUsageAccumulator accumulator) {
+        StringWriter sw = new StringWriter();
+        accumulator.dump(new PrintWriter(sw));
+        return sw.toString();
+    }
+}